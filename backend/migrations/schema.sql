@@ -5152,3 +5152,200 @@ ALTER TABLE public.grns ADD COLUMN IF NOT EXISTS source_reference_code character
 ALTER TABLE public.grn_items ADD COLUMN IF NOT EXISTS lot_number character varying(100);
 ALTER TABLE public.grn_items ADD COLUMN IF NOT EXISTS manufacture_date date;
 ALTER TABLE public.grn_items ADD COLUMN IF NOT EXISTS expiry_date date;
+
+-- ============================================================
+-- MIGRATION: Reservation delta mode (inventory.reservation.delta-mode)
+-- Thay đổi reserved_qty được append vào bảng delta thay vì UPDATE tại chỗ
+-- trên inventory_snapshot; ReservedQtyWriter gộp định kỳ vào snapshot.
+-- Đọc availability = snapshot.reserved_qty + pending delta (view bên dưới).
+-- ============================================================
+CREATE TABLE IF NOT EXISTS public.inventory_reservation_deltas (
+    delta_id bigserial PRIMARY KEY,
+    warehouse_id bigint NOT NULL,
+    sku_id bigint NOT NULL,
+    lot_id bigint,
+    location_id bigint NOT NULL,
+    qty numeric(12,2) NOT NULL,
+    created_at timestamp without time zone DEFAULT now() NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_reservation_delta_location_sku
+    ON public.inventory_reservation_deltas USING btree (location_id, sku_id);
+
+CREATE OR REPLACE VIEW public.inventory_reserved_pending AS
+SELECT warehouse_id, sku_id, COALESCE(lot_id, 0) AS lot_id_safe, location_id, SUM(qty) AS qty
+FROM public.inventory_reservation_deltas
+GROUP BY warehouse_id, sku_id, COALESCE(lot_id, 0), location_id;
+
+-- ============================================================
+-- MIGRATION: Ledger replay shadow table (LedgerReplayService)
+-- Snapshot quantity dựng lại từ inventory_transactions; UNLOGGED vì có thể dựng lại bất kỳ lúc nào.
+-- ============================================================
+CREATE UNLOGGED TABLE IF NOT EXISTS public.inventory_snapshot_replay (
+    warehouse_id bigint NOT NULL,
+    sku_id bigint NOT NULL,
+    lot_id bigint,
+    lot_id_safe bigint NOT NULL,
+    location_id bigint NOT NULL,
+    quantity numeric(14,2) NOT NULL,
+    PRIMARY KEY (warehouse_id, sku_id, lot_id_safe, location_id)
+);
+
+-- ============================================================
+-- MIGRATION: Snapshot-vs-ledger drift reconciler (SnapshotDriftReconciler)
+-- Lưu high-water mark txn_id đã đối soát; alert_type = 'DRIFT' trong inventory_alerts,
+-- dedupe_key = 'DRIFT:{warehouse}:{sku}:{lot|0}:{location}'.
+-- ============================================================
+CREATE TABLE IF NOT EXISTS public.inventory_reconcile_state (
+    job_name character varying(100) PRIMARY KEY,
+    last_txn_id bigint NOT NULL,
+    updated_at timestamp without time zone DEFAULT now() NOT NULL
+);
+
+-- Mỗi dedupe_key chỉ có 1 alert OPEN (upsert ON CONFLICT từ nhiều node).
+-- Dọn bản trùng cũ trước: giữ alert OPEN mới nhất, các bản còn lại → RESOLVED.
+UPDATE public.inventory_alerts a
+SET status = 'RESOLVED', resolved_at = now()
+WHERE a.status = 'OPEN' AND a.dedupe_key IS NOT NULL
+  AND EXISTS (SELECT 1 FROM public.inventory_alerts b
+              WHERE b.dedupe_key = a.dedupe_key AND b.status = 'OPEN' AND b.alert_id > a.alert_id);
+
+CREATE UNIQUE INDEX IF NOT EXISTS uq_alert_open_dedupe
+    ON public.inventory_alerts (dedupe_key) WHERE status = 'OPEN' AND dedupe_key IS NOT NULL;
+
+-- ============================================================
+-- MIGRATION: inventory_transactions partition theo tháng (created_at)
+-- Bảng cũ → partition inventory_transactions_legacy (MINVALUE → đầu tháng sau dữ liệu mới nhất).
+-- Partition tháng tiếp theo do InventoryTxnPartitionService tạo trước (months-ahead),
+-- rollup theo ngày và archive (detach → file .csv.gz) các partition cũ.
+-- ============================================================
+CREATE TABLE IF NOT EXISTS public.inventory_txn_partitions (
+    partition_name character varying(100) PRIMARY KEY,
+    range_from date,
+    range_to date NOT NULL,
+    rolled_up_through date,
+    archived_at timestamp without time zone,
+    archive_file text,
+    archived_rows bigint,
+    created_at timestamp without time zone DEFAULT now() NOT NULL
+);
+
+DO $$
+DECLARE
+    cutoff timestamp;
+BEGIN
+    IF NOT EXISTS (SELECT 1 FROM pg_partitioned_table
+                   WHERE partrelid = 'public.inventory_transactions'::regclass) THEN
+
+        SELECT date_trunc('month', GREATEST(now()::timestamp, COALESCE(MAX(created_at), now()::timestamp)))
+               + interval '1 month'
+        INTO cutoff
+        FROM public.inventory_transactions;
+
+        ALTER TABLE public.inventory_transactions RENAME TO inventory_transactions_legacy;
+        ALTER TABLE public.inventory_transactions_legacy
+            RENAME CONSTRAINT inventory_transactions_pkey TO inventory_transactions_legacy_pkey;
+        ALTER INDEX public.idx_inv_txn_created_at  RENAME TO idx_inv_txn_legacy_created_at;
+        ALTER INDEX public.idx_inv_txn_reference   RENAME TO idx_inv_txn_legacy_reference;
+        ALTER INDEX public.idx_inv_txn_sku_lot_loc RENAME TO idx_inv_txn_legacy_sku_lot_loc;
+        ALTER INDEX public.idx_inv_txn_warehouse   RENAME TO idx_inv_txn_legacy_warehouse;
+
+        CREATE TABLE public.inventory_transactions (
+            txn_id bigint DEFAULT nextval('public.inventory_transactions_txn_id_seq'::regclass) NOT NULL,
+            warehouse_id bigint NOT NULL,
+            sku_id bigint NOT NULL,
+            lot_id bigint,
+            location_id bigint NOT NULL,
+            quantity numeric(12,2) NOT NULL,
+            txn_type character varying(50) NOT NULL,
+            reference_table character varying(100),
+            reference_id bigint,
+            reason_code character varying(100),
+            created_by bigint NOT NULL,
+            created_at timestamp without time zone DEFAULT now() NOT NULL,
+            CONSTRAINT inventory_transactions_pkey PRIMARY KEY (txn_id, created_at),
+            CONSTRAINT inventory_transactions_created_by_fkey FOREIGN KEY (created_by) REFERENCES public.users(user_id),
+            CONSTRAINT inventory_transactions_location_id_fkey FOREIGN KEY (location_id) REFERENCES public.locations(location_id),
+            CONSTRAINT inventory_transactions_lot_id_fkey FOREIGN KEY (lot_id) REFERENCES public.inventory_lots(lot_id),
+            CONSTRAINT inventory_transactions_sku_id_fkey FOREIGN KEY (sku_id) REFERENCES public.skus(sku_id),
+            CONSTRAINT inventory_transactions_warehouse_id_fkey FOREIGN KEY (warehouse_id)
+                REFERENCES public.warehouses(warehouse_id) ON DELETE RESTRICT
+        ) PARTITION BY RANGE (created_at);
+
+        COMMENT ON TABLE public.inventory_transactions IS 'Inventory transaction ledger (single source of truth), partitioned by month';
+        ALTER SEQUENCE public.inventory_transactions_txn_id_seq OWNED BY public.inventory_transactions.txn_id;
+
+        -- CHECK trước → ATTACH không phải quét lại toàn bảng
+        EXECUTE format('ALTER TABLE public.inventory_transactions_legacy
+                        ADD CONSTRAINT inventory_transactions_legacy_range CHECK (created_at < %L)', cutoff);
+        EXECUTE format('ALTER TABLE public.inventory_transactions
+                        ATTACH PARTITION public.inventory_transactions_legacy FOR VALUES FROM (MINVALUE) TO (%L)', cutoff);
+        CREATE TABLE public.inventory_transactions_default PARTITION OF public.inventory_transactions DEFAULT;
+
+        CREATE INDEX idx_inv_txn_created_at  ON public.inventory_transactions USING btree (created_at);
+        CREATE INDEX idx_inv_txn_reference   ON public.inventory_transactions USING btree (reference_table, reference_id);
+        CREATE INDEX idx_inv_txn_sku_lot_loc ON public.inventory_transactions USING btree (warehouse_id, sku_id, lot_id, location_id);
+        CREATE INDEX idx_inv_txn_warehouse   ON public.inventory_transactions USING btree (warehouse_id);
+        CREATE INDEX idx_inv_txn_txn_id      ON public.inventory_transactions USING btree (txn_id);
+
+        INSERT INTO public.inventory_txn_partitions (partition_name, range_from, range_to)
+        SELECT 'inventory_transactions_legacy', MIN(created_at)::date, cutoff::date
+        FROM public.inventory_transactions_legacy;
+    END IF;
+END $$;
+
+-- Rollup theo ngày / (warehouse, SKU, txn_type) — báo cáo dài ngày đọc bảng này thay vì ledger
+CREATE TABLE IF NOT EXISTS public.inventory_txn_daily_rollup (
+    warehouse_id bigint NOT NULL,
+    txn_date date NOT NULL,
+    sku_id bigint NOT NULL,
+    txn_type character varying(50) NOT NULL,
+    qty_in numeric(18,2) NOT NULL,
+    qty_out numeric(18,2) NOT NULL,
+    txn_count bigint NOT NULL,
+    PRIMARY KEY (warehouse_id, txn_date, sku_id, txn_type)
+);
+
+-- Số dư (warehouse, sku, lot, location) của các partition đã archive — replay / drift cộng thêm bảng này
+CREATE TABLE IF NOT EXISTS public.inventory_txn_archived_balance (
+    warehouse_id bigint NOT NULL,
+    sku_id bigint NOT NULL,
+    lot_id bigint,
+    lot_id_safe bigint NOT NULL,
+    location_id bigint NOT NULL,
+    quantity numeric(14,2) NOT NULL,
+    PRIMARY KEY (warehouse_id, sku_id, lot_id_safe, location_id)
+);
+
+-- ============================================================
+-- MIGRATION: EOD checkpoint của inventory_snapshot (InventoryCheckpointService)
+-- Tồn kho tại thời điểm T = checkpoint gần nhất trước T + txn có txn_id > max_txn_id, created_at <= T.
+-- pending_txn_ids: txn_id ≤ max_txn_id chưa commit lúc chụp (commit trễ) — cũng được replay.
+-- ============================================================
+CREATE TABLE IF NOT EXISTS public.inventory_eod_checkpoints (
+    checkpoint_date date PRIMARY KEY,
+    max_txn_id bigint NOT NULL,
+    pending_txn_ids bigint[] NOT NULL DEFAULT '{}',
+    taken_at timestamp without time zone NOT NULL,
+    row_count bigint NOT NULL
+);
+ALTER TABLE public.inventory_eod_checkpoints ADD COLUMN IF NOT EXISTS pending_txn_ids bigint[] NOT NULL DEFAULT '{}';
+
+CREATE TABLE IF NOT EXISTS public.inventory_eod_checkpoint_lines (
+    checkpoint_date date NOT NULL,
+    warehouse_id bigint NOT NULL,
+    sku_id bigint NOT NULL,
+    lot_id bigint,
+    lot_id_safe bigint NOT NULL,
+    location_id bigint NOT NULL,
+    quantity numeric(14,2) NOT NULL,
+    PRIMARY KEY (checkpoint_date, warehouse_id, sku_id, lot_id_safe, location_id)
+);
+
+-- ============================================================
+-- MIGRATION: Pre-planning gợi ý putaway (PutawayPlanningService)
+-- suggested_qty: qty engine xếp vào suggested_location_id; suggested_at: lúc lập gợi ý.
+-- Keeper mở task → gợi ý được kiểm tra lại với capacity hiện tại, stale thì tính lại.
+-- ============================================================
+ALTER TABLE public.putaway_task_items ADD COLUMN IF NOT EXISTS suggested_qty numeric(12,2);
+ALTER TABLE public.putaway_task_items ADD COLUMN IF NOT EXISTS suggested_at timestamp without time zone;
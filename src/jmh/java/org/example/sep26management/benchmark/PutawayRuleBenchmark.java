@@ -0,0 +1,96 @@
+package org.example.sep26management.benchmark;
+
+import org.example.sep26management.domain.putaway.suggestion.CandidateBin;
+import org.example.sep26management.domain.putaway.suggestion.EligibilityRule;
+import org.example.sep26management.domain.putaway.suggestion.FixedPointScoringRule;
+import org.example.sep26management.domain.putaway.suggestion.PutawaySuggestionContext;
+import org.example.sep26management.domain.putaway.suggestion.ScoringRule;
+import org.example.sep26management.domain.putaway.suggestion.rules.BasicCapacityScoringRule;
+import org.example.sep26management.domain.putaway.suggestion.rules.CapacityEligibilityRule;
+import org.example.sep26management.domain.putaway.suggestion.rules.ConsolidationScoringRule;
+import org.example.sep26management.domain.putaway.suggestion.rules.PickingFaceScoringRule;
+import org.example.sep26management.domain.putaway.suggestion.rules.TravelCostScoringRule;
+import org.example.sep26management.domain.putaway.suggestion.rules.WeightVolumeFitScoringRule;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Đánh giá rule trên mọi BIN của 1 zone (1 lần gọi = cả zone): eligibility, từng scoring rule
+ * theo đường BigDecimal (score) và fixed-point (scoreFixed).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PutawayRuleBenchmark {
+
+    private static final Map<String, FixedPointScoringRule> RULES = Map.of(
+            "CAPACITY", new BasicCapacityScoringRule(1),
+            "WEIGHT_VOLUME_FIT", new WeightVolumeFitScoringRule(500),
+            "CONSOLIDATION", new ConsolidationScoringRule(200),
+            "PICKING_FACE", new PickingFaceScoringRule(50),
+            "TRAVEL_COST", new TravelCostScoringRule(5, 10, 3, 2, 1));
+
+    @Param({"10000"})
+    public int bins;
+
+    @Param({"CAPACITY", "WEIGHT_VOLUME_FIT", "CONSOLIDATION", "PICKING_FACE", "TRAVEL_COST"})
+    public String rule;
+
+    private final EligibilityRule eligibility = new CapacityEligibilityRule();
+
+    private FixedPointScoringRule scoringRule;
+    private PutawaySuggestionContext ctx;
+    private List<CandidateBin> candidates;
+
+    @Setup
+    public void setUp() {
+        SyntheticWarehouse warehouse = SyntheticWarehouse.generate(1, bins, 1, SyntheticWarehouse.Occupancy.UNIFORM, 42);
+        ctx = warehouse.context(warehouse.request(0, BigDecimal.valueOf(50), true));
+        candidates = warehouse.bins(ctx.getAllowedZoneIds().iterator().next());
+        scoringRule = RULES.get(rule);
+    }
+
+    @Benchmark
+    public void eligibility(Blackhole bh) {
+        List<String> reasons = new ArrayList<>();
+        for (CandidateBin bin : candidates) {
+            bh.consume(eligibility.isEligible(ctx, bin, reasons));
+        }
+    }
+
+    @Benchmark
+    public void scoreBigDecimal(Blackhole bh) {
+        ScoringRule r = scoringRule;
+        for (CandidateBin bin : candidates) {
+            bh.consume(r.score(ctx, bin, new ArrayList<>(2)));
+        }
+    }
+
+    @Benchmark
+    public long scoreFixed() {
+        long sum = 0;
+        for (CandidateBin bin : candidates) {
+            sum += scoringRule.scoreFixed(ctx, bin);
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,86 @@
+package org.example.sep26management.benchmark;
+
+import org.example.sep26management.domain.putaway.suggestion.CandidateBin;
+import org.example.sep26management.domain.putaway.suggestion.DefaultPutawaySuggestionEngine;
+import org.example.sep26management.domain.putaway.suggestion.PutawayScoringWeights;
+import org.example.sep26management.domain.putaway.suggestion.PutawaySuggestionContext;
+import org.example.sep26management.domain.putaway.suggestion.PutawaySuggestionLineResponse;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pipeline eligibility → scoring → strategy của engine putaway trên 1 zone nhiều BIN:
+ * đường BigDecimal (fixedPoint=false) so với fixed-point (fixedPoint=true).
+ * Chạy với -prof gc để xem gc.alloc.rate.norm (byte cấp phát / lần gọi).
+ * parallel=true: chấm theo chunk trên ForkJoinPool riêng (Parallelism, ngưỡng 0 → luôn bật).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PutawayScoringBenchmark {
+
+    @Param({"10000", "50000"})
+    public int bins;
+
+    /** 50: 1 BIN đủ chứa; 5000: phải chia qua nhiều BIN. */
+    @Param({"50", "5000"})
+    public int qty;
+
+    @Param({"false", "true"})
+    public boolean fixedPoint;
+
+    @Param({"UNIFORM"})
+    public SyntheticWarehouse.Occupancy occupancy;
+
+    @Param({"false", "true"})
+    public boolean parallel;
+
+    private ForkJoinPool pool;
+
+    private DefaultPutawaySuggestionEngine engine;
+    private PutawaySuggestionContext ctx;
+    private List<CandidateBin> candidates;
+
+    @Setup
+    public void setUp() {
+        DefaultPutawaySuggestionEngine.Parallelism parallelism = DefaultPutawaySuggestionEngine.Parallelism.OFF;
+        if (parallel) {
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+            parallelism = new DefaultPutawaySuggestionEngine.Parallelism(pool, 0, 4096);
+        }
+        engine = new DefaultPutawaySuggestionEngine(null, null, null, null, 16, fixedPoint,
+                warehouseId -> PutawayScoringWeights.DEFAULT, null, parallelism);
+
+        SyntheticWarehouse warehouse = SyntheticWarehouse.generate(1, bins, 1, occupancy, 42);
+        ctx = warehouse.context(warehouse.request(0, BigDecimal.valueOf(qty), true));
+        candidates = warehouse.bins(ctx.getAllowedZoneIds().iterator().next());
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (pool != null) pool.shutdown();
+    }
+
+    @Benchmark
+    public PutawaySuggestionLineResponse planZone() {
+        return engine.planCandidates(ctx, candidates);
+    }
+}
@@ -0,0 +1,75 @@
+package org.example.sep26management.benchmark;
+
+import org.example.sep26management.domain.putaway.suggestion.CandidateBin;
+import org.example.sep26management.domain.putaway.suggestion.PutawayBinSuggestionDto;
+import org.example.sep26management.domain.putaway.suggestion.PutawayStrategy;
+import org.example.sep26management.domain.putaway.suggestion.PutawaySuggestionContext;
+import org.example.sep26management.domain.putaway.suggestion.ScoredBin;
+import org.example.sep26management.domain.putaway.suggestion.strategy.NoSplitStrategy;
+import org.example.sep26management.domain.putaway.suggestion.strategy.SplitAcrossBinsStrategy;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Chỉ bước strategy: danh sách ScoredBin đã sắp theo điểm (= capacity còn trống), đo
+ * SplitAcrossBinsStrategy và NoSplitStrategy. NEARLY_FULL + qty lớn → split phải đi qua nhiều
+ * BIN, no-split phải quét xa mới gặp BIN đủ chỗ (hoặc hết danh sách).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PutawayStrategyBenchmark {
+
+    @Param({"1000", "10000"})
+    public int bins;
+
+    @Param({"50", "5000"})
+    public int qty;
+
+    @Param({"UNIFORM", "NEARLY_FULL"})
+    public SyntheticWarehouse.Occupancy occupancy;
+
+    private final PutawayStrategy split = new SplitAcrossBinsStrategy();
+    private final PutawayStrategy noSplit = new NoSplitStrategy();
+
+    private PutawaySuggestionContext ctx;
+    private List<ScoredBin> scoredBins;
+
+    @Setup
+    public void setUp() {
+        SyntheticWarehouse warehouse = SyntheticWarehouse.generate(1, bins, 1, occupancy, 42);
+        ctx = warehouse.context(warehouse.request(0, BigDecimal.valueOf(qty), true));
+        List<CandidateBin> candidates = warehouse.bins(ctx.getAllowedZoneIds().iterator().next());
+        scoredBins = new ArrayList<>(candidates.size());
+        for (CandidateBin bin : candidates) {
+            scoredBins.add(new ScoredBin(bin, bin.getAvailableCapacity(), List.of("CAPACITY")));
+        }
+    }
+
+    @Benchmark
+    public List<PutawayBinSuggestionDto> splitAcrossBins() {
+        return split.allocate(ctx, scoredBins);
+    }
+
+    @Benchmark
+    public List<PutawayBinSuggestionDto> noSplit() {
+        return noSplit.allocate(ctx, scoredBins);
+    }
+}
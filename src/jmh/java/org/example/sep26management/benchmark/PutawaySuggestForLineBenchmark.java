@@ -0,0 +1,80 @@
+package org.example.sep26management.benchmark;
+
+import org.example.sep26management.domain.putaway.suggestion.DefaultPutawaySuggestionEngine;
+import org.example.sep26management.domain.putaway.suggestion.PutawayScoringWeights;
+import org.example.sep26management.domain.putaway.suggestion.PutawaySuggestionLineResponse;
+import org.example.sep26management.domain.putaway.suggestion.PutawaySuggestionRequest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * suggestForLine đầy đủ (SKU → zone → candidate từ index → rule → strategy → giải thích) trên
+ * warehouse giả lập, index / directory in-memory. Mỗi lần gọi lấy SKU kế tiếp → xoay vòng qua
+ * các zone.
+ *
+ * weights: CAPACITY_ONLY → engine duyệt đầu index; MULTI → chấm cả zone với fit kg / m³,
+ * picking face và travel cost.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PutawaySuggestForLineBenchmark {
+
+    private static final int REQUESTS = 64;
+
+    @Param({"8"})
+    public int zones;
+
+    @Param({"1000", "10000"})
+    public int binsPerZone;
+
+    @Param({"UNIFORM", "SKEWED", "NEARLY_FULL"})
+    public SyntheticWarehouse.Occupancy occupancy;
+
+    @Param({"CAPACITY_ONLY", "MULTI"})
+    public String weights;
+
+    @Param({"500"})
+    public int qty;
+
+    private DefaultPutawaySuggestionEngine engine;
+    private final List<PutawaySuggestionRequest> requests = new ArrayList<>(REQUESTS);
+    private int next;
+
+    @Setup
+    public void setUp() {
+        SyntheticWarehouse warehouse = SyntheticWarehouse.generate(zones, binsPerZone, 4, occupancy, 42);
+        PutawayScoringWeights scoring = "MULTI".equals(weights)
+                ? new PutawayScoringWeights(1, 500, 0, 50, 5, 10, 3, 2, 1)
+                : PutawayScoringWeights.DEFAULT;
+        engine = new DefaultPutawaySuggestionEngine(warehouse.directory(), null, warehouse.index(), null,
+                16, true, warehouseId -> scoring, null);
+        for (int i = 0; i < REQUESTS; i++) {
+            requests.add(warehouse.request(i, BigDecimal.valueOf(qty), true));
+        }
+    }
+
+    @Benchmark
+    public PutawaySuggestionLineResponse suggestForLine() {
+        PutawaySuggestionRequest request = requests.get(next);
+        next = (next + 1) % REQUESTS;
+        return engine.suggestForLine(request);
+    }
+}
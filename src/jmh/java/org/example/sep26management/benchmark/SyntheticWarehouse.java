@@ -0,0 +1,240 @@
+package org.example.sep26management.benchmark;
+
+import org.example.sep26management.application.enums.LocationType;
+import org.example.sep26management.domain.putaway.suggestion.BinCapacityIndex;
+import org.example.sep26management.domain.putaway.suggestion.CandidateBin;
+import org.example.sep26management.domain.putaway.suggestion.PutawaySuggestionContext;
+import org.example.sep26management.domain.putaway.suggestion.PutawaySuggestionRequest;
+import org.example.sep26management.domain.putaway.suggestion.PutawayZoneDirectory;
+import org.example.sep26management.infrastructure.persistence.entity.LocationEntity;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Warehouse giả lập cho benchmark putaway: zones × binsPerZone BIN, mỗi zone 1 category
+ * (zone "Z-CAT{n}"), skusPerZone SKU mỗi category. Cùng seed → cùng dữ liệu giữa các lần chạy
+ * (so sánh kết quả giữa các version).
+ *
+ * Phân bố occupancy:
+ *   EMPTY        mọi BIN trống
+ *   UNIFORM      tỉ lệ lấp đầy đều 0..1
+ *   SKEWED       phần lớn BIN gần đầy, ít BIN trống (u^(1/4))
+ *   NEARLY_FULL  95..100% — engine phải duyệt sâu / chia nhiều BIN
+ *
+ * index() / directory(): BinCapacityIndex và PutawayZoneDirectory in-memory thay cho DB / cache
+ * thật, để chạy DefaultPutawaySuggestionEngine không cần Spring.
+ */
+public final class SyntheticWarehouse {
+
+    public static final long WAREHOUSE_ID = 1L;
+
+    public enum Occupancy {
+        EMPTY, UNIFORM, SKEWED, NEARLY_FULL;
+
+        double sample(Random random) {
+            return switch (this) {
+                case EMPTY -> 0;
+                case UNIFORM -> random.nextDouble();
+                case SKEWED -> Math.pow(random.nextDouble(), 0.25);
+                case NEARLY_FULL -> 0.95 + random.nextDouble() * 0.05;
+            };
+        }
+    }
+
+    private final Map<Long, List<CandidateBin>> binsByZone = new HashMap<>();
+    private final Map<Long, CandidateBin> binsById = new HashMap<>();
+    private final Map<Long, PutawayZoneDirectory.ZoneInfo> zones = new HashMap<>();
+    private final Map<String, List<PutawayZoneDirectory.ZoneInfo>> zonesByCategory = new HashMap<>();
+    private final Map<Long, PutawayZoneDirectory.SkuPlacement> skus = new HashMap<>();
+    private final List<Long> skuIds = new ArrayList<>();
+
+    private SyntheticWarehouse() {
+    }
+
+    public static SyntheticWarehouse generate(int zoneCount, int binsPerZone, int skusPerZone,
+                                              Occupancy occupancy, long seed) {
+        SyntheticWarehouse wh = new SyntheticWarehouse();
+        Random random = new Random(seed);
+        long locationId = 1;
+        long skuId = 1;
+        for (long zoneId = 1; zoneId <= zoneCount; zoneId++) {
+            String categoryCode = "CAT" + zoneId;
+            String zoneCode = "Z-" + categoryCode;
+            PutawayZoneDirectory.ZoneInfo zone =
+                    new PutawayZoneDirectory.ZoneInfo(zoneId, WAREHOUSE_ID, zoneCode, "Zone " + zoneId, true);
+            wh.zones.put(zoneId, zone);
+            wh.zonesByCategory.put(categoryCode, List.of(zone));
+
+            List<CandidateBin> bins = new ArrayList<>(binsPerZone);
+            for (int i = 0; i < binsPerZone; i++) {
+                BigDecimal max = BigDecimal.valueOf(400 + random.nextInt(113)).setScale(2);
+                LocationEntity location = LocationEntity.builder()
+                        .locationId(locationId++)
+                        .warehouseId(WAREHOUSE_ID)
+                        .zoneId(zoneId)
+                        .locationCode(String.format("%s-B%05d", zoneCode, i))
+                        .locationType(LocationType.BIN)
+                        .maxWeightKg(max)
+                        .maxVolumeM3(BigDecimal.valueOf(1 + random.nextInt(3)))
+                        .isPickingFace(i % 10 == 0)
+                        .binFloor(1 + i % 4)
+                        .binColumn(1 + (i / 4) % 6)
+                        .active(true)
+                        .build();
+                BigDecimal occupied = max.multiply(BigDecimal.valueOf(occupancy.sample(random)))
+                        .setScale(0, RoundingMode.DOWN);
+                BigDecimal reserved = occupied.compareTo(max) < 0
+                        ? BigDecimal.valueOf(random.nextInt(Math.min(20, max.subtract(occupied).intValue() + 1)))
+                        : BigDecimal.ZERO;
+                CandidateBin bin = CandidateBin.of(location, zoneCode, occupied, reserved,
+                        occupied.multiply(BigDecimal.valueOf(0.5)), BigDecimal.ZERO,
+                        i / 240, (i / 24) % 10);
+                bins.add(bin);
+                wh.binsById.put(location.getLocationId(), bin);
+            }
+            bins.sort(Comparator.comparing(CandidateBin::getAvailableCapacity).reversed());
+            wh.binsByZone.put(zoneId, Collections.unmodifiableList(bins));
+
+            for (int s = 0; s < skusPerZone; s++) {
+                PutawayZoneDirectory.SkuPlacement sku = new PutawayZoneDirectory.SkuPlacement(skuId,
+                        "SKU-" + skuId, categoryCode,
+                        BigDecimal.valueOf(50 + random.nextInt(950)).movePointLeft(3),
+                        BigDecimal.valueOf(100 + random.nextInt(1900)).movePointLeft(6));
+                wh.skus.put(skuId, sku);
+                wh.skuIds.add(skuId);
+                skuId++;
+            }
+        }
+        return wh;
+    }
+
+    /** Request cho SKU thứ index (vòng quanh danh sách SKU). */
+    public PutawaySuggestionRequest request(int index, BigDecimal qty, boolean splitAllowed) {
+        PutawaySuggestionRequest request = new PutawaySuggestionRequest();
+        request.setWarehouseId(WAREHOUSE_ID);
+        request.setSkuId(skuIds.get(Math.floorMod(index, skuIds.size())));
+        request.setQuantity(qty);
+        request.setSplitAllowed(splitAllowed);
+        return request;
+    }
+
+    /** Context như engine dựng cho request: SKU đã có weight / volume, zone được phép theo category. */
+    public PutawaySuggestionContext context(PutawaySuggestionRequest request) {
+        PutawayZoneDirectory.SkuPlacement sku = skus.get(request.getSkuId());
+        request.setSkuCode(sku.skuCode());
+        request.setWeight(sku.weightKg());
+        request.setVolume(sku.volumeM3());
+        Set<Long> zoneIds = new LinkedHashSet<>();
+        zonesByCategory.getOrDefault(sku.categoryCode(), List.of()).forEach(z -> zoneIds.add(z.zoneId()));
+        return new PutawaySuggestionContext(request, zoneIds);
+    }
+
+    /** BIN của zone theo capacity giảm dần. */
+    public List<CandidateBin> bins(Long zoneId) {
+        return binsByZone.getOrDefault(zoneId, List.of());
+    }
+
+    public int binCount() {
+        return binsById.size();
+    }
+
+    public BinCapacityIndex index() {
+        return new InMemoryBinIndex();
+    }
+
+    public PutawayZoneDirectory directory() {
+        return new InMemoryZoneDirectory();
+    }
+
+    // ─── Stubs ──────────────────────────────────────────────────────────────────
+
+    private final class InMemoryBinIndex implements BinCapacityIndex {
+
+        @Override
+        public boolean serves(Long zoneId) {
+            return true;
+        }
+
+        @Override
+        public Iterator<CandidateBin> byCapacityDesc(Long zoneId) {
+            return bins(zoneId).iterator();
+        }
+
+        @Override
+        public Optional<CandidateBin> bestFit(Long zoneId, BigDecimal qty) {
+            List<CandidateBin> bins = bins(zoneId);
+            // danh sách giảm dần → BIN cuối cùng còn ≥ qty
+            int lo = 0;
+            int hi = bins.size() - 1;
+            int found = -1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                if (bins.get(mid).getAvailableCapacity().compareTo(qty) >= 0) {
+                    found = mid;
+                    lo = mid + 1;
+                } else {
+                    hi = mid - 1;
+                }
+            }
+            return found >= 0 ? Optional.of(bins.get(found)) : Optional.empty();
+        }
+
+        @Override
+        public Map<Long, CandidateBin> findBins(Collection<Long> locationIds) {
+            Map<Long, CandidateBin> result = new HashMap<>();
+            locationIds.forEach(id -> {
+                CandidateBin bin = binsById.get(id);
+                if (bin != null) result.put(id, bin);
+            });
+            return result;
+        }
+
+        @Override
+        public Map<Long, List<CandidateBin>> loadZones(Collection<Long> zoneIds) {
+            Map<Long, List<CandidateBin>> result = new HashMap<>();
+            zoneIds.forEach(id -> result.put(id, bins(id)));
+            return result;
+        }
+    }
+
+    private final class InMemoryZoneDirectory implements PutawayZoneDirectory {
+
+        @Override
+        public Map<Long, SkuPlacement> skus(Collection<Long> ids) {
+            Map<Long, SkuPlacement> result = new HashMap<>();
+            ids.forEach(id -> {
+                SkuPlacement sku = skus.get(id);
+                if (sku != null) result.put(id, sku);
+            });
+            return result;
+        }
+
+        @Override
+        public List<ZoneInfo> allowedZones(Long warehouseId, String categoryCode) {
+            return zonesByCategory.getOrDefault(categoryCode, List.of());
+        }
+
+        @Override
+        public Map<Long, ZoneInfo> zones(Collection<Long> zoneIds) {
+            Map<Long, ZoneInfo> result = new HashMap<>();
+            zoneIds.forEach(id -> {
+                ZoneInfo zone = zones.get(id);
+                if (zone != null) result.put(id, zone);
+            });
+            return result;
+        }
+    }
+}
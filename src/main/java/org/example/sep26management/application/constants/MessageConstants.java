@@ -212,6 +212,12 @@ public final class MessageConstants {
     public static final String ALLOCATE_PARTIAL          = "Stock partially allocated. Some items have insufficient stock.";
     public static final String ALLOCATE_MUST_BE_APPROVED = "Document must be in APPROVED status before allocating stock.";
     public static final String ALLOCATE_NO_ITEMS         = "No items found in this document to allocate.";
+    public static final String ALLOCATE_WAVE_DONE        = "Wave allocation completed. See per-order results.";
+
+    // ==================== Inventory Ledger ====================
+    public static final String LEDGER_REPLAY_DONE        = "Ledger replay completed.";
+    public static final String LEDGER_MOVEMENTS_LOADED   = "Inventory movement summary retrieved.";
+    public static final String LEDGER_CHECKPOINT_CREATED = "Inventory checkpoint created.";
 
     // ==================== Generate Pick List (SCRUM-511) ====================
     public static final String PICKLIST_GENERATED_SUCCESS = "Pick list generated successfully";
@@ -0,0 +1,20 @@
+package org.example.sep26management.application.dto.putaway;
+
+import lombok.*;
+
+import java.time.LocalDateTime;
+
+/**
+ * Push qua WebSocket (/topic/warehouse.{warehouseId}.putaway) khi pre-planning của 1 putaway task
+ * đã lưu xong gợi ý BIN — FE của keeper tải lại GET /v1/putaway-tasks/{id}/suggestions.
+ */
+@Data @NoArgsConstructor @AllArgsConstructor @Builder
+public class PutawaySuggestionsReadyEvent {
+    private Long putawayTaskId;
+    private Long warehouseId;
+    private Long grnId;
+    private Long assignedTo;
+    private int itemCount;
+    private int suggestedCount;
+    private LocalDateTime plannedAt;
+}
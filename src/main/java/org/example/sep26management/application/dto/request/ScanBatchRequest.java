@@ -0,0 +1,59 @@
+package org.example.sep26management.application.dto.request;
+
+import io.swagger.v3.oas.annotations.media.Schema;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.List;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+public class ScanBatchRequest {
+
+    @Schema(description = "Mã phiên quét (Session ID) — bắt buộc khi gọi bằng JWT user thường, bỏ qua khi dùng scan token.",
+            example = "RS_1A2B3C4D")
+    private String sessionId;
+
+    @Schema(description = "ID Phiếu nhận hàng — nếu có, receivedQty các dòng trên phiếu được cộng theo các scan hợp lệ.",
+            example = "123")
+    private Long receivingId;
+
+    @Schema(description = "Các lần quét theo đúng thứ tự trên thiết bị (tối đa 500)")
+    @NotEmpty(message = "events cannot be empty")
+    @Size(max = 500, message = "At most 500 events per batch")
+    private List<Event> events;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Event {
+        @Schema(description = "ID do thiết bị sinh cho lần quét — gửi lại batch (retry) không cộng trùng", example = "3f2c9a1e-7b4d-4c8e-9f10-2a6b5c7d8e90")
+        private String clientScanId;
+
+        @Schema(description = "Mã vạch hoặc SKU code", example = "SKU-IPHONE15-PRO-256")
+        private String barcode;
+
+        @Schema(description = "Số lượng quét", example = "1")
+        private BigDecimal qty;
+
+        @Schema(description = "PASS hoặc FAIL", example = "PASS")
+        private String condition;
+
+        @Schema(description = "Mã lý do lỗi khi FAIL", example = "DENTED")
+        private String reasonCode;
+
+        @Schema(description = "URL ảnh hàng hỏng khi FAIL")
+        private String attachmentUrl;
+
+        @Schema(description = "Thời điểm quét trên thiết bị (khi offline), ISO-8601 kèm offset", example = "2026-10-17T09:15:30+07:00")
+        private OffsetDateTime capturedAt;
+    }
+}
@@ -3,6 +3,7 @@ package org.example.sep26management.application.dto.request;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import jakarta.validation.constraints.Positive;
+import jakarta.validation.constraints.Size;
 import lombok.*;
 
 import java.math.BigDecimal;
@@ -31,6 +32,11 @@ public class ScanEventRequest {
     @Schema(description = "Mã lý do lỗi (Bắt buộc nếu condition = FAIL). VD: HOLE, DENTED, TEAR", example = "DENTED")
     private String reasonCode;
 
+    @Schema(description = "ID do thiết bị sinh cho mỗi lần quét (VD: UUID). Gửi lại cùng ID khi retry → server trả lại kết quả lần đầu, không cộng trùng số lượng.",
+            example = "3f2c9a1e-7b4d-4c8e-9f10-2a6b5c7d8e90")
+    @Size(max = 64, message = "clientScanId must be at most 64 characters")
+    private String clientScanId;
+
     @Schema(description = "Mã phiên quét (Session ID). Lấy từ API tạo phiên: `POST /v1/receiving-sessions`.", example = "sess_123456789")
     private String sessionId;
 
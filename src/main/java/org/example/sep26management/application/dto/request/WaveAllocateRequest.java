@@ -0,0 +1,16 @@
+package org.example.sep26management.application.dto.request;
+
+import lombok.*;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+@Getter @Setter @NoArgsConstructor @AllArgsConstructor @Builder
+public class WaveAllocateRequest {
+
+    @Schema(description = "Danh sách Sales Order (APPROVED / WAITING_STOCK) cần phân bổ", example = "[10, 11, 12]")
+    private List<Long> salesOrderIds;
+
+    @Schema(description = "Danh sách Internal Transfer (APPROVED) cần phân bổ", example = "[3]")
+    private List<Long> transferIds;
+}
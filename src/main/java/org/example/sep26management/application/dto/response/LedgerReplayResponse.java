@@ -0,0 +1,73 @@
+package org.example.sep26management.application.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+import org.example.sep26management.application.enums.LedgerReplayMode;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Kết quả dựng lại inventory_snapshot.quantity từ inventory_transactions.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class LedgerReplayResponse {
+
+    @Schema(description = "DIFF hoặc SWAP", example = "DIFF")
+    private LedgerReplayMode mode;
+
+    @Schema(description = "txn_id lớn nhất đã replay (bao gồm phần fold-in cuối)", example = "1250431")
+    private Long highWaterTxnId;
+
+    @Schema(description = "Số transaction đã đọc", example = "1250431")
+    private long txnsReplayed;
+
+    @Schema(description = "Số partition (warehouse, SKU) chạy song song", example = "4")
+    private int partitions;
+
+    @Schema(description = "Số dòng (warehouse, sku, lot, location) trong shadow table", example = "18342")
+    private long shadowRows;
+
+    @Schema(description = "Số dòng lệch quantity giữa snapshot và ledger", example = "3")
+    private long mismatchedRows;
+
+    @Schema(description = "Dòng có trong ledger nhưng thiếu trong snapshot", example = "1")
+    private long missingInSnapshot;
+
+    @Schema(description = "Dòng snapshot có quantity nhưng ledger không có", example = "0")
+    private long missingInLedger;
+
+    @Schema(description = "true nếu kết quả đã được áp vào inventory_snapshot (mode SWAP)", example = "false")
+    private boolean applied;
+
+    @Schema(description = "Thời gian chạy (ms)", example = "48211")
+    private long elapsedMs;
+
+    @Schema(description = "Mẫu các dòng lệch, lệch lớn nhất trước")
+    private List<DiffLine> sample;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class DiffLine {
+        private Long warehouseId;
+        private Long skuId;
+        private Long lotId;
+        private Long locationId;
+
+        @Schema(description = "quantity hiện tại trong inventory_snapshot", example = "120.00")
+        private BigDecimal snapshotQty;
+
+        @Schema(description = "quantity dựng lại từ ledger", example = "100.00")
+        private BigDecimal ledgerQty;
+    }
+}
@@ -0,0 +1,53 @@
+package org.example.sep26management.application.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Tổng nhập / xuất theo (SKU, txn_type) trong 1 khoảng ngày.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class MovementSummaryResponse {
+
+    private Long warehouseId;
+    private LocalDate fromDate;
+    private LocalDate toDate;
+
+    @Schema(description = "Ngày cuối cùng đọc từ bảng rollup; các ngày sau đó đọc trực tiếp ledger", example = "2026-06-30")
+    private LocalDate rolledUpThrough;
+
+    private List<Line> lines;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    public static class Line {
+        private Long skuId;
+        private String skuCode;
+        private String skuName;
+
+        @Schema(description = "Loại giao dịch", example = "RECEIVING")
+        private String txnType;
+
+        @Schema(description = "Tổng qty dương", example = "1200.00")
+        private BigDecimal qtyIn;
+
+        @Schema(description = "Tổng qty âm (giá trị tuyệt đối)", example = "0.00")
+        private BigDecimal qtyOut;
+
+        @Schema(description = "Số giao dịch", example = "37")
+        private long txnCount;
+    }
+}
@@ -119,6 +119,13 @@ public class PutawaySuggestion {
     )
     private BigDecimal availableCapacity;
 
+    @Schema(
+            description = "Số lượng engine xếp vào Bin gợi ý. Nhỏ hơn số lượng dòng khi dòng phải chia "
+                    + "sang nhiều Bin (chỉ Bin đầu tiên được trả về). Lưu tại `putaway_task_items.suggested_qty`.",
+            example = "40.00"
+    )
+    private BigDecimal suggestedQty;
+
     // ─── Matching Reason ─────────────────────────────────────────────────────────
 
     @Schema(
@@ -0,0 +1,57 @@
+package org.example.sep26management.application.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.swagger.v3.oas.annotations.media.Schema;
+import lombok.*;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Tồn kho tại 1 thời điểm trong quá khứ (checkpoint EOD + replay ledger).
+ * API trả về dạng stream: các field header trước, sau đó mảng lines ghi dần từ cursor.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class StockAsOfResponse {
+
+    @Schema(description = "Thời điểm cần xem tồn", example = "2026-03-31T23:59:59")
+    private LocalDateTime asOf;
+
+    private Long warehouseId;
+    private Long zoneId;
+    private Long skuId;
+
+    @Schema(description = "Checkpoint được dùng làm gốc", example = "2026-03-30")
+    private LocalDate checkpointDate;
+
+    @Schema(description = "txn_id cuối cùng đã nằm trong checkpoint", example = "1250431")
+    private Long checkpointTxnId;
+
+    private List<Line> lines;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Line {
+        private Long skuId;
+        private String skuCode;
+        private Long lotId;
+        private String lotNumber;
+        private Long locationId;
+        private String locationCode;
+        private Long zoneId;
+
+        @Schema(description = "Số lượng tồn tại thời điểm asOf", example = "120.00")
+        private BigDecimal quantity;
+    }
+}
@@ -0,0 +1,64 @@
+package org.example.sep26management.application.dto.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.*;
+import org.example.sep26management.application.enums.OutboundType;
+import io.swagger.v3.oas.annotations.media.Schema;
+
+import java.util.List;
+
+/**
+ * Wave allocation response — kết quả phân bổ theo từng đơn, đúng thứ tự ưu tiên đã xử lý.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+@Builder
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class WaveAllocateResponse {
+
+    @Schema(description = "Tổng số đơn trong wave", example = "5")
+    private int totalOrders;
+
+    @Schema(description = "Số đơn phân bổ đủ hàng", example = "3")
+    private int allocatedOrders;
+
+    @Schema(description = "Số đơn phân bổ một phần", example = "1")
+    private int partiallyAllocatedOrders;
+
+    @Schema(description = "Số đơn không phân bổ (sai trạng thái / chưa đủ hàng / chuyển WAITING_STOCK)", example = "1")
+    private int skippedOrders;
+
+    @Schema(description = "Kết quả từng đơn theo thứ tự ưu tiên (ngày giao yêu cầu, rồi ngày tạo)")
+    private List<OrderResult> results;
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @Builder
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class OrderResult {
+        @Schema(description = "ID chứng từ", example = "10")
+        private Long documentId;
+
+        @Schema(description = "Mã chứng từ", example = "EXP-SAL-1234")
+        private String documentCode;
+
+        @Schema(description = "Loại đơn", example = "SALES_ORDER")
+        private OutboundType orderType;
+
+        @Schema(description = "ALLOCATED, PARTIALLY_ALLOCATED, WAITING_STOCK hoặc SKIPPED", example = "ALLOCATED")
+        private String status;
+
+        @Schema(description = "Lý do khi đơn không được phân bổ")
+        private String message;
+
+        @Schema(description = "Chi tiết BIN / lô đã giữ chỗ")
+        private List<AllocateStockResponse.AllocationLine> allocations;
+
+        @Schema(description = "SKU thiếu hàng")
+        private List<AllocateStockResponse.ShortageItem> shortages;
+    }
+}
@@ -16,6 +16,9 @@ public class ScanSessionData {
     private Long warehouseId;
     private Long createdBy;
 
+    /** Seq delta SSE mới nhất đã phản ánh trong dữ liệu này (null: chưa có scan nào). */
+    private Long seq;
+
     @Builder.Default
     private List<ScanLineItem> lines = new ArrayList<>();
 }
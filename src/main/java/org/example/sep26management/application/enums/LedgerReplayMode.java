@@ -0,0 +1,9 @@
+package org.example.sep26management.application.enums;
+
+/**
+ * Chế độ chạy ledger replay (LedgerReplayService).
+ */
+public enum LedgerReplayMode {
+    DIFF,   // chỉ so sánh shadow với inventory_snapshot, không ghi gì
+    SWAP    // áp kết quả replay vào inventory_snapshot trong 1 transaction
+}
@@ -20,8 +20,12 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 @RequiredArgsConstructor
@@ -32,17 +36,18 @@ public class AllocateStockService {
     private final SalesOrderItemJpaRepository soItemRepository;
     private final TransferJpaRepository transferRepository;
     private final TransferItemJpaRepository transferItemRepository;
-    private final InventoryAllocationRepository allocationRepository;
     private final InventorySnapshotJpaRepository snapshotRepository;
     private final ReservationJpaRepository reservationRepository;
     private final SkuJpaRepository skuRepository;
-    private final InventoryLotJpaRepository lotRepository;
     private final AuditLogService auditLogService;
     private final IncidentService incidentService;
     private final WarehouseJpaRepository warehouseRepository;
     // [V20] Inject trực tiếp để set soId khi tạo Incident
     private final IncidentJpaRepository incidentJpaRepository;
     private final IncidentItemJpaRepository incidentItemJpaRepository;
+    private final AtpIndexService atpIndexService;
+    private final FefoAllocationEngine fefoAllocationEngine;
+    private final ReservedQtyWriter reservedQtyWriter;
 
     @Transactional
     public ApiResponse<AllocateStockResponse> allocateStock(
@@ -76,12 +81,9 @@ public class AllocateStockService {
             // vẫn còn thiếu → tạo PARTIAL allocation mới → lại phải báo thiếu lại.
             if ("WAITING_STOCK".equals(so.getStatus())) {
                 List<String> stillShort = new java.util.ArrayList<>();
+                Map<Long, BigDecimal> availableBySku = getAvailableQtyBySku(so.getWarehouseId(), required);
                 for (SkuQtyPair pair : required) {
-                    java.math.BigDecimal total    = snapshotRepository.sumQuantityByWarehouseAndSku(so.getWarehouseId(), pair.skuId);
-                    java.math.BigDecimal reserved = snapshotRepository.sumReservedByWarehouseAndSku(so.getWarehouseId(), pair.skuId);
-                    if (total    == null) total    = java.math.BigDecimal.ZERO;
-                    if (reserved == null) reserved = java.math.BigDecimal.ZERO;
-                    java.math.BigDecimal available = total.subtract(reserved).max(java.math.BigDecimal.ZERO);
+                    java.math.BigDecimal available = availableBySku.get(pair.skuId);
                     if (available.compareTo(pair.qty) < 0) {
                         String skuCode = skuRepository.findById(pair.skuId)
                                 .map(s -> s.getSkuCode()).orElse("SKU#" + pair.skuId);
@@ -101,12 +103,9 @@ public class AllocateStockService {
             // thay vi de allocate tao shortage roi Keeper moi biet.
             if ("APPROVED".equals(so.getStatus())) {
                 java.util.List<String> zeroStock = new java.util.ArrayList<>();
+                Map<Long, BigDecimal> availableBySku = getAvailableQtyBySku(so.getWarehouseId(), required);
                 for (SkuQtyPair pair : required) {
-                    java.math.BigDecimal total    = snapshotRepository.sumQuantityByWarehouseAndSku(so.getWarehouseId(), pair.skuId);
-                    java.math.BigDecimal reserved = snapshotRepository.sumReservedByWarehouseAndSku(so.getWarehouseId(), pair.skuId);
-                    if (total    == null) total    = java.math.BigDecimal.ZERO;
-                    if (reserved == null) reserved = java.math.BigDecimal.ZERO;
-                    java.math.BigDecimal available = total.subtract(reserved).max(java.math.BigDecimal.ZERO);
+                    java.math.BigDecimal available = availableBySku.get(pair.skuId);
                     if (available.compareTo(java.math.BigDecimal.ZERO) == 0) {
                         String skuCode = skuRepository.findById(pair.skuId)
                                 .map(s -> s.getSkuCode()).orElse("SKU#" + pair.skuId);
@@ -148,59 +147,49 @@ public class AllocateStockService {
         String refTableClean = request.getOrderType() == OutboundType.SALES_ORDER ? "sales_orders" : "transfers";
         List<ReservationEntity> existingReservations = reservationRepository
                 .findByReferenceTableAndReferenceIdAndStatus(refTableClean, request.getDocumentId(), "OPEN");
+        List<ReservedQtyWriter.ReservedDelta> releases = new ArrayList<>();
         for (ReservationEntity existing : existingReservations) {
             if (existing.getLocationId() != null) {
-                snapshotRepository.incrementReservedByLocationAndSku(
-                        existing.getLocationId(), existing.getSkuId(), existing.getLotId(),
-                        existing.getQuantity().negate());
+                releases.add(new ReservedQtyWriter.ReservedDelta(
+                        existing.getWarehouseId(), existing.getLocationId(), existing.getSkuId(),
+                        existing.getLotId(), existing.getQuantity().negate()));
             } else {
                 snapshotRepository.incrementReservedByWarehouseAndSku(
                         existing.getWarehouseId(), existing.getSkuId(), existing.getQuantity().negate());
             }
-            existing.setStatus("CANCELLED");
-            reservationRepository.save(existing);
+            atpIndexService.touch(existing.getWarehouseId(), existing.getSkuId());
         }
+        reservedQtyWriter.apply(releases);
+        if (!existingReservations.isEmpty()) {
+            reservationRepository.cancelOpenByReference(refTableClean, request.getDocumentId());
+        }
+
+        // Set-based FEFO: 1 query cho kế hoạch của toàn bộ SKU, rồi chia cho từng dòng theo thứ tự
+        Map<Long, BigDecimal> requiredBySku = new LinkedHashMap<>();
+        required.forEach(pair -> requiredBySku.merge(pair.skuId, pair.qty, BigDecimal::add));
+        Map<Long, ArrayDeque<FefoAllocationEngine.PlanRow>> planBySku = new HashMap<>();
+        for (FefoAllocationEngine.PlanRow row : fefoAllocationEngine.plan(warehouseId, requiredBySku)) {
+            planBySku.computeIfAbsent(row.skuId(), k -> new ArrayDeque<>()).add(row);
+        }
+        Map<Long, SkuEntity> skus = new HashMap<>();
+        skuRepository.findAllById(requiredBySku.keySet()).forEach(sku -> skus.put(sku.getSkuId(), sku));
 
         List<AllocateStockResponse.AllocationLine> allocations = new ArrayList<>();
         List<AllocateStockResponse.ShortageItem> shortages = new ArrayList<>();
+        List<FefoAllocationEngine.PlanRow> reserved = new ArrayList<>();
 
         for (SkuQtyPair pair : required) {
             BigDecimal remaining = pair.qty;
-            String skuCode = skuRepository.findById(pair.skuId).map(s -> s.getSkuCode()).orElse("SKU#" + pair.skuId);
-            String skuName = skuRepository.findById(pair.skuId).map(s -> s.getSkuName()).orElse(null);
-
-            List<InventoryAllocationRepository.FEFOAllocationProjection> stocks =
-                    allocationRepository.findAvailableStockFEFO(warehouseId, pair.skuId);
-            if (stocks.isEmpty()) {
-                stocks = allocationRepository.findAvailableStockFEFONoLot(warehouseId, pair.skuId);
-            }
-
-            for (InventoryAllocationRepository.FEFOAllocationProjection stock : stocks) {
-                if (remaining.compareTo(BigDecimal.ZERO) <= 0) break;
-                BigDecimal canAllocate = stock.getAvailableQty().min(remaining);
-                if (canAllocate.compareTo(BigDecimal.ZERO) <= 0) continue;
-
-                snapshotRepository.incrementReservedByLocationAndSku(
-                        stock.getLocationId(), pair.skuId, stock.getLotId(), canAllocate);
-
-                reservationRepository.save(ReservationEntity.builder()
-                        .warehouseId(warehouseId).skuId(pair.skuId).lotId(stock.getLotId())
-                        .locationId(stock.getLocationId()).quantity(canAllocate)
-                        .referenceTable(request.getOrderType() == OutboundType.SALES_ORDER ? "sales_orders" : "transfers")
-                        .referenceId(request.getDocumentId()).status("OPEN").build());
-
-                allocations.add(AllocateStockResponse.AllocationLine.builder()
-                        .skuId(pair.skuId).skuCode(skuCode).skuName(skuName)
-                        .lotId(stock.getLotId()).lotNumber(
-                                stock.getLotId() != null
-                                        ? lotRepository.findById(stock.getLotId()).map(l -> l.getLotNumber()).orElse(null)
-                                        : null)
-                        .expiryDate(stock.getExpiryDate())
-                        .locationId(stock.getLocationId()).locationCode(stock.getLocationCode())
-                        .zoneCode(stock.getZoneCode())
-                        .allocatedQty(canAllocate).requestedQty(pair.qty).build());
-
-                remaining = remaining.subtract(canAllocate);
+            SkuEntity sku = skus.get(pair.skuId);
+            String skuCode = sku != null ? sku.getSkuCode() : "SKU#" + pair.skuId;
+            String skuName = sku != null ? sku.getSkuName() : null;
+
+            // Dòng kế hoạch dùng chung cho nhiều dòng cùng SKU — phần dư để lại cho dòng sau
+            ArrayDeque<FefoAllocationEngine.PlanRow> stocks = planBySku.getOrDefault(pair.skuId, new ArrayDeque<>());
+            for (FefoAllocationEngine.PlanRow stock : FefoAllocationEngine.take(stocks, pair.qty)) {
+                reserved.add(stock);
+                allocations.add(toAllocationLine(stock, skuCode, skuName, pair.qty));
+                remaining = remaining.subtract(stock.allocateQty());
             }
 
             if (remaining.compareTo(BigDecimal.ZERO) > 0) {
@@ -211,6 +200,15 @@ public class AllocateStockService {
             }
         }
 
+        // Ghi toàn bộ kế hoạch: 1 statement reserved_qty + 1 INSERT reservations
+        final Long allocWarehouseId = warehouseId;
+        reservedQtyWriter.apply(reserved.stream()
+                .map(r -> new ReservedQtyWriter.ReservedDelta(
+                        allocWarehouseId, r.locationId(), r.skuId(), r.lotId(), r.allocateQty()))
+                .toList());
+        fefoAllocationEngine.insertReservations(warehouseId, refTableClean, request.getDocumentId(), reserved);
+        requiredBySku.keySet().forEach(skuId -> atpIndexService.touch(allocWarehouseId, skuId));
+
         boolean fullyAllocated = shortages.isEmpty();
         String allocStatus = fullyAllocated ? "ALLOCATED" : "PARTIALLY_ALLOCATED";
 
@@ -277,8 +275,9 @@ public class AllocateStockService {
         List<CreateIncidentRequest.IncidentItemDto> incidentItems = new ArrayList<>();
         StringBuilder desc = new StringBuilder("Thiếu tồn kho khi phân bổ lệnh xuất " + documentCode + ": ");
 
+        Map<Long, BigDecimal> availableBySku = getAvailableQtyBySku(warehouseId, required);
         for (SkuQtyPair pair : required) {
-            BigDecimal available = getAvailableQty(warehouseId, pair.skuId);
+            BigDecimal available = availableBySku.get(pair.skuId);
             if (available.compareTo(pair.qty) < 0) {
                 BigDecimal shortage = pair.qty.subtract(available);
                 String skuCode = skuRepository.findById(pair.skuId).map(s -> s.getSkuCode()).orElse("SKU#" + pair.skuId);
@@ -359,12 +358,23 @@ public class AllocateStockService {
         return ApiResponse.success("Shortage incident reported successfully.", incidentService.toResponse(saved));
     }
 
-    private BigDecimal getAvailableQty(Long warehouseId, Long skuId) {
-        BigDecimal total = snapshotRepository.sumQuantityByWarehouseAndSku(warehouseId, skuId);
-        BigDecimal reserved = snapshotRepository.sumReservedByWarehouseAndSku(warehouseId, skuId);
-        if (total == null) total = BigDecimal.ZERO;
-        if (reserved == null) reserved = BigDecimal.ZERO;
-        return total.subtract(reserved).max(BigDecimal.ZERO);
+    static AllocateStockResponse.AllocationLine toAllocationLine(
+            FefoAllocationEngine.PlanRow stock, String skuCode, String skuName, BigDecimal requestedQty) {
+        return AllocateStockResponse.AllocationLine.builder()
+                .skuId(stock.skuId()).skuCode(skuCode).skuName(skuName)
+                .lotId(stock.lotId()).lotNumber(stock.lotNumber())
+                .expiryDate(stock.expiryDate())
+                .locationId(stock.locationId()).locationCode(stock.locationCode())
+                .zoneCode(stock.zoneCode())
+                .allocatedQty(stock.allocateQty()).requestedQty(requestedQty).build();
+    }
+
+    /** skuId → available cho toàn bộ dòng của đơn (1 lần đọc index / 1 query). */
+    private Map<Long, BigDecimal> getAvailableQtyBySku(Long warehouseId, List<SkuQtyPair> pairs) {
+        Map<Long, BigDecimal> result = new HashMap<>();
+        atpIndexService.getAvailability(warehouseId, pairs.stream().map(p -> p.skuId).toList())
+                .forEach((skuId, availability) -> result.put(skuId, availability.available()));
+        return result;
     }
 
     private record SkuQtyPair(Long skuId, BigDecimal qty) {}
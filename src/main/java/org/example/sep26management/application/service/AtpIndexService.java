@@ -0,0 +1,377 @@
+package org.example.sep26management.application.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.sep26management.infrastructure.persistence.repository.InventorySnapshotJpaRepository;
+import org.example.sep26management.infrastructure.persistence.repository.InventorySnapshotJpaRepository.Availability;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Available-to-promise (ATP) index — total / reserved / available qty per (warehouse, sku),
+ * kept in memory so availability checks don't hit inventory_snapshot twice per line.
+ *
+ * Chỉ tính BIN active, không staging, không defect — cùng điều kiện với
+ * InventorySnapshotJpaRepository.sumQuantityByWarehouseAndSku.
+ *
+ * Luồng cập nhật:
+ *   - Load toàn bộ khi app ready (chạy nền, không block startup).
+ *   - Mọi đường ghi inventory_snapshot gọi touch(warehouseId, skuId). Key bị đánh dấu
+ *     in-flight → đọc key đó đi thẳng DB (read-your-writes trong cùng transaction).
+ *     Sau khi transaction kết thúc, key được refresh lại từ DB và bỏ đánh dấu.
+ *   - Key / warehouse vừa đổi được broadcast qua Redis pub/sub (kênh {@link #TOUCHED_CHANNEL})
+ *     sau khi transaction kết thúc → node khác đánh dấu in-flight và refresh key đó từ DB.
+ *   - reconcile() chạy định kỳ, so với DB, log + sửa các key bị lệch (drift) — chốt chặn cho
+ *     ghi ngoài service / tin pub/sub bị lỡ.
+ */
+@Service
+@Slf4j
+public class AtpIndexService implements MessageListener {
+
+    public static final String TOUCHED_CHANNEL = "inventory:atp:touched";
+
+    private static final Object TX_RESOURCE_KEY = AtpIndexService.class.getName() + ".DIRTY";
+
+    /** Dòng đầu của tin broadcast — node gửi bỏ qua tin của chính mình (đã refresh local). */
+    private final String nodeId = UUID.randomUUID().toString();
+
+    private final InventorySnapshotJpaRepository snapshotRepository;
+    private final StringRedisTemplate redisTemplate;
+    private final Executor refreshExecutor;
+
+    private final ConcurrentMap<AtpKey, StockLevel> index = new ConcurrentHashMap<>();
+    private final ConcurrentMap<AtpKey, AtomicInteger> inFlightKeys = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, AtomicInteger> inFlightWarehouses = new ConcurrentHashMap<>();
+    private volatile boolean ready = false;
+
+    @Value("${inventory.atp.enabled:true}")
+    private boolean enabled;
+
+    public AtpIndexService(InventorySnapshotJpaRepository snapshotRepository,
+                           StringRedisTemplate redisTemplate,
+                           @Qualifier("taskExecutor") Executor refreshExecutor) {
+        this.snapshotRepository = snapshotRepository;
+        this.redisTemplate = redisTemplate;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    // ─── Read ───────────────────────────────────────────────────────────────────
+
+    /** available = max(0, total - reserved) */
+    public BigDecimal getAvailableQty(Long warehouseId, Long skuId) {
+        return getStockLevel(warehouseId, skuId).available();
+    }
+
+    public StockLevel getStockLevel(Long warehouseId, Long skuId) {
+        AtpKey key = new AtpKey(warehouseId, skuId);
+        if (!servesFromMemory(key)) {
+            return loadFromDb(key);
+        }
+        StockLevel level = index.get(key);
+        return level != null ? level : StockLevel.ZERO;
+    }
+
+    /**
+     * Availability cho cả danh sách SKU của 1 đơn: key có trong index trả từ memory,
+     * phần còn lại (index chưa ready / key in-flight) đọc DB bằng 1 query gộp.
+     */
+    public Map<Long, Availability> getAvailability(Long warehouseId, Collection<Long> skuIds) {
+        Map<Long, Availability> result = new HashMap<>();
+        List<Long> misses = new ArrayList<>();
+        for (Long skuId : new HashSet<>(skuIds)) {
+            AtpKey key = new AtpKey(warehouseId, skuId);
+            if (servesFromMemory(key)) {
+                result.put(skuId, index.getOrDefault(key, StockLevel.ZERO).toAvailability());
+            } else {
+                misses.add(skuId);
+            }
+        }
+        if (!misses.isEmpty()) {
+            result.putAll(snapshotRepository.findAvailabilityBySkuIds(warehouseId, misses));
+        }
+        return result;
+    }
+
+    private boolean servesFromMemory(AtpKey key) {
+        return enabled && ready
+                && !inFlightKeys.containsKey(key)
+                && !inFlightWarehouses.containsKey(key.warehouseId());
+    }
+
+    // ─── Write hooks ────────────────────────────────────────────────────────────
+
+    /** Gọi sau mỗi lệnh ghi inventory_snapshot của (warehouse, sku). */
+    public void touch(Long warehouseId, Long skuId) {
+        if (!enabled || warehouseId == null || skuId == null) return;
+        AtpKey key = new AtpKey(warehouseId, skuId);
+        DirtySet dirty = currentDirtySet();
+        if (dirty == null) {
+            increment(inFlightKeys, key);
+            refreshAndBroadcast(new DirtySet(Set.of(key), Set.of()));
+        } else if (dirty.keys().add(key)) {
+            increment(inFlightKeys, key);
+        }
+    }
+
+    /**
+     * Gọi khi trạng thái location thay đổi (active / staging / defect) — tồn kho không đổi
+     * nhưng tập BIN được tính vào ATP thay đổi → refresh cả warehouse.
+     */
+    public void touchWarehouse(Long warehouseId) {
+        if (!enabled || warehouseId == null) return;
+        DirtySet dirty = currentDirtySet();
+        if (dirty == null) {
+            increment(inFlightWarehouses, warehouseId);
+            refreshAndBroadcast(new DirtySet(Set.of(), Set.of(warehouseId)));
+        } else if (dirty.warehouses().add(warehouseId)) {
+            increment(inFlightWarehouses, warehouseId);
+        }
+    }
+
+    /**
+     * Dirty set gắn với transaction hiện tại; refresh sau khi transaction kết thúc
+     * (commit hoặc rollback — refresh từ DB luôn an toàn).
+     * Trả về null nếu không có transaction synchronization.
+     */
+    private DirtySet currentDirtySet() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return null;
+        DirtySet dirty = (DirtySet) TransactionSynchronizationManager.getResource(TX_RESOURCE_KEY);
+        if (dirty != null) return dirty;
+
+        DirtySet created = new DirtySet(new HashSet<>(), new HashSet<>());
+        TransactionSynchronizationManager.bindResource(TX_RESOURCE_KEY, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(TX_RESOURCE_KEY);
+                refreshAndBroadcast(created);
+            }
+        });
+        return created;
+    }
+
+    private void refreshAndBroadcast(DirtySet dirty) {
+        scheduleRefresh(dirty);
+        broadcast(dirty);
+    }
+
+    private void scheduleRefresh(DirtySet dirty) {
+        try {
+            refreshExecutor.execute(() -> refresh(dirty));
+        } catch (Exception e) {
+            log.warn("ATP refresh could not be scheduled ({}), refreshing inline", e.getMessage());
+            refresh(dirty);
+        }
+    }
+
+    private void refresh(DirtySet dirty) {
+        try {
+            for (Long warehouseId : dirty.warehouses()) {
+                long readAt = System.nanoTime();
+                Map<AtpKey, StockLevel> fresh = toLevels(
+                        snapshotRepository.sumQuantityAndReservedGroupedBySkuInWarehouse(warehouseId), readAt);
+                index.keySet().stream()
+                        .filter(key -> key.warehouseId().equals(warehouseId) && !fresh.containsKey(key))
+                        .forEach(key -> fresh.put(key, StockLevel.zero(readAt)));
+                fresh.forEach(this::putIfNewer);
+            }
+            Map<Long, List<Long>> skuIdsByWarehouse = new HashMap<>();
+            dirty.keys().forEach(key -> skuIdsByWarehouse
+                    .computeIfAbsent(key.warehouseId(), w -> new ArrayList<>()).add(key.skuId()));
+            skuIdsByWarehouse.forEach((warehouseId, skuIds) -> {
+                long readAt = System.nanoTime();
+                snapshotRepository.findAvailabilityBySkuIds(warehouseId, skuIds).forEach((skuId, availability) ->
+                        putIfNewer(new AtpKey(warehouseId, skuId),
+                                StockLevel.of(availability.total(), availability.reserved(), readAt)));
+            });
+        } catch (Exception e) {
+            // Không chắc index còn đúng → đọc DB cho tới khi reconcile load lại
+            log.warn("ATP refresh failed, falling back to DB until next reconcile: {}", e.getMessage());
+            ready = false;
+        } finally {
+            dirty.keys().forEach(key -> decrement(inFlightKeys, key));
+            dirty.warehouses().forEach(warehouseId -> decrement(inFlightWarehouses, warehouseId));
+        }
+    }
+
+    // ─── Pub/sub giữa các node ──────────────────────────────────────────────────
+
+    /** Tin: dòng 1 = nodeId, sau đó "K:{warehouseId}:{skuId}" hoặc "W:{warehouseId}" mỗi dòng. */
+    private void broadcast(DirtySet dirty) {
+        if (dirty.keys().isEmpty() && dirty.warehouses().isEmpty()) return;
+        StringBuilder body = new StringBuilder(nodeId);
+        dirty.keys().forEach(key -> body.append("\nK:").append(key.warehouseId()).append(':').append(key.skuId()));
+        dirty.warehouses().forEach(warehouseId -> body.append("\nW:").append(warehouseId));
+        try {
+            redisTemplate.convertAndSend(TOUCHED_CHANNEL, body.toString());
+        } catch (Exception e) {
+            log.warn("Could not broadcast ATP refresh (other nodes rely on reconcile): {}", e.getMessage());
+        }
+    }
+
+    /** Node khác vừa ghi inventory_snapshot → đánh dấu in-flight (đọc DB) tới khi refresh xong. */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        if (!enabled) return;
+        String[] lines = new String(message.getBody(), StandardCharsets.UTF_8).split("\n");
+        if (lines.length < 2 || nodeId.equals(lines[0])) return;
+        DirtySet dirty = new DirtySet(new HashSet<>(), new HashSet<>());
+        try {
+            for (int i = 1; i < lines.length; i++) {
+                String[] parts = lines[i].split(":");
+                if ("K".equals(parts[0]) && parts.length == 3) {
+                    dirty.keys().add(new AtpKey(Long.valueOf(parts[1]), Long.valueOf(parts[2])));
+                } else if ("W".equals(parts[0]) && parts.length == 2) {
+                    dirty.warehouses().add(Long.valueOf(parts[1]));
+                }
+            }
+        } catch (NumberFormatException e) {
+            log.warn("Ignoring malformed ATP refresh message: {}", e.getMessage());
+            return;
+        }
+        dirty.keys().forEach(key -> increment(inFlightKeys, key));
+        dirty.warehouses().forEach(warehouseId -> increment(inFlightWarehouses, warehouseId));
+        scheduleRefresh(dirty);
+    }
+
+    // ─── Load / reconcile ───────────────────────────────────────────────────────
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) return;
+        refreshExecutor.execute(this::reconcile);
+    }
+
+    /**
+     * So sánh index với DB. Key đang in-flight hoặc được refresh sau khi bắt đầu scan
+     * thì bỏ qua (giá trị trong index mới hơn kết quả scan).
+     */
+    @Scheduled(initialDelayString = "${inventory.atp.reconcile-interval-ms:300000}",
+            fixedDelayString = "${inventory.atp.reconcile-interval-ms:300000}")
+    public synchronized void reconcile() {
+        if (!enabled) return;
+        long startedAt = System.nanoTime();
+        Map<AtpKey, StockLevel> fresh;
+        try {
+            fresh = toLevels(snapshotRepository.sumQuantityAndReservedGroupedByWarehouseAndSku(), startedAt);
+        } catch (Exception e) {
+            log.warn("ATP reconcile skipped — cannot read inventory_snapshot: {}", e.getMessage());
+            return;
+        }
+
+        Set<AtpKey> keys = new HashSet<>(index.keySet());
+        keys.addAll(fresh.keySet());
+        AtomicInteger drifted = new AtomicInteger();
+        for (AtpKey key : keys) {
+            if (inFlightKeys.containsKey(key) || inFlightWarehouses.containsKey(key.warehouseId())) continue;
+            StockLevel dbLevel = fresh.getOrDefault(key, StockLevel.zero(startedAt));
+            index.compute(key, (k, current) -> {
+                if (current != null && current.readAt() - startedAt > 0) return current;
+                if (current == null || !current.sameQuantities(dbLevel)) {
+                    drifted.incrementAndGet();
+                    log.debug("ATP drift {}: index={} db={}", k, current, dbLevel);
+                    return dbLevel;
+                }
+                return current;
+            });
+        }
+
+        if (!ready) {
+            // Lần load đầu (hoặc load lại sau khi refresh lỗi) — không tính là drift
+            ready = true;
+            log.info("ATP index loaded: {} (warehouse, sku) keys", fresh.size());
+        } else if (drifted.get() > 0) {
+            log.warn("ATP reconcile repaired {} drifted keys (of {})", drifted.get(), keys.size());
+        } else {
+            log.debug("ATP reconcile OK: {} keys", keys.size());
+        }
+    }
+
+    private StockLevel loadFromDb(AtpKey key) {
+        long readAt = System.nanoTime();
+        BigDecimal total    = snapshotRepository.sumQuantityByWarehouseAndSku(key.warehouseId(), key.skuId());
+        BigDecimal reserved = snapshotRepository.sumReservedByWarehouseAndSku(key.warehouseId(), key.skuId());
+        return StockLevel.of(total, reserved, readAt);
+    }
+
+    /** Hai refresh song song cho cùng key: giữ kết quả của lần đọc DB bắt đầu sau. */
+    private void putIfNewer(AtpKey key, StockLevel level) {
+        index.merge(key, level, (current, candidate) ->
+                candidate.readAt() - current.readAt() >= 0 ? candidate : current);
+    }
+
+    private static Map<AtpKey, StockLevel> toLevels(List<Object[]> rows, long readAt) {
+        Map<AtpKey, StockLevel> levels = new HashMap<>();
+        for (Object[] row : rows) {
+            levels.put(new AtpKey((Long) row[0], (Long) row[1]),
+                    StockLevel.of((BigDecimal) row[2], (BigDecimal) row[3], readAt));
+        }
+        return levels;
+    }
+
+    private static <K> void increment(ConcurrentMap<K, AtomicInteger> counters, K key) {
+        counters.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    private static <K> void decrement(ConcurrentMap<K, AtomicInteger> counters, K key) {
+        counters.computeIfPresent(key, (k, count) -> count.decrementAndGet() <= 0 ? null : count);
+    }
+
+    // ─── Types ──────────────────────────────────────────────────────────────────
+
+    private record AtpKey(Long warehouseId, Long skuId) {}
+
+    private record DirtySet(Set<AtpKey> keys, Set<Long> warehouses) {}
+
+    /** readAt = System.nanoTime() lúc bắt đầu đọc DB — dùng để so thứ tự giữa refresh và reconcile. */
+    public record StockLevel(BigDecimal total, BigDecimal reserved, long readAt) {
+
+        static final StockLevel ZERO = new StockLevel(BigDecimal.ZERO, BigDecimal.ZERO, 0L);
+
+        static StockLevel of(BigDecimal total, BigDecimal reserved, long readAt) {
+            return new StockLevel(
+                    total != null ? total : BigDecimal.ZERO,
+                    reserved != null ? reserved : BigDecimal.ZERO,
+                    readAt);
+        }
+
+        static StockLevel zero(long readAt) {
+            return new StockLevel(BigDecimal.ZERO, BigDecimal.ZERO, readAt);
+        }
+
+        public BigDecimal available() {
+            return total.subtract(reserved).max(BigDecimal.ZERO);
+        }
+
+        Availability toAvailability() {
+            return new Availability(total, reserved);
+        }
+
+        boolean sameQuantities(StockLevel other) {
+            return total.compareTo(other.total) == 0 && reserved.compareTo(other.reserved) == 0;
+        }
+    }
+}
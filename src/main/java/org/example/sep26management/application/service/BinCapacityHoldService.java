@@ -0,0 +1,115 @@
+package org.example.sep26management.application.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sep26management.domain.putaway.suggestion.BinCapacityHolds;
+import org.example.sep26management.domain.putaway.suggestion.BinCapacityHolds.Held;
+import org.example.sep26management.domain.putaway.suggestion.BinCapacityHolds.Limit;
+import org.example.sep26management.infrastructure.persistence.redis.BinCapacityHoldRedisRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Soft hold capacity BIN trong Redis (BinCapacityHoldRedisRepository).
+ *
+ * Gợi ý của task giữ chỗ tại BIN (TTL putaway.hold.ttl-minutes); allocate chuyển phần hold
+ * thành putaway_allocations (DB), cancel / task xong thì bỏ hold. Hold chỉ là lớp mềm: Redis lỗi
+ * → coi như không có hold (kiểm tra capacity của allocate trên DB vẫn là chốt chặn cuối).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class BinCapacityHoldService implements BinCapacityHolds {
+
+    private final BinCapacityHoldRedisRepository holdRepository;
+
+    @Value("${putaway.hold.enabled:true}")
+    private boolean enabled;
+
+    @Value("${putaway.hold.ttl-minutes:30}")
+    private long ttlMinutes;
+
+    @Override
+    public Map<Long, Held> heldByOthers(Collection<Long> zoneIds, String holder) {
+        Map<Long, Held> held = new HashMap<>();
+        if (!enabled || zoneIds == null) return held;
+        try {
+            for (Long zoneId : zoneIds) {
+                if (zoneId != null) held.putAll(holdRepository.heldInZone(zoneId, holder));
+            }
+        } catch (Exception e) {
+            log.warn("Bin capacity holds unavailable, planning without holds: {}", e.getMessage());
+        }
+        return held;
+    }
+
+    /**
+     * Đặt hold của holder tại BIN nếu tổng hold ≤ limit ở mọi chiều (capacity còn trống chưa tính hold).
+     * false chỉ khi Redis xác nhận không đủ chỗ — tắt / lỗi trả true.
+     */
+    public boolean hold(Long zoneId, Long locationId, String holder, Held held, Limit limit) {
+        if (!enabled || zoneId == null || locationId == null || holder == null || held == null
+                || held.qty().signum() <= 0) {
+            return true;
+        }
+        try {
+            return holdRepository.hold(zoneId, locationId, holder, held, limit, Duration.ofMinutes(ttlMinutes));
+        } catch (Exception e) {
+            log.warn("Bin capacity hold skipped for location {}: {}", locationId, e.getMessage());
+            return true;
+        }
+    }
+
+    /** Giảm hold của holder tại BIN đi qty (null: bỏ hết) — gọi khi allocate (chuyển hold) / cancel. */
+    public void release(Long zoneId, Long locationId, String holder, BigDecimal qty) {
+        if (!enabled || zoneId == null || locationId == null || holder == null) return;
+        try {
+            holdRepository.release(zoneId, locationId, holder, qty);
+        } catch (Exception e) {
+            log.warn("Bin capacity hold release failed for location {} (expires by TTL): {}", locationId, e.getMessage());
+        }
+    }
+
+    /**
+     * Như release nhưng chạy sau khi transaction hiện tại commit: allocation (DB) phải thấy được
+     * trước khi hold tương ứng biến mất, rollback thì hold giữ nguyên.
+     */
+    public void releaseAfterCommit(Long zoneId, Long locationId, String holder, BigDecimal qty) {
+        afterCommit(() -> release(zoneId, locationId, holder, qty));
+    }
+
+    public void releaseAllAfterCommit(String holder) {
+        afterCommit(() -> releaseAll(holder));
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    /** Bỏ mọi hold của holder. */
+    public void releaseAll(String holder) {
+        if (!enabled || holder == null) return;
+        try {
+            holdRepository.releaseAll(holder);
+        } catch (Exception e) {
+            log.warn("Bin capacity holds of {} not released (expire by TTL): {}", holder, e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,496 @@
+package org.example.sep26management.application.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.sep26management.application.enums.LocationType;
+import org.example.sep26management.domain.putaway.suggestion.BinCapacityIndex;
+import org.example.sep26management.domain.putaway.suggestion.CandidateBin;
+import org.example.sep26management.infrastructure.persistence.entity.LocationEntity;
+import org.example.sep26management.infrastructure.persistence.entity.ZoneEntity;
+import org.example.sep26management.infrastructure.persistence.repository.LocationJpaRepository;
+import org.example.sep26management.infrastructure.persistence.repository.ZoneJpaRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Index in-memory các active BIN theo zone, sắp theo availableCapacity (skip list) — engine
+ * putaway lấy worst-fit / best-fit trong O(log n) mà không đọc inventory_snapshot mỗi dòng.
+ *
+ * available = maxWeightKg − SUM(quantity) − SUM(reserved_qty) − reserved delta chưa gộp
+ *             − putaway allocation RESERVED (cùng cách BinService tính occupancy).
+ * Kèm tải thật (SUM(qty × weight_g / volume_ml) của tồn + allocation RESERVED) và thứ tự
+ * aisle / rack của BIN trong zone cho các scoring rule đa tiêu chí.
+ *
+ * Luồng cập nhật giống AtpIndexService:
+ *   - Load toàn bộ khi app ready (chạy nền).
+ *   - Đường ghi snapshot / reserved / putaway allocation gọi touchLocations(); đổi cấu trúc
+ *     (tạo / khoá / mở BIN, zone) gọi touchZone(). Zone bị đánh dấu in-flight → engine đọc DB
+ *     cho zone đó; sau khi transaction kết thúc các BIN được refresh từ DB và bỏ đánh dấu.
+ *   - reconcile() định kỳ load lại toàn bộ, sửa BIN bị lệch (đường ghi không gọi touch, VD
+ *     reserved theo (warehouse, sku) không có location).
+ */
+@Service
+@Slf4j
+public class BinCapacityIndexService implements BinCapacityIndex {
+
+    private static final Object TX_RESOURCE_KEY = BinCapacityIndexService.class.getName() + ".DIRTY";
+
+    private final LocationJpaRepository locationRepo;
+    private final ZoneJpaRepository zoneRepo;
+    private final JdbcTemplate jdbcTemplate;
+    private final Executor refreshExecutor;
+
+    private final ConcurrentMap<Long, ZoneBins> zones = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Long> zoneByLocation = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, AtomicInteger> inFlightZones = new ConcurrentHashMap<>();
+    private volatile boolean ready = false;
+
+    @Value("${putaway.bin-index.enabled:true}")
+    private boolean enabled;
+
+    /**
+     * ? thứ tự: location_ids ×4.
+     */
+    private static final String OCCUPANCY_SQL = """
+            SELECT l.location_id,
+                   COALESCE(s.quantity, 0) AS occupied,
+                   COALESCE(s.reserved, 0) + COALESCE(p.qty, 0) + COALESCE(a.qty, 0) AS reserved,
+                   COALESCE(s.weight_kg, 0) + COALESCE(a.weight_kg, 0) AS occupied_weight_kg,
+                   COALESCE(s.volume_m3, 0) + COALESCE(a.volume_m3, 0) AS occupied_volume_m3,
+                   pos.aisle_rank, pos.rack_rank
+            FROM unnest(?::bigint[]) AS l(location_id)
+            LEFT JOIN (SELECT sn.location_id, SUM(sn.quantity) AS quantity, SUM(sn.reserved_qty) AS reserved,
+                              SUM(sn.quantity * COALESCE(sk.weight_g, 0)) / 1000 AS weight_kg,
+                              SUM(sn.quantity * COALESCE(sk.volume_ml, 0)) / 1000000 AS volume_m3
+                       FROM inventory_snapshot sn
+                       LEFT JOIN skus sk ON sk.sku_id = sn.sku_id
+                       WHERE sn.location_id = ANY(?::bigint[])
+                       GROUP BY sn.location_id) s ON s.location_id = l.location_id
+            LEFT JOIN (SELECT location_id, SUM(qty) AS qty
+                       FROM inventory_reserved_pending
+                       WHERE location_id = ANY(?::bigint[])
+                       GROUP BY location_id) p ON p.location_id = l.location_id
+            LEFT JOIN (SELECT pa.location_id, SUM(pa.allocated_qty) AS qty,
+                              SUM(pa.allocated_qty * COALESCE(sk.weight_g, 0)) / 1000 AS weight_kg,
+                              SUM(pa.allocated_qty * COALESCE(sk.volume_ml, 0)) / 1000000 AS volume_m3
+                       FROM putaway_allocations pa
+                       LEFT JOIN skus sk ON sk.sku_id = pa.sku_id
+                       WHERE pa.status = 'RESERVED'
+                         AND pa.location_id = ANY(?::bigint[])
+                       GROUP BY pa.location_id) a ON a.location_id = l.location_id
+            LEFT JOIN LATERAL (
+                SELECT CASE WHEN aisle.location_id IS NULL THEN NULL ELSE
+                           (SELECT COUNT(*) FROM locations a2
+                            WHERE a2.zone_id = aisle.zone_id
+                              AND a2.location_type = 'AISLE'
+                              AND a2.location_code < aisle.location_code) END AS aisle_rank,
+                       (SELECT COUNT(*) FROM locations r2
+                        WHERE r2.parent_location_id = rack.parent_location_id
+                          AND r2.location_type = 'RACK'
+                          AND r2.location_code < rack.location_code) AS rack_rank
+                FROM locations bin
+                JOIN locations rack ON rack.location_id = bin.parent_location_id
+                LEFT JOIN locations aisle ON aisle.location_id = rack.parent_location_id
+                WHERE bin.location_id = l.location_id
+            ) pos ON true
+            """;
+
+    public BinCapacityIndexService(LocationJpaRepository locationRepo,
+                                   ZoneJpaRepository zoneRepo,
+                                   JdbcTemplate jdbcTemplate,
+                                   @Qualifier("taskExecutor") Executor refreshExecutor) {
+        this.locationRepo = locationRepo;
+        this.zoneRepo = zoneRepo;
+        this.jdbcTemplate = jdbcTemplate;
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    // ─── Read ───────────────────────────────────────────────────────────────────
+
+    @Override
+    public boolean serves(Long zoneId) {
+        return enabled && ready && zoneId != null && !inFlightZones.containsKey(zoneId);
+    }
+
+    @Override
+    public Iterator<CandidateBin> byCapacityDesc(Long zoneId) {
+        ZoneBins bins = zones.get(zoneId);
+        if (bins == null) return Collections.emptyIterator();
+        Iterator<Entry> it = bins.byCapacity.descendingIterator();
+        return new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public CandidateBin next() {
+                return it.next().bin();
+            }
+        };
+    }
+
+    @Override
+    public Optional<CandidateBin> bestFit(Long zoneId, BigDecimal qty) {
+        ZoneBins bins = zones.get(zoneId);
+        if (bins == null) return Optional.empty();
+        return Optional.ofNullable(bins.byCapacity.ceiling(Entry.probe(qty))).map(Entry::bin);
+    }
+
+    @Override
+    public Map<Long, CandidateBin> findBins(Collection<Long> locationIds) {
+        if (locationIds == null || locationIds.isEmpty()) return Collections.emptyMap();
+        Map<Long, CandidateBin> found = new HashMap<>();
+        Set<Long> fromDb = new HashSet<>();
+        for (Long locationId : locationIds) {
+            Long zoneId = zoneByLocation.get(locationId);
+            ZoneBins bins = zoneId != null && serves(zoneId) ? zones.get(zoneId) : null;
+            Entry entry = bins != null ? bins.byLocation.get(locationId) : null;
+            if (entry != null) found.put(locationId, entry.bin());
+            else fromDb.add(locationId);
+        }
+        if (!fromDb.isEmpty()) {
+            List<LocationEntity> bins = locationRepo.findAllById(fromDb).stream()
+                    .filter(BinCapacityIndexService::isIndexedBin)
+                    .collect(Collectors.toList());
+            load(bins).forEach(bin -> found.put(bin.getLocation().getLocationId(), bin));
+        }
+        return found;
+    }
+
+    /** Capacity đọc thẳng từ DB (không qua index) — kiểm tra chốt chặn lúc allocate. */
+    public Map<Long, CandidateBin> loadBins(Collection<Long> locationIds) {
+        if (locationIds == null || locationIds.isEmpty()) return Collections.emptyMap();
+        Map<Long, CandidateBin> found = new HashMap<>();
+        load(locationRepo.findAllById(locationIds)).forEach(bin -> found.put(bin.getLocation().getLocationId(), bin));
+        return found;
+    }
+
+    @Override
+    public Map<Long, List<CandidateBin>> loadZones(Collection<Long> zoneIds) {
+        if (zoneIds == null || zoneIds.isEmpty()) return Collections.emptyMap();
+        Map<Long, List<CandidateBin>> byZone = new LinkedHashMap<>();
+        load(locationRepo.findActiveBinsByZoneIds(zoneIds)).forEach(bin ->
+                byZone.computeIfAbsent(bin.getLocation().getZoneId(), z -> new ArrayList<>()).add(bin));
+        return byZone;
+    }
+
+    // ─── Write hooks ────────────────────────────────────────────────────────────
+
+    /** Gọi sau khi ghi quantity / reserved_qty / putaway allocation tại các location. */
+    public void touchLocations(Collection<Long> locationIds) {
+        if (!enabled || locationIds == null || locationIds.isEmpty()) return;
+        DirtySet dirty = currentDirtySet();
+        DirtySet target = dirty != null ? dirty : DirtySet.create();
+        for (Long locationId : locationIds) {
+            // Location không có trong index (staging, BIN mới — BIN mới đi qua touchZone) → bỏ qua
+            Long zoneId = locationId != null ? zoneByLocation.get(locationId) : null;
+            if (zoneId == null || !target.locations().add(locationId)) continue;
+            if (target.markedZones().add(zoneId)) increment(inFlightZones, zoneId);
+        }
+        if (dirty == null) scheduleRefresh(target);
+    }
+
+    /** Gọi khi tập BIN của zone thay đổi (tạo / khoá / mở location, khoá / mở zone). */
+    public void touchZone(Long zoneId) {
+        if (!enabled || zoneId == null) return;
+        DirtySet dirty = currentDirtySet();
+        DirtySet target = dirty != null ? dirty : DirtySet.create();
+        target.zones().add(zoneId);
+        if (target.markedZones().add(zoneId)) increment(inFlightZones, zoneId);
+        if (dirty == null) scheduleRefresh(target);
+    }
+
+    /** Dirty set gắn với transaction hiện tại, refresh sau khi transaction kết thúc; null nếu không có tx. */
+    private DirtySet currentDirtySet() {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) return null;
+        DirtySet dirty = (DirtySet) TransactionSynchronizationManager.getResource(TX_RESOURCE_KEY);
+        if (dirty != null) return dirty;
+
+        DirtySet created = DirtySet.create();
+        TransactionSynchronizationManager.bindResource(TX_RESOURCE_KEY, created);
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                TransactionSynchronizationManager.unbindResourceIfPossible(TX_RESOURCE_KEY);
+                scheduleRefresh(created);
+            }
+        });
+        return created;
+    }
+
+    private void scheduleRefresh(DirtySet dirty) {
+        if (dirty.isEmpty()) return;
+        try {
+            refreshExecutor.execute(() -> refresh(dirty));
+        } catch (Exception e) {
+            log.warn("Bin capacity refresh could not be scheduled ({}), refreshing inline", e.getMessage());
+            refresh(dirty);
+        }
+    }
+
+    private void refresh(DirtySet dirty) {
+        try {
+            for (Long zoneId : dirty.zones()) {
+                long readAt = System.nanoTime();
+                replaceZone(zoneId, load(locationRepo.findActiveBinsByZone(zoneId)), readAt);
+            }
+            Set<Long> locationIds = new HashSet<>(dirty.locations());
+            locationIds.removeIf(id -> dirty.zones().contains(zoneByLocation.get(id)));
+            if (!locationIds.isEmpty()) {
+                long readAt = System.nanoTime();
+                List<LocationEntity> bins = locationRepo.findAllById(locationIds).stream()
+                        .filter(BinCapacityIndexService::isIndexedBin)
+                        .collect(Collectors.toList());
+                Map<Long, CandidateBin> fresh = load(bins).stream()
+                        .collect(Collectors.toMap(b -> b.getLocation().getLocationId(), b -> b));
+                for (Long locationId : locationIds) {
+                    CandidateBin bin = fresh.get(locationId);
+                    if (bin != null) put(bin, readAt);
+                    else remove(locationId, readAt);
+                }
+            }
+        } catch (Exception e) {
+            // Không chắc index còn đúng → đọc DB cho tới khi reconcile load lại
+            log.warn("Bin capacity refresh failed, falling back to DB until next reconcile: {}", e.getMessage());
+            ready = false;
+        } finally {
+            dirty.markedZones().forEach(zoneId -> decrement(inFlightZones, zoneId));
+        }
+    }
+
+    // ─── Load / reconcile ───────────────────────────────────────────────────────
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        if (!enabled) return;
+        refreshExecutor.execute(this::reconcile);
+    }
+
+    /**
+     * Load lại toàn bộ và so với index. Zone đang in-flight hoặc BIN được refresh sau khi
+     * bắt đầu scan thì bỏ qua (giá trị trong index mới hơn kết quả scan).
+     */
+    @Scheduled(initialDelayString = "${putaway.bin-index.reconcile-interval-ms:300000}",
+            fixedDelayString = "${putaway.bin-index.reconcile-interval-ms:300000}")
+    public synchronized void reconcile() {
+        if (!enabled) return;
+        long startedAt = System.nanoTime();
+        Map<Long, List<CandidateBin>> fresh = new HashMap<>();
+        try {
+            load(locationRepo.findAllActiveBins()).forEach(bin ->
+                    fresh.computeIfAbsent(bin.getLocation().getZoneId(), z -> new ArrayList<>()).add(bin));
+        } catch (Exception e) {
+            log.warn("Bin capacity reconcile skipped — cannot read locations / inventory_snapshot: {}", e.getMessage());
+            return;
+        }
+
+        Set<Long> zoneIds = new HashSet<>(zones.keySet());
+        zoneIds.addAll(fresh.keySet());
+        int drifted = 0;
+        int total = 0;
+        for (Long zoneId : zoneIds) {
+            if (inFlightZones.containsKey(zoneId)) continue;
+            List<CandidateBin> bins = fresh.getOrDefault(zoneId, List.of());
+            total += bins.size();
+            drifted += replaceZone(zoneId, bins, startedAt);
+        }
+
+        if (!ready) {
+            // Lần load đầu (hoặc load lại sau khi refresh lỗi) — không tính là drift
+            ready = true;
+            log.info("Bin capacity index loaded: {} BINs in {} zones", total, fresh.size());
+        } else if (drifted > 0) {
+            log.warn("Bin capacity reconcile repaired {} drifted BINs (of {})", drifted, total);
+        } else {
+            log.debug("Bin capacity reconcile OK: {} BINs", total);
+        }
+    }
+
+    /** Enrich occupancy cho danh sách BIN: 1 query cho cả danh sách. */
+    private List<CandidateBin> load(List<LocationEntity> bins) {
+        if (bins.isEmpty()) return List.of();
+        Long[] ids = bins.stream().map(LocationEntity::getLocationId).toArray(Long[]::new);
+        Map<Long, Occupancy> occupancy = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(OCCUPANCY_SQL);
+            for (int i = 1; i <= 4; i++) ps.setArray(i, con.createArrayOf("bigint", ids));
+            return ps;
+        }, rs -> {
+            Integer aisleRank = rs.getObject("aisle_rank", Integer.class);
+            Integer rackRank = rs.getObject("rack_rank", Integer.class);
+            occupancy.put(rs.getLong("location_id"), new Occupancy(
+                    rs.getBigDecimal("occupied"), rs.getBigDecimal("reserved"),
+                    rs.getBigDecimal("occupied_weight_kg"), rs.getBigDecimal("occupied_volume_m3"),
+                    aisleRank != null ? aisleRank : -1, rackRank != null ? rackRank : -1));
+        });
+
+        Set<Long> zoneIds = bins.stream().map(LocationEntity::getZoneId).filter(Objects::nonNull).collect(Collectors.toSet());
+        Map<Long, String> zoneCodes = zoneRepo.findAllById(zoneIds).stream()
+                .collect(Collectors.toMap(ZoneEntity::getZoneId, ZoneEntity::getZoneCode));
+
+        List<CandidateBin> result = new ArrayList<>(bins.size());
+        for (LocationEntity bin : bins) {
+            Occupancy occ = occupancy.getOrDefault(bin.getLocationId(), Occupancy.EMPTY);
+            result.add(CandidateBin.of(bin, zoneCodes.get(bin.getZoneId()), occ.occupied(), occ.reserved(),
+                    occ.weightKg(), occ.volumeM3(), occ.aisleRank(), occ.rackRank()));
+        }
+        return result;
+    }
+
+    /** Đặt nội dung zone = bins (nếu mới hơn); trả về số BIN thay đổi. */
+    private int replaceZone(Long zoneId, List<CandidateBin> bins, long readAt) {
+        int changed = 0;
+        Set<Long> present = new HashSet<>();
+        for (CandidateBin bin : bins) {
+            present.add(bin.getLocation().getLocationId());
+            if (put(bin, readAt)) changed++;
+        }
+        ZoneBins current = zones.get(zoneId);
+        if (current != null) {
+            for (Long locationId : new ArrayList<>(current.byLocation.keySet())) {
+                if (!present.contains(locationId) && remove(locationId, readAt)) changed++;
+            }
+        }
+        return changed;
+    }
+
+    /** Ghi BIN vào zone của nó (chuyển zone nếu cần); true nếu số liệu khác giá trị cũ. */
+    private boolean put(CandidateBin bin, long readAt) {
+        Long locationId = bin.getLocation().getLocationId();
+        Long zoneId = bin.getLocation().getZoneId();
+        Long previousZone = zoneByLocation.put(locationId, zoneId);
+        if (previousZone != null && !previousZone.equals(zoneId)) {
+            ZoneBins old = zones.get(previousZone);
+            if (old != null) old.remove(locationId, readAt);
+        }
+        return zones.computeIfAbsent(zoneId, z -> new ZoneBins())
+                .putIfNewer(new Entry(bin, readAt));
+    }
+
+    private boolean remove(Long locationId, long readAt) {
+        Long zoneId = zoneByLocation.get(locationId);
+        if (zoneId == null) return false;
+        ZoneBins bins = zones.get(zoneId);
+        boolean removed = bins != null && bins.remove(locationId, readAt);
+        if (removed) zoneByLocation.remove(locationId, zoneId);
+        return removed;
+    }
+
+    private static boolean isIndexedBin(LocationEntity location) {
+        return location.getZoneId() != null
+                && Boolean.TRUE.equals(location.getActive())
+                && location.getLocationType() == LocationType.BIN;
+    }
+
+    private static <K> void increment(ConcurrentMap<K, AtomicInteger> counters, K key) {
+        counters.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+    }
+
+    private static <K> void decrement(ConcurrentMap<K, AtomicInteger> counters, K key) {
+        counters.computeIfPresent(key, (k, count) -> count.decrementAndGet() <= 0 ? null : count);
+    }
+
+    // ─── Types ──────────────────────────────────────────────────────────────────
+
+    private record Occupancy(BigDecimal occupied, BigDecimal reserved, BigDecimal weightKg, BigDecimal volumeM3,
+                             int aisleRank, int rackRank) {
+
+        static final Occupancy EMPTY = new Occupancy(BigDecimal.ZERO, BigDecimal.ZERO,
+                BigDecimal.ZERO, BigDecimal.ZERO, -1, -1);
+    }
+
+    private record DirtySet(Set<Long> locations, Set<Long> zones, Set<Long> markedZones) {
+
+        static DirtySet create() {
+            return new DirtySet(new HashSet<>(), new HashSet<>(), new HashSet<>());
+        }
+
+        boolean isEmpty() {
+            return locations.isEmpty() && zones.isEmpty() && markedZones.isEmpty();
+        }
+    }
+
+    /** readAt = System.nanoTime() lúc bắt đầu đọc DB — dùng để so thứ tự giữa refresh và reconcile. */
+    private record Entry(BigDecimal available, String locationCode, Long locationId, CandidateBin bin, long readAt) {
+
+        /** available tăng dần; cùng available → locationCode giảm dần (duyệt ngược ra locationCode tăng dần). */
+        static final Comparator<Entry> ORDER = Comparator
+                .comparing(Entry::available)
+                .thenComparing(Entry::locationCode, Comparator.nullsFirst(Comparator.<String>reverseOrder()))
+                .thenComparing(Entry::locationId, Comparator.nullsFirst(Comparator.<Long>naturalOrder()));
+
+        Entry(CandidateBin bin, long readAt) {
+            this(bin.getAvailableCapacity(), bin.getLocation().getLocationCode(),
+                    bin.getLocation().getLocationId(), bin, readAt);
+        }
+
+        /** Khoá tìm kiếm: đứng trước mọi BIN có cùng available. */
+        static Entry probe(BigDecimal available) {
+            return new Entry(available, null, null, null, 0L);
+        }
+
+        boolean sameQuantities(Entry other) {
+            return bin.getMaxCapacity().compareTo(other.bin.getMaxCapacity()) == 0
+                    && bin.getOccupiedQty().compareTo(other.bin.getOccupiedQty()) == 0
+                    && bin.getReservedQty().compareTo(other.bin.getReservedQty()) == 0
+                    && bin.getOccupiedWeightKg().compareTo(other.bin.getOccupiedWeightKg()) == 0
+                    && bin.getOccupiedVolumeM3().compareTo(other.bin.getOccupiedVolumeM3()) == 0
+                    && bin.getAisleRank() == other.bin.getAisleRank()
+                    && bin.getRackRank() == other.bin.getRackRank();
+        }
+    }
+
+    /** BIN của 1 zone: skip list theo capacity + map theo location để thay entry cũ. */
+    private static final class ZoneBins {
+
+        final ConcurrentSkipListSet<Entry> byCapacity = new ConcurrentSkipListSet<>(Entry.ORDER);
+        final ConcurrentMap<Long, Entry> byLocation = new ConcurrentHashMap<>();
+
+        /** Hai lần đọc DB song song cho cùng BIN: giữ kết quả của lần bắt đầu sau. */
+        synchronized boolean putIfNewer(Entry entry) {
+            Entry current = byLocation.get(entry.locationId());
+            if (current != null && current.readAt() - entry.readAt() > 0) return false;
+            byLocation.put(entry.locationId(), entry);
+            if (current != null) byCapacity.remove(current);
+            byCapacity.add(entry);
+            return current == null || !current.sameQuantities(entry);
+        }
+
+        synchronized boolean remove(Long locationId, long readAt) {
+            Entry current = byLocation.get(locationId);
+            if (current == null || current.readAt() - readAt > 0) return false;
+            byLocation.remove(locationId);
+            byCapacity.remove(current);
+            return true;
+        }
+    }
+}
@@ -35,6 +35,7 @@ public class CategoryService {
     private final CategoryJpaRepository categoryRepository;
     private final AuditLogService auditLogService;
     private final ZoneJpaRepository zoneRepository;
+    private final PutawayZoneCacheService putawayZoneCache;
 
     /**
      * Create a new product category
@@ -78,6 +79,7 @@ public class CategoryService {
 
         // Save to database
         CategoryEntity savedCategory = categoryRepository.save(categoryEntity);
+        putawayZoneCache.invalidateCategories();
 
         log.info(LogMessages.CATEGORY_CREATED, savedCategory.getCategoryId());
 
@@ -151,6 +153,7 @@ public class CategoryService {
 
         // Save
         CategoryEntity updatedCategory = categoryRepository.save(category);
+        putawayZoneCache.invalidateCategories();
 
         log.info(LogMessages.CATEGORY_UPDATED, updatedCategory.getCategoryId());
 
@@ -273,6 +276,7 @@ public class CategoryService {
 
         category.setActive(false);
         CategoryEntity saved = categoryRepository.save(category);
+        putawayZoneCache.invalidateCategories();
 
         log.info(LogMessages.CATEGORY_DEACTIVATED, categoryId);
 
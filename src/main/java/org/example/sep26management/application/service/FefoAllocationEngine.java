@@ -0,0 +1,179 @@
+package org.example.sep26management.application.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Set-based FEFO allocation (BR-WXE-18/19) — thay cho vòng lặp SKU × BIN trong AllocateStockService.
+ *
+ *   1. plan(): 1 query tính kế hoạch FEFO cho toàn bộ SKU của chứng từ
+ *      (running sum theo expiry_date → cắt tại requested qty).
+ *   2. ReservedQtyWriter.apply(): 1 statement cho mọi thay đổi reserved_qty.
+ *   3. insertReservations(): 1 INSERT ... SELECT FROM unnest(...) cho mọi reservation.
+ *
+ * Điều kiện location: BIN active, không staging, không defect (luồng xuất kho không dùng
+ * Z-OUT / staging). SKU có lot → chỉ xét các dòng có lot
+ * (fallback NoLot chỉ áp dụng khi SKU không có dòng nào có lot).
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class FefoAllocationEngine {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private static final String PLAN_SQL = """
+            WITH req AS (
+                SELECT r.sku_id, SUM(r.qty) AS requested_qty
+                FROM unnest(?::bigint[], ?::numeric[]) AS r(sku_id, qty)
+                GROUP BY r.sku_id
+            ),
+            cand AS (
+                SELECT s.sku_id, s.location_id, s.lot_id, l.lot_id AS joined_lot_id,
+                       l.lot_number, l.expiry_date, loc.location_code, z.zone_code,
+                       (s.quantity - s.reserved_qty - COALESCE(p.qty, 0)) AS available_qty,
+                       r.requested_qty,
+                       bool_or(l.lot_id IS NOT NULL) OVER (PARTITION BY s.sku_id) AS sku_has_lot
+                FROM inventory_snapshot s
+                JOIN req r              ON r.sku_id        = s.sku_id
+                LEFT JOIN inventory_lots l ON l.lot_id     = s.lot_id
+                JOIN locations loc      ON loc.location_id = s.location_id
+                JOIN zones z            ON z.zone_id       = loc.zone_id
+                LEFT JOIN inventory_reserved_pending p
+                       ON p.location_id = s.location_id AND p.sku_id = s.sku_id AND p.lot_id_safe = s.lot_id_safe
+                WHERE s.warehouse_id = ?
+                  AND (s.quantity - s.reserved_qty - COALESCE(p.qty, 0)) > 0
+                  AND loc.active       = true
+                  AND loc.is_staging   = false
+                  AND loc.is_defect    = false
+                  AND loc.location_type = 'BIN'
+            ),
+            ranked AS (
+                SELECT c.*,
+                       SUM(c.available_qty) OVER (
+                           PARTITION BY c.sku_id
+                           ORDER BY c.expiry_date ASC NULLS LAST, c.location_code ASC, c.location_id, c.lot_id
+                           ROWS UNBOUNDED PRECEDING) AS running_qty
+                FROM cand c
+                WHERE NOT c.sku_has_lot OR c.joined_lot_id IS NOT NULL
+            )
+            SELECT sku_id, location_id, lot_id, lot_number, expiry_date, location_code, zone_code,
+                   LEAST(available_qty, requested_qty - (running_qty - available_qty)) AS allocate_qty
+            FROM ranked
+            WHERE running_qty - available_qty < requested_qty
+            ORDER BY sku_id, running_qty
+            """;
+
+    private static final String INSERT_RESERVATIONS_SQL = """
+            INSERT INTO reservations (warehouse_id, sku_id, lot_id, location_id, quantity,
+                                      reference_table, reference_id, status, created_at)
+            SELECT ?, r.sku_id, r.lot_id, r.location_id, r.qty, ?, ?, 'OPEN', NOW()
+            FROM unnest(?::bigint[], ?::bigint[], ?::bigint[], ?::numeric[]) AS r(sku_id, lot_id, location_id, qty)
+            """;
+
+    /**
+     * Kế hoạch FEFO cho toàn bộ SKU (requiredBySku: skuId → tổng qty cần).
+     * Kết quả theo thứ tự sku_id, rồi thứ tự FEFO trong từng SKU.
+     * Tổng allocateQty của 1 SKU &lt; requested → thiếu hàng.
+     */
+    public List<PlanRow> plan(Long warehouseId, Map<Long, BigDecimal> requiredBySku) {
+        if (requiredBySku.isEmpty()) return List.of();
+        Long[] skuIds = requiredBySku.keySet().toArray(Long[]::new);
+        BigDecimal[] qtys = requiredBySku.values().toArray(BigDecimal[]::new);
+
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(PLAN_SQL);
+            ps.setArray(1, con.createArrayOf("bigint", skuIds));
+            ps.setArray(2, con.createArrayOf("numeric", qtys));
+            ps.setLong(3, warehouseId);
+            return ps;
+        }, (rs, i) -> {
+            Date expiry = rs.getDate("expiry_date");
+            return new PlanRow(
+                    rs.getLong("sku_id"),
+                    rs.getLong("location_id"),
+                    rs.getObject("lot_id", Long.class),
+                    rs.getString("lot_number"),
+                    expiry != null ? expiry.toLocalDate() : null,
+                    rs.getString("location_code"),
+                    rs.getString("zone_code"),
+                    rs.getBigDecimal("allocate_qty"));
+        });
+    }
+
+    /** Insert toàn bộ reservation OPEN của 1 chứng từ trong 1 statement. */
+    public void insertReservations(Long warehouseId, String referenceTable, Long referenceId, List<PlanRow> rows) {
+        if (rows.isEmpty()) return;
+        List<Long> skuIds = rows.stream().map(PlanRow::skuId).toList();
+        List<Long> lotIds = rows.stream().map(PlanRow::lotId).toList();
+        List<Long> locationIds = rows.stream().map(PlanRow::locationId).toList();
+        Object[] qtys = rows.stream().map(PlanRow::allocateQty).toArray();
+
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(INSERT_RESERVATIONS_SQL);
+            ps.setLong(1, warehouseId);
+            ps.setString(2, referenceTable);
+            ps.setLong(3, referenceId);
+            ps.setArray(4, bigintArray(con, skuIds));
+            ps.setArray(5, bigintArray(con, lotIds));
+            ps.setArray(6, bigintArray(con, locationIds));
+            ps.setArray(7, con.createArrayOf("numeric", qtys));
+            return ps;
+        });
+    }
+
+    /**
+     * Lấy qty từ đầu pool FEFO (pool = các PlanRow còn lại của 1 SKU, đúng thứ tự FEFO).
+     * Dòng bị lấy một phần được trả lại đầu pool với phần dư. Trả về các phần đã lấy.
+     */
+    public static List<PlanRow> take(Deque<PlanRow> pool, BigDecimal qty) {
+        List<PlanRow> taken = new ArrayList<>();
+        BigDecimal remaining = qty;
+        while (remaining.compareTo(BigDecimal.ZERO) > 0 && !pool.isEmpty()) {
+            PlanRow row = pool.poll();
+            BigDecimal part = row.allocateQty().min(remaining);
+            if (part.compareTo(row.allocateQty()) < 0) {
+                pool.addFirst(row.withAllocateQty(row.allocateQty().subtract(part)));
+            }
+            taken.add(row.withAllocateQty(part));
+            remaining = remaining.subtract(part);
+        }
+        return taken;
+    }
+
+    /** Tổng qty còn lại trong pool. */
+    public static BigDecimal remaining(Collection<PlanRow> pool) {
+        return pool.stream().map(PlanRow::allocateQty).reduce(BigDecimal.ZERO, BigDecimal::add);
+    }
+
+    private static java.sql.Array bigintArray(Connection con, List<Long> values) throws SQLException {
+        return con.createArrayOf("bigint", values.toArray());
+    }
+
+    // ─── Types ──────────────────────────────────────────────────────────────────
+
+    /** 1 dòng kế hoạch: lấy allocateQty từ (location, lot) của SKU. */
+    public record PlanRow(Long skuId, Long locationId, Long lotId, String lotNumber,
+                          LocalDate expiryDate, String locationCode, String zoneCode,
+                          BigDecimal allocateQty) {
+
+        public PlanRow withAllocateQty(BigDecimal qty) {
+            return new PlanRow(skuId, locationId, lotId, lotNumber, expiryDate, locationCode, zoneCode, qty);
+        }
+    }
+
+}
@@ -29,14 +29,13 @@ public class GrnService {
     private final SkuJpaRepository skuRepo;
     private final PutawayTaskJpaRepository putawayTaskRepo;
     private final PutawayTaskItemJpaRepository putawayTaskItemRepo;
-    private final PutawaySuggestionService putawaySuggestionService;
+    private final PutawayPlanningService putawayPlanningService;
     private final JdbcTemplate jdbcTemplate;
     private final ReceivingItemJpaRepository receivingItemRepo;
     private final ReceivingOrderJpaRepository receivingOrderRepo;
     private final SupplierJpaRepository supplierRepo;
     private final InventoryLotJpaRepository inventoryLotRepo;
-    private final InventoryTransactionJpaRepository inventoryTransactionRepo;
-    private final InventorySnapshotJpaRepository inventorySnapshotRepo;
+    private final InventoryMovementWriter movementWriter;
 
     public ApiResponse<PageResponse<GrnResponse>> listGrns(Long warehouseId, String status, int page, int size) {
         Pageable pageable = PageRequest.of(page, size, Sort.by("createdAt").descending());
@@ -157,6 +156,8 @@ public class GrnService {
         log.info("Created PutawayTask {} for GRN {} (receivingId={})",
                 task.getPutawayTaskId(), grn.getGrnId(), grn.getReceivingId());
 
+        InventoryMovementWriter.Batch movements = movementWriter.batch();
+        List<PutawayTaskItemEntity> taskItems = new java.util.ArrayList<>();
         for (GrnItemEntity item : items) {
             // Match receiving item by SKU + lot + expiry, fallback to SKU only
             ReceivingItemEntity matchedReceivingItem = rcvItems.stream()
@@ -199,31 +200,17 @@ public class GrnService {
                 lotId = lot.getLotId();
             }
 
-            InventoryTransactionEntity tx = InventoryTransactionEntity.builder()
+            movements.add(InventoryMovementWriter.Movement.builder()
                     .warehouseId(grn.getWarehouseId())
                     .locationId(stagingLocationId)
                     .skuId(item.getSkuId())
+                    .lotId(lotId)
                     .txnType("RECEIVING")
                     .quantity(item.getQuantity())
                     .referenceTable("GRN")
                     .referenceId(id)
                     .createdBy(userId)
-                    .build();
-            inventoryTransactionRepo.save(tx);
-
-            inventorySnapshotRepo.upsertInventory(
-                    grn.getWarehouseId(),
-                    item.getSkuId(),
-                    lotId,
-                    stagingLocationId,
-                    item.getQuantity());
-
-            Long destLocationId = null;
-            Optional<org.example.sep26management.application.dto.response.PutawaySuggestion> sug =
-                    putawaySuggestionService.suggestLocation(grn.getWarehouseId(), item.getSkuId(), item.getQuantity());
-            if (sug.isPresent()) {
-                destLocationId = sug.get().getSuggestedLocationId();
-            }
+                    .build());
 
             PutawayTaskItemEntity taskItem = PutawayTaskItemEntity.builder()
                     .putawayTask(task)
@@ -232,10 +219,13 @@ public class GrnService {
                     .lotId(lotId)
                     .quantity(item.getQuantity())
                     .putawayQty(java.math.BigDecimal.ZERO)
-                    .suggestedLocationId(destLocationId)
                     .build();
-            putawayTaskItemRepo.save(taskItem);
+            taskItems.add(putawayTaskItemRepo.save(taskItem));
         }
+        movementWriter.flush(movements);
+
+        // Gợi ý BIN lập nền sau khi post commit (PutawayPlanningService) — không chặn việc duyệt
+        putawayPlanningService.schedule(grn.getWarehouseId(), task.getPutawayTaskId());
 
         grn.setStatus("POSTED");
         grnRepo.save(grn);
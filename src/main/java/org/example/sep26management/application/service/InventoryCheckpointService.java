@@ -0,0 +1,315 @@
+package org.example.sep26management.application.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sep26management.application.dto.response.StockAsOfResponse;
+import org.example.sep26management.infrastructure.exception.BusinessException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.Array;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Checkpoint cuối ngày của inventory_snapshot + truy vấn tồn kho "as of T".
+ *
+ * Checkpoint (mỗi ngày, inventory.checkpoint.cron): copy các dòng quantity &lt;&gt; 0 của
+ * inventory_snapshot cùng MAX(txn_id) trong 1 transaction REPEATABLE READ. txn_id cấp lúc INSERT
+ * nhưng commit có thể trễ → txn có id ≤ max_txn_id vẫn có thể chưa commit khi chụp. Cùng snapshot
+ * đó ghi lại các id trong overlap-txns id cuối (≤ max_txn_id) mà snapshot không thấy
+ * (pending_txn_ids: đang chạy hoặc đã rollback) → checkpoint = trạng thái sau mọi txn
+ * có txn_id ≤ max_txn_id, trừ pending_txn_ids.
+ *
+ * As-of T: checkpoint mới nhất có taken_at ≤ T, cộng các txn có txn_id &gt; max_txn_id hoặc thuộc
+ * pending_txn_ids, created_at ≤ T (kèm leg −qty tại bin nguồn của PUTAWAY như LedgerReplayService).
+ * Checkpoint chạy hằng ngày → chỉ replay khoảng 1 ngày ledger.
+ *
+ * Chỉ được tạo lại checkpoint mới nhất (hoặc ngày mới hơn): checkpoint ngày cũ hơn chụp từ tồn
+ * hiện tại sẽ ghi đè dữ liệu lịch sử của ngày đó.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InventoryCheckpointService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final ObjectMapper objectMapper;
+
+    @Value("${inventory.checkpoint.enabled:true}")
+    private boolean enabled;
+
+    /** txn có created_at trước taken_at tối đa chừng này (commit trễ) — chỉ dùng để cắt partition. */
+    @Value("${inventory.checkpoint.replay-lookback-minutes:60}")
+    private int replayLookbackMinutes;
+
+    @Value("${inventory.checkpoint.fetch-size:5000}")
+    private int fetchSize;
+
+    /** Số txn_id cuối (≤ max_txn_id) kiểm tra commit trễ — như inventory.drift.overlap-txns. */
+    @Value("${inventory.checkpoint.overlap-txns:1000}")
+    private int overlapTxns;
+
+    // ─── SQL ────────────────────────────────────────────────────────────────────
+
+    private static final String COPY_SNAPSHOT_SQL = """
+            INSERT INTO inventory_eod_checkpoint_lines
+                   (checkpoint_date, warehouse_id, sku_id, lot_id, lot_id_safe, location_id, quantity)
+            SELECT ?, s.warehouse_id, s.sku_id, s.lot_id, s.lot_id_safe, s.location_id, s.quantity
+            FROM inventory_snapshot s
+            WHERE s.quantity <> 0
+            """;
+
+    /** txn_id trong (from, max_txn_id] không thấy trong snapshot hiện tại (chưa commit / rollback). */
+    private static final String PENDING_TXN_IDS_SQL = """
+            SELECT COALESCE(array_agg(g.id ORDER BY g.id), '{}')
+            FROM generate_series(?::bigint, ?::bigint) AS g(id)
+            LEFT JOIN (SELECT txn_id FROM inventory_transactions WHERE txn_id BETWEEN ? AND ?) t
+                   ON t.txn_id = g.id
+            WHERE t.txn_id IS NULL
+            """;
+
+    private static final String FIND_CHECKPOINT_SQL = """
+            SELECT checkpoint_date, max_txn_id, pending_txn_ids, taken_at
+            FROM inventory_eod_checkpoints
+            WHERE taken_at <= ?
+            ORDER BY taken_at DESC
+            LIMIT 1
+            """;
+
+    /**
+     * ? thứ tự: checkpoint_date, warehouse, sku×2 | (warehouse, max_txn_id, pending_txn_ids, lookback, asOf, sku×2) ×2
+     * | zone×2.
+     */
+    private static final String AS_OF_SQL = """
+            WITH legs AS (
+                SELECT c.sku_id, c.lot_id, c.location_id, c.quantity
+                FROM inventory_eod_checkpoint_lines c
+                WHERE c.checkpoint_date = ?
+                  AND c.warehouse_id = ?
+                  AND (?::bigint IS NULL OR c.sku_id = ?)
+                UNION ALL
+                SELECT t.sku_id, t.lot_id, t.location_id, t.quantity
+                FROM inventory_transactions t
+                WHERE t.warehouse_id = ?
+                  AND (t.txn_id > ? OR t.txn_id = ANY(?))
+                  AND t.created_at >= ? AND t.created_at <= ?
+                  AND (?::bigint IS NULL OR t.sku_id = ?)
+                UNION ALL
+                SELECT t.sku_id, t.lot_id, pt.from_location_id, -t.quantity
+                FROM inventory_transactions t
+                JOIN putaway_tasks pt ON pt.putaway_task_id = t.reference_id
+                WHERE t.warehouse_id = ?
+                  AND (t.txn_id > ? OR t.txn_id = ANY(?))
+                  AND t.created_at >= ? AND t.created_at <= ?
+                  AND (?::bigint IS NULL OR t.sku_id = ?)
+                  AND t.txn_type = 'PUTAWAY'
+                  AND t.reference_table = 'putaway_tasks'
+                  AND pt.from_location_id IS NOT NULL
+                  AND pt.from_location_id <> t.location_id
+            ),
+            agg AS (
+                SELECT sku_id, lot_id, location_id, SUM(quantity) AS quantity
+                FROM legs
+                GROUP BY sku_id, lot_id, location_id
+            )
+            SELECT a.sku_id, sk.sku_code, a.lot_id, l.lot_number,
+                   a.location_id, loc.location_code, loc.zone_id, a.quantity
+            FROM agg a
+            JOIN skus sk       ON sk.sku_id       = a.sku_id
+            JOIN locations loc ON loc.location_id = a.location_id
+            LEFT JOIN inventory_lots l ON l.lot_id = a.lot_id
+            WHERE a.quantity <> 0
+              AND (?::bigint IS NULL OR loc.zone_id = ?)
+            ORDER BY loc.location_code, sk.sku_code, a.lot_id
+            """;
+
+    // ─── Checkpoint ─────────────────────────────────────────────────────────────
+
+    /** Chạy sau nửa đêm → checkpoint của ngày hôm qua. */
+    @Scheduled(cron = "${inventory.checkpoint.cron:0 5 0 * * *}")
+    public void createDailyCheckpoint() {
+        if (!enabled) return;
+        try {
+            createCheckpoint(LocalDate.now().minusDays(1));
+        } catch (Exception e) {
+            log.error("EOD inventory checkpoint failed: {}", e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Tạo (hoặc ghi đè) checkpoint cho checkpointDate từ inventory_snapshot hiện tại.
+     * checkpointDate không được ở tương lai, cũng không được cũ hơn checkpoint mới nhất.
+     */
+    public long createCheckpoint(LocalDate checkpointDate) {
+        if (checkpointDate == null || checkpointDate.isAfter(LocalDate.now())) {
+            throw new BusinessException("Checkpoint date must not be in the future");
+        }
+        TransactionTemplate tx = new TransactionTemplate(transactionManager);
+        tx.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        Long rows = tx.execute(status -> {
+            Date latest = jdbcTemplate.queryForObject(
+                    "SELECT MAX(checkpoint_date) FROM inventory_eod_checkpoints", Date.class);
+            if (latest != null && checkpointDate.isBefore(latest.toLocalDate())) {
+                throw new BusinessException("Cannot overwrite checkpoint " + checkpointDate
+                        + ": only the latest checkpoint (" + latest.toLocalDate() + ") or a newer date can be taken");
+            }
+            Long maxTxnId = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(MAX(txn_id), 0) FROM inventory_transactions", Long.class);
+            Long[] pendingTxnIds = pendingTxnIds(maxTxnId);
+            jdbcTemplate.update("DELETE FROM inventory_eod_checkpoint_lines WHERE checkpoint_date = ?",
+                    Date.valueOf(checkpointDate));
+            long copied = jdbcTemplate.update(COPY_SNAPSHOT_SQL, Date.valueOf(checkpointDate));
+            jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement("""
+                        INSERT INTO inventory_eod_checkpoints (checkpoint_date, max_txn_id, pending_txn_ids, taken_at, row_count)
+                        VALUES (?, ?, ?, NOW(), ?)
+                        ON CONFLICT (checkpoint_date) DO UPDATE
+                        SET max_txn_id = EXCLUDED.max_txn_id, pending_txn_ids = EXCLUDED.pending_txn_ids,
+                            taken_at = EXCLUDED.taken_at, row_count = EXCLUDED.row_count
+                        """);
+                ps.setDate(1, Date.valueOf(checkpointDate));
+                ps.setLong(2, maxTxnId);
+                ps.setArray(3, con.createArrayOf("bigint", pendingTxnIds));
+                ps.setLong(4, copied);
+                return ps;
+            });
+            if (pendingTxnIds.length > 0) {
+                log.info("Inventory checkpoint {}: {} txn id(s) ≤ {} not committed yet, replayed on as-of",
+                        checkpointDate, pendingTxnIds.length, maxTxnId);
+            }
+            return copied;
+        });
+        log.info("Inventory checkpoint {}: {} rows", checkpointDate, rows);
+        return rows != null ? rows : 0;
+    }
+
+    /** Gọi trong transaction chụp checkpoint — cùng MVCC snapshot với COPY_SNAPSHOT_SQL. */
+    private Long[] pendingTxnIds(long maxTxnId) {
+        if (maxTxnId <= 0) return new Long[0];
+        long from = Math.max(1, maxTxnId - overlapTxns + 1);
+        Array ids = jdbcTemplate.queryForObject(PENDING_TXN_IDS_SQL, Array.class, from, maxTxnId, from, maxTxnId);
+        try {
+            return ids != null ? (Long[]) ids.getArray() : new Long[0];
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read pending txn ids", e);
+        }
+    }
+
+    // ─── As-of query ────────────────────────────────────────────────────────────
+
+    /** Chọn checkpoint gốc cho asOf — gọi trước khi mở stream để lỗi trả về như response thường. */
+    public AsOfQuery prepareAsOf(Long warehouseId, LocalDateTime asOf, Long zoneId, Long skuId) {
+        if (warehouseId == null || asOf == null) {
+            throw new BusinessException("warehouseId and asOf are required");
+        }
+        if (asOf.isAfter(LocalDateTime.now())) {
+            throw new BusinessException("asOf must not be in the future");
+        }
+        List<AsOfQuery> found = jdbcTemplate.query(FIND_CHECKPOINT_SQL, (rs, i) -> new AsOfQuery(
+                warehouseId, asOf, zoneId, skuId,
+                rs.getDate("checkpoint_date").toLocalDate(),
+                rs.getLong("max_txn_id"),
+                rs.getArray("pending_txn_ids") != null
+                        ? List.of((Long[]) rs.getArray("pending_txn_ids").getArray())
+                        : List.of(),
+                rs.getTimestamp("taken_at").toLocalDateTime()), Timestamp.valueOf(asOf));
+        if (found.isEmpty()) {
+            throw new BusinessException("No inventory checkpoint exists at or before " + asOf);
+        }
+        return found.get(0);
+    }
+
+    /**
+     * Ghi JSON (StockAsOfResponse) ra output: header trước, lines ghi dần theo cursor
+     * (read-only transaction + fetch size) → không giữ toàn bộ kết quả trong bộ nhớ.
+     */
+    public void writeAsOf(AsOfQuery query, OutputStream out) throws IOException {
+        try (JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+            json.writeStartObject();
+            json.writeStringField("asOf", query.asOf().toString());
+            json.writeNumberField("warehouseId", query.warehouseId());
+            if (query.zoneId() != null) json.writeNumberField("zoneId", query.zoneId());
+            if (query.skuId() != null) json.writeNumberField("skuId", query.skuId());
+            json.writeStringField("checkpointDate", query.checkpointDate().toString());
+            json.writeNumberField("checkpointTxnId", query.checkpointTxnId());
+            json.writeArrayFieldStart("lines");
+
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            readOnly.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(AS_OF_SQL,
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(fetchSize);
+                Timestamp replayFrom = Timestamp.valueOf(query.takenAt().minusMinutes(replayLookbackMinutes));
+                Timestamp asOf = Timestamp.valueOf(query.asOf());
+                Array pendingTxnIds = con.createArrayOf("bigint", query.pendingTxnIds().toArray());
+                int i = 1;
+                ps.setDate(i++, Date.valueOf(query.checkpointDate()));
+                ps.setLong(i++, query.warehouseId());
+                i = setNullableLong(ps, i, query.skuId());
+                for (int leg = 0; leg < 2; leg++) {
+                    ps.setLong(i++, query.warehouseId());
+                    ps.setLong(i++, query.checkpointTxnId());
+                    ps.setArray(i++, pendingTxnIds);
+                    ps.setTimestamp(i++, replayFrom);
+                    ps.setTimestamp(i++, asOf);
+                    i = setNullableLong(ps, i, query.skuId());
+                }
+                setNullableLong(ps, i, query.zoneId());
+                return ps;
+            }, (RowCallbackHandler) rs -> {
+                try {
+                    objectMapper.writeValue(json, StockAsOfResponse.Line.builder()
+                            .skuId(rs.getLong("sku_id"))
+                            .skuCode(rs.getString("sku_code"))
+                            .lotId(rs.getObject("lot_id", Long.class))
+                            .lotNumber(rs.getString("lot_number"))
+                            .locationId(rs.getLong("location_id"))
+                            .locationCode(rs.getString("location_code"))
+                            .zoneId(rs.getObject("zone_id", Long.class))
+                            .quantity(rs.getBigDecimal("quantity"))
+                            .build());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+
+            json.writeEndArray();
+            json.writeEndObject();
+        }
+    }
+
+    /** Ghi 2 tham số cho điều kiện "(?::bigint IS NULL OR col = ?)". */
+    private static int setNullableLong(PreparedStatement ps, int index, Long value) throws SQLException {
+        for (int k = 0; k < 2; k++) {
+            if (value != null) ps.setLong(index + k, value);
+            else ps.setNull(index + k, Types.BIGINT);
+        }
+        return index + 2;
+    }
+
+    /** Tham số đã xác định của 1 truy vấn as-of. */
+    public record AsOfQuery(Long warehouseId, LocalDateTime asOf, Long zoneId, Long skuId,
+                            LocalDate checkpointDate, Long checkpointTxnId, List<Long> pendingTxnIds,
+                            LocalDateTime takenAt) {}
+}
@@ -0,0 +1,102 @@
+package org.example.sep26management.application.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sep26management.application.dto.response.MovementSummaryResponse;
+import org.example.sep26management.infrastructure.exception.BusinessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+
+/**
+ * Báo cáo nhập / xuất theo khoảng ngày.
+ * Ngày đã rollup đọc inventory_txn_daily_rollup; chỉ phần đuôi chưa rollup (thường là hôm nay)
+ * mới quét inventory_transactions → báo cáo quý không quét ledger thô.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InventoryMovementReportService {
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /** Ngày sớm nhất mà partition chưa rollup xong còn thiếu, trừ 1 → mọi ngày ≤ kết quả đều đã có trong rollup. */
+    private static final String ROLLED_UP_THROUGH_SQL = """
+            SELECT MIN(COALESCE(rolled_up_through, range_from - 1))
+            FROM inventory_txn_partitions
+            WHERE archived_at IS NULL
+              AND (rolled_up_through IS NULL OR rolled_up_through < range_to - 1)
+            """;
+
+    private static final String SUMMARY_SQL = """
+            WITH rolled AS (
+                SELECT r.sku_id, r.txn_type, SUM(r.qty_in) AS qty_in, SUM(r.qty_out) AS qty_out,
+                       SUM(r.txn_count) AS txn_count
+                FROM inventory_txn_daily_rollup r
+                WHERE r.warehouse_id = ?
+                  AND r.txn_date >= ? AND r.txn_date <= ?
+                  AND (?::bigint IS NULL OR r.sku_id = ?)
+                GROUP BY r.sku_id, r.txn_type
+            ),
+            raw AS (
+                SELECT t.sku_id, t.txn_type, SUM(GREATEST(t.quantity, 0)) AS qty_in,
+                       SUM(GREATEST(-t.quantity, 0)) AS qty_out, COUNT(*) AS txn_count
+                FROM inventory_transactions t
+                WHERE t.warehouse_id = ?
+                  AND t.created_at >= ? AND t.created_at < ?
+                  AND (?::bigint IS NULL OR t.sku_id = ?)
+                GROUP BY t.sku_id, t.txn_type
+            )
+            SELECT x.sku_id, sk.sku_code, sk.sku_name, x.txn_type,
+                   SUM(x.qty_in) AS qty_in, SUM(x.qty_out) AS qty_out, SUM(x.txn_count) AS txn_count
+            FROM (SELECT * FROM rolled UNION ALL SELECT * FROM raw) x
+            JOIN skus sk ON sk.sku_id = x.sku_id
+            GROUP BY x.sku_id, sk.sku_code, sk.sku_name, x.txn_type
+            ORDER BY sk.sku_code, x.txn_type
+            """;
+
+    public MovementSummaryResponse getMovementSummary(Long warehouseId, LocalDate fromDate, LocalDate toDate, Long skuId) {
+        if (fromDate == null || toDate == null || fromDate.isAfter(toDate)) {
+            throw new BusinessException("fromDate must be on or before toDate");
+        }
+
+        LocalDate rolledThrough = rolledUpThrough(fromDate);
+        LocalDate rollupEnd = rolledThrough.isBefore(toDate) ? rolledThrough : toDate;
+        LocalDate rawStart = rolledThrough.plusDays(1).isAfter(fromDate) ? rolledThrough.plusDays(1) : fromDate;
+
+        List<MovementSummaryResponse.Line> lines = jdbcTemplate.query(SUMMARY_SQL, (rs, i) ->
+                        MovementSummaryResponse.Line.builder()
+                                .skuId(rs.getLong("sku_id"))
+                                .skuCode(rs.getString("sku_code"))
+                                .skuName(rs.getString("sku_name"))
+                                .txnType(rs.getString("txn_type"))
+                                .qtyIn(rs.getBigDecimal("qty_in"))
+                                .qtyOut(rs.getBigDecimal("qty_out"))
+                                .txnCount(rs.getLong("txn_count"))
+                                .build(),
+                warehouseId, Date.valueOf(fromDate), Date.valueOf(rollupEnd), skuId, skuId,
+                warehouseId, rawStart.atStartOfDay(), toDate.plusDays(1).atStartOfDay(), skuId, skuId);
+
+        return MovementSummaryResponse.builder()
+                .warehouseId(warehouseId)
+                .fromDate(fromDate)
+                .toDate(toDate)
+                .rolledUpThrough(rolledThrough)
+                .lines(lines)
+                .build();
+    }
+
+    private LocalDate rolledUpThrough(LocalDate fromDate) {
+        try {
+            Date through = jdbcTemplate.queryForObject(ROLLED_UP_THROUGH_SQL, Date.class);
+            if (through != null) return through.toLocalDate();
+        } catch (Exception e) {
+            // Chưa chạy migration partition → đọc ledger thô toàn bộ
+            log.debug("Rollup registry unavailable: {}", e.getMessage());
+        }
+        return fromDate.minusDays(1);
+    }
+}
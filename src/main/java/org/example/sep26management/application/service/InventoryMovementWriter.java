@@ -0,0 +1,274 @@
+package org.example.sep26management.application.service;
+
+import lombok.Builder;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Đường ghi duy nhất cho biến động tồn kho: inventory_transactions + inventory_snapshot.quantity.
+ *
+ * Caller gom các Movement của 1 unit of work vào Batch rồi flush() 1 lần:
+ *   1. Movement giảm tồn không có lot → chia theo lot FEFO tại location (1 query lấy qty từng lot
+ *      cho cả batch), cùng quy tắc với InventorySnapshotJpaRepository.decrementQuantity: duyệt
+ *      movement theo thứ tự, mỗi lần trừ lot hết hạn sớm nhất còn qty &gt; 0, hết thì sang lot kế
+ *      → nhiều lần trừ cùng location / 1 lần trừ lớn hơn 1 lot không đẩy lot đầu xuống âm.
+ *      Mỗi phần thành 1 movement riêng với lot đã trừ → ledger khớp snapshot.
+ *   2. Gộp theo (warehouse, sku, lot, location), sắp theo key (thứ tự khoá ổn định giữa các tx):
+ *      net &gt; 0 → 1 INSERT ... ON CONFLICT nhiều dòng; net &lt; 0 → 1 UPDATE ... FROM unnest.
+ *   3. inventory_transactions: JDBC batch insert (reWriteBatchedInserts → multi-row INSERT).
+ *   4. touch ATP index cho mọi (warehouse, sku), bin capacity index cho mọi location.
+ *
+ * Entity InventoryTransactionEntity dùng IDENTITY nên Hibernate không batch được — không dùng
+ * repository.save() cho ledger nữa.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class InventoryMovementWriter {
+
+    private static final int TXN_BATCH_SIZE = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AtpIndexService atpIndexService;
+    private final BinCapacityIndexService binCapacityIndex;
+
+    /** Mọi lot tại (warehouse, sku, location), theo thứ tự FEFO, kèm qty hiện tại. */
+    private static final String FEFO_LOTS_SQL = """
+            SELECT s.warehouse_id, s.sku_id, s.location_id, s.lot_id, s.quantity
+            FROM unnest(?::bigint[], ?::bigint[], ?::bigint[]) AS r(warehouse_id, sku_id, location_id)
+            JOIN inventory_snapshot s
+              ON s.warehouse_id = r.warehouse_id
+             AND s.sku_id       = r.sku_id
+             AND s.location_id  = r.location_id
+            LEFT JOIN inventory_lots il ON il.lot_id = s.lot_id
+            ORDER BY s.warehouse_id, s.sku_id, s.location_id, il.expiry_date ASC NULLS LAST, s.lot_id NULLS LAST
+            """;
+
+    private static final String UPSERT_SNAPSHOT_SQL = """
+            INSERT INTO inventory_snapshot (warehouse_id, sku_id, lot_id, location_id, quantity, reserved_qty, last_updated)
+            SELECT m.warehouse_id, m.sku_id, m.lot_id, m.location_id, m.qty, 0, NOW()
+            FROM unnest(?::bigint[], ?::bigint[], ?::bigint[], ?::bigint[], ?::numeric[])
+                 AS m(warehouse_id, sku_id, lot_id, location_id, qty)
+            ON CONFLICT (warehouse_id, sku_id, lot_id_safe, location_id)
+            DO UPDATE SET quantity = inventory_snapshot.quantity + EXCLUDED.quantity, last_updated = NOW()
+            """;
+
+    private static final String DECREMENT_SNAPSHOT_SQL = """
+            UPDATE inventory_snapshot s
+            SET quantity = s.quantity + m.qty, last_updated = NOW()
+            FROM unnest(?::bigint[], ?::bigint[], ?::bigint[], ?::bigint[], ?::numeric[])
+                 AS m(warehouse_id, sku_id, lot_id, location_id, qty)
+            WHERE s.warehouse_id = m.warehouse_id
+              AND s.sku_id       = m.sku_id
+              AND s.lot_id_safe  = COALESCE(m.lot_id, 0)
+              AND s.location_id  = m.location_id
+            """;
+
+    private static final String INSERT_TXN_SQL = """
+            INSERT INTO inventory_transactions (warehouse_id, sku_id, lot_id, location_id, quantity, txn_type,
+                                                reference_table, reference_id, reason_code, created_by, created_at)
+            VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    public Batch batch() {
+        return new Batch();
+    }
+
+    /** Ghi toàn bộ movement của batch. Phải gọi trong transaction của caller. */
+    public void flush(Batch batch) {
+        if (batch.movements.isEmpty()) return;
+        List<Movement> movements = resolveFefoLots(batch.movements);
+
+        // ── Snapshot: gộp theo key, sắp xếp để thứ tự khoá dòng ổn định ──
+        Map<SnapshotKey, BigDecimal> net = new TreeMap<>(SnapshotKey.ORDER);
+        for (Movement m : movements) {
+            if (m.isApplySnapshot()) {
+                net.merge(SnapshotKey.of(m), m.getQuantity(), BigDecimal::add);
+            }
+        }
+        List<Map.Entry<SnapshotKey, BigDecimal>> increments = new ArrayList<>();
+        List<Map.Entry<SnapshotKey, BigDecimal>> decrements = new ArrayList<>();
+        net.entrySet().forEach(e -> {
+            int sign = e.getValue().signum();
+            if (sign > 0) increments.add(e);
+            else if (sign < 0) decrements.add(e);
+        });
+        writeSnapshot(UPSERT_SNAPSHOT_SQL, increments);
+        writeSnapshot(DECREMENT_SNAPSHOT_SQL, decrements);
+
+        // ── Ledger: JDBC batch ──
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> txnRows = movements.stream()
+                .filter(Movement::isRecordTransaction)
+                .map(m -> new Object[]{m.getWarehouseId(), m.getSkuId(), m.getLotId(), m.getLocationId(),
+                        m.getQuantity(), m.getTxnType(), m.getReferenceTable(), m.getReferenceId(),
+                        m.getReasonCode(), m.getCreatedBy(), now})
+                .toList();
+        for (int from = 0; from < txnRows.size(); from += TXN_BATCH_SIZE) {
+            jdbcTemplate.batchUpdate(INSERT_TXN_SQL, txnRows.subList(from, Math.min(txnRows.size(), from + TXN_BATCH_SIZE)));
+        }
+
+        Set<List<Long>> touched = new LinkedHashSet<>();
+        movements.forEach(m -> touched.add(List.of(m.getWarehouseId(), m.getSkuId())));
+        touched.forEach(k -> atpIndexService.touch(k.get(0), k.get(1)));
+        binCapacityIndex.touchLocations(net.keySet().stream().map(SnapshotKey::locationId).collect(Collectors.toSet()));
+
+        log.debug("Inventory movements flushed: {} movements, {} upserts, {} decrements, {} txns",
+                movements.size(), increments.size(), decrements.size(), txnRows.size());
+    }
+
+    private void writeSnapshot(String sql, List<Map.Entry<SnapshotKey, BigDecimal>> rows) {
+        if (rows.isEmpty()) return;
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setArray(1, con.createArrayOf("bigint", rows.stream().map(e -> e.getKey().warehouseId()).toArray()));
+            ps.setArray(2, con.createArrayOf("bigint", rows.stream().map(e -> e.getKey().skuId()).toArray()));
+            ps.setArray(3, con.createArrayOf("bigint", rows.stream().map(e -> e.getKey().lotId()).toArray()));
+            ps.setArray(4, con.createArrayOf("bigint", rows.stream().map(e -> e.getKey().locationId()).toArray()));
+            ps.setArray(5, con.createArrayOf("numeric", rows.stream().map(Map.Entry::getValue).toArray()));
+            return ps;
+        });
+    }
+
+    /**
+     * Movement giảm tồn, lotId null, có ghi snapshot → tách thành các phần theo lot FEFO tại
+     * location. Qty từng lot lấy từ snapshot rồi cập nhật theo các movement trước đó trong batch
+     * (cùng thứ tự như gọi decrementQuantity tuần tự). Phần vượt tổng tồn giữ lotId null.
+     */
+    private List<Movement> resolveFefoLots(List<Movement> movements) {
+        Set<List<Long>> keys = new LinkedHashSet<>();
+        movements.stream().filter(InventoryMovementWriter::needsFefoLot)
+                .forEach(m -> keys.add(locationKey(m)));
+        if (keys.isEmpty()) return movements;
+        List<List<Long>> keyList = new ArrayList<>(keys);
+
+        // key → lot (null = dòng không lot) → qty, giữ thứ tự FEFO
+        Map<List<Long>, Map<Long, BigDecimal>> stock = new HashMap<>();
+        keyList.forEach(k -> stock.put(k, new LinkedHashMap<>()));
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(FEFO_LOTS_SQL);
+            ps.setArray(1, con.createArrayOf("bigint", keyList.stream().map(k -> k.get(0)).toArray()));
+            ps.setArray(2, con.createArrayOf("bigint", keyList.stream().map(k -> k.get(1)).toArray()));
+            ps.setArray(3, con.createArrayOf("bigint", keyList.stream().map(k -> k.get(2)).toArray()));
+            return ps;
+        }, rs -> {
+            List<Long> key = List.of(rs.getLong("warehouse_id"), rs.getLong("sku_id"), rs.getLong("location_id"));
+            stock.get(key).put(rs.getObject("lot_id", Long.class), rs.getBigDecimal("quantity"));
+        });
+
+        List<Movement> resolved = new ArrayList<>(movements.size());
+        for (Movement m : movements) {
+            Map<Long, BigDecimal> lots = m.isApplySnapshot() ? stock.get(locationKey(m)) : null;
+            if (lots == null) {
+                resolved.add(m);
+            } else if (!needsFefoLot(m)) {
+                // movement có lot (hoặc nhập không lot) trước đó trong batch → qty lot đó đổi theo
+                lots.computeIfPresent(m.getLotId(), (lot, qty) -> qty.add(m.getQuantity()));
+                resolved.add(m);
+            } else {
+                splitByFefo(m, lots, resolved);
+            }
+        }
+        return resolved;
+    }
+
+    private static void splitByFefo(Movement m, Map<Long, BigDecimal> lots, List<Movement> out) {
+        BigDecimal remaining = m.getQuantity().negate();
+        for (Map.Entry<Long, BigDecimal> lot : lots.entrySet()) {
+            if (remaining.signum() <= 0) break;
+            if (lot.getValue().signum() <= 0) continue;
+            BigDecimal take = remaining.min(lot.getValue());
+            out.add(m.toBuilder().lotId(lot.getKey()).quantity(take.negate()).build());
+            lot.setValue(lot.getValue().subtract(take));
+            remaining = remaining.subtract(take);
+        }
+        if (remaining.signum() > 0) {
+            log.warn("Decrement exceeds stock at warehouse={} sku={} location={}: {} left without lot",
+                    m.getWarehouseId(), m.getSkuId(), m.getLocationId(), remaining);
+            out.add(m.toBuilder().lotId(null).quantity(remaining.negate()).build());
+        }
+    }
+
+    private static List<Long> locationKey(Movement m) {
+        return List.of(m.getWarehouseId(), m.getSkuId(), m.getLocationId());
+    }
+
+    private static boolean needsFefoLot(Movement m) {
+        return m.isApplySnapshot() && m.getLotId() == null && m.getQuantity().signum() < 0;
+    }
+
+    // ─── Types ──────────────────────────────────────────────────────────────────
+
+    /** Tập movement của 1 unit of work. */
+    public static final class Batch {
+        private final List<Movement> movements = new ArrayList<>();
+
+        public Batch add(Movement movement) {
+            movements.add(movement);
+            return this;
+        }
+
+        public boolean isEmpty() {
+            return movements.isEmpty();
+        }
+
+        public int size() {
+            return movements.size();
+        }
+    }
+
+    /**
+     * 1 biến động tồn tại (warehouse, sku, lot, location). quantity có dấu (+ nhập, − xuất).
+     * recordTransaction=false: chỉ cập nhật snapshot (VD: trừ staging khi putaway — ledger
+     * chỉ ghi PUTAWAY tại bin đích). applySnapshot=false: chỉ ghi ledger.
+     */
+    @Value
+    @Builder(toBuilder = true)
+    public static class Movement {
+        Long warehouseId;
+        Long skuId;
+        Long lotId;
+        Long locationId;
+        BigDecimal quantity;
+        String txnType;
+        String referenceTable;
+        Long referenceId;
+        String reasonCode;
+        Long createdBy;
+        @Builder.Default
+        boolean recordTransaction = true;
+        @Builder.Default
+        boolean applySnapshot = true;
+    }
+
+    private record SnapshotKey(Long warehouseId, Long skuId, Long lotId, Long locationId) {
+
+        static final Comparator<SnapshotKey> ORDER = Comparator
+                .comparing(SnapshotKey::warehouseId)
+                .thenComparing(SnapshotKey::skuId)
+                .thenComparing(k -> k.lotId() != null ? k.lotId() : 0L)
+                .thenComparing(SnapshotKey::locationId);
+
+        static SnapshotKey of(Movement m) {
+            return new SnapshotKey(m.getWarehouseId(), m.getSkuId(), m.getLotId(), m.getLocationId());
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package org.example.sep26management.application.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Quản lý partition theo tháng của inventory_transactions (PARTITION BY RANGE created_at).
+ *
+ * Chạy mỗi ngày (inventory.ledger.maintenance-cron) + 1 lần khi app ready:
+ *   1. Tạo trước partition cho tháng hiện tại + months-ahead tháng tới (inventory_transactions_pYYYYMM).
+ *   2. Rollup các ngày đã đóng (&lt; hôm nay) vào inventory_txn_daily_rollup theo
+ *      (warehouse, ngày, SKU, txn_type). Partition đóng khi đã rollup tới ngày cuối của nó.
+ *   3. Archive partition đã đóng và cũ hơn archive-after-months tháng:
+ *      export .csv.gz ra archive-dir → cộng số dư vào inventory_txn_archived_balance →
+ *      DETACH + DROP partition. Replay / drift reconciler cộng số dư này thay cho txn đã archive.
+ *
+ * Registry: inventory_txn_partitions. Partition legacy (dữ liệu trước khi partition) không archive.
+ */
+@Service
+@Slf4j
+public class InventoryTxnPartitionService {
+
+    static final String PARENT_TABLE = "inventory_transactions";
+    static final String LEGACY_PARTITION = "inventory_transactions_legacy";
+    static final String DEFAULT_PARTITION = "inventory_transactions_default";
+    private static final DateTimeFormatter SUFFIX = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final String CSV_HEADER = "txn_id,warehouse_id,sku_id,lot_id,location_id,quantity,txn_type,"
+            + "reference_table,reference_id,reason_code,created_by,created_at";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final Executor maintenanceExecutor;
+
+    @Value("${inventory.ledger.partitioning.enabled:true}")
+    private boolean enabled;
+
+    @Value("${inventory.ledger.partitioning.months-ahead:3}")
+    private int monthsAhead;
+
+    @Value("${inventory.ledger.partitioning.archive-after-months:12}")
+    private int archiveAfterMonths;
+
+    @Value("${inventory.ledger.partitioning.archive-dir:./archive/inventory-transactions}")
+    private String archiveDir;
+
+    @Value("${inventory.ledger.partitioning.export-fetch-size:10000}")
+    private int exportFetchSize;
+
+    public InventoryTxnPartitionService(JdbcTemplate jdbcTemplate,
+                                        PlatformTransactionManager transactionManager,
+                                        @Qualifier("taskExecutor") Executor maintenanceExecutor) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionManager = transactionManager;
+        this.maintenanceExecutor = maintenanceExecutor;
+    }
+
+    // ─── SQL ────────────────────────────────────────────────────────────────────
+
+    private static final String LOAD_PARTITIONS_SQL = """
+            SELECT partition_name, range_from, range_to, rolled_up_through
+            FROM inventory_txn_partitions
+            WHERE archived_at IS NULL
+            ORDER BY range_to
+            """;
+
+    /** %s = partition; ? = [from, to) created_at. Ghi đè ngày đã rollup (chạy lại an toàn). */
+    private static final String ROLLUP_SQL = """
+            INSERT INTO inventory_txn_daily_rollup AS r
+                   (warehouse_id, txn_date, sku_id, txn_type, qty_in, qty_out, txn_count)
+            SELECT t.warehouse_id, t.created_at::date, t.sku_id, t.txn_type,
+                   SUM(GREATEST(t.quantity, 0)), SUM(GREATEST(-t.quantity, 0)), COUNT(*)
+            FROM %s t
+            WHERE t.created_at >= ? AND t.created_at < ?
+            GROUP BY t.warehouse_id, t.created_at::date, t.sku_id, t.txn_type
+            ON CONFLICT (warehouse_id, txn_date, sku_id, txn_type) DO UPDATE
+            SET qty_in = EXCLUDED.qty_in, qty_out = EXCLUDED.qty_out, txn_count = EXCLUDED.txn_count
+            """;
+
+    /** Số dư của partition sắp archive — cùng quy tắc leg PUTAWAY với LedgerReplayService. */
+    private static final String FOLD_BALANCE_SQL = """
+            WITH legs AS (
+                SELECT t.warehouse_id, t.sku_id, t.lot_id, t.location_id, t.quantity
+                FROM %1$s t
+                UNION ALL
+                SELECT t.warehouse_id, t.sku_id, t.lot_id, pt.from_location_id, -t.quantity
+                FROM %1$s t
+                JOIN putaway_tasks pt ON pt.putaway_task_id = t.reference_id
+                WHERE t.txn_type = 'PUTAWAY'
+                  AND t.reference_table = 'putaway_tasks'
+                  AND pt.from_location_id IS NOT NULL
+                  AND pt.from_location_id <> t.location_id
+            )
+            INSERT INTO inventory_txn_archived_balance AS b
+                   (warehouse_id, sku_id, lot_id, lot_id_safe, location_id, quantity)
+            SELECT warehouse_id, sku_id, lot_id, COALESCE(lot_id, 0), location_id, SUM(quantity)
+            FROM legs
+            GROUP BY warehouse_id, sku_id, lot_id, location_id
+            ON CONFLICT (warehouse_id, sku_id, lot_id_safe, location_id)
+            DO UPDATE SET quantity = b.quantity + EXCLUDED.quantity
+            """;
+
+    // ─── Job ────────────────────────────────────────────────────────────────────
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onReady() {
+        if (!enabled) return;
+        maintenanceExecutor.execute(this::runMaintenance);
+    }
+
+    @Scheduled(cron = "${inventory.ledger.partitioning.maintenance-cron:0 15 1 * * *}")
+    public synchronized void runMaintenance() {
+        if (!enabled) return;
+        try {
+            if (!isPartitioned()) {
+                log.warn("inventory_transactions is not partitioned — run the partitioning migration first");
+                return;
+            }
+        } catch (Exception e) {
+            log.warn("Ledger partition maintenance skipped: {}", e.getMessage());
+            return;
+        }
+        runStep("create future partitions", this::ensureFuturePartitions);
+        runStep("daily rollup", this::rollupClosedDays);
+        runStep("archive old partitions", this::archiveOldPartitions);
+    }
+
+    private void runStep(String name, Runnable step) {
+        try {
+            step.run();
+        } catch (Exception e) {
+            log.error("Ledger partition maintenance — {} failed: {}", name, e.getMessage(), e);
+        }
+    }
+
+    // ─── 1. Future partitions ───────────────────────────────────────────────────
+
+    void ensureFuturePartitions() {
+        List<PartitionInfo> partitions = loadPartitions();
+        YearMonth current = YearMonth.now();
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            LocalDate from = month.atDay(1);
+            LocalDate to = month.plusMonths(1).atDay(1);
+            if (partitions.stream().anyMatch(p -> p.overlaps(from, to))) continue;
+
+            String name = PARENT_TABLE + "_p" + month.format(SUFFIX);
+            new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name + " PARTITION OF " + PARENT_TABLE
+                        + " FOR VALUES FROM ('" + from + "') TO ('" + to + "')");
+                jdbcTemplate.update("""
+                        INSERT INTO inventory_txn_partitions (partition_name, range_from, range_to)
+                        VALUES (?, ?, ?) ON CONFLICT (partition_name) DO NOTHING
+                        """, name, Date.valueOf(from), Date.valueOf(to));
+            });
+            log.info("Created ledger partition {} [{} → {})", name, from, to);
+        }
+
+        Long strays = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + DEFAULT_PARTITION, Long.class);
+        if (strays != null && strays > 0) {
+            log.warn("{} inventory transactions landed in {} — no monthly partition covered them",
+                    strays, DEFAULT_PARTITION);
+        }
+    }
+
+    // ─── 2. Daily rollup ────────────────────────────────────────────────────────
+
+    void rollupClosedDays() {
+        LocalDate yesterday = LocalDate.now().minusDays(1);
+        for (PartitionInfo p : loadPartitions()) {
+            LocalDate lastDay = p.rangeTo().minusDays(1);
+            if (p.rolledUpThrough() != null && !p.rolledUpThrough().isBefore(lastDay)) continue;
+
+            LocalDate end = lastDay.isBefore(yesterday) ? lastDay : yesterday;
+            LocalDate start = p.rolledUpThrough() != null ? p.rolledUpThrough().plusDays(1) : p.rangeFrom();
+            if (start == null) {
+                // partition rỗng (legacy không có dữ liệu) → không có gì để rollup
+                markRolledUp(p.name(), end);
+                continue;
+            }
+
+            // Mỗi transaction tối đa 1 tháng dữ liệu (legacy có thể dài nhiều năm)
+            while (!start.isAfter(end)) {
+                LocalDate chunkEnd = start.plusMonths(1).minusDays(1);
+                if (chunkEnd.isAfter(end)) chunkEnd = end;
+                LocalDate from = start, through = chunkEnd;
+                new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+                    int rows = jdbcTemplate.update(ROLLUP_SQL.formatted(p.name()),
+                            from.atStartOfDay(), through.plusDays(1).atStartOfDay());
+                    markRolledUp(p.name(), through);
+                    log.debug("Rolled up {} [{} → {}]: {} rows", p.name(), from, through, rows);
+                });
+                start = chunkEnd.plusDays(1);
+            }
+        }
+    }
+
+    private void markRolledUp(String partitionName, LocalDate through) {
+        jdbcTemplate.update("UPDATE inventory_txn_partitions SET rolled_up_through = ? WHERE partition_name = ?",
+                Date.valueOf(through), partitionName);
+    }
+
+    // ─── 3. Archive ─────────────────────────────────────────────────────────────
+
+    void archiveOldPartitions() {
+        LocalDate cutoff = YearMonth.now().minusMonths(archiveAfterMonths).atDay(1);
+        for (PartitionInfo p : loadPartitions()) {
+            if (LEGACY_PARTITION.equals(p.name()) || p.rangeTo().isAfter(cutoff) || !p.closed()) continue;
+            try {
+                archive(p);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Archive " + p.name() + " failed", e);
+            }
+        }
+    }
+
+    private void archive(PartitionInfo p) throws IOException {
+        Path dir = Paths.get(archiveDir);
+        Files.createDirectories(dir);
+        Path file = dir.resolve(p.name() + ".csv.gz");
+        Path part = dir.resolve(p.name() + ".csv.gz.part");
+
+        long exported = exportCsv(p.name(), part);
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + p.name(), Long.class);
+        if (count == null || count != exported) {
+            Files.deleteIfExists(part);
+            throw new IllegalStateException("Archive " + p.name() + ": exported " + exported + " rows, table has " + count);
+        }
+        Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            jdbcTemplate.update(FOLD_BALANCE_SQL.formatted(p.name()));
+            jdbcTemplate.execute("ALTER TABLE " + PARENT_TABLE + " DETACH PARTITION " + p.name());
+            jdbcTemplate.execute("DROP TABLE " + p.name());
+            jdbcTemplate.update("""
+                    UPDATE inventory_txn_partitions
+                    SET archived_at = NOW(), archive_file = ?, archived_rows = ?
+                    WHERE partition_name = ?
+                    """, file.toAbsolutePath().toString(), exported, p.name());
+        });
+        log.info("Archived ledger partition {} ({} rows) → {}", p.name(), exported, file.toAbsolutePath());
+    }
+
+    /** Stream partition ra file gzip CSV (server-side cursor trong read-only transaction). */
+    private long exportCsv(String partitionName, Path target) throws IOException {
+        long[] rows = {0};
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(target)), StandardCharsets.UTF_8))) {
+            out.write(CSV_HEADER);
+            out.write('\n');
+
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            readOnly.executeWithoutResult(status -> jdbcTemplate.query(con -> {
+                PreparedStatement ps = con.prepareStatement(
+                        "SELECT " + CSV_HEADER + " FROM " + partitionName + " ORDER BY txn_id",
+                        ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+                ps.setFetchSize(exportFetchSize);
+                return ps;
+            }, (RowCallbackHandler) rs -> {
+                try {
+                    int columns = rs.getMetaData().getColumnCount();
+                    for (int c = 1; c <= columns; c++) {
+                        if (c > 1) out.write(',');
+                        out.write(csv(rs.getString(c)));
+                    }
+                    out.write('\n');
+                    rows[0]++;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }));
+        }
+        return rows[0];
+    }
+
+    private static String csv(String value) {
+        if (value == null) return "";
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0) return value;
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    // ─── Helpers ────────────────────────────────────────────────────────────────
+
+    private boolean isPartitioned() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject("""
+                SELECT EXISTS (SELECT 1 FROM pg_partitioned_table
+                               WHERE partrelid = to_regclass('public.inventory_transactions'))
+                """, Boolean.class));
+    }
+
+    private List<PartitionInfo> loadPartitions() {
+        return jdbcTemplate.query(LOAD_PARTITIONS_SQL, (rs, i) -> new PartitionInfo(
+                rs.getString("partition_name"),
+                toLocalDate(rs.getDate("range_from")),
+                toLocalDate(rs.getDate("range_to")),
+                toLocalDate(rs.getDate("rolled_up_through"))));
+    }
+
+    private static LocalDate toLocalDate(Date date) {
+        return date != null ? date.toLocalDate() : null;
+    }
+
+    /** rangeFrom null = partition legacy rỗng (MINVALUE). */
+    record PartitionInfo(String name, LocalDate rangeFrom, LocalDate rangeTo, LocalDate rolledUpThrough) {
+
+        boolean overlaps(LocalDate from, LocalDate to) {
+            boolean startsBefore = LEGACY_PARTITION.equals(name) || rangeFrom == null || rangeFrom.isBefore(to);
+            return startsBefore && rangeTo.isAfter(from);
+        }
+
+        /** Đã rollup tới ngày cuối cùng của partition. */
+        boolean closed() {
+            return rolledUpThrough != null && !rolledUpThrough.isBefore(rangeTo.minusDays(1));
+        }
+    }
+}
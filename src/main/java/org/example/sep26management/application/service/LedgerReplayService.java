@@ -0,0 +1,442 @@
+package org.example.sep26management.application.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sep26management.application.dto.response.LedgerReplayResponse;
+import org.example.sep26management.application.enums.LedgerReplayMode;
+import org.example.sep26management.infrastructure.exception.BusinessException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Dựng lại inventory_snapshot.quantity từ inventory_transactions (ledger).
+ *
+ *   1. Chốt high-water mark = MAX(txn_id).
+ *   2. Chia ledger theo (warehouse_id, sku_id) thành N partition, chạy song song trên ForkJoinPool riêng.
+ *      Mỗi partition đọc bằng server-side cursor (fetch size) và cộng dồn trong bộ nhớ theo
+ *      (warehouse, sku, lot, location) → ghi vào shadow table inventory_snapshot_replay.
+ *      Như InventoryCheckpointService: txn_id cấp lúc INSERT nhưng commit có thể trễ → cùng snapshot
+ *      REPEATABLE READ của partition, ghi lại các id trong overlap-txns id cuối (≤ high-water) mà
+ *      partition không thấy (missed).
+ *   3. Fold-in các txn sau high-water mark + các id missed thuộc đúng partition đã bỏ sót chúng, rồi:
+ *      - DIFF: báo cáo dòng lệch giữa shadow và snapshot.
+ *      - SWAP: LOCK inventory_snapshot, áp quantity từ shadow trong cùng 1 transaction.
+ *
+ * Quy tắc replay: quantity = SUM(txn.quantity) theo (warehouse, sku, lot, location).
+ * PUTAWAY chỉ ghi +qty tại bin đích → replay sinh thêm leg −qty tại putaway_tasks.from_location_id.
+ * Partition đã archive (InventoryTxnPartitionService) được thay bằng số dư inventory_txn_archived_balance.
+ * reserved_qty không nằm trong ledger → SWAP giữ nguyên reserved_qty.
+ *
+ * SWAP: LOCK EXCLUSIVE chờ mọi writer đang ghi snapshot (cùng transaction với ledger) commit /
+ * rollback → lúc fold-in, mọi id missed đã commit đều thấy được.
+ * Chỉ 1 replay trên toàn cluster (shadow table dùng chung) — giữ pg advisory lock suốt replay.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class LedgerReplayService {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final AtpIndexService atpIndexService;
+
+    @Value("${inventory.replay.parallelism:4}")
+    private int parallelism;
+
+    @Value("${inventory.replay.fetch-size:10000}")
+    private int fetchSize;
+
+    @Value("${inventory.replay.insert-batch-size:10000}")
+    private int insertBatchSize;
+
+    @Value("${inventory.replay.diff-sample-size:200}")
+    private int diffSampleSize;
+
+    /** Số txn_id cuối (≤ high-water) kiểm tra commit trễ — như inventory.checkpoint.overlap-txns. */
+    @Value("${inventory.replay.overlap-txns:1000}")
+    private int overlapTxns;
+
+    // ─── SQL ────────────────────────────────────────────────────────────────────
+
+    /** Session-level lock (giữ trên 1 connection suốt replay), khoá chung cho mọi node. */
+    private static final String TRY_LOCK_SQL = "SELECT pg_try_advisory_lock(hashtext('inventory_snapshot_replay'))";
+    private static final String UNLOCK_SQL = "SELECT pg_advisory_unlock(hashtext('inventory_snapshot_replay'))";
+
+    /** txn_id trong (from, high-water] không thấy trong snapshot của partition (chưa commit / rollback). */
+    private static final String MISSED_TXN_IDS_SQL = """
+            SELECT COALESCE(array_agg(g.id ORDER BY g.id), '{}')
+            FROM generate_series(?::bigint, ?::bigint) AS g(id)
+            LEFT JOIN (SELECT txn_id FROM inventory_transactions WHERE txn_id BETWEEN ? AND ?) t
+                   ON t.txn_id = g.id
+            WHERE t.txn_id IS NULL
+            """;
+
+    private static final String STREAM_SQL = """
+            SELECT t.warehouse_id, t.sku_id, t.lot_id, t.location_id, t.quantity, t.txn_type,
+                   pt.from_location_id
+            FROM inventory_transactions t
+            LEFT JOIN putaway_tasks pt
+                   ON t.txn_type = 'PUTAWAY'
+                  AND t.reference_table = 'putaway_tasks'
+                  AND pt.putaway_task_id = t.reference_id
+            WHERE t.txn_id <= ?
+              AND MOD(t.warehouse_id * 31 + t.sku_id, ?) = ?
+            UNION ALL
+            SELECT b.warehouse_id, b.sku_id, b.lot_id, b.location_id, b.quantity, 'ARCHIVED_BALANCE', NULL
+            FROM inventory_txn_archived_balance b
+            WHERE MOD(b.warehouse_id * 31 + b.sku_id, ?) = ?
+            """;
+
+    private static final String INSERT_SHADOW_SQL = """
+            INSERT INTO inventory_snapshot_replay (warehouse_id, sku_id, lot_id, lot_id_safe, location_id, quantity)
+            SELECT r.warehouse_id, r.sku_id, r.lot_id, COALESCE(r.lot_id, 0), r.location_id, r.quantity
+            FROM unnest(?::bigint[], ?::bigint[], ?::bigint[], ?::bigint[], ?::numeric[])
+                 AS r(warehouse_id, sku_id, lot_id, location_id, quantity)
+            """;
+
+    /**
+     * Txn sau high-water mark, cộng các id missed (m.part = partition đã không thấy id đó; id thuộc
+     * partition khác đã được partition đó đếm thì không khớp MOD) — gộp thẳng vào shadow.
+     * ? thứ tự: high-water, final high-water, missed ids, missed partitions, partitions.
+     */
+    private static final String FOLD_IN_SQL = """
+            WITH late AS (
+                SELECT t.warehouse_id, t.sku_id, t.lot_id, t.location_id, t.quantity,
+                       t.txn_type, t.reference_table, t.reference_id
+                FROM inventory_transactions t
+                WHERE t.txn_id > ? AND t.txn_id <= ?
+                UNION ALL
+                SELECT t.warehouse_id, t.sku_id, t.lot_id, t.location_id, t.quantity,
+                       t.txn_type, t.reference_table, t.reference_id
+                FROM inventory_transactions t
+                JOIN unnest(?::bigint[], ?::int[]) AS m(txn_id, part)
+                  ON m.txn_id = t.txn_id
+                 AND m.part = MOD(t.warehouse_id * 31 + t.sku_id, ?)
+            ),
+            legs AS (
+                SELECT l.warehouse_id, l.sku_id, l.lot_id, l.location_id, l.quantity
+                FROM late l
+                UNION ALL
+                SELECT l.warehouse_id, l.sku_id, l.lot_id, pt.from_location_id, -l.quantity
+                FROM late l
+                JOIN putaway_tasks pt ON pt.putaway_task_id = l.reference_id
+                WHERE l.txn_type = 'PUTAWAY'
+                  AND l.reference_table = 'putaway_tasks'
+                  AND pt.from_location_id IS NOT NULL
+                  AND pt.from_location_id <> l.location_id
+            )
+            INSERT INTO inventory_snapshot_replay AS r (warehouse_id, sku_id, lot_id, lot_id_safe, location_id, quantity)
+            SELECT warehouse_id, sku_id, lot_id, COALESCE(lot_id, 0), location_id, SUM(quantity)
+            FROM legs
+            GROUP BY warehouse_id, sku_id, lot_id, location_id
+            ON CONFLICT (warehouse_id, sku_id, lot_id_safe, location_id)
+            DO UPDATE SET quantity = r.quantity + EXCLUDED.quantity
+            """;
+
+    private static final String DIFF_FROM = """
+            FROM inventory_snapshot_replay r
+            FULL OUTER JOIN inventory_snapshot s
+                   ON s.warehouse_id = r.warehouse_id
+                  AND s.sku_id       = r.sku_id
+                  AND s.lot_id_safe  = r.lot_id_safe
+                  AND s.location_id  = r.location_id
+            WHERE COALESCE(s.quantity, 0) <> GREATEST(COALESCE(r.quantity, 0), 0)
+            """;
+
+    private static final String DIFF_COUNT_SQL = """
+            SELECT COUNT(*) AS mismatched,
+                   COUNT(*) FILTER (WHERE s.location_id IS NULL) AS missing_in_snapshot,
+                   COUNT(*) FILTER (WHERE r.location_id IS NULL) AS missing_in_ledger
+            """ + DIFF_FROM;
+
+    private static final String DIFF_SAMPLE_SQL = """
+            SELECT COALESCE(r.warehouse_id, s.warehouse_id) AS warehouse_id,
+                   COALESCE(r.sku_id, s.sku_id)             AS sku_id,
+                   COALESCE(r.lot_id, s.lot_id)             AS lot_id,
+                   COALESCE(r.location_id, s.location_id)   AS location_id,
+                   COALESCE(s.quantity, 0)                  AS snapshot_qty,
+                   GREATEST(COALESCE(r.quantity, 0), 0)     AS ledger_qty
+            """ + DIFF_FROM + """
+            ORDER BY ABS(COALESCE(s.quantity, 0) - GREATEST(COALESCE(r.quantity, 0), 0)) DESC
+            LIMIT ?
+            """;
+
+    private static final String APPLY_UPDATE_SQL = """
+            UPDATE inventory_snapshot s
+            SET quantity = GREATEST(r.quantity, 0), last_updated = NOW()
+            FROM inventory_snapshot_replay r
+            WHERE s.warehouse_id = r.warehouse_id
+              AND s.sku_id       = r.sku_id
+              AND s.lot_id_safe  = r.lot_id_safe
+              AND s.location_id  = r.location_id
+              AND s.quantity    <> GREATEST(r.quantity, 0)
+            """;
+
+    private static final String APPLY_INSERT_SQL = """
+            INSERT INTO inventory_snapshot (warehouse_id, sku_id, lot_id, location_id, quantity, reserved_qty, last_updated)
+            SELECT r.warehouse_id, r.sku_id, r.lot_id, r.location_id, r.quantity, 0, NOW()
+            FROM inventory_snapshot_replay r
+            WHERE r.quantity > 0
+              AND NOT EXISTS (
+                  SELECT 1 FROM inventory_snapshot s
+                  WHERE s.warehouse_id = r.warehouse_id
+                    AND s.sku_id       = r.sku_id
+                    AND s.lot_id_safe  = r.lot_id_safe
+                    AND s.location_id  = r.location_id)
+            """;
+
+    private static final String APPLY_ZERO_SQL = """
+            UPDATE inventory_snapshot s
+            SET quantity = 0, last_updated = NOW()
+            WHERE s.quantity <> 0
+              AND NOT EXISTS (
+                  SELECT 1 FROM inventory_snapshot_replay r
+                  WHERE r.warehouse_id = s.warehouse_id
+                    AND r.sku_id       = s.sku_id
+                    AND r.lot_id_safe  = s.lot_id_safe
+                    AND r.location_id  = s.location_id)
+            """;
+
+    // ─── Public API ─────────────────────────────────────────────────────────────
+
+    public LedgerReplayResponse replay(LedgerReplayMode mode) {
+        return jdbcTemplate.execute((ConnectionCallback<LedgerReplayResponse>) con -> {
+            if (!advisoryLock(con, TRY_LOCK_SQL)) {
+                throw new BusinessException("A ledger replay is already running. Please retry later.");
+            }
+            try {
+                return doReplay(mode);
+            } finally {
+                advisoryLock(con, UNLOCK_SQL);
+            }
+        });
+    }
+
+    private LedgerReplayResponse doReplay(LedgerReplayMode mode) {
+        long start = System.currentTimeMillis();
+        long highWater = maxTxnId();
+        int partitions = Math.max(1, parallelism);
+
+        jdbcTemplate.execute("TRUNCATE inventory_snapshot_replay");
+
+        // ── Replay song song theo partition (warehouse, sku) ──
+        long txns = 0;
+        List<Long> missedIds = new ArrayList<>();
+        List<Integer> missedParts = new ArrayList<>();
+        ForkJoinPool pool = new ForkJoinPool(partitions);
+        try {
+            List<ForkJoinTask<PartitionScan>> tasks = new ArrayList<>();
+            for (int p = 0; p < partitions; p++) {
+                int partition = p;
+                tasks.add(pool.submit(() -> replayPartition(partition, partitions, highWater)));
+            }
+            for (int p = 0; p < partitions; p++) {
+                PartitionScan scan = tasks.get(p).get();
+                txns += scan.txns();
+                for (Long id : scan.missedTxnIds()) {
+                    missedIds.add(id);
+                    missedParts.add(p);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("Ledger replay interrupted");
+        } catch (ExecutionException e) {
+            log.error("Ledger replay partition failed", e.getCause());
+            throw new BusinessException("Ledger replay failed: " + e.getCause().getMessage());
+        } finally {
+            pool.shutdown();
+        }
+        log.info("Ledger replay: {} txns (txn_id <= {}) in {} partitions, {} txn id(s) not committed yet, {}ms",
+                txns, highWater, partitions, missedIds.size(), System.currentTimeMillis() - start);
+
+        // ── Fold-in + diff (+ apply) trong 1 transaction ──
+        long replayed = txns;
+        LedgerReplayResponse response = new TransactionTemplate(transactionManager).execute(status -> {
+            if (mode == LedgerReplayMode.SWAP) {
+                // Chặn mọi writer của snapshot (reader vẫn đọc được) tới khi commit.
+                jdbcTemplate.execute("LOCK TABLE inventory_snapshot IN EXCLUSIVE MODE");
+            }
+            long finalHighWater = maxTxnId();
+            long late = 0;
+            if (finalHighWater > highWater || !missedIds.isEmpty()) {
+                late = jdbcTemplate.update(con -> {
+                    PreparedStatement ps = con.prepareStatement(FOLD_IN_SQL);
+                    ps.setLong(1, highWater);
+                    ps.setLong(2, finalHighWater);
+                    ps.setArray(3, bigintArray(con, missedIds.toArray()));
+                    ps.setArray(4, con.createArrayOf("int4", missedParts.toArray()));
+                    ps.setInt(5, partitions);
+                    return ps;
+                });
+            }
+
+            LedgerReplayResponse r = buildDiff(mode, finalHighWater, replayed, partitions);
+            if (mode == LedgerReplayMode.SWAP) {
+                int updated = jdbcTemplate.update(APPLY_UPDATE_SQL);
+                int inserted = jdbcTemplate.update(APPLY_INSERT_SQL);
+                int zeroed = jdbcTemplate.update(APPLY_ZERO_SQL);
+                r.setApplied(true);
+                log.info("Ledger replay SWAP: {} updated, {} inserted, {} zeroed (fold-in {} rows)",
+                        updated, inserted, zeroed, late);
+            }
+            return r;
+        });
+
+        if (mode == LedgerReplayMode.SWAP) {
+            atpIndexService.reconcile();
+        }
+        response.setElapsedMs(System.currentTimeMillis() - start);
+        return response;
+    }
+
+    // ─── Partition ──────────────────────────────────────────────────────────────
+
+    /**
+     * Đọc 1 partition bằng server-side cursor (PostgreSQL chỉ dùng cursor khi autocommit = false
+     * và fetchSize &gt; 0 → chạy trong read-only transaction), cộng dồn rồi ghi shadow.
+     * REPEATABLE READ: id missed và cursor đọc cùng 1 MVCC snapshot.
+     */
+    private PartitionScan replayPartition(int partition, int partitions, long highWater) {
+        Map<LegKey, BigDecimal> totals = new HashMap<>();
+        long[] count = {0};
+
+        TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+        readOnly.setReadOnly(true);
+        readOnly.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        Long[] missed = readOnly.execute(status -> {
+            Long[] ids = missedTxnIds(highWater);
+            streamPartition(partition, partitions, highWater, totals, count);
+            return ids;
+        });
+
+        writeShadow(totals);
+        log.debug("Ledger replay partition {}/{}: {} txns → {} rows", partition, partitions, count[0], totals.size());
+        return new PartitionScan(count[0], missed != null ? missed : new Long[0]);
+    }
+
+    private void streamPartition(int partition, int partitions, long highWater,
+                                 Map<LegKey, BigDecimal> totals, long[] count) {
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(STREAM_SQL,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            ps.setFetchSize(fetchSize);
+            ps.setLong(1, highWater);
+            ps.setInt(2, partitions);
+            ps.setInt(3, partition);
+            ps.setInt(4, partitions);
+            ps.setInt(5, partition);
+            return ps;
+        }, (RowCallbackHandler) rs -> {
+            count[0]++;
+            long warehouseId = rs.getLong("warehouse_id");
+            long skuId = rs.getLong("sku_id");
+            Long lotId = rs.getObject("lot_id", Long.class);
+            long locationId = rs.getLong("location_id");
+            BigDecimal qty = rs.getBigDecimal("quantity");
+            totals.merge(new LegKey(warehouseId, skuId, lotId, locationId), qty, BigDecimal::add);
+
+            // PUTAWAY: hàng rời staging (from_location_id) → leg âm
+            Long fromLocationId = rs.getObject("from_location_id", Long.class);
+            if (fromLocationId != null && fromLocationId != locationId) {
+                totals.merge(new LegKey(warehouseId, skuId, lotId, fromLocationId), qty.negate(), BigDecimal::add);
+            }
+        });
+    }
+
+    /** Gọi trong transaction của partition — cùng MVCC snapshot với STREAM_SQL. */
+    private Long[] missedTxnIds(long highWater) {
+        if (highWater <= 0) return new Long[0];
+        long from = Math.max(1, highWater - overlapTxns + 1);
+        Array ids = jdbcTemplate.queryForObject(MISSED_TXN_IDS_SQL, Array.class, from, highWater, from, highWater);
+        try {
+            return ids != null ? (Long[]) ids.getArray() : new Long[0];
+        } catch (SQLException e) {
+            throw new IllegalStateException("Could not read missed txn ids", e);
+        }
+    }
+
+    private void writeShadow(Map<LegKey, BigDecimal> totals) {
+        List<Map.Entry<LegKey, BigDecimal>> rows = new ArrayList<>(totals.entrySet());
+        for (int from = 0; from < rows.size(); from += insertBatchSize) {
+            List<Map.Entry<LegKey, BigDecimal>> chunk = rows.subList(from, Math.min(rows.size(), from + insertBatchSize));
+            jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement(INSERT_SHADOW_SQL);
+                ps.setArray(1, bigintArray(con, chunk.stream().map(e -> e.getKey().warehouseId()).toArray()));
+                ps.setArray(2, bigintArray(con, chunk.stream().map(e -> e.getKey().skuId()).toArray()));
+                ps.setArray(3, bigintArray(con, chunk.stream().map(e -> e.getKey().lotId()).toArray()));
+                ps.setArray(4, bigintArray(con, chunk.stream().map(e -> e.getKey().locationId()).toArray()));
+                ps.setArray(5, con.createArrayOf("numeric", chunk.stream().map(Map.Entry::getValue).toArray()));
+                return ps;
+            });
+        }
+    }
+
+    // ─── Diff ───────────────────────────────────────────────────────────────────
+
+    private LedgerReplayResponse buildDiff(LedgerReplayMode mode, long highWater, long txns, int partitions) {
+        Long shadowRows = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM inventory_snapshot_replay", Long.class);
+        LedgerReplayResponse response = jdbcTemplate.queryForObject(DIFF_COUNT_SQL, (rs, i) -> LedgerReplayResponse.builder()
+                .mode(mode)
+                .highWaterTxnId(highWater)
+                .txnsReplayed(txns)
+                .partitions(partitions)
+                .shadowRows(shadowRows != null ? shadowRows : 0)
+                .mismatchedRows(rs.getLong("mismatched"))
+                .missingInSnapshot(rs.getLong("missing_in_snapshot"))
+                .missingInLedger(rs.getLong("missing_in_ledger"))
+                .build());
+
+        if (response.getMismatchedRows() > 0) {
+            response.setSample(jdbcTemplate.query(DIFF_SAMPLE_SQL, (rs, i) -> LedgerReplayResponse.DiffLine.builder()
+                    .warehouseId(rs.getLong("warehouse_id"))
+                    .skuId(rs.getLong("sku_id"))
+                    .lotId(rs.getObject("lot_id", Long.class))
+                    .locationId(rs.getLong("location_id"))
+                    .snapshotQty(rs.getBigDecimal("snapshot_qty"))
+                    .ledgerQty(rs.getBigDecimal("ledger_qty"))
+                    .build(), diffSampleSize));
+        }
+        return response;
+    }
+
+    private long maxTxnId() {
+        Long max = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(txn_id), 0) FROM inventory_transactions", Long.class);
+        return max != null ? max : 0L;
+    }
+
+    private static boolean advisoryLock(Connection con, String sql) throws SQLException {
+        try (PreparedStatement ps = con.prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+            return rs.next() && rs.getBoolean(1);
+        }
+    }
+
+    private static Array bigintArray(Connection con, Object[] values) throws SQLException {
+        return con.createArrayOf("bigint", values);
+    }
+
+    private record LegKey(long warehouseId, long skuId, Long lotId, long locationId) {}
+
+    private record PartitionScan(long txns, Long[] missedTxnIds) {}
+}
@@ -35,6 +35,8 @@ public class LocationService {
     private final ZoneJpaRepository zoneRepository;
     private final WarehouseJpaRepository warehouseRepository;
     private final AuditLogService auditLogService;
+    private final AtpIndexService atpIndexService;
+    private final BinCapacityIndexService binCapacityIndex;
 
     // ─────────────────────────────────────────────────────────────
     // UC-LOC-02: Create Location
@@ -180,6 +182,7 @@ public class LocationService {
                 .build();
 
         LocationEntity saved = locationRepository.save(location);
+        binCapacityIndex.touchZone(saved.getZoneId());
 
         log.info("Location created: locationId={}, code={}", saved.getLocationId(), saved.getLocationCode());
 
@@ -241,6 +244,8 @@ public class LocationService {
         if (request.getIsStaging() != null)     location.setIsStaging(request.getIsStaging());
 
         LocationEntity updated = locationRepository.save(location);
+        if (request.getIsStaging() != null) atpIndexService.touchWarehouse(updated.getWarehouseId());
+        binCapacityIndex.touchLocations(List.of(updated.getLocationId()));
 
         log.info("Location updated: locationId={}", updated.getLocationId());
 
@@ -294,6 +299,7 @@ public class LocationService {
 
         location.setActive(false);
         locationRepository.save(location);
+        binCapacityIndex.touchZone(location.getZoneId());
 
         log.info("Location deactivated: locationId={}, code={}", locationId, location.getLocationCode());
 
@@ -333,6 +339,8 @@ public class LocationService {
 
         location.setActive(true);
         locationRepository.save(location);
+        atpIndexService.touchWarehouse(location.getWarehouseId());
+        binCapacityIndex.touchZone(location.getZoneId());
 
         log.info("Location reactivated: locationId={}, code={}", locationId, location.getLocationCode());
 
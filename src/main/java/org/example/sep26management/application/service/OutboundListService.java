@@ -27,7 +27,7 @@ public class OutboundListService {
     private final CustomerJpaRepository customerRepository;
     private final WarehouseJpaRepository warehouseRepository;
     // [FIX TC-1A] — tính hasStockShortage cho DRAFT SO trong list
-    private final InventorySnapshotJpaRepository snapshotRepository;
+    private final AtpIndexService atpIndexService;
 
     @Transactional(readOnly = true)
     public ApiResponse<PageResponse<OutboundListResponse>> listOutbound(
@@ -230,14 +230,12 @@ public class OutboundListService {
 
     // [FIX TC-1A] true if any item in DRAFT SO has available < requested
     private boolean checkDraftShortage(Long warehouseId, Long soId) {
-        return soItemRepository.findBySoId(soId).stream().anyMatch(item -> {
-            java.math.BigDecimal total    = snapshotRepository.sumQuantityByWarehouseAndSku(warehouseId, item.getSkuId());
-            java.math.BigDecimal reserved = snapshotRepository.sumReservedByWarehouseAndSku(warehouseId, item.getSkuId());
-            if (total    == null) total    = java.math.BigDecimal.ZERO;
-            if (reserved == null) reserved = java.math.BigDecimal.ZERO;
-            java.math.BigDecimal available = total.subtract(reserved).max(java.math.BigDecimal.ZERO);
-            return available.compareTo(item.getOrderedQty()) < 0;
-        });
+        var items = soItemRepository.findBySoId(soId);
+        if (items.isEmpty()) return false;
+        var availability = atpIndexService.getAvailability(warehouseId,
+                items.stream().map(item -> item.getSkuId()).toList());
+        return items.stream().anyMatch(item ->
+                availability.get(item.getSkuId()).available().compareTo(item.getOrderedQty()) < 0);
     }
 
 }
\ No newline at end of file
@@ -42,7 +42,6 @@ public class OutboundQcService {
     private final SalesOrderJpaRepository salesOrderRepository;
     private final SalesOrderItemJpaRepository salesOrderItemRepository;
     private final InventorySnapshotJpaRepository inventorySnapshotRepository;
-    private final InventoryTransactionJpaRepository inventoryTransactionRepository;
     private final ReservationQueryRepository reservationRepository;
     private final IncidentJpaRepository incidentRepository;
     private final IncidentItemJpaRepository incidentItemRepository;
@@ -54,6 +53,9 @@ public class OutboundQcService {
     private final WarehouseJpaRepository warehouseRepository;
     private final CustomerJpaRepository customerRepository;
     private final DispatchPdfService dispatchPdfService;
+    private final AtpIndexService atpIndexService;
+    private final ReservedQtyWriter reservedQtyWriter;
+    private final InventoryMovementWriter movementWriter;
 
     // ─────────────────────────────────────────────────────────────────────────
     // 1) START QC SESSION
@@ -346,6 +348,8 @@ public class OutboundQcService {
         // Tìm hoặc tạo khu hàng lỗi (defect bin)
         LocationEntity defectBin = getOrCreateDefectBin(warehouseId);
 
+        Long createdBy = userId != null ? userId : getSystemUserId();
+        InventoryMovementWriter.Batch movements = movementWriter.batch();
         for (PickingTaskItemEntity item : failItems) {
             BigDecimal qty = item.getPickedQty().compareTo(BigDecimal.ZERO) > 0
                     ? item.getPickedQty() : item.getRequiredQty();
@@ -366,16 +370,8 @@ public class OutboundQcService {
                 continue;
             }
 
-            // 1. Trừ quantity tại vị trí gốc
-            inventorySnapshotRepository.decrementQuantity(
-                    warehouseId, item.getSkuId(), item.getLotId(), fromLocationId, qty);
-
-            // 2. Cộng quantity vào khu hàng lỗi
-            inventorySnapshotRepository.upsertInventory(
-                    warehouseId, item.getSkuId(), item.getLotId(), defectBin.getLocationId(), qty);
-
-            // 3. Ghi txn DAMAGE_WRITE_OFF (xuất khỏi bin gốc)
-            inventoryTransactionRepository.save(InventoryTransactionEntity.builder()
+            // 1. Trừ quantity tại vị trí gốc + txn DAMAGE_WRITE_OFF (xuất khỏi bin gốc)
+            movements.add(InventoryMovementWriter.Movement.builder()
                     .warehouseId(warehouseId)
                     .locationId(fromLocationId)
                     .skuId(item.getSkuId())
@@ -385,11 +381,11 @@ public class OutboundQcService {
                     .referenceTable("sales_orders")
                     .referenceId(soId)
                     .reasonCode("QC_FAIL")
-                    .createdBy(userId != null ? userId : getSystemUserId())
+                    .createdBy(createdBy)
                     .build());
 
-            // 4. Ghi txn DAMAGE_TRANSFER (nhập vào khu hàng lỗi)
-            inventoryTransactionRepository.save(InventoryTransactionEntity.builder()
+            // 2. Cộng quantity vào khu hàng lỗi + txn DAMAGE_TRANSFER (nhập vào khu hàng lỗi)
+            movements.add(InventoryMovementWriter.Movement.builder()
                     .warehouseId(warehouseId)
                     .locationId(defectBin.getLocationId())
                     .skuId(item.getSkuId())
@@ -399,12 +395,13 @@ public class OutboundQcService {
                     .referenceTable("sales_orders")
                     .referenceId(soId)
                     .reasonCode("QC_FAIL_MOVE_TO_DEFECT")
-                    .createdBy(userId != null ? userId : getSystemUserId())
+                    .createdBy(createdBy)
                     .build());
 
             log.info("DAMAGE: skuId={} qty={} moved from loc={} to defect bin={}",
                     item.getSkuId(), qty, fromLocationId, defectBin.getLocationId());
         }
+        movementWriter.flush(movements);
     }
 
     /**
@@ -439,6 +436,7 @@ public class OutboundQcService {
                 LocationEntity bin = anyBin.get();
                 bin.setIsDefect(true);
                 locationRepository.save(bin);
+                atpIndexService.touchWarehouse(bin.getWarehouseId());
                 log.info("Marked {} as defect bin in Z-DEFECT zone", bin.getLocationCode());
                 return bin;
             }
@@ -470,12 +468,13 @@ public class OutboundQcService {
         reservationRepository.findByReferenceTableAndReferenceIdAndStatus("sales_orders", soId, "OPEN")
                 .forEach(r -> {
                     if (r.getLocationId() != null) {
-                        inventorySnapshotRepository.incrementReservedByLocationAndSku(
-                                r.getLocationId(), r.getSkuId(), r.getLotId(), r.getQuantity().negate());
+                        reservedQtyWriter.adjust(r.getWarehouseId(), r.getLocationId(), r.getSkuId(),
+                                r.getLotId(), r.getQuantity().negate());
                     } else {
                         inventorySnapshotRepository.incrementReservedByWarehouseAndSku(
                                 r.getWarehouseId(), r.getSkuId(), r.getQuantity().negate());
                     }
+                    atpIndexService.touch(r.getWarehouseId(), r.getSkuId());
                     r.setStatus("CANCELLED");
                     reservationRepository.save(r);
                 });
@@ -551,12 +550,12 @@ public class OutboundQcService {
 
     /** CLOSE_SHORT: giảm orderedQty về số lượng available thực tế trong kho. */
     private void adjustOrderedQtyToAvailable(SalesOrderEntity so) {
-        salesOrderItemRepository.findBySoId(so.getSoId()).forEach(item -> {
-            BigDecimal total    = inventorySnapshotRepository.sumQuantityByWarehouseAndSku(so.getWarehouseId(), item.getSkuId());
-            BigDecimal reserved = inventorySnapshotRepository.sumReservedByWarehouseAndSku(so.getWarehouseId(), item.getSkuId());
-            if (total == null) total = BigDecimal.ZERO;
-            if (reserved == null) reserved = BigDecimal.ZERO;
-            BigDecimal available = total.subtract(reserved).max(BigDecimal.ZERO);
+        List<SalesOrderItemEntity> items = salesOrderItemRepository.findBySoId(so.getSoId());
+        if (items.isEmpty()) return;
+        var availability = atpIndexService.getAvailability(so.getWarehouseId(),
+                items.stream().map(SalesOrderItemEntity::getSkuId).toList());
+        items.forEach(item -> {
+            BigDecimal available = availability.get(item.getSkuId()).available();
             if (available.compareTo(item.getOrderedQty()) < 0) {
                 log.info("CLOSE_SHORT: soItem={} {} → {}", item.getSoItemId(), item.getOrderedQty(), available);
                 item.setOrderedQty(available);
@@ -32,10 +32,10 @@ public class OutboundService {
     private final TransferItemJpaRepository transferItemRepository;
     private final CustomerJpaRepository customerRepository;
     private final WarehouseJpaRepository warehouseRepository;
-    private final InventorySnapshotJpaRepository snapshotRepository;
     private final SkuJpaRepository skuRepository;
     private final AuditLogService auditLogService;
     private final AllocateStockService allocateStockService;
+    private final AtpIndexService atpIndexService;
 
     // ─────────────────────────────────────────────────────────────
     // SCRUM-505: Create
@@ -292,14 +292,10 @@ public class OutboundService {
 
         // ── Kiểm tra tồn kho ngay khi submit ──────────────────────────────
         // Không chờ đến bước Manager duyệt mới phát hiện thiếu
-        boolean hasShortage = false;
-        for (SalesOrderItemEntity item : items) {
-            BigDecimal available = getAvailableQty(so.getWarehouseId(), item.getSkuId());
-            if (available.compareTo(item.getOrderedQty()) < 0) {
-                hasShortage = true;
-                break;
-            }
-        }
+        Map<Long, BigDecimal> availableBySku = getAvailableQtyBySku(so.getWarehouseId(),
+                items.stream().map(SalesOrderItemEntity::getSkuId).toList());
+        boolean hasShortage = items.stream().anyMatch(item ->
+                availableBySku.get(item.getSkuId()).compareTo(item.getOrderedQty()) < 0);
 
         if (hasShortage) {
             // Thiếu hàng → allocate phần có sẵn (lock reservation) + tạo incident SHORTAGE
@@ -396,13 +392,11 @@ public class OutboundService {
                         .map(i -> new AbstractMap.SimpleEntry<>(i.getSkuId(), i.getOrderedQty()))
                         .toList());
 
-        for (SalesOrderItemEntity item : items) {
-            BigDecimal available = getAvailableQty(so.getWarehouseId(), item.getSkuId());
-            if (available.compareTo(item.getOrderedQty()) < 0) {
-                String skuCode = skuRepository.findById(item.getSkuId())
-                        .map(s -> s.getSkuCode()).orElse("SKU#" + item.getSkuId());
+        // Tái dùng snapshot vừa build — không query tồn kho lần 2
+        for (OutboundResponse.StockWarning snapshot : stockSnapshot) {
+            if (snapshot.getAvailableQty().compareTo(snapshot.getRequestedQty()) < 0) {
                 log.warn("Low stock on approve: SO={}, SKU={}, available={}, requested={}",
-                        so.getSoCode(), skuCode, available, item.getOrderedQty());
+                        so.getSoCode(), snapshot.getSkuCode(), snapshot.getAvailableQty(), snapshot.getRequestedQty());
             }
         }
 
@@ -545,8 +539,10 @@ public class OutboundService {
             Long warehouseId, List<CreateOutboundRequest.OutboundItemRequest> items) {
 
         List<OutboundResponse.StockWarning> warnings = new ArrayList<>();
+        Map<Long, BigDecimal> availableBySku = getAvailableQtyBySku(warehouseId,
+                items.stream().map(CreateOutboundRequest.OutboundItemRequest::getSkuId).toList());
         for (var item : items) {
-            BigDecimal available = getAvailableQty(warehouseId, item.getSkuId());
+            BigDecimal available = availableBySku.get(item.getSkuId());
             if (available.compareTo(item.getQuantity()) < 0) {
                 String skuCode = skuRepository.findById(item.getSkuId())
                         .map(s -> s.getSkuCode()).orElse("SKU#" + item.getSkuId());
@@ -563,8 +559,10 @@ public class OutboundService {
 
     private List<OutboundResponse.StockWarning> buildStockSnapshot(
             Long warehouseId, List<AbstractMap.SimpleEntry<Long, BigDecimal>> items) {
+        Map<Long, BigDecimal> availableBySku = getAvailableQtyBySku(warehouseId,
+                items.stream().map(AbstractMap.SimpleEntry::getKey).toList());
         return items.stream().map(entry -> {
-            BigDecimal available = getAvailableQty(warehouseId, entry.getKey());
+            BigDecimal available = availableBySku.get(entry.getKey());
             String skuCode = skuRepository.findById(entry.getKey())
                     .map(s -> s.getSkuCode()).orElse("SKU#" + entry.getKey());
             return OutboundResponse.StockWarning.builder()
@@ -577,20 +575,22 @@ public class OutboundService {
         }).toList();
     }
 
-    private BigDecimal getAvailableQty(Long warehouseId, Long skuId) {
-        BigDecimal total    = snapshotRepository.sumQuantityByWarehouseAndSku(warehouseId, skuId);
-        BigDecimal reserved = snapshotRepository.sumReservedByWarehouseAndSku(warehouseId, skuId);
-        if (total    == null) total    = BigDecimal.ZERO;
-        if (reserved == null) reserved = BigDecimal.ZERO;
-        return total.subtract(reserved).max(BigDecimal.ZERO);
+    /** skuId → available cho toàn bộ dòng của đơn (1 lần đọc index / 1 query). */
+    private Map<Long, BigDecimal> getAvailableQtyBySku(Long warehouseId, List<Long> skuIds) {
+        Map<Long, BigDecimal> result = new HashMap<>();
+        atpIndexService.getAvailability(warehouseId, skuIds)
+                .forEach((skuId, availability) -> result.put(skuId, availability.available()));
+        return result;
     }
 
     private OutboundResponse buildSalesOrderResponse(
             SalesOrderEntity so, List<SalesOrderItemEntity> items,
             CustomerEntity customer, List<OutboundResponse.StockWarning> warnings) {
 
+        Map<Long, BigDecimal> availableBySku = getAvailableQtyBySku(so.getWarehouseId(),
+                items.stream().map(SalesOrderItemEntity::getSkuId).toList());
         List<OutboundResponse.OutboundItemResponse> itemResponses = items.stream().map(i -> {
-            BigDecimal available = getAvailableQty(so.getWarehouseId(), i.getSkuId());
+            BigDecimal available = availableBySku.get(i.getSkuId());
             String skuCode = skuRepository.findById(i.getSkuId()).map(s -> s.getSkuCode()).orElse(null);
             String skuName = skuRepository.findById(i.getSkuId()).map(s -> s.getSkuName()).orElse(null);
             return OutboundResponse.OutboundItemResponse.builder()
@@ -628,8 +628,10 @@ public class OutboundService {
             TransferEntity transfer, List<TransferItemEntity> items,
             WarehouseEntity dest, List<OutboundResponse.StockWarning> warnings) {
 
+        Map<Long, BigDecimal> availableBySku = getAvailableQtyBySku(transfer.getFromWarehouseId(),
+                items.stream().map(TransferItemEntity::getSkuId).toList());
         List<OutboundResponse.OutboundItemResponse> itemResponses = items.stream().map(i -> {
-            BigDecimal available = getAvailableQty(transfer.getFromWarehouseId(), i.getSkuId());
+            BigDecimal available = availableBySku.get(i.getSkuId());
             String skuCode = skuRepository.findById(i.getSkuId()).map(s -> s.getSkuCode()).orElse(null);
             String skuName = skuRepository.findById(i.getSkuId()).map(s -> s.getSkuName()).orElse(null);
             return OutboundResponse.OutboundItemResponse.builder()
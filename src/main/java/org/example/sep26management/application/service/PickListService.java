@@ -50,8 +50,10 @@ public class PickListService {
     private final AuditLogService auditLogService;
     // Dependencies added for inventory deduction at confirmPicked
     private final InventorySnapshotJpaRepository snapshotRepository;
-    private final InventoryTransactionJpaRepository txnRepository;
     private final ReservationJpaRepository reservationRepository;
+    private final InventoryMovementWriter movementWriter;
+    private final ReservedQtyWriter reservedQtyWriter;
+    private final BinCapacityIndexService binCapacityIndex;
 
     @Transactional
     public ApiResponse<PickListResponse> generatePickList(
@@ -304,34 +306,40 @@ public class PickListService {
             }
         }
 
-        // Trừ tồn kho theo từng item
+        // 1) + 3) Trừ quantity trong BIN và ghi inventory_transaction txnType = PICK — 1 lần flush cho cả task
+        InventoryMovementWriter.Batch movements = movementWriter.batch();
         for (PickingTaskItemEntity item : items) {
-            BigDecimal qty = item.getPickedQty().compareTo(BigDecimal.ZERO) > 0
-                    ? item.getPickedQty() : item.getRequiredQty();
-
-            Long locationId = item.getFromLocationId();
-
-            // 1) Trừ quantity trong BIN
-            snapshotRepository.decrementQuantity(
-                    warehouseId, item.getSkuId(), item.getLotId(), locationId, qty);
-
-            // 2) Giải phóng reserved_qty
-            snapshotRepository.decrementReservedByLocationSkuLot(
-                    locationId, item.getSkuId(), item.getLotId(), qty);
-
-            // 3) Ghi inventory_transaction txnType = PICK
-            txnRepository.save(InventoryTransactionEntity.builder()
+            movements.add(InventoryMovementWriter.Movement.builder()
                     .warehouseId(warehouseId)
                     .skuId(item.getSkuId())
                     .lotId(item.getLotId())
-                    .locationId(locationId)
-                    .quantity(qty.negate())
+                    .locationId(item.getFromLocationId())
+                    .quantity(pickQty(item).negate())
                     .txnType("PICK")
                     .referenceTable("picking_tasks")
                     .referenceId(taskId)
                     .createdBy(userId)
                     .build());
         }
+        movementWriter.flush(movements);
+
+        // 2) Giải phóng reserved_qty (sau khi trừ quantity — lot FEFO chọn trên tồn còn lại như trước)
+        // Lot cụ thể → qua ReservedQtyWriter (delta mode không khoá dòng snapshot);
+        // không có lot → query tự chọn lot FEFO nên vẫn cập nhật tại chỗ
+        List<ReservedQtyWriter.ReservedDelta> releases = new ArrayList<>();
+        for (PickingTaskItemEntity item : items) {
+            BigDecimal qty = pickQty(item);
+            Long locationId = item.getFromLocationId();
+            if (item.getLotId() != null) {
+                releases.add(new ReservedQtyWriter.ReservedDelta(
+                        warehouseId, locationId, item.getSkuId(), item.getLotId(), qty.negate()));
+            } else {
+                snapshotRepository.decrementReservedByLocationSkuLot(
+                        locationId, item.getSkuId(), item.getLotId(), qty);
+                binCapacityIndex.touchLocations(List.of(locationId));
+            }
+        }
+        reservedQtyWriter.apply(releases);
 
         // 4) Close OPEN reservations liên quan đến document của task này
         //    Với SO: refTable=sales_orders, refId=soId
@@ -414,4 +422,8 @@ public class PickListService {
                 warehouseId, today.atStartOfDay(), today.plusDays(1).atStartOfDay());
         return String.format("PKL-%s-%04d", date, count);
     }
-}
\ No newline at end of file
+
+    private static BigDecimal pickQty(PickingTaskItemEntity item) {
+        return item.getPickedQty().compareTo(BigDecimal.ZERO) > 0 ? item.getPickedQty() : item.getRequiredQty();
+    }
+}
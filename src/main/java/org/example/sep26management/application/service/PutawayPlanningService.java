@@ -0,0 +1,412 @@
+package org.example.sep26management.application.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.example.sep26management.application.dto.putaway.PutawaySuggestionsReadyEvent;
+import org.example.sep26management.application.dto.response.PutawaySuggestion;
+import org.example.sep26management.domain.putaway.suggestion.BinCapacityHolds;
+import org.example.sep26management.domain.putaway.suggestion.BinCapacityHolds.Held;
+import org.example.sep26management.domain.putaway.suggestion.BinCapacityHolds.Limit;
+import org.example.sep26management.domain.putaway.suggestion.CandidateBin;
+import org.example.sep26management.domain.putaway.suggestion.PutawayZoneDirectory.SkuPlacement;
+import org.example.sep26management.infrastructure.persistence.entity.PutawayAllocationEntity;
+import org.example.sep26management.infrastructure.persistence.entity.PutawayTaskEntity;
+import org.example.sep26management.infrastructure.persistence.entity.PutawayTaskItemEntity;
+import org.example.sep26management.infrastructure.persistence.repository.PutawayAllocationJpaRepository;
+import org.example.sep26management.infrastructure.persistence.repository.PutawayTaskItemJpaRepository;
+import org.example.sep26management.infrastructure.persistence.repository.PutawayTaskJpaRepository;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * Pre-planning gợi ý BIN cho putaway task.
+ *
+ * GRN post chỉ gọi schedule(): sau khi transaction post commit, job chạy trên taskExecutor,
+ * chạy planner cho cả task, lưu suggested_location_id / suggested_qty / suggested_at lên
+ * putaway_task_items rồi push PutawaySuggestionsReadyEvent tới /topic/warehouse.{id}.putaway.
+ *
+ * Khi keeper mở task (currentSuggestions): gợi ý đã lưu được kiểm tra với capacity hiện tại
+ * (BinCapacityIndex). Dòng chưa có gợi ý, BIN không còn active hoặc không còn đủ chỗ cho phần
+ * chưa cất → tính lại cả task (các dòng dùng chung capacity làm việc) và ghi đè.
+ *
+ * Gợi ý giữ chỗ tại BIN qua BinCapacityHoldService (holder "task:{id}", TTL): planner trên node
+ * khác trừ phần đang hold nên 2 task lập song song không gợi ý trùng chỗ. Đặt hold thất bại (node
+ * khác vừa giữ trước) → lập lại, tối đa putaway.hold.plan-attempts lần. Mở task còn đúng → gia hạn hold.
+ */
+@Service
+@Slf4j
+public class PutawayPlanningService {
+
+    private static final Set<String> TERMINAL_STATUSES = Set.of("DONE", "CANCELLED");
+    private static final BigDecimal CAPACITY_TOLERANCE = new BigDecimal("0.000001");
+
+    private final PutawaySuggestionService suggestionService;
+    private final PutawayTaskJpaRepository taskRepo;
+    private final PutawayTaskItemJpaRepository taskItemRepo;
+    private final PutawayAllocationJpaRepository allocationRepo;
+    private final BinCapacityIndexService binCapacityIndex;
+    private final BinCapacityHoldService binCapacityHolds;
+    private final PutawayZoneCacheService zoneCache;
+    private final JdbcTemplate jdbcTemplate;
+    private final SimpMessagingTemplate messagingTemplate;
+    private final PlatformTransactionManager transactionManager;
+    private final Executor planningExecutor;
+
+    /** false: tính gợi ý ngay trong transaction post (hành vi cũ). */
+    @Value("${putaway.preplan.async:true}")
+    private boolean async;
+
+    @Value("${putaway.hold.plan-attempts:3}")
+    private int planAttempts;
+
+    private static final String STORE_SQL = """
+            UPDATE putaway_task_items
+            SET suggested_location_id = ?, suggested_qty = ?, suggested_at = NOW()
+            WHERE putaway_task_item_id = ?
+            """;
+
+    /**
+     * Job nền và keeper mở task lập kế hoạch cho cùng task (cùng holder hold) → tuần tự theo row
+     * lock của task, giữ tới khi transaction lập kế hoạch commit.
+     */
+    private static final String LOCK_TASK_SQL = """
+            SELECT putaway_task_id FROM putaway_tasks
+            WHERE putaway_task_id = ?
+            FOR UPDATE
+            """;
+
+    /** Dòng còn hàng đã có gợi ý — job nền gặp thì keeper đã lập trước, bỏ qua. */
+    private static final String COUNT_PLANNED_SQL = """
+            SELECT COUNT(*) FROM putaway_task_items
+            WHERE putaway_task_id = ?
+              AND quantity > putaway_qty
+              AND suggested_at IS NOT NULL
+            """;
+
+    /** Job nền không ghi đè gợi ý keeper đã tính lại (lazy) trong lúc job đang chạy. */
+    private static final String STORE_IF_UNPLANNED_SQL = """
+            UPDATE putaway_task_items
+            SET suggested_location_id = ?, suggested_qty = ?, suggested_at = NOW()
+            WHERE putaway_task_item_id = ?
+              AND suggested_at IS NULL
+            """;
+
+    /** Tính lại: bỏ gợi ý cũ của dòng còn hàng trước khi ghi (dòng không còn BIN nào → NULL). */
+    private static final String CLEAR_OPEN_SQL = """
+            UPDATE putaway_task_items
+            SET suggested_location_id = NULL, suggested_qty = NULL
+            WHERE putaway_task_id = ?
+              AND quantity > putaway_qty
+            """;
+
+    public PutawayPlanningService(PutawaySuggestionService suggestionService,
+                                  PutawayTaskJpaRepository taskRepo,
+                                  PutawayTaskItemJpaRepository taskItemRepo,
+                                  PutawayAllocationJpaRepository allocationRepo,
+                                  BinCapacityIndexService binCapacityIndex,
+                                  BinCapacityHoldService binCapacityHolds,
+                                  PutawayZoneCacheService zoneCache,
+                                  JdbcTemplate jdbcTemplate,
+                                  SimpMessagingTemplate messagingTemplate,
+                                  PlatformTransactionManager transactionManager,
+                                  @Qualifier("taskExecutor") Executor planningExecutor) {
+        this.suggestionService = suggestionService;
+        this.taskRepo = taskRepo;
+        this.taskItemRepo = taskItemRepo;
+        this.allocationRepo = allocationRepo;
+        this.binCapacityIndex = binCapacityIndex;
+        this.binCapacityHolds = binCapacityHolds;
+        this.zoneCache = zoneCache;
+        this.jdbcTemplate = jdbcTemplate;
+        this.messagingTemplate = messagingTemplate;
+        this.transactionManager = transactionManager;
+        this.planningExecutor = planningExecutor;
+    }
+
+    // ─── Pre-planning ───────────────────────────────────────────────────────────
+
+    /**
+     * Đặt lịch lập gợi ý cho task vừa tạo. Trong transaction → chạy sau commit (job phải thấy
+     * task items và tồn staging); rollback → không chạy.
+     */
+    public void schedule(Long warehouseId, Long putawayTaskId) {
+        if (!async) {
+            planAndStore(warehouseId, putawayTaskId, true);
+            return;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    submit(warehouseId, putawayTaskId);
+                }
+            });
+        } else {
+            submit(warehouseId, putawayTaskId);
+        }
+    }
+
+    private void submit(Long warehouseId, Long putawayTaskId) {
+        try {
+            planningExecutor.execute(() -> runPlanning(warehouseId, putawayTaskId));
+        } catch (Exception e) {
+            // Không mất gì: keeper mở task sẽ tính gợi ý (currentSuggestions)
+            log.warn("Putaway pre-planning for task {} not scheduled: {}", putawayTaskId, e.getMessage());
+        }
+    }
+
+    private void runPlanning(Long warehouseId, Long putawayTaskId) {
+        try {
+            long startedAt = System.currentTimeMillis();
+            Map<Long, PutawaySuggestion> planned = new TransactionTemplate(transactionManager)
+                    .execute(status -> planAndStore(warehouseId, putawayTaskId, false));
+            if (planned == null) {
+                log.info("Putaway task {} already planned on open, pre-planning skipped", putawayTaskId);
+                return;
+            }
+            log.info("Putaway task {} pre-planned: {} suggestions in {} ms",
+                    putawayTaskId, planned != null ? planned.size() : 0, System.currentTimeMillis() - startedAt);
+            notifyReady(warehouseId, putawayTaskId, planned != null ? planned.size() : 0);
+        } catch (Exception e) {
+            log.warn("Putaway pre-planning for task {} failed, suggestions will be computed on open: {}",
+                    putawayTaskId, e.getMessage());
+        }
+    }
+
+    /**
+     * Chạy planner cho cả task (mỗi dòng 1 BIN), giữ chỗ tại các BIN được gợi ý rồi lưu gợi ý.
+     * overwrite=false (job nền): task đã có dòng được lập (keeper mở task trước) → không lập,
+     * không đụng hold của task, trả về null.
+     */
+    private Map<Long, PutawaySuggestion> planAndStore(Long warehouseId, Long putawayTaskId, boolean overwrite) {
+        jdbcTemplate.queryForList(LOCK_TASK_SQL, Long.class, putawayTaskId);
+        if (!overwrite) {
+            Long plannedRows = jdbcTemplate.queryForObject(COUNT_PLANNED_SQL, Long.class, putawayTaskId);
+            if (plannedRows != null && plannedRows > 0) {
+                return null;
+            }
+        }
+        String holder = BinCapacityHolds.taskHolder(putawayTaskId);
+        Map<Long, PutawaySuggestion> planned;
+        int attempt = 0;
+        while (true) {
+            attempt++;
+            planned = suggestionService.suggestForTask(warehouseId, putawayTaskId);
+            Map<Long, Map<Long, BigDecimal>> qtyByBin = new HashMap<>();
+            planned.values().forEach(suggestion -> {
+                if (suggestion.getSuggestedLocationId() != null && suggestion.getSuggestedQty() != null) {
+                    addNeed(qtyByBin, suggestion.getSuggestedLocationId(), suggestion.getSkuId(),
+                            suggestion.getSuggestedQty());
+                }
+            });
+            binCapacityHolds.releaseAll(holder);
+            String conflict = acquireHolds(holder, qtyByBin, binCapacityIndex.findBins(qtyByBin.keySet()),
+                    skusOf(qtyByBin));
+            if (conflict == null) break;
+            if (attempt >= Math.max(1, planAttempts)) {
+                // Hold chỉ là lớp mềm — allocate vẫn kiểm tra capacity trên DB
+                log.warn("Putaway task {} stored without full bin holds after {} attempts: {}",
+                        putawayTaskId, attempt, conflict);
+                break;
+            }
+            log.info("Putaway task {} re-planned (attempt {}): {}", putawayTaskId, attempt + 1, conflict);
+        }
+
+        if (overwrite) {
+            jdbcTemplate.update(CLEAR_OPEN_SQL, putawayTaskId);
+        }
+        List<Object[]> rows = new ArrayList<>(planned.size());
+        planned.forEach((itemId, suggestion) ->
+                rows.add(new Object[]{suggestion.getSuggestedLocationId(), suggestion.getSuggestedQty(), itemId}));
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(overwrite ? STORE_SQL : STORE_IF_UNPLANNED_SQL, rows);
+        }
+        return planned;
+    }
+
+    /**
+     * Giữ chỗ tại từng BIN cho holder: qty + tải thật kg / m³ của các SKU được gợi ý vào, giới hạn
+     * = capacity còn trống của BIN (chưa tính hold) theo kg / m³; qty cũ chỉ khi có SKU mà BIN
+     * không đo được kg / m³. Trả về lý do nếu BIN nào không còn đủ chỗ sau khi trừ hold của holder khác.
+     */
+    private String acquireHolds(String holder, Map<Long, Map<Long, BigDecimal>> qtyByBin,
+                                Map<Long, CandidateBin> bins, Map<Long, SkuPlacement> skus) {
+        for (Map.Entry<Long, Map<Long, BigDecimal>> e : qtyByBin.entrySet()) {
+            CandidateBin bin = bins.get(e.getKey());
+            if (bin == null) continue;
+            if (!binCapacityHolds.hold(bin.getLocation().getZoneId(), e.getKey(), holder,
+                    held(e.getValue(), skus), limit(bin, e.getValue().keySet(), skus))) {
+                return "BIN " + bin.getLocation().getLocationCode() + " is held by another task";
+            }
+        }
+        return null;
+    }
+
+    /** Tổng qty + kg / m³ thật của các SKU vào 1 BIN. */
+    private static Held held(Map<Long, BigDecimal> qtyBySku, Map<Long, SkuPlacement> skus) {
+        Held held = Held.NONE;
+        for (Map.Entry<Long, BigDecimal> need : qtyBySku.entrySet()) {
+            held = held.add(Held.of(need.getValue(), skus.get(need.getKey())));
+        }
+        return held;
+    }
+
+    /** Chỗ còn trống của BIN ở từng chiều (xem Limit) cho các SKU. */
+    private static Limit limit(CandidateBin bin, Collection<Long> skuIds, Map<Long, SkuPlacement> skus) {
+        boolean legacy = skuIds.stream().anyMatch(skuId -> !bin.measures(skus.get(skuId)));
+        return new Limit(legacy ? bin.getAvailableCapacity() : null,
+                Double.isNaN(bin.getRemainingWeightKg()) ? null : BigDecimal.valueOf(bin.getRemainingWeightKg()),
+                Double.isNaN(bin.getRemainingVolumeM3()) ? null : BigDecimal.valueOf(bin.getRemainingVolumeM3()));
+    }
+
+    /** BIN → SKU → qty. */
+    private static void addNeed(Map<Long, Map<Long, BigDecimal>> needByBin, Long locationId, Long skuId,
+                                BigDecimal qty) {
+        needByBin.computeIfAbsent(locationId, id -> new HashMap<>()).merge(skuId, qty, BigDecimal::add);
+    }
+
+    /** weight / volume của các SKU trong kế hoạch (capacity BIN tính theo tải thật). */
+    private Map<Long, SkuPlacement> skusOf(Map<Long, Map<Long, BigDecimal>> needByBin) {
+        Set<Long> skuIds = new HashSet<>();
+        needByBin.values().forEach(bySku -> bySku.keySet().stream().filter(Objects::nonNull).forEach(skuIds::add));
+        return skuIds.isEmpty() ? Map.of() : zoneCache.skus(skuIds);
+    }
+
+    private void notifyReady(Long warehouseId, Long putawayTaskId, int suggestedCount) {
+        PutawayTaskEntity task = taskRepo.findById(putawayTaskId).orElse(null);
+        if (task == null) return;
+        PutawaySuggestionsReadyEvent event = PutawaySuggestionsReadyEvent.builder()
+                .putawayTaskId(putawayTaskId)
+                .warehouseId(warehouseId)
+                .grnId(task.getGrnId())
+                .assignedTo(task.getAssignedTo())
+                .itemCount(taskItemRepo.findByPutawayTaskPutawayTaskId(putawayTaskId).size())
+                .suggestedCount(suggestedCount)
+                .plannedAt(LocalDateTime.now())
+                .build();
+        messagingTemplate.convertAndSend("/topic/warehouse." + warehouseId + ".putaway", event);
+    }
+
+    // ─── Keeper mở task ─────────────────────────────────────────────────────────
+
+    /**
+     * Gợi ý cho task, key = putawayTaskItemId: dùng gợi ý đã lưu nếu còn đúng, ngược lại tính
+     * lại cả task và lưu đè. Task đã xong / huỷ → trả gợi ý đã lưu, không tính lại.
+     */
+    @Transactional
+    public Map<Long, PutawaySuggestion> currentSuggestions(PutawayTaskEntity task, List<PutawayTaskItemEntity> items) {
+        Map<Long, Map<Long, BigDecimal>> neededByBin = new HashMap<>();
+        boolean terminal = TERMINAL_STATUSES.contains(task.getStatus());
+        String staleReason = terminal ? null : collectNeeded(task, items, neededByBin);
+
+        Map<Long, CandidateBin> bins = new HashMap<>();
+        if (staleReason == null) {
+            Set<Long> binIds = new HashSet<>(neededByBin.keySet());
+            items.stream().map(PutawayTaskItemEntity::getSuggestedLocationId)
+                    .filter(Objects::nonNull)
+                    .forEach(binIds::add);
+            bins = binCapacityIndex.findBins(binIds);
+            if (!terminal) {
+                String holder = BinCapacityHolds.taskHolder(task.getPutawayTaskId());
+                Set<Long> zoneIds = new HashSet<>();
+                bins.values().forEach(bin -> zoneIds.add(bin.getLocation().getZoneId()));
+                Map<Long, SkuPlacement> skus = skusOf(neededByBin);
+                staleReason = checkCapacity(neededByBin, bins, binCapacityHolds.heldByOthers(zoneIds, holder), skus);
+                // Gợi ý còn đúng → gia hạn / chỉnh hold theo phần còn phải nhận
+                if (staleReason == null) {
+                    binCapacityHolds.releaseAll(holder);
+                    staleReason = acquireHolds(holder, neededByBin, bins, skus);
+                }
+            }
+        }
+
+        if (staleReason != null) {
+            log.info("Putaway task {} suggestions recomputed: {}", task.getPutawayTaskId(), staleReason);
+            return planAndStore(task.getWarehouseId(), task.getPutawayTaskId(), true);
+        }
+        return suggestionService.describeStored(items, bins);
+    }
+
+    /**
+     * Phần mỗi BIN đã gợi ý còn phải nhận: min(suggested_qty, qty − đã cất − đã allocate).
+     * Planner lập mỗi dòng đúng 1 BIN (BEST_BIN) nên gợi ý đã lưu là toàn bộ kế hoạch của dòng.
+     * Trả về lý do stale nếu có dòng còn hàng mà chưa có gợi ý.
+     */
+    private String collectNeeded(PutawayTaskEntity task, List<PutawayTaskItemEntity> items,
+                                 Map<Long, Map<Long, BigDecimal>> neededByBin) {
+        // Allocation RESERVED đã trừ capacity của BIN → không tính lại phần đó
+        Map<Long, BigDecimal> reservedBySku = new HashMap<>();
+        for (PutawayAllocationEntity a : allocationRepo.findByPutawayTaskIdAndStatus(task.getPutawayTaskId(), "RESERVED")) {
+            reservedBySku.merge(a.getSkuId(), a.getAllocatedQty(), BigDecimal::add);
+        }
+
+        for (PutawayTaskItemEntity item : items) {
+            BigDecimal remaining = item.getQuantity().subtract(item.getPutawayQty());
+            BigDecimal reserved = reservedBySku.getOrDefault(item.getSkuId(), BigDecimal.ZERO);
+            BigDecimal consumed = reserved.min(remaining.max(BigDecimal.ZERO));
+            reservedBySku.put(item.getSkuId(), reserved.subtract(consumed));
+            remaining = remaining.subtract(consumed);
+            if (remaining.signum() <= 0) continue;
+
+            if (item.getSuggestedLocationId() == null) {
+                return "item " + item.getPutawayTaskItemId() + " has no suggestion";
+            }
+            BigDecimal need = item.getSuggestedQty() != null ? remaining.min(item.getSuggestedQty()) : remaining;
+            addNeed(neededByBin, item.getSuggestedLocationId(), item.getSkuId(), need);
+        }
+        return null;
+    }
+
+    /**
+     * Chỗ còn trống của BIN sau khi trừ phần task khác đang hold phải đủ cho phần còn phải nhận, so
+     * theo kg / m³ thật (nhiều SKU cộng cùng đơn vị); qty cũ chỉ khi có SKU BIN không đo được kg / m³.
+     */
+    private static String checkCapacity(Map<Long, Map<Long, BigDecimal>> neededByBin, Map<Long, CandidateBin> bins,
+                                        Map<Long, Held> heldByOthers, Map<Long, SkuPlacement> skus) {
+        for (Map.Entry<Long, Map<Long, BigDecimal>> e : neededByBin.entrySet()) {
+            CandidateBin bin = bins.get(e.getKey());
+            if (bin == null) {
+                return "BIN " + e.getKey() + " is no longer an active BIN";
+            }
+            Held need = held(e.getValue(), skus);
+            Limit room = limit(bin.withHeld(heldByOthers.get(e.getKey())), e.getValue().keySet(), skus);
+            String code = bin.getLocation().getLocationCode();
+            if (exceeds(need.weightKg(), room.weightKg())) {
+                return "BIN " + code + " has " + room.weightKg().max(BigDecimal.ZERO) + " kg free, "
+                        + need.weightKg() + " kg needed";
+            }
+            if (exceeds(need.volumeM3(), room.volumeM3())) {
+                return "BIN " + code + " has " + room.volumeM3().max(BigDecimal.ZERO) + " m3 free, "
+                        + need.volumeM3() + " m3 needed";
+            }
+            if (exceeds(need.qty(), room.qty())) {
+                return "BIN " + code + " has " + room.qty() + " available, " + need.qty() + " needed";
+            }
+        }
+        return null;
+    }
+
+    /** Như HOLD_SCRIPT: chỉ chiều có giới hạn và có thêm tải mới bị chặn (dung sai 1e-6). */
+    private static boolean exceeds(BigDecimal need, BigDecimal room) {
+        return room != null && need.signum() > 0 && need.subtract(room).compareTo(CAPACITY_TOLERANCE) > 0;
+    }
+}
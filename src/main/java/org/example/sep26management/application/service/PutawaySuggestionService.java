@@ -3,23 +3,32 @@ package org.example.sep26management.application.service;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.example.sep26management.application.dto.response.PutawaySuggestion;
+import org.example.sep26management.domain.putaway.suggestion.CandidateBin;
 import org.example.sep26management.domain.putaway.suggestion.DefaultPutawaySuggestionEngine;
 import org.example.sep26management.domain.putaway.suggestion.PutawayBinSuggestionDto;
 import org.example.sep26management.domain.putaway.suggestion.PutawaySuggestionEngine;
 import org.example.sep26management.domain.putaway.suggestion.PutawaySuggestionLineResponse;
 import org.example.sep26management.domain.putaway.suggestion.PutawaySuggestionRequest;
-import org.example.sep26management.infrastructure.persistence.entity.SkuEntity;
-import org.example.sep26management.infrastructure.persistence.entity.ZoneEntity;
+import org.example.sep26management.domain.putaway.suggestion.PutawayZoneDirectory.SkuPlacement;
+import org.example.sep26management.domain.putaway.suggestion.PutawayZoneDirectory.ZoneInfo;
+import org.example.sep26management.infrastructure.config.PutawayScoringProperties;
+import org.example.sep26management.infrastructure.persistence.entity.PutawayTaskItemEntity;
 import org.example.sep26management.infrastructure.persistence.repository.InventorySnapshotJpaRepository;
-import org.example.sep26management.infrastructure.persistence.repository.LocationJpaRepository;
-import org.example.sep26management.infrastructure.persistence.repository.SkuJpaRepository;
-import org.example.sep26management.infrastructure.persistence.repository.ZoneJpaRepository;
+import org.example.sep26management.infrastructure.persistence.repository.PutawayTaskItemJpaRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 /**
  * Service gợi ý vị trí putaway dựa trên zone-category matching.
@@ -33,22 +42,55 @@ import java.util.Optional;
  * 3. Find all active BINs in that zone
  * 4. Calculate remaining capacity per BIN (maxWeightKg - currentQty)
  * 5. Suggest the BIN with the most available capacity
+ *
+ * Nhiều dòng (task, suggestLocations) đi qua planner của engine: load 1 lần, các dòng dùng
+ * chung capacity làm việc.
+ *
+ * Scoring rule + trọng số theo warehouse: putaway.scoring.weights / putaway.scoring.warehouses.
+ * Capacity đang được task khác giữ chỗ (BinCapacityHoldService) bị trừ trước khi lập kế hoạch.
+ * SKU / zone đọc qua PutawayZoneCacheService (1 category có thể có nhiều zone được phép).
+ * Zone rất lớn (≥ putaway.parallel.min-candidates candidate) chấm song song trên putawayEvaluationPool.
  */
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class PutawaySuggestionService {
 
-    private final SkuJpaRepository skuRepo;
-    private final ZoneJpaRepository zoneRepo;
-    private final LocationJpaRepository locationRepo;
+    private final PutawayZoneCacheService zoneCache;
+    private final PutawayTaskItemJpaRepository taskItemRepo;
+    private final BinCapacityIndexService binCapacityIndex;
     private final InventorySnapshotJpaRepository snapshotRepo;
+    private final PutawayScoringProperties scoringProperties;
+    private final BinCapacityHoldService binCapacityHolds;
+    private final ForkJoinPool putawayEvaluationPool;
+
+    /** Số candidate BIN tối thiểu lấy từ index cho mỗi dòng (ngoài số BIN cần để phủ qty). */
+    @Value("${putaway.bin-index.min-candidates:16}")
+    private int minCandidates;
+
+    @Value("${putaway.scoring.fixed-point:true}")
+    private boolean fixedPointScoring;
+
+    /** Dòng có từ chừng này candidate trở lên → chấm song song trên putawayEvaluationPool. */
+    @Value("${putaway.parallel.min-candidates:20000}")
+    private int parallelMinCandidates;
+
+    @Value("${putaway.parallel.chunk-size:4096}")
+    private int parallelChunkSize;
+
+    @Value("${putaway.parallel.enabled:true}")
+    private boolean parallelEnabled;
 
     private PutawaySuggestionEngine engine;
 
     private PutawaySuggestionEngine engine() {
         if (engine == null) {
-            engine = new DefaultPutawaySuggestionEngine(skuRepo, zoneRepo, locationRepo, snapshotRepo);
+            engine = new DefaultPutawaySuggestionEngine(zoneCache, taskItemRepo, binCapacityIndex, snapshotRepo,
+                    minCandidates, fixedPointScoring, scoringProperties::forWarehouse, binCapacityHolds,
+                    parallelEnabled
+                            ? new DefaultPutawaySuggestionEngine.Parallelism(
+                                    putawayEvaluationPool, parallelMinCandidates, parallelChunkSize)
+                            : DefaultPutawaySuggestionEngine.Parallelism.OFF);
         }
         return engine;
     }
@@ -58,77 +100,160 @@ public class PutawaySuggestionService {
      */
     @Transactional(readOnly = true)
     public Optional<PutawaySuggestion> suggestLocation(Long warehouseId, Long skuId, BigDecimal qty) {
-        SkuEntity sku = skuRepo.findByIdWithCategory(skuId).orElse(null);
-        if (sku == null) {
-            log.warn("Putaway suggestion FAILED: SKU {} not found in database", skuId);
-            return Optional.empty();
+        List<PutawaySuggestionLineResponse> lines =
+                engine().suggestForLines(warehouseId, List.of(toRequest(warehouseId, skuId, qty)));
+        return Optional.ofNullable(toLegacy(lines).get(0));
+    }
+
+    /**
+     * Gợi ý cho nhiều SKUs cùng lúc (dùng cho xem suggestions của 1 task).
+     * Các dòng dùng chung capacity làm việc → 2 dòng không bị dồn vào cùng 1 BIN gần đầy.
+     */
+    @Transactional(readOnly = true)
+    public List<PutawaySuggestion> suggestLocations(Long warehouseId, List<Long> skuIds, List<BigDecimal> quantities) {
+        List<PutawaySuggestionRequest> requests = new ArrayList<>(skuIds.size());
+        for (int i = 0; i < skuIds.size(); i++) {
+            requests.add(toRequest(warehouseId, skuIds.get(i), quantities.get(i)));
         }
+        return toLegacy(engine().suggestForLines(warehouseId, requests)).stream()
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
 
-        if (sku.getCategory() == null) {
-            log.warn("Putaway suggestion FAILED: SKU {} ({}) has no category assigned", skuId, sku.getSkuCode());
-            return Optional.empty();
+    /**
+     * Gợi ý cho toàn bộ putaway task trong 1 lượt, key = putawayTaskItemId.
+     * Dòng không tìm được BIN sẽ không có trong map.
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, PutawaySuggestion> suggestForTask(Long warehouseId, Long putawayTaskId) {
+        List<PutawaySuggestionLineResponse> lines = engine().suggestForTask(warehouseId, putawayTaskId).getLines();
+        List<PutawaySuggestion> legacy = toLegacy(lines);
+
+        Map<Long, PutawaySuggestion> byItem = new HashMap<>();
+        for (int i = 0; i < lines.size(); i++) {
+            if (legacy.get(i) != null) {
+                byItem.put(lines.get(i).getPutawayTaskItemId(), legacy.get(i));
+            }
         }
+        return byItem;
+    }
 
-        String categoryCode = sku.getCategory().getCategoryCode();
-        String expectedZoneCode = "Z-" + categoryCode;
-        log.info("Putaway suggestion: SKU {} ({}) → category={} → looking for zone '{}'",
-                skuId, sku.getSkuCode(), categoryCode, expectedZoneCode);
+    /**
+     * DTO cho gợi ý đã lưu trên putaway_task_items (pre-planning) kèm capacity hiện tại của BIN,
+     * không chạy engine. Dòng không có gợi ý / BIN không có trong bins sẽ không có trong map.
+     */
+    @Transactional(readOnly = true)
+    public Map<Long, PutawaySuggestion> describeStored(List<PutawayTaskItemEntity> items, Map<Long, CandidateBin> bins) {
+        Set<Long> skuIds = items.stream().map(PutawayTaskItemEntity::getSkuId).collect(Collectors.toSet());
+        Map<Long, SkuPlacement> skus = skuIds.isEmpty() ? Map.of() : zoneCache.skus(skuIds);
+        Set<Long> zoneIds = bins.values().stream()
+                .map(b -> b.getLocation().getZoneId())
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<Long, ZoneInfo> zones = zoneIds.isEmpty() ? Map.of() : zoneCache.zones(zoneIds);
+
+        Map<Long, PutawaySuggestion> byItem = new HashMap<>();
+        for (PutawayTaskItemEntity item : items) {
+            CandidateBin bin = item.getSuggestedLocationId() != null ? bins.get(item.getSuggestedLocationId()) : null;
+            SkuPlacement sku = skus.get(item.getSkuId());
+            if (bin == null || sku == null) continue;
+            ZoneInfo zone = zones.get(bin.getLocation().getZoneId());
+            CandidateBin sized = bin.forSku(sku);
+            byItem.put(item.getPutawayTaskItemId(), PutawaySuggestion.builder()
+                    .skuId(sku.skuId())
+                    .skuCode(sku.skuCode())
+                    .categoryCode(sku.categoryCode())
+                    .matchedZoneCode(zone != null ? zone.zoneCode() : bin.getZoneCode())
+                    .matchedZoneId(zone != null ? zone.zoneId() : null)
+                    .matchedZoneName(zone != null ? zone.zoneName() : null)
+                    .suggestedLocationId(bin.getLocation().getLocationId())
+                    .suggestedLocationCode(bin.getLocation().getLocationCode())
+                    .currentQty(bin.getOccupiedQty())
+                    .maxCapacity(sized.getMaxCapacity())
+                    .availableCapacity(sized.getAvailableCapacity())
+                    .suggestedQty(item.getSuggestedQty())
+                    .reason("Pre-planned at " + item.getSuggestedAt() + "; BIN capacity still covers the line.")
+                    .build());
+        }
+        return byItem;
+    }
 
+    private static PutawaySuggestionRequest toRequest(Long warehouseId, Long skuId, BigDecimal qty) {
         PutawaySuggestionRequest req = new PutawaySuggestionRequest();
         req.setWarehouseId(warehouseId);
         req.setSkuId(skuId);
-        req.setSkuCode(sku.getSkuCode());
         req.setQuantity(qty);
         // cho phép split mặc định
         req.setSplitAllowed(true);
         req.setStrategyCode(null);
+        return req;
+    }
 
-        PutawaySuggestionLineResponse lineRes = engine().suggestForLine(req);
-        List<PutawayBinSuggestionDto> bins = lineRes.getBinSuggestions();
-        if (bins == null || bins.isEmpty()) {
-            return Optional.empty();
-        }
+    /**
+     * Map kết quả engine về DTO cũ (BIN tốt nhất của mỗi dòng), cùng thứ tự; null khi dòng
+     * không có gợi ý. SKU/zone được load 1 lần cho cả danh sách.
+     */
+    private List<PutawaySuggestion> toLegacy(List<PutawaySuggestionLineResponse> lines) {
+        Set<Long> skuIds = lines.stream()
+                .map(PutawaySuggestionLineResponse::getSkuId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<Long, SkuPlacement> skus = skuIds.isEmpty() ? Map.of() : zoneCache.skus(skuIds);
 
-        PutawayBinSuggestionDto top = bins.get(0);
+        Set<Long> zoneIds = lines.stream()
+                .flatMap(l -> l.getBinSuggestions().stream().limit(1))
+                .map(PutawayBinSuggestionDto::getZoneId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<Long, ZoneInfo> zones = zoneIds.isEmpty() ? Map.of() : zoneCache.zones(zoneIds);
 
-        // Lấy lại thông tin zone để mapping về DTO cũ
-        ZoneEntity zone = null;
-        if (top.getZoneId() != null) {
-            zone = zoneRepo.findById(top.getZoneId()).orElse(null);
-        }
+        List<PutawaySuggestion> result = new ArrayList<>(lines.size());
+        for (PutawaySuggestionLineResponse line : lines) {
+            SkuPlacement sku = skus.get(line.getSkuId());
+            if (sku == null) {
+                log.warn("Putaway suggestion FAILED: SKU {} not found in database", line.getSkuId());
+                result.add(null);
+                continue;
+            }
+            if (sku.categoryCode() == null) {
+                log.warn("Putaway suggestion FAILED: SKU {} ({}) has no category assigned",
+                        sku.skuId(), sku.skuCode());
+                result.add(null);
+                continue;
+            }
 
-        PutawaySuggestion suggestion = PutawaySuggestion.builder()
-                .skuId(skuId)
-                .skuCode(sku.getSkuCode())
-                .categoryCode(sku.getCategory() != null ? sku.getCategory().getCategoryCode() : null)
-                .matchedZoneCode(zone != null ? zone.getZoneCode() : top.getZoneCode())
-                .matchedZoneId(zone != null ? zone.getZoneId() : null)
-                .matchedZoneName(zone != null ? zone.getZoneName() : null)
-                .suggestedLocationId(top.getBinId())
-                .suggestedLocationCode(top.getBinCode())
-                .aisleName(null)
-                .rackName(null)
-                .currentQty(top.getOccupiedQty())
-                .maxCapacity(top.getMaxCapacity())
-                .availableCapacity(top.getAvailableCapacity())
-                .reason(lineRes.getOverallExplanation())
-                .build();
-
-        log.info("Putaway suggestion (engine): SKU {} → bin {} (qty {}, score={})",
-                sku.getSkuCode(), top.getBinCode(), top.getSuggestedQuantity(), top.getScore());
-
-        return Optional.of(suggestion);
-    }
+            List<PutawayBinSuggestionDto> bins = line.getBinSuggestions();
+            if (bins == null || bins.isEmpty()) {
+                log.info("Putaway suggestion: SKU {} → zone 'Z-{}': {}",
+                        sku.skuCode(), sku.categoryCode(), line.getOverallExplanation());
+                result.add(null);
+                continue;
+            }
 
-    /**
-     * Gợi ý cho nhiều SKUs cùng lúc (dùng cho xem suggestions của 1 task).
-     */
-    @Transactional(readOnly = true)
-    public List<PutawaySuggestion> suggestLocations(Long warehouseId, List<Long> skuIds, List<BigDecimal> quantities) {
-        return java.util.stream.IntStream.range(0, skuIds.size())
-                .mapToObj(i -> suggestLocation(warehouseId, skuIds.get(i), quantities.get(i)))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .collect(java.util.stream.Collectors.toList());
+            PutawayBinSuggestionDto top = bins.get(0);
+            ZoneInfo zone = top.getZoneId() != null ? zones.get(top.getZoneId()) : null;
+
+            result.add(PutawaySuggestion.builder()
+                    .skuId(sku.skuId())
+                    .skuCode(sku.skuCode())
+                    .categoryCode(sku.categoryCode())
+                    .matchedZoneCode(zone != null ? zone.zoneCode() : top.getZoneCode())
+                    .matchedZoneId(zone != null ? zone.zoneId() : null)
+                    .matchedZoneName(zone != null ? zone.zoneName() : null)
+                    .suggestedLocationId(top.getBinId())
+                    .suggestedLocationCode(top.getBinCode())
+                    .aisleName(null)
+                    .rackName(null)
+                    .currentQty(top.getOccupiedQty())
+                    .maxCapacity(top.getMaxCapacity())
+                    .availableCapacity(top.getAvailableCapacity())
+                    .suggestedQty(top.getSuggestedQuantity())
+                    .reason(line.getOverallExplanation())
+                    .build());
+
+            log.info("Putaway suggestion (engine): SKU {} → bin {} (qty {}, score={})",
+                    sku.skuCode(), top.getBinCode(), top.getSuggestedQuantity(), top.getScore());
+        }
+        return result;
     }
 }
@@ -8,11 +8,12 @@ import org.example.sep26management.application.dto.response.PageResponse;
 import org.example.sep26management.application.dto.response.PutawayAllocationResponse;
 import org.example.sep26management.application.dto.response.PutawaySuggestion;
 import org.example.sep26management.application.dto.response.PutawayTaskResponse;
+import org.example.sep26management.domain.putaway.suggestion.BinCapacityHolds;
+import org.example.sep26management.domain.putaway.suggestion.CandidateBin;
 import org.example.sep26management.infrastructure.persistence.entity.LocationEntity;
 import org.example.sep26management.infrastructure.persistence.entity.PutawayAllocationEntity;
 import org.example.sep26management.infrastructure.persistence.entity.PutawayTaskEntity;
 import org.example.sep26management.infrastructure.persistence.entity.PutawayTaskItemEntity;
-import org.example.sep26management.infrastructure.persistence.repository.InventorySnapshotJpaRepository;
 import org.example.sep26management.infrastructure.persistence.repository.LocationJpaRepository;
 import org.example.sep26management.infrastructure.persistence.repository.PutawayAllocationJpaRepository;
 import org.example.sep26management.infrastructure.persistence.repository.PutawayTaskItemJpaRepository;
@@ -24,7 +25,6 @@ import org.example.sep26management.infrastructure.persistence.repository.Receivi
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
-import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -32,7 +32,7 @@ import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Optional;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 @Service
@@ -42,15 +42,17 @@ public class PutawayTaskService {
 
     private final PutawayTaskJpaRepository putawayTaskRepo;
     private final PutawayTaskItemJpaRepository putawayTaskItemRepo;
-    private final JdbcTemplate jdbcTemplate;
     private final LocationJpaRepository locationRepo;
     private final ZoneJpaRepository zoneRepo;
-    private final InventorySnapshotJpaRepository inventorySnapshotRepo;
-    private final PutawaySuggestionService putawaySuggestionService;
+    private final PutawayPlanningService putawayPlanningService;
     private final SkuJpaRepository skuRepo;
     private final PutawayAllocationJpaRepository allocationRepo;
     private final GrnJpaRepository grnRepo;
     private final ReceivingOrderJpaRepository receivingOrderRepo;
+    private final InventoryMovementWriter movementWriter;
+    private final BinCapacityIndexService binCapacityIndex;
+    private final BinCapacityHoldService binCapacityHolds;
+    private final PutawayZoneCacheService zoneCache;
 
     // ─── List tasks ────────────────────────────────────────────────────────────
 
@@ -106,17 +108,24 @@ public class PutawayTaskService {
 
     // ─── Get suggestions for a task ───────────────────────────────────────────
 
-    @Transactional(readOnly = true)
+    @Transactional
     public ApiResponse<List<PutawaySuggestion>> getSuggestions(Long taskId) {
         PutawayTaskEntity task = findTask(taskId);
         List<PutawayTaskItemEntity> items = putawayTaskItemRepo.findByPutawayTaskPutawayTaskId(taskId);
 
+        // Gợi ý đã lập lúc post GRN; stale / chưa có → tính lại cả task (dùng chung capacity làm việc)
+        Map<Long, PutawaySuggestion> planned = putawayPlanningService.currentSuggestions(task, items);
+
         List<PutawaySuggestion> suggestions = new ArrayList<>();
         for (PutawayTaskItemEntity item : items) {
-            Optional<PutawaySuggestion> suggestion = putawaySuggestionService.suggestLocation(
-                    task.getWarehouseId(), item.getSkuId(), item.getQuantity());
-            if (suggestion.isPresent()) {
-                suggestions.add(suggestion.get());
+            PutawaySuggestion suggestion = planned.get(item.getPutawayTaskItemId());
+            if (suggestion != null) {
+                suggestions.add(suggestion);
+            } else if (item.getPutawayQty().compareTo(item.getQuantity()) >= 0) {
+                suggestions.add(PutawaySuggestion.builder()
+                        .skuId(item.getSkuId())
+                        .reason("Item already fully put away.")
+                        .build());
             } else {
                 // Return a fallback entry so the caller knows which items couldn't be matched
                 PutawaySuggestion fallback = PutawaySuggestion.builder()
@@ -142,6 +151,7 @@ public class PutawayTaskService {
 
         List<PutawayTaskItemEntity> taskItems = putawayTaskItemRepo.findByPutawayTaskPutawayTaskId(taskId);
         List<PutawayAllocationResponse> results = new ArrayList<>();
+        String holder = BinCapacityHolds.taskHolder(taskId);
 
         for (PutawayAllocateRequest.AllocateItem alloc : request.getItems()) {
             // Find matching task item by skuId
@@ -159,15 +169,21 @@ public class PutawayTaskService {
                         + ". Remaining to allocate: " + remaining);
             }
 
-            // Check: bin capacity (occupied + putaway_reserved + newQty <= maxCapacity)
+            // Check: bin capacity theo kg / m³ thật của SKU (tồn + putaway_reserved + hold của task khác + newQty);
+            // BIN / SKU không khai báo kg / m³ → so qty với max_weight_kg như cũ
             LocationEntity bin = locationRepo.findById(alloc.getLocationId())
                     .orElseThrow(() -> new RuntimeException("Location not found: " + alloc.getLocationId()));
-            if (bin.getMaxWeightKg() != null) {
-                BigDecimal occupied = inventorySnapshotRepo.sumQuantityByLocationId(alloc.getLocationId());
-                BigDecimal binReserved = allocationRepo.sumReservedQtyByLocation(alloc.getLocationId());
-                BigDecimal totalInBin = occupied.add(binReserved).add(alloc.getQty());
-                if (totalInBin.compareTo(bin.getMaxWeightKg()) > 0) {
-                    BigDecimal binAvailable = bin.getMaxWeightKg().subtract(occupied).subtract(binReserved);
+            if (bin.getMaxWeightKg() != null || bin.getMaxVolumeM3() != null) {
+                CandidateBin capacity = binCapacityIndex.loadBins(List.of(alloc.getLocationId()))
+                        .get(alloc.getLocationId());
+                BinCapacityHolds.Held heldByOthers = binCapacityHolds.heldByOthers(List.of(bin.getZoneId()), holder)
+                        .get(alloc.getLocationId());
+                BigDecimal binAvailable = capacity != null
+                        ? capacity.withHeld(heldByOthers)
+                                .forSku(zoneCache.skus(List.of(alloc.getSkuId())).get(alloc.getSkuId()))
+                                .getAvailableCapacity()
+                        : BigDecimal.ZERO;
+                if (alloc.getQty().compareTo(binAvailable) > 0) {
                     throw new RuntimeException("Bin " + bin.getLocationCode() + " does not have enough capacity. Available: " + binAvailable);
                 }
             }
@@ -183,6 +199,9 @@ public class PutawayTaskService {
                     .allocatedBy(userId)
                     .build();
             allocationRepo.save(allocation);
+            binCapacityIndex.touchLocations(List.of(alloc.getLocationId()));
+            // Phần gợi ý đã giữ chỗ giờ thành allocation → trả hold tương ứng
+            binCapacityHolds.releaseAfterCommit(bin.getZoneId(), alloc.getLocationId(), holder, alloc.getQty());
 
             results.add(toAllocationResponse(allocation));
         }
@@ -228,6 +247,7 @@ public class PutawayTaskService {
             }
         }
 
+        InventoryMovementWriter.Batch movements = movementWriter.batch();
         for (PutawayAllocationEntity alloc : reservations) {
             PutawayTaskItemEntity item = taskItems.stream()
                     .filter(ti -> ti.getSkuId().equals(alloc.getSkuId()))
@@ -240,20 +260,30 @@ public class PutawayTaskService {
             // ── Z-INB: Trừ tồn khỏi staging location (Z-INB) khi confirm putaway ──────
             // Theo nghiệp vụ: tồn đã được cộng vào staging khi PENDING_COUNT (Z-INB).
             // Khi Keeper confirm putaway → trừ Z-INB và cộng vào BIN đích.
+            // Ledger chỉ ghi PUTAWAY tại bin đích; phần trừ staging suy ra từ putaway_tasks.from_location_id
             if (fromLocationId != null) {
-                inventorySnapshotRepo.decrementQuantity(
-                        task.getWarehouseId(), item.getSkuId(), item.getLotId(), fromLocationId, qty);
+                movements.add(InventoryMovementWriter.Movement.builder()
+                        .warehouseId(task.getWarehouseId())
+                        .skuId(item.getSkuId())
+                        .lotId(item.getLotId())
+                        .locationId(fromLocationId)
+                        .quantity(qty.negate())
+                        .recordTransaction(false)
+                        .build());
             }
 
-            // Upsert to target BIN (the actual shelf/rack location)
-            inventorySnapshotRepo.upsertInventory(
-                    task.getWarehouseId(), item.getSkuId(), item.getLotId(), alloc.getLocationId(), qty);
-
-            // Record PUTAWAY transaction
-            jdbcTemplate.update(
-                    "INSERT INTO inventory_transactions (warehouse_id, sku_id, lot_id, location_id, quantity, txn_type, reference_table, reference_id, created_by) "
-                            + "VALUES (?, ?, ?, ?, ?, 'PUTAWAY', 'putaway_tasks', ?, ?)",
-                    task.getWarehouseId(), item.getSkuId(), item.getLotId(), alloc.getLocationId(), qty, taskId, userId);
+            // Upsert to target BIN (the actual shelf/rack location) + record PUTAWAY transaction
+            movements.add(InventoryMovementWriter.Movement.builder()
+                    .warehouseId(task.getWarehouseId())
+                    .skuId(item.getSkuId())
+                    .lotId(item.getLotId())
+                    .locationId(alloc.getLocationId())
+                    .quantity(qty)
+                    .txnType("PUTAWAY")
+                    .referenceTable("putaway_tasks")
+                    .referenceId(taskId)
+                    .createdBy(userId)
+                    .build());
 
             // Update putaway item
             item.setPutawayQty(item.getPutawayQty().add(qty));
@@ -264,12 +294,14 @@ public class PutawayTaskService {
             alloc.setStatus("CONFIRMED");
             allocationRepo.save(alloc);
         }
+        movementWriter.flush(movements);
 
         // Check if all items are done
         boolean allDone = taskItems.stream().allMatch(i -> i.getPutawayQty().compareTo(i.getQuantity()) >= 0);
         if (allDone) {
             task.setStatus("DONE");
             task.setCompletedAt(LocalDateTime.now());
+            binCapacityHolds.releaseAllAfterCommit(BinCapacityHolds.taskHolder(taskId));
         }
 
         putawayTaskRepo.save(task);
@@ -292,6 +324,10 @@ public class PutawayTaskService {
         }
         alloc.setStatus("CANCELLED");
         allocationRepo.save(alloc);
+        binCapacityIndex.touchLocations(List.of(alloc.getLocationId()));
+        // Keeper bỏ BIN này → bỏ luôn phần task còn giữ chỗ tại đó
+        locationRepo.findById(alloc.getLocationId()).ifPresent(bin -> binCapacityHolds.releaseAfterCommit(
+                bin.getZoneId(), bin.getLocationId(), BinCapacityHolds.taskHolder(taskId), null));
         log.info("Cancelled allocation {} for task {}", allocationId, taskId);
         return ApiResponse.success("Allocation cancelled.", null);
     }
@@ -0,0 +1,233 @@
+package org.example.sep26management.application.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sep26management.domain.putaway.suggestion.PutawayZoneDirectory;
+import org.example.sep26management.infrastructure.persistence.entity.CategoryEntity;
+import org.example.sep26management.infrastructure.persistence.entity.SkuEntity;
+import org.example.sep26management.infrastructure.persistence.entity.ZoneEntity;
+import org.example.sep26management.infrastructure.persistence.repository.CategoryJpaRepository;
+import org.example.sep26management.infrastructure.persistence.repository.SkuJpaRepository;
+import org.example.sep26management.infrastructure.persistence.repository.ZoneJpaRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache read-through SKU → category và zone theo warehouse cho putaway (PutawayZoneDirectory).
+ *
+ * - SKU: skuCode, categoryCode, trọng lượng / thể tích 1 đơn vị; miss → 1 query batch.
+ * - Warehouse: toàn bộ zone của warehouse + category → zone được phép (zone chính + zone phụ),
+ *   load 1 lần (zone + category) khi warehouse được hỏi lần đầu.
+ *
+ * Invalidate sau commit khi CategoryService / ZoneService / SkuService đổi dữ liệu liên quan.
+ * Load đang chạy lúc invalidate không được ghi vào cache (generation). Entry còn hết hạn sau
+ * putaway.zone-cache.ttl-seconds — chốt chặn cho thay đổi từ node khác / ngoài service.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class PutawayZoneCacheService implements PutawayZoneDirectory {
+
+    private final SkuJpaRepository skuRepo;
+    private final ZoneJpaRepository zoneRepo;
+    private final CategoryJpaRepository categoryRepo;
+
+    @Value("${putaway.zone-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${putaway.zone-cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    private final ConcurrentMap<Long, Cached<SkuPlacement>> skus = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Cached<WarehouseZones>> warehouses = new ConcurrentHashMap<>();
+    private final ConcurrentMap<Long, Long> warehouseByZone = new ConcurrentHashMap<>();
+    private final AtomicLong generation = new AtomicLong();
+
+    // ─── Đọc ────────────────────────────────────────────────────────────────────
+
+    @Override
+    public Map<Long, SkuPlacement> skus(Collection<Long> skuIds) {
+        Map<Long, SkuPlacement> result = new HashMap<>();
+        Set<Long> missing = new HashSet<>();
+        long now = System.currentTimeMillis();
+        for (Long skuId : skuIds) {
+            if (skuId == null) continue;
+            Cached<SkuPlacement> cached = enabled ? skus.get(skuId) : null;
+            if (cached != null && cached.fresh(now)) {
+                result.put(skuId, cached.value());
+            } else {
+                missing.add(skuId);
+            }
+        }
+        if (missing.isEmpty()) return result;
+
+        long gen = generation.get();
+        for (SkuEntity sku : skuRepo.findAllByIdWithCategory(missing)) {
+            SkuPlacement placement = new SkuPlacement(sku.getSkuId(), sku.getSkuCode(),
+                    sku.getCategory() != null ? sku.getCategory().getCategoryCode() : null,
+                    sku.getWeightG() != null ? sku.getWeightG().movePointLeft(3) : null,
+                    sku.getVolumeMl() != null ? sku.getVolumeMl().movePointLeft(6) : null);
+            result.put(sku.getSkuId(), placement);
+            if (enabled && generation.get() == gen) {
+                skus.put(sku.getSkuId(), new Cached<>(placement, now + ttlSeconds * 1000));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<ZoneInfo> allowedZones(Long warehouseId, String categoryCode) {
+        if (warehouseId == null || categoryCode == null) return Collections.emptyList();
+        return warehouse(warehouseId).byCategory().getOrDefault(categoryCode, Collections.emptyList());
+    }
+
+    @Override
+    public Map<Long, ZoneInfo> zones(Collection<Long> zoneIds) {
+        Map<Long, ZoneInfo> result = new HashMap<>();
+        Set<Long> unknown = new HashSet<>();
+        for (Long zoneId : zoneIds) {
+            if (zoneId == null) continue;
+            Long warehouseId = warehouseByZone.get(zoneId);
+            ZoneInfo zone = warehouseId != null ? warehouse(warehouseId).byId().get(zoneId) : null;
+            if (zone != null) {
+                result.put(zoneId, zone);
+            } else {
+                unknown.add(zoneId);
+            }
+        }
+        if (!unknown.isEmpty()) {
+            // Zone chưa có trong cache → load cả warehouse của zone đó
+            Set<Long> warehouseIds = new HashSet<>();
+            zoneRepo.findAllById(unknown).forEach(z -> warehouseIds.add(z.getWarehouseId()));
+            for (Long warehouseId : warehouseIds) {
+                Map<Long, ZoneInfo> byId = warehouse(warehouseId).byId();
+                unknown.stream().filter(byId::containsKey).forEach(id -> result.put(id, byId.get(id)));
+            }
+        }
+        return result;
+    }
+
+    // ─── Invalidate ─────────────────────────────────────────────────────────────
+
+    /** Category thêm / đổi mã / ngừng: ảnh hưởng zone được phép ở mọi warehouse và categoryCode của SKU. */
+    public void invalidateCategories() {
+        afterCommit(() -> {
+            generation.incrementAndGet();
+            warehouses.clear();
+            skus.clear();
+        });
+    }
+
+    /** Zone của warehouse thêm / ngừng / kích hoạt lại. */
+    public void invalidateWarehouse(Long warehouseId) {
+        afterCommit(() -> {
+            generation.incrementAndGet();
+            if (warehouseId != null) warehouses.remove(warehouseId);
+        });
+    }
+
+    /** SKU đổi category. */
+    public void invalidateSku(Long skuId) {
+        afterCommit(() -> {
+            generation.incrementAndGet();
+            if (skuId != null) skus.remove(skuId);
+        });
+    }
+
+    // ─── Load ───────────────────────────────────────────────────────────────────
+
+    private WarehouseZones warehouse(Long warehouseId) {
+        long now = System.currentTimeMillis();
+        Cached<WarehouseZones> cached = enabled ? warehouses.get(warehouseId) : null;
+        if (cached != null && cached.fresh(now)) {
+            return cached.value();
+        }
+        long gen = generation.get();
+        WarehouseZones loaded = loadWarehouse(warehouseId);
+        if (enabled && generation.get() == gen) {
+            warehouses.put(warehouseId, new Cached<>(loaded, now + ttlSeconds * 1000));
+            loaded.byId().keySet().forEach(zoneId -> warehouseByZone.put(zoneId, warehouseId));
+        }
+        return loaded;
+    }
+
+    private WarehouseZones loadWarehouse(Long warehouseId) {
+        Set<String> categoryCodes = new HashSet<>();
+        for (CategoryEntity category : categoryRepo.findAll()) {
+            categoryCodes.add(category.getCategoryCode());
+        }
+
+        Map<Long, ZoneInfo> byId = new HashMap<>();
+        Map<String, List<ZoneInfo>> byCategory = new HashMap<>();
+        for (ZoneEntity z : zoneRepo.findByWarehouseId(warehouseId)) {
+            ZoneInfo zone = new ZoneInfo(z.getZoneId(), z.getWarehouseId(), z.getZoneCode(), z.getZoneName(),
+                    Boolean.TRUE.equals(z.getActive()));
+            byId.put(zone.zoneId(), zone);
+            String categoryCode = zone.active() ? owningCategory(zone.zoneCode(), categoryCodes) : null;
+            if (categoryCode != null) {
+                byCategory.computeIfAbsent(categoryCode, k -> new ArrayList<>()).add(zone);
+            }
+        }
+        byCategory.forEach((categoryCode, zones) -> {
+            String primary = "Z-" + categoryCode;
+            zones.sort(Comparator.comparing((ZoneInfo z) -> !z.zoneCode().equals(primary))
+                    .thenComparing(ZoneInfo::zoneCode));
+        });
+        byCategory.replaceAll((categoryCode, zones) -> List.copyOf(zones));
+        log.debug("Putaway zone cache loaded warehouse {}: {} zones, {} categories with zones",
+                warehouseId, byId.size(), byCategory.size());
+        return new WarehouseZones(Map.copyOf(byId), Map.copyOf(byCategory));
+    }
+
+    /** Category dài nhất c sao cho zoneCode = "Z-" + c hoặc bắt đầu bằng "Z-" + c + "-". */
+    private static String owningCategory(String zoneCode, Set<String> categoryCodes) {
+        if (zoneCode == null || !zoneCode.startsWith("Z-")) return null;
+        String rest = zoneCode.substring(2);
+        String owner = null;
+        for (String code : categoryCodes) {
+            if (Objects.equals(rest, code) || rest.startsWith(code + "-")) {
+                if (owner == null || code.length() > owner.length()) owner = code;
+            }
+        }
+        return owner;
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private record Cached<T>(T value, long expiresAt) {
+
+        boolean fresh(long now) {
+            return now < expiresAt;
+        }
+    }
+
+    private record WarehouseZones(Map<Long, ZoneInfo> byId, Map<String, List<ZoneInfo>> byCategory) {
+    }
+}
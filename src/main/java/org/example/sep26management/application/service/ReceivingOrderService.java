@@ -54,6 +54,7 @@ public class ReceivingOrderService {
         @org.springframework.context.annotation.Lazy
         private final GrnService grnService;
         private final AuditLogService auditLogService;
+        private final InventoryMovementWriter movementWriter;
 
         // ─── List ──────────────────────────────────────────────────────────────────
 
@@ -520,9 +521,7 @@ public class ReceivingOrderService {
                                                 getOrder(id).getData());
                         }
 
-                        ScanSessionData qcSession = sessionRedis.findById(qcSessionId).orElse(null);
-
-                        if (qcSession == null || qcSession.getLines() == null) {
+                        if (!sessionRedis.exists(qcSessionId)) {
                                 // QC session đã hết hạn → không so sánh được
                                 order.setStatus("PENDING_COUNT");
                                 order.setQcSessionId(null);
@@ -537,12 +536,10 @@ public class ReceivingOrderService {
                                                 getOrder(id).getData());
                         }
 
-                        // Build QC scan totals per SKU
-                        Map<Long, BigDecimal> qcTotals = qcSession.getLines().stream()
-                                        .filter(l -> l.getSkuId() != null && l.getQty() != null)
-                                        .collect(Collectors.groupingBy(ScanLineItem::getSkuId,
-                                                        Collectors.reducing(BigDecimal.ZERO, ScanLineItem::getQty,
-                                                                        BigDecimal::add)));
+                        // Build QC scan totals per SKU (cộng mọi condition từ hash qty của session)
+                        Map<Long, BigDecimal> qcTotals = new java.util.HashMap<>();
+                        sessionRedis.counts(qcSessionId).forEach((skuId, byCondition) -> qcTotals.put(skuId,
+                                        byCondition.values().stream().reduce(BigDecimal.ZERO, BigDecimal::add)));
 
                         // Build Keeper scan totals per SKU (from just-synced data)
                         List<ReceivingItemEntity> freshItems = receivingItemRepo.findByReceivingOrderReceivingId(id);
@@ -683,6 +680,7 @@ public class ReceivingOrderService {
                 ReceivingOrderEntity order = findOrder(id);
                 validateStatus(order, "qc-submit-session", "PENDING_COUNT", "PENDING_INCIDENT", "KEEPER_RESCAN");
 
+                // 1 lần đọc pipeline: meta + hash qty + hash metadata dòng của session
                 ScanSessionData session = sessionRedis.findById(sessionId).orElse(null);
                 if (session == null) {
                         log.warn("QC session not found or expired: {}", sessionId);
@@ -694,18 +692,13 @@ public class ReceivingOrderService {
                         return ApiResponse.error("No items scanned in this session");
                 }
 
-                // Map để gộp số lượng scan theo (skuId, condition)
-                Map<Long, Map<String, BigDecimal>> scannedData = lines.stream()
-                                .collect(Collectors.groupingBy(ScanLineItem::getSkuId,
-                                                Collectors.groupingBy(
-                                                                item -> item.getCondition() != null
-                                                                                ? item.getCondition()
-                                                                                : "PASS",
-                                                                Collectors.reducing(BigDecimal.ZERO,
-                                                                                item -> item.getQty() != null
-                                                                                                ? item.getQty()
-                                                                                                : BigDecimal.ZERO,
-                                                                                BigDecimal::add))));
+                // Số lượng scan theo (skuId, condition) — mỗi dòng của session đã là 1 field
+                // "skuId|condition" trong hash qty, không cần gộp lại
+                Map<Long, Map<String, BigDecimal>> scannedData = new java.util.HashMap<>();
+                for (ScanLineItem line : lines) {
+                        scannedData.computeIfAbsent(line.getSkuId(), k -> new java.util.HashMap<>())
+                                        .put(line.getCondition(), line.getQty());
+                }
 
                 List<ReceivingItemEntity> dbItems = receivingItemRepo.findByReceivingOrderReceivingId(id);
 
@@ -745,10 +738,11 @@ public class ReceivingOrderService {
                         order.setNote((order.getNote() != null ? order.getNote() + "\n" : "") + mismatchNote);
                         receivingOrderRepo.save(order);
 
-                        // RE-SAVE QC session vào Redis với TTL mới (1h) để đảm bảo
-                        // Keeper có đủ thời gian rescan. refreshTtl() không đủ vì
-                        // expire() có thể fail nếu key đã hết hạn.
-                        sessionRedis.save(sessionId, session);
+                        // Gia hạn TTL QC session (1h) để đảm bảo Keeper có đủ thời gian
+                        // rescan. Session vừa hết hạn sau lần đọc ở trên → ghi lại từ bản đã đọc.
+                        if (!sessionRedis.refreshTtl(sessionId)) {
+                                sessionRedis.save(sessionId, session);
+                        }
                         // Xóa active session MAPPING (nhưng giữ session DATA)
                         // → QC sẽ tạo session MỚI khi scan lại, tránh cộng dồn
                         // → Keeper vẫn truy cập được data cũ qua order.qcSessionId
@@ -1448,9 +1442,9 @@ public class ReceivingOrderService {
          * putaway.
          *
          * Nghiệp vụ:
-         * PENDING_COUNT → upsertInventory(stagingLocation, +qty) [Z-INB]
-         * confirmPutaway → decrementQuantity(stagingLocation, -qty) [trừ Z-INB]
-         * + upsertInventory(binLocation, +qty) [cộng vào BIN]
+         * PENDING_COUNT → +qty tại stagingLocation [Z-INB]
+         * confirmPutaway → −qty tại stagingLocation [trừ Z-INB]
+         * + qty tại binLocation [cộng vào BIN] (cả 2 qua InventoryMovementWriter)
          */
         private void addInboundStockToStaging(ReceivingOrderEntity order, Long userId) {
                 try {
@@ -1466,37 +1460,26 @@ public class ReceivingOrderService {
                         if (items == null || items.isEmpty())
                                 return;
 
+                        InventoryMovementWriter.Batch movements = movementWriter.batch();
                         for (ReceivingItemEntity item : items) {
                                 if (item.getExpectedQty() == null
                                                 || item.getExpectedQty().compareTo(BigDecimal.ZERO) <= 0)
                                         continue;
 
                                 // Upsert vào inventory_snapshot tại staging location
-                                jdbcTemplate.update(
-                                                "INSERT INTO inventory_snapshot (warehouse_id, sku_id, lot_id, location_id, quantity, reserved_qty) "
-                                                                +
-                                                                "VALUES (?, ?, NULL, ?, ?, 0) " +
-                                                                // FIX: phải dùng generated column lot_id_safe thay vì
-                                                                // expression COALESCE(lot_id,0)
-                                                                // vì ON CONFLICT phải khớp đúng tên cột trong PRIMARY
-                                                                // KEY constraint
-                                                                "ON CONFLICT (warehouse_id, sku_id, lot_id_safe, location_id) "
-                                                                +
-                                                                "DO UPDATE SET quantity = inventory_snapshot.quantity + EXCLUDED.quantity, "
-                                                                +
-                                                                "last_updated = NOW()",
-                                                order.getWarehouseId(), item.getSkuId(), stagingLocationId,
-                                                item.getExpectedQty());
-
-                                // Ghi inventory transaction type = RECEIVING_PENDING
-                                jdbcTemplate.update(
-                                                "INSERT INTO inventory_transactions " +
-                                                                "(warehouse_id, sku_id, lot_id, location_id, quantity, txn_type, reference_table, reference_id, created_by) "
-                                                                +
-                                                                "VALUES (?, ?, NULL, ?, ?, 'RECEIVING_PENDING', 'receiving_orders', ?, ?)",
-                                                order.getWarehouseId(), item.getSkuId(), stagingLocationId,
-                                                item.getExpectedQty(), order.getReceivingId(), userId);
+                                // + ghi inventory transaction type = RECEIVING_PENDING
+                                movements.add(InventoryMovementWriter.Movement.builder()
+                                                .warehouseId(order.getWarehouseId())
+                                                .skuId(item.getSkuId())
+                                                .locationId(stagingLocationId)
+                                                .quantity(item.getExpectedQty())
+                                                .txnType("RECEIVING_PENDING")
+                                                .referenceTable("receiving_orders")
+                                                .referenceId(order.getReceivingId())
+                                                .createdBy(userId)
+                                                .build());
                         }
+                        movementWriter.flush(movements);
                         log.info("Z-INB: Added {} items to staging location {} for receiving order {}",
                                         items.size(), stagingLocationId, order.getReceivingCode());
                 } catch (Exception e) {
@@ -7,6 +7,7 @@ import org.example.sep26management.application.dto.response.ApiResponse;
 import org.example.sep26management.application.dto.response.ScanSessionResponse;
 import org.example.sep26management.application.dto.scan.ScanLineItem;
 import org.example.sep26management.application.dto.scan.ScanSessionData;
+import org.example.sep26management.infrastructure.ScanSessionEventRelay;
 import org.example.sep26management.infrastructure.SseEmitterRegistry;
 import org.example.sep26management.infrastructure.persistence.entity.ReceivingItemEntity;
 import org.example.sep26management.infrastructure.persistence.entity.ReceivingOrderEntity;
@@ -35,6 +36,7 @@ public class ReceivingSessionService {
         private final ScanSessionRedisRepository sessionRedis;
         private final JwtTokenProvider jwtTokenProvider;
         private final SseEmitterRegistry sseRegistry;
+        private final ScanSessionEventRelay eventRelay;
         private final ReceivingOrderJpaRepository receivingOrderRepo;
         private final ReceivingItemJpaRepository receivingItemRepo;
         private final SupplierJpaRepository supplierRepo;
@@ -127,23 +129,36 @@ public class ReceivingSessionService {
 
         // ─── SSE stream ──────────────────────────────────────────────────────────
 
-        public SseEmitter stream(String sessionId) {
+        /**
+         * lastEventId: header Last-Event-ID khi EventSource tự reconnect → chỉ gửi các delta bị lỡ
+         * (ring buffer trong Redis); kết nối mới hoặc lỡ quá nhiều → snapshot đầy đủ.
+         */
+        public SseEmitter stream(String sessionId, String lastEventId) {
                 // Validate session exists
-                sessionRedis.findById(sessionId)
-                                .orElseThrow(() -> new RuntimeException("Session not found: " + sessionId));
+                if (!sessionRedis.exists(sessionId)) {
+                        throw new RuntimeException("Session not found: " + sessionId);
+                }
 
+                Long lastSeq = parseEventId(lastEventId);
                 SseEmitter emitter = new SseEmitter(600_000L); // 10 min timeout
-                sseRegistry.register(sessionId, emitter);
+                sseRegistry.register(sessionId, emitter, lastSeq);
 
-                // Send initial snapshot immediately
-                ScanSessionData data = sessionRedis.findById(sessionId).orElse(null);
-                if (data != null) {
-                        sseRegistry.send(sessionId, data);
-                }
+                // Register trước rồi mới đọc buffer → delta PUBLISH trong lúc này không bị lỡ (registry bỏ seq trùng)
+                eventRelay.resync(sessionId, lastSeq);
 
                 return emitter;
         }
 
+        private static Long parseEventId(String lastEventId) {
+                if (lastEventId == null || lastEventId.isBlank())
+                        return null;
+                try {
+                        return Long.valueOf(lastEventId.trim());
+                } catch (NumberFormatException e) {
+                        return null;
+                }
+        }
+
         // ─── Delete session ───────────────────────────────────────────────────────
 
         public ApiResponse<Void> deleteSession(String sessionId) {
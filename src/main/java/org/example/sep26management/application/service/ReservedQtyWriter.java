@@ -0,0 +1,202 @@
+package org.example.sep26management.application.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Ghi thay đổi reserved_qty theo (location, sku, lot) — allocate, huỷ allocate, confirm pick.
+ *
+ * 2 chế độ (inventory.reservation.delta-mode):
+ *   - false (mặc định): UPDATE inventory_snapshot tại chỗ, 1 statement cho cả batch.
+ *   - true: append vào inventory_reservation_deltas (không khoá dòng snapshot);
+ *     mergePendingDeltas() gộp định kỳ vào inventory_snapshot.
+ *
+ * Query availability (ATP, FEFO plan) LEFT JOIN view inventory_reserved_pending nên luôn thấy
+ * snapshot + delta chưa gộp. Việc gộp là 1 statement (DELETE ... RETURNING → UPDATE) nên
+ * reader không bao giờ thấy delta bị tính 2 lần hoặc bị mất. Delta chưa có dòng snapshot tương ứng
+ * không bị xoá — nằm lại chờ lần gộp sau, được đếm vào unmatchedDeltas và log cảnh báo.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ReservedQtyWriter {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final BinCapacityIndexService binCapacityIndex;
+
+    @Value("${inventory.reservation.delta-mode:false}")
+    private boolean deltaMode;
+
+    @Value("${inventory.reservation.merge-batch-size:10000}")
+    private int mergeBatchSize;
+
+    /** Số delta còn lại sau lần gộp gần nhất mà không có dòng inventory_snapshot để cộng vào. */
+    private final AtomicLong unmatchedDeltas = new AtomicLong();
+
+    private static final String APPLY_IN_PLACE_SQL = """
+            UPDATE inventory_snapshot s
+            SET reserved_qty = GREATEST(0, s.reserved_qty + d.qty), last_updated = NOW()
+            FROM unnest(?::bigint[], ?::bigint[], ?::bigint[], ?::numeric[]) AS d(location_id, sku_id, lot_id, qty)
+            WHERE s.location_id = d.location_id
+              AND s.sku_id      = d.sku_id
+              AND s.lot_id IS NOT DISTINCT FROM d.lot_id
+            """;
+
+    private static final String APPEND_DELTAS_SQL = """
+            INSERT INTO inventory_reservation_deltas (warehouse_id, location_id, sku_id, lot_id, qty)
+            SELECT d.warehouse_id, d.location_id, d.sku_id, d.lot_id, d.qty
+            FROM unnest(?::bigint[], ?::bigint[], ?::bigint[], ?::bigint[], ?::numeric[])
+                 AS d(warehouse_id, location_id, sku_id, lot_id, qty)
+            """;
+
+    private static final String MERGE_SQL = """
+            WITH moved AS (
+                DELETE FROM inventory_reservation_deltas
+                WHERE delta_id IN (
+                    SELECT d.delta_id FROM inventory_reservation_deltas d
+                    WHERE EXISTS (
+                        SELECT 1 FROM inventory_snapshot s
+                        WHERE s.location_id = d.location_id
+                          AND s.sku_id      = d.sku_id
+                          AND s.lot_id IS NOT DISTINCT FROM d.lot_id)
+                    ORDER BY d.delta_id
+                    LIMIT ?)
+                RETURNING location_id, sku_id, lot_id, qty
+            ),
+            agg AS (
+                SELECT location_id, sku_id, lot_id, SUM(qty) AS qty
+                FROM moved
+                GROUP BY location_id, sku_id, lot_id
+            )
+            UPDATE inventory_snapshot s
+            SET reserved_qty = GREATEST(0, s.reserved_qty + a.qty), last_updated = NOW()
+            FROM agg a
+            WHERE s.location_id = a.location_id
+              AND s.sku_id      = a.sku_id
+              AND s.lot_id IS NOT DISTINCT FROM a.lot_id
+            """;
+
+    private static final String UNMATCHED_DELTAS_SQL = """
+            SELECT COUNT(*) FROM inventory_reservation_deltas d
+            WHERE NOT EXISTS (
+                SELECT 1 FROM inventory_snapshot s
+                WHERE s.location_id = d.location_id
+                  AND s.sku_id      = d.sku_id
+                  AND s.lot_id IS NOT DISTINCT FROM d.lot_id)
+            """;
+
+    /** Cộng/trừ reserved_qty cho 1 dòng snapshot. */
+    public void adjust(Long warehouseId, Long locationId, Long skuId, Long lotId, BigDecimal qty) {
+        apply(List.of(new ReservedDelta(warehouseId, locationId, skuId, lotId, qty)));
+    }
+
+    /**
+     * Cộng/trừ reserved_qty cho nhiều dòng snapshot trong 1 statement.
+     * Các delta trùng (location, sku, lot) được gộp trước — UPDATE ... FROM chỉ áp 1 dòng nguồn / dòng đích.
+     */
+    public void apply(Collection<ReservedDelta> deltas) {
+        if (deltas.isEmpty()) return;
+        Map<ReservedDelta.Key, BigDecimal> merged = new LinkedHashMap<>();
+        deltas.forEach(d -> merged.merge(d.key(), d.qty(), BigDecimal::add));
+
+        List<Long> warehouseIds = new ArrayList<>(), locationIds = new ArrayList<>(),
+                skuIds = new ArrayList<>(), lotIds = new ArrayList<>();
+        List<BigDecimal> qtys = new ArrayList<>();
+        merged.forEach((key, qty) -> {
+            if (qty.signum() == 0) return;
+            warehouseIds.add(key.warehouseId());
+            locationIds.add(key.locationId());
+            skuIds.add(key.skuId());
+            lotIds.add(key.lotId());
+            qtys.add(qty);
+        });
+        if (qtys.isEmpty()) return;
+
+        if (deltaMode) {
+            jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement(APPEND_DELTAS_SQL);
+                ps.setArray(1, bigintArray(con, warehouseIds));
+                ps.setArray(2, bigintArray(con, locationIds));
+                ps.setArray(3, bigintArray(con, skuIds));
+                ps.setArray(4, bigintArray(con, lotIds));
+                ps.setArray(5, con.createArrayOf("numeric", qtys.toArray()));
+                return ps;
+            });
+        } else {
+            jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement(APPLY_IN_PLACE_SQL);
+                ps.setArray(1, bigintArray(con, locationIds));
+                ps.setArray(2, bigintArray(con, skuIds));
+                ps.setArray(3, bigintArray(con, lotIds));
+                ps.setArray(4, con.createArrayOf("numeric", qtys.toArray()));
+                return ps;
+            });
+        }
+        binCapacityIndex.touchLocations(locationIds);
+    }
+
+    /**
+     * Gộp delta vào inventory_snapshot. Chỉ chạy ở delta mode; mỗi lần tối đa merge-batch-size delta,
+     * lặp lại tới khi hết backlog. Tổng reserved không đổi → không cần refresh ATP index.
+     */
+    @Scheduled(fixedDelayString = "${inventory.reservation.merge-interval-ms:1000}")
+    public void mergePendingDeltas() {
+        if (!deltaMode) return;
+        try {
+            int merged;
+            do {
+                merged = jdbcTemplate.update(MERGE_SQL, mergeBatchSize);
+                if (merged > 0) log.debug("Reservation deltas merged into {} snapshot rows", merged);
+            } while (merged > 0 && hasPendingDeltas());
+            countUnmatchedDeltas();
+        } catch (Exception e) {
+            log.warn("Reservation delta merge failed, will retry: {}", e.getMessage());
+        }
+    }
+
+    public long getUnmatchedDeltas() {
+        return unmatchedDeltas.get();
+    }
+
+    private void countUnmatchedDeltas() {
+        Long count = jdbcTemplate.queryForObject(UNMATCHED_DELTAS_SQL, Long.class);
+        long unmatched = count != null ? count : 0;
+        if (unmatchedDeltas.getAndSet(unmatched) != unmatched && unmatched > 0) {
+            log.warn("{} reservation deltas have no matching inventory_snapshot row, kept pending", unmatched);
+        }
+    }
+
+    private boolean hasPendingDeltas() {
+        return Boolean.TRUE.equals(jdbcTemplate.queryForObject(
+                "SELECT EXISTS (SELECT 1 FROM inventory_reservation_deltas)", Boolean.class));
+    }
+
+    private static java.sql.Array bigintArray(Connection con, List<Long> values) throws SQLException {
+        return con.createArrayOf("bigint", values.toArray());
+    }
+
+    /** Thay đổi reserved_qty (dương = reserve, âm = huỷ reserve / đã pick). */
+    public record ReservedDelta(Long warehouseId, Long locationId, Long skuId, Long lotId, BigDecimal qty) {
+
+        record Key(Long warehouseId, Long locationId, Long skuId, Long lotId) {}
+
+        Key key() {
+            return new Key(warehouseId, locationId, skuId, lotId);
+        }
+    }
+}
@@ -2,32 +2,34 @@ package org.example.sep26management.application.service;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.example.sep26management.application.dto.request.ScanBatchRequest;
 import org.example.sep26management.application.dto.request.ScanEventRequest;
 import org.example.sep26management.application.dto.response.ApiResponse;
 import org.example.sep26management.application.dto.scan.ScanLineItem;
-import org.example.sep26management.application.dto.scan.ScanSessionData;
 import org.example.sep26management.infrastructure.SseEmitterRegistry;
 import org.example.sep26management.infrastructure.persistence.entity.ReceivingItemEntity;
-import org.example.sep26management.infrastructure.persistence.entity.ReceivingOrderEntity;
-import org.example.sep26management.infrastructure.persistence.entity.SkuEntity;
+import org.example.sep26management.application.service.SkuLookupCacheService.SkuRef;
 import org.example.sep26management.infrastructure.persistence.redis.ScanSessionRedisRepository;
 import org.example.sep26management.infrastructure.persistence.repository.ReceivingItemJpaRepository;
-import org.example.sep26management.infrastructure.persistence.repository.ReceivingOrderJpaRepository;
-import org.example.sep26management.infrastructure.persistence.repository.SkuJpaRepository;
 import org.example.sep26management.infrastructure.security.JwtTokenProvider;
 import org.example.sep26management.application.service.OutboundQcService;
 import org.example.sep26management.application.dto.request.QcScanRequest;
 import org.example.sep26management.infrastructure.persistence.repository.PickingTaskItemJpaRepository;
 import org.example.sep26management.infrastructure.persistence.repository.PickingTaskJpaRepository;
-import org.example.sep26management.infrastructure.persistence.repository.SkuJpaRepository;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
 
 @Service
 @RequiredArgsConstructor
@@ -36,12 +38,12 @@ public class ScanEventService {
 
     private final JwtTokenProvider jwtTokenProvider;
     private final ScanSessionRedisRepository sessionRedis;
-    private final SkuJpaRepository skuRepository;
+    private final SkuLookupCacheService skuLookupCache;
     private final SseEmitterRegistry sseRegistry;
-    private final ReceivingOrderJpaRepository receivingOrderRepo;
     private final ReceivingItemJpaRepository receivingItemRepo;
     private final OutboundQcService outboundQcService;
     private final PickingTaskItemJpaRepository pickingTaskItemRepository;
+    private final NamedParameterJdbcTemplate namedJdbcTemplate;
 
     /**
      * Process a barcode scan event sent from the iPhone/Tablet.
@@ -49,14 +51,9 @@ public class ScanEventService {
      */
     public ApiResponse<Map<String, Object>> processScan(String scanToken, ScanEventRequest request) {
         // 1. Extract sessionId
-        String sessionId;
-        if (jwtTokenProvider.isScanToken(scanToken)) {
-            sessionId = jwtTokenProvider.getSessionIdFromScanToken(scanToken);
-        } else {
-            if (request.getSessionId() == null || request.getSessionId().isBlank()) {
-                return ApiResponse.error("sessionId is required when calling with a regular user JWT token");
-            }
-            sessionId = request.getSessionId();
+        String sessionId = resolveSessionId(scanToken, request.getSessionId());
+        if (sessionId == null) {
+            return ApiResponse.error("sessionId is required when calling with a regular user JWT token");
         }
 
         // ── Outbound QC mode: điện thoại scan barcode SKU → gọi qcScanItem trực tiếp ──
@@ -64,119 +61,223 @@ public class ScanEventService {
             return processOutboundQcScan(request, sessionId);
         }
 
-        // 2. Load session from Redis
-        ScanSessionData session = sessionRedis.findById(sessionId)
-                .orElseThrow(() -> new RuntimeException("Scan session expired or not found: " + sessionId));
-
-        // 3. Lookup SKU by barcode, fallback to skuCode (for manual input)
-        Optional<SkuEntity> skuOpt = skuRepository.findActiveByBarcodeWithCategory(request.getBarcode());
-        if (skuOpt.isEmpty()) {
-            skuOpt = skuRepository.findActiveBySkuCodeWithCategory(request.getBarcode());
-        }
+        // 2. Lookup SKU by barcode, fallback to skuCode (for manual input) — cached, incl. unknown codes
+        Optional<SkuRef> skuOpt = skuLookupCache.resolve(request.getBarcode());
         if (skuOpt.isEmpty()) {
             log.warn("Scan event: no active SKU found for barcode/skuCode={}", request.getBarcode());
             return ApiResponse.error("SKU not found: " + request.getBarcode());
         }
-        SkuEntity sku = skuOpt.get();
+        SkuRef sku = skuOpt.get();
 
-        // 4. Normalize condition (default PASS)
+        // 3. Normalize condition (default PASS)
         String condition = request.getCondition() != null ? request.getCondition().toUpperCase() : "PASS";
         if (!"PASS".equals(condition) && !"FAIL".equals(condition)) {
             return ApiResponse.error("Invalid condition. Must be PASS or FAIL.");
         }
 
-        // 4.1 Optional: update ReceivingItem directly if receivingId provided
-        // Wrapped in try-catch so scan session is always updated even if order update fails
-        if (request.getReceivingId() != null) {
+        // 4. 1 Redis round trip (Lua): session check + HINCRBYFLOAT (skuId + condition) + TTL refresh
+        //    + PUBLISH delta. Atomic, so concurrent phones never lose increments. Metadata is only
+        //    written on the first scan of the line; reasonCode / attachmentUrl: last wins.
+        //    SSE is pushed by ScanSessionEventRelay on whichever node holds the laptop's stream.
+        //    clientScanId already applied (phone retry) → nothing is added, the first result is returned.
+        ScanSessionRedisRepository.ScanResult result = sessionRedis.applyScan(sessionId, ScanLineItem.builder()
+                .skuId(sku.skuId())
+                .skuCode(sku.skuCode())
+                .skuName(sku.skuName())
+                .barcode(sku.barcode())
+                .qty(request.getQty())
+                .condition(condition)
+                .reasonCode(request.getReasonCode())
+                .attachmentUrl(request.getAttachmentUrl())
+                .build(), request.getClientScanId());
+        if (result.status() == ScanSessionRedisRepository.ScanStatus.SESSION_NOT_FOUND) {
+            throw new RuntimeException("Scan session expired or not found: " + sessionId);
+        }
+        BigDecimal newQty = result.qty();
+        boolean replay = result.status() == ScanSessionRedisRepository.ScanStatus.DUPLICATE;
+
+        // 5. Optional: update ReceivingItem directly if receivingId provided (1 UPDATE, skipped for
+        //    closed orders). Wrapped in try-catch so the scan is kept even if the order update fails
+        if (request.getReceivingId() != null && !replay) {
             try {
-                Long receivingId = request.getReceivingId();
-                ReceivingOrderEntity order = receivingOrderRepo.findById(receivingId)
-                        .orElseThrow(() -> new RuntimeException("Receiving order not found: " + receivingId));
-
-                String orderStatus = order.getStatus() != null ? order.getStatus().toUpperCase() : "DRAFT";
-                if (!("POSTED".equals(orderStatus) || "PUTAWAY_DONE".equals(orderStatus)
-                        || "CANCELLED".equals(orderStatus) || "REJECTED".equals(orderStatus))) {
-
-                    receivingItemRepo
-                            .findByReceivingOrderReceivingIdAndSkuId(receivingId, sku.getSkuId())
-                            .ifPresent(item -> {
-                                BigDecimal inc = request.getQty() != null ? request.getQty() : BigDecimal.ONE;
-                                BigDecimal current = item.getReceivedQty() != null ? item.getReceivedQty() : BigDecimal.ZERO;
-                                item.setReceivedQty(current.add(inc));
-                                if ("FAIL".equals(condition)) {
-                                    item.setCondition("FAIL");
-                                    item.setQcRequired(true);
-                                    if (request.getReasonCode() != null && !request.getReasonCode().isBlank()) {
-                                        item.setReasonCode(request.getReasonCode());
-                                    }
-                                    if (request.getAttachmentUrl() != null && !request.getAttachmentUrl().isBlank()) {
-                                        item.setAttachmentUrl(request.getAttachmentUrl());
-                                    }
-                                }
-                                receivingItemRepo.save(item);
-                                log.info("Updated ReceivingItem for order {}: SKU={}", receivingId, sku.getSkuCode());
-                            });
+                int updated = receivingItemRepo.addScannedQty(request.getReceivingId(), sku.skuId(),
+                        request.getQty(), "FAIL".equals(condition),
+                        request.getReasonCode(), request.getAttachmentUrl());
+                if (updated > 0) {
+                    log.info("Updated ReceivingItem for order {}: SKU={}", request.getReceivingId(), sku.skuCode());
                 }
             } catch (Exception e) {
-                // Log warning but continue — session must always be updated
                 log.warn("Could not update ReceivingItem for receivingId={}, skuCode={}: {}",
-                        request.getReceivingId(), sku.getSkuCode(), e.getMessage());
+                        request.getReceivingId(), sku.skuCode(), e.getMessage());
             }
         }
 
-        // 5. INCR qty — keyed by (skuId + condition)
-        List<ScanLineItem> lines = session.getLines();
-        Optional<ScanLineItem> existing = lines.stream()
-                .filter(l -> l.getSkuId().equals(sku.getSkuId()) && condition.equals(l.getCondition()))
-                .findFirst();
-
-        BigDecimal newQty;
-        if (existing.isPresent()) {
-            ScanLineItem line = existing.get();
-            newQty = line.getQty().add(request.getQty());
-            line.setQty(newQty);
-            // Update reasonCode if provided (last reason wins for aggregated lines)
-            if (request.getReasonCode() != null) {
-                line.setReasonCode(request.getReasonCode());
-            }
-            if (request.getAttachmentUrl() != null && !request.getAttachmentUrl().isBlank()) {
-                line.setAttachmentUrl(request.getAttachmentUrl());
-            }
+        if (replay) {
+            log.info("Scan event replay: sessionId={} clientScanId={} skuCode={} → totalQty={} (not re-applied)",
+                    sessionId, request.getClientScanId(), sku.skuCode(), newQty);
         } else {
-            newQty = request.getQty();
-            lines.add(ScanLineItem.builder()
-                    .skuId(sku.getSkuId())
-                    .skuCode(sku.getSkuCode())
-                    .skuName(sku.getSkuName())
-                    .barcode(sku.getBarcode())
-                    .qty(newQty)
-                    .condition(condition)
-                    .reasonCode(request.getReasonCode())
-                    .attachmentUrl(request.getAttachmentUrl())
-                    .build());
+            log.info("Scan event: sessionId={} barcode={} skuCode={} condition={} qty+{} → totalQty={}",
+                    sessionId, request.getBarcode(), sku.skuCode(), condition, request.getQty(), newQty);
         }
 
-        // 6. Persist updated session back to Redis (refreshes TTL)
-        sessionRedis.save(sessionId, session);
-
-        // 7. Push snapshot to SSE (laptop sees real-time update)
-        sseRegistry.send(sessionId, session);
-
-        log.info("Scan event: sessionId={} barcode={} skuCode={} condition={} qty+{} → totalQty={}",
-                sessionId, request.getBarcode(), sku.getSkuCode(), condition, request.getQty(), newQty);
-
         // Map.of() throws NullPointerException if any value is null
         // Use HashMap instead to safely handle null barcode
         java.util.Map<String, Object> resultData = new java.util.HashMap<>();
-        resultData.put("skuId", sku.getSkuId());
-        resultData.put("skuCode", sku.getSkuCode());
-        resultData.put("skuName", sku.getSkuName() != null ? sku.getSkuName() : "");
-        resultData.put("barcode", sku.getBarcode() != null ? sku.getBarcode() : "");
+        resultData.put("skuId", sku.skuId());
+        resultData.put("skuCode", sku.skuCode());
+        resultData.put("skuName", sku.skuName() != null ? sku.skuName() : "");
+        resultData.put("barcode", sku.barcode() != null ? sku.barcode() : "");
         resultData.put("condition", condition);
         resultData.put("newQty", newQty);
         return ApiResponse.success("Scanned", resultData);
     }
 
+    /**
+     * Batch scan từ thiết bị đã buffer khi mất sóng. Các event xử lý đúng thứ tự gửi lên:
+     * 1 query IN cho mọi barcode / skuCode, 1 Redis pipeline (mỗi event 1 EVALSHA, clientScanId
+     * đã xử lý → DUPLICATE), 1 JDBC batch cộng receiving_items, 1 snapshot SSE cho cả batch.
+     * Event lỗi (thiếu barcode, qty ≤ 0, condition sai, SKU không tồn tại) không chặn các event khác.
+     */
+    public ApiResponse<Map<String, Object>> processBatch(String scanToken, ScanBatchRequest request) {
+        String sessionId = resolveSessionId(scanToken, request.getSessionId());
+        if (sessionId == null) {
+            return ApiResponse.error("sessionId is required when calling with a regular user JWT token");
+        }
+
+        List<ScanBatchRequest.Event> events = request.getEvents();
+        List<Map<String, Object>> results = new ArrayList<>(events.size());
+        String[] conditions = new String[events.size()];
+        Set<String> codes = new LinkedHashSet<>();
+        for (int i = 0; i < events.size(); i++) {
+            ScanBatchRequest.Event event = events.get(i);
+            Map<String, Object> result = new HashMap<>();
+            result.put("index", i);
+            result.put("clientScanId", event.getClientScanId());
+            results.add(result);
+
+            String condition = event.getCondition() != null ? event.getCondition().toUpperCase() : "PASS";
+            String error = event.getBarcode() == null || event.getBarcode().isBlank() ? "barcode is required"
+                    : event.getQty() == null || event.getQty().compareTo(BigDecimal.ZERO) <= 0 ? "qty must be positive"
+                    : !"PASS".equals(condition) && !"FAIL".equals(condition) ? "Invalid condition. Must be PASS or FAIL."
+                    : event.getClientScanId() != null && event.getClientScanId().length() > 64
+                            ? "clientScanId must be at most 64 characters" : null;
+            if (error != null) {
+                result.put("status", "INVALID");
+                result.put("message", error);
+                continue;
+            }
+            conditions[i] = condition;
+            codes.add(event.getBarcode());
+        }
+
+        // 1. Barcode / skuCode chưa cache tra chung 1 query IN; barcode khớp trước, skuCode sau (như scan lẻ)
+        Map<String, SkuRef> resolved = codes.isEmpty() ? Map.of() : skuLookupCache.resolveAll(codes);
+
+        List<ScanSessionRedisRepository.ScanCommand> commands = new ArrayList<>();
+        List<Integer> commandIndex = new ArrayList<>();
+        SkuRef[] skus = new SkuRef[events.size()];
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < events.size(); i++) {
+            if (conditions[i] == null) continue;
+            ScanBatchRequest.Event event = events.get(i);
+            SkuRef sku = resolved.get(event.getBarcode());
+            if (sku == null) {
+                results.get(i).put("status", "SKU_NOT_FOUND");
+                results.get(i).put("message", "SKU not found: " + event.getBarcode());
+                continue;
+            }
+            skus[i] = sku;
+            long scannedAt = event.getCapturedAt() != null
+                    ? event.getCapturedAt().toInstant().toEpochMilli() : now;
+            commands.add(new ScanSessionRedisRepository.ScanCommand(ScanLineItem.builder()
+                    .skuId(sku.skuId())
+                    .skuCode(sku.skuCode())
+                    .skuName(sku.skuName())
+                    .barcode(sku.barcode())
+                    .qty(event.getQty())
+                    .condition(conditions[i])
+                    .reasonCode(event.getReasonCode())
+                    .attachmentUrl(event.getAttachmentUrl())
+                    .build(), event.getClientScanId(), scannedAt));
+            commandIndex.add(i);
+        }
+
+        // 2. Mọi increment trong 1 Redis pipeline
+        List<ScanSessionRedisRepository.ScanResult> applied = sessionRedis.applyScans(sessionId, commands);
+        if (!applied.isEmpty() && applied.get(0).status() == ScanSessionRedisRepository.ScanStatus.SESSION_NOT_FOUND) {
+            throw new RuntimeException("Scan session expired or not found: " + sessionId);
+        }
+
+        List<MapSqlParameterSource> receivingRows = new ArrayList<>();
+        int appliedCount = 0;
+        int duplicateCount = 0;
+        for (int k = 0; k < applied.size(); k++) {
+            int i = commandIndex.get(k);
+            ScanSessionRedisRepository.ScanResult scan = applied.get(k);
+            ScanBatchRequest.Event event = events.get(i);
+            SkuRef sku = skus[i];
+            Map<String, Object> result = results.get(i);
+            result.put("status", scan.status().name());
+            result.put("skuId", sku.skuId());
+            result.put("skuCode", sku.skuCode());
+            result.put("skuName", sku.skuName() != null ? sku.skuName() : "");
+            result.put("barcode", sku.barcode() != null ? sku.barcode() : "");
+            result.put("condition", conditions[i]);
+            result.put("newQty", scan.qty());
+            if (scan.status() == ScanSessionRedisRepository.ScanStatus.DUPLICATE) {
+                duplicateCount++;
+            } else if (scan.status() == ScanSessionRedisRepository.ScanStatus.APPLIED) {
+                appliedCount++;
+                if (request.getReceivingId() != null) {
+                    receivingRows.add(new MapSqlParameterSource()
+                            .addValue("receivingId", request.getReceivingId())
+                            .addValue("skuId", sku.skuId())
+                            .addValue("qty", event.getQty())
+                            .addValue("fail", "FAIL".equals(conditions[i]))
+                            .addValue("reasonCode", event.getReasonCode())
+                            .addValue("attachmentUrl", event.getAttachmentUrl()));
+                }
+            }
+        }
+
+        // 3. receiving_items của phiếu: 1 JDBC batch, cùng câu UPDATE với scan lẻ, mỗi event 1 dòng theo thứ tự
+        if (!receivingRows.isEmpty()) {
+            try {
+                namedJdbcTemplate.batchUpdate(ReceivingItemJpaRepository.ADD_SCANNED_QTY_SQL,
+                        receivingRows.toArray(new MapSqlParameterSource[0]));
+            } catch (Exception e) {
+                log.warn("Could not update ReceivingItems for receivingId={} from scan batch: {}",
+                        request.getReceivingId(), e.getMessage());
+            }
+        }
+
+        // 4. 1 snapshot SSE cho cả batch
+        if (appliedCount > 0) {
+            sessionRedis.publishBatch(sessionId, appliedCount);
+        }
+
+        int rejectedCount = events.size() - appliedCount - duplicateCount;
+        log.info("Scan batch: sessionId={} events={} applied={} duplicate={} rejected={}",
+                sessionId, events.size(), appliedCount, duplicateCount, rejectedCount);
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("sessionId", sessionId);
+        data.put("total", events.size());
+        data.put("applied", appliedCount);
+        data.put("duplicate", duplicateCount);
+        data.put("rejected", rejectedCount);
+        data.put("results", results);
+        return ApiResponse.success("Batch processed", data);
+    }
+
+    /** sessionId từ scan token, hoặc từ body khi gọi bằng JWT user thường (null nếu thiếu). */
+    private String resolveSessionId(String scanToken, String requestSessionId) {
+        if (jwtTokenProvider.isScanToken(scanToken)) {
+            return jwtTokenProvider.getSessionIdFromScanToken(scanToken);
+        }
+        return requestSessionId != null && !requestSessionId.isBlank() ? requestSessionId : null;
+    }
+
     /**
      * Remove a specific scan line item from the session.
      * Used when Keeper scans an item incorrectly and needs to undo.
@@ -187,48 +288,41 @@ public class ScanEventService {
      */
     public ApiResponse<Map<String, Object>> removeScanItem(String sessionId, Long skuId, String condition,
                                                            BigDecimal qtyToRemove, Long receivingId) {
-        ScanSessionData session = sessionRedis.findById(sessionId)
-                .orElseThrow(() -> new RuntimeException("Scan session expired or not found: " + sessionId));
+        if (!sessionRedis.exists(sessionId)) {
+            throw new RuntimeException("Scan session expired or not found: " + sessionId);
+        }
 
         String normalizedCondition = condition != null ? condition.toUpperCase() : "PASS";
-        List<ScanLineItem> lines = session.getLines();
+        Optional<BigDecimal> lineQty = sessionRedis.lineQty(sessionId, skuId, normalizedCondition);
 
-        Optional<ScanLineItem> targetLine = lines.stream()
-                .filter(l -> l.getSkuId().equals(skuId) && normalizedCondition.equals(l.getCondition()))
-                .findFirst();
-
-        if (targetLine.isEmpty()) {
+        if (lineQty.isEmpty()) {
             return ApiResponse
                     .error("Item not found in session: skuId=" + skuId + ", condition=" + normalizedCondition);
         }
 
-        ScanLineItem line = targetLine.get();
-
         if (qtyToRemove != null && qtyToRemove.compareTo(BigDecimal.ZERO) > 0) {
-            BigDecimal remainingQty = line.getQty().subtract(qtyToRemove);
+            BigDecimal remainingQty = sessionRedis.decrement(sessionId, skuId, normalizedCondition, qtyToRemove);
             if (remainingQty.compareTo(BigDecimal.ZERO) <= 0) {
-                lines.remove(line);
                 log.info("Scan item fully removed (qty <= 0): sessionId={} skuId={} condition={}", sessionId, skuId,
                         normalizedCondition);
             } else {
-                line.setQty(remainingQty);
                 log.info("Scan item partially removed: sessionId={} skuId={} condition={}, removed={}, remaining={}",
                         sessionId, skuId, normalizedCondition, qtyToRemove, remainingQty);
             }
         } else {
-            lines.remove(line);
+            sessionRedis.removeLine(sessionId, skuId, normalizedCondition);
             log.info("Scan item fully removed (no qty specified): sessionId={} skuId={} condition={}", sessionId, skuId,
                     normalizedCondition);
         }
 
-        sessionRedis.save(sessionId, session);
-        sseRegistry.send(sessionId, session);
+        // delta (qty còn lại / removed) → laptop qua pub/sub như scan
+        sessionRedis.publishLineChange(sessionId, skuId, normalizedCondition);
 
         // Also decrement receivingItem.receivedQty if receivingId was provided
         if (receivingId != null) {
             try {
                 BigDecimal decrement = qtyToRemove != null && qtyToRemove.compareTo(BigDecimal.ZERO) > 0
-                        ? qtyToRemove : line.getQty();
+                        ? qtyToRemove : lineQty.get();
                 receivingItemRepo.findByReceivingOrderReceivingIdAndSkuId(receivingId, skuId)
                         .ifPresent(item -> {
                             BigDecimal current = item.getReceivedQty() != null ? item.getReceivedQty() : BigDecimal.ZERO;
@@ -246,7 +340,7 @@ public class ScanEventService {
         return ApiResponse.success("Item updated/removed from scan session", Map.of(
                 "skuId", skuId,
                 "condition", normalizedCondition,
-                "remainingLines", lines.size()));
+                "remainingLines", sessionRedis.lineCount(sessionId)));
     }
     /**
      * Xử lý scan event cho outbound QC.
@@ -259,26 +353,25 @@ public class ScanEventService {
         String reasonCode = request.getReasonCode();
 
         // Tìm SKU theo barcode hoặc skuCode
-        Optional<SkuEntity> skuOpt = skuRepository.findActiveByBarcodeWithCategory(barcode);
-        if (skuOpt.isEmpty()) skuOpt = skuRepository.findActiveBySkuCodeWithCategory(barcode);
+        Optional<SkuRef> skuOpt = skuLookupCache.resolve(barcode);
         if (skuOpt.isEmpty()) {
             log.warn("Outbound QC scan: SKU not found for barcode={}", barcode);
             return ApiResponse.error("SKU không tìm thấy: " + barcode);
         }
-        SkuEntity sku = skuOpt.get();
+        SkuRef sku = skuOpt.get();
 
         // Tìm picking task item thuộc task này và đúng SKU, chưa scan
         var items = pickingTaskItemRepository.findByPickingTaskId(taskId);
         var taskItem = items.stream()
-                .filter(i -> i.getSkuId().equals(sku.getSkuId()) && i.getQcScannedAt() == null)
+                .filter(i -> i.getSkuId().equals(sku.skuId()) && i.getQcScannedAt() == null)
                 .findFirst()
                 .orElse(items.stream()
-                        .filter(i -> i.getSkuId().equals(sku.getSkuId()))
+                        .filter(i -> i.getSkuId().equals(sku.skuId()))
                         .findFirst()
                         .orElse(null));
 
         if (taskItem == null) {
-            return ApiResponse.error("Không tìm thấy mặt hàng " + sku.getSkuCode() + " trong Pick List #" + taskId);
+            return ApiResponse.error("Không tìm thấy mặt hàng " + sku.skuCode() + " trong Pick List #" + taskId);
         }
 
         // Gọi qcScanItem
@@ -294,13 +387,12 @@ public class ScanEventService {
             }
             outboundQcService.scanItem(qcReq, null);
 
-            log.info("Outbound QC scan OK: taskId={}, SKU={}, result={}", taskId, sku.getSkuCode(), condition);
+            log.info("Outbound QC scan OK: taskId={}, SKU={}, result={}", taskId, sku.skuCode(), condition);
 
             // Push SSE update nếu có session
             if (sessionId != null) {
                 try {
-                    var sessionOpt = sessionRedis.findById(sessionId);
-                    if (sessionOpt.isPresent()) {
+                    if (sessionRedis.exists(sessionId)) {
                         // Check if all items are now scanned
                         var allItems = pickingTaskItemRepository.findByPickingTaskId(taskId);
                         long pendingCount = allItems.stream().filter(i -> i.getQcScannedAt() == null).count();
@@ -310,8 +402,8 @@ public class ScanEventService {
                         long holdCount = allItems.stream().filter(i -> "HOLD".equals(i.getQcResult())).count();
                         sseRegistry.send(sessionId, Map.of(
                                 "type", "qc_scan",
-                                "skuCode", sku.getSkuCode(),
-                                "skuName", sku.getSkuName() != null ? sku.getSkuName() : "",
+                                "skuCode", sku.skuCode(),
+                                "skuName", sku.skuName() != null ? sku.skuName() : "",
                                 "result", condition,
                                 "taskItemId", taskItem.getPickingTaskItemId(),
                                 "allScanned", allScanned,
@@ -324,9 +416,9 @@ public class ScanEventService {
                 } catch (Exception ignored) {}
             }
 
-            return ApiResponse.success("QC " + condition + " — " + sku.getSkuCode(), Map.of(
-                    "skuCode", sku.getSkuCode(),
-                    "skuName", sku.getSkuName() != null ? sku.getSkuName() : "",
+            return ApiResponse.success("QC " + condition + " — " + sku.skuCode(), Map.of(
+                    "skuCode", sku.skuCode(),
+                    "skuName", sku.skuName() != null ? sku.skuName() : "",
                     "result", condition,
                     "taskItemId", taskItem.getPickingTaskItemId(),
                     "newQty", taskItem.getRequiredQty()
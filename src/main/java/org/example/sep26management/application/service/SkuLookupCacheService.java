@@ -0,0 +1,234 @@
+package org.example.sep26management.application.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sep26management.infrastructure.persistence.entity.SkuEntity;
+import org.example.sep26management.infrastructure.persistence.repository.SkuJpaRepository;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Cache barcode / skuCode → SKU active cho đường scan (ScanEventService).
+ *
+ * - Key "B:{barcode}" và "C:{skuCode}", LRU tối đa scan.sku-cache.max-entries entry.
+ * - Không tìm thấy cũng được cache (negative) với TTL ngắn hơn — barcode lạ quét lại không
+ *   tốn 2 query mỗi lần.
+ * - SkuService thêm / đổi SKU → invalidate sau commit, broadcast qua Redis pub/sub
+ *   (kênh {@link #INVALIDATE_CHANNEL}) để node khác bỏ entry tương ứng. TTL là chốt chặn
+ *   cho thay đổi ngoài service / tin pub/sub bị lỡ.
+ * - Metric: scan.sku.cache.requests{result=hit|negative_hit|miss}, scan.sku.cache.size.
+ */
+@Service
+@Slf4j
+public class SkuLookupCacheService implements MessageListener {
+
+    public static final String INVALIDATE_CHANNEL = "sku:lookup-cache:invalidate";
+
+    private static final String BARCODE = "B:";
+    private static final String SKU_CODE = "C:";
+
+    /** Phần SKU mà scan cần (không giữ entity JPA giữa các request). */
+    public record SkuRef(Long skuId, String skuCode, String skuName, String barcode) {
+    }
+
+    private final SkuJpaRepository skuRepo;
+    private final StringRedisTemplate redisTemplate;
+
+    @Value("${scan.sku-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${scan.sku-cache.max-entries:20000}")
+    private int maxEntries;
+
+    @Value("${scan.sku-cache.ttl-seconds:600}")
+    private long ttlSeconds;
+
+    @Value("${scan.sku-cache.negative-ttl-seconds:30}")
+    private long negativeTtlSeconds;
+
+    private final Map<String, Cached> entries = Collections.synchronizedMap(
+            new LinkedHashMap<>(256, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+                    return size() > maxEntries;
+                }
+            });
+    private final AtomicLong generation = new AtomicLong();
+
+    private final Counter hits;
+    private final Counter negativeHits;
+    private final Counter misses;
+
+    public SkuLookupCacheService(SkuJpaRepository skuRepo,
+                                 StringRedisTemplate redisTemplate,
+                                 MeterRegistry meterRegistry) {
+        this.skuRepo = skuRepo;
+        this.redisTemplate = redisTemplate;
+        this.hits = Counter.builder("scan.sku.cache.requests").tag("result", "hit")
+                .description("Tra barcode / skuCode trả từ cache (có SKU)")
+                .register(meterRegistry);
+        this.negativeHits = Counter.builder("scan.sku.cache.requests").tag("result", "negative_hit")
+                .description("Tra barcode / skuCode trả từ cache (không có SKU)")
+                .register(meterRegistry);
+        this.misses = Counter.builder("scan.sku.cache.requests").tag("result", "miss")
+                .description("Tra barcode / skuCode phải query DB")
+                .register(meterRegistry);
+        Gauge.builder("scan.sku.cache.size", entries, Map::size)
+                .description("Số entry đang cache (cả negative)")
+                .register(meterRegistry);
+    }
+
+    // ─── Đọc ────────────────────────────────────────────────────────────────────
+
+    /** SKU active theo barcode, không có thì theo skuCode (nhập tay) — như scan. */
+    public Optional<SkuRef> resolve(String code) {
+        if (code == null) return Optional.empty();
+        Optional<SkuRef> byBarcode = lookup(BARCODE + code, () -> skuRepo.findActiveByBarcodeWithCategory(code));
+        if (byBarcode.isPresent()) return byBarcode;
+        return lookup(SKU_CODE + code, () -> skuRepo.findActiveBySkuCodeWithCategory(code));
+    }
+
+    /** Như resolve cho nhiều code; các code chưa cache tra chung 1 query IN. Code không có SKU vắng mặt. */
+    public Map<String, SkuRef> resolveAll(Collection<String> codes) {
+        Map<String, SkuRef> result = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        long now = System.currentTimeMillis();
+        for (String code : codes) {
+            if (code == null) continue;
+            Cached byBarcode = fresh(BARCODE + code, now);
+            Cached bySkuCode = byBarcode != null && byBarcode.value().isEmpty() ? fresh(SKU_CODE + code, now) : null;
+            Cached hit = byBarcode != null && byBarcode.value().isPresent() ? byBarcode : bySkuCode;
+            if (hit == null) {
+                missing.add(code);
+                continue;
+            }
+            (hit.value().isPresent() ? hits : negativeHits).increment();
+            hit.value().ifPresent(sku -> result.put(code, sku));
+        }
+        if (missing.isEmpty()) return result;
+
+        misses.increment(missing.size());
+        long gen = generation.get();
+        Map<String, SkuRef> byBarcode = new HashMap<>();
+        Map<String, SkuRef> bySkuCode = new HashMap<>();
+        for (SkuEntity sku : skuRepo.findActiveByBarcodeOrSkuCodeInWithCategory(missing)) {
+            SkuRef ref = toRef(sku);
+            if (sku.getBarcode() != null) byBarcode.put(sku.getBarcode(), ref);
+            bySkuCode.put(sku.getSkuCode(), ref);
+        }
+        for (String code : missing) {
+            SkuRef ref = byBarcode.getOrDefault(code, bySkuCode.get(code));
+            if (ref != null) result.put(code, ref);
+            if (enabled && generation.get() == gen) {
+                put(BARCODE + code, Optional.ofNullable(byBarcode.get(code)), now);
+                put(SKU_CODE + code, Optional.ofNullable(bySkuCode.get(code)), now);
+            }
+        }
+        return result;
+    }
+
+    // ─── Invalidate ─────────────────────────────────────────────────────────────
+
+    /** SKU thêm / đổi: bỏ entry (kể cả negative) của các barcode / skuCode này trên mọi node. */
+    public void invalidateCodes(Collection<String> codes) {
+        Set<String> distinct = new LinkedHashSet<>();
+        codes.stream().filter(Objects::nonNull).forEach(distinct::add);
+        if (distinct.isEmpty()) return;
+        afterCommit(() -> {
+            evictLocal(distinct);
+            broadcast(String.join("\n", distinct));
+        });
+    }
+
+    /** Tin invalidate từ node khác (và của chính node này — bỏ lần nữa không sao). */
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String body = new String(message.getBody(), StandardCharsets.UTF_8);
+        evictLocal(Set.of(body.split("\n")));
+    }
+
+    // ─── Internal ───────────────────────────────────────────────────────────────
+
+    private Optional<SkuRef> lookup(String key, Supplier<Optional<SkuEntity>> loader) {
+        long now = System.currentTimeMillis();
+        Cached cached = fresh(key, now);
+        if (cached != null) {
+            (cached.value().isPresent() ? hits : negativeHits).increment();
+            return cached.value();
+        }
+        misses.increment();
+        long gen = generation.get();
+        Optional<SkuRef> loaded = loader.get().map(SkuLookupCacheService::toRef);
+        if (enabled && generation.get() == gen) {
+            put(key, loaded, now);
+        }
+        return loaded;
+    }
+
+    private Cached fresh(String key, long now) {
+        if (!enabled) return null;
+        Cached cached = entries.get(key);
+        return cached != null && now < cached.expiresAt() ? cached : null;
+    }
+
+    private void put(String key, Optional<SkuRef> value, long now) {
+        long ttl = value.isPresent() ? ttlSeconds : negativeTtlSeconds;
+        entries.put(key, new Cached(value, now + ttl * 1000));
+    }
+
+    private void evictLocal(Collection<String> codes) {
+        generation.incrementAndGet();
+        for (String code : codes) {
+            entries.remove(BARCODE + code);
+            entries.remove(SKU_CODE + code);
+        }
+    }
+
+    private void broadcast(String body) {
+        try {
+            redisTemplate.convertAndSend(INVALIDATE_CHANNEL, body);
+        } catch (Exception e) {
+            log.warn("Could not broadcast SKU lookup cache invalidation (other nodes rely on TTL): {}", e.getMessage());
+        }
+    }
+
+    private static SkuRef toRef(SkuEntity sku) {
+        return new SkuRef(sku.getSkuId(), sku.getSkuCode(), sku.getSkuName(), sku.getBarcode());
+    }
+
+    private static void afterCommit(Runnable action) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    action.run();
+                }
+            });
+        } else {
+            action.run();
+        }
+    }
+
+    private record Cached(Optional<SkuRef> value, long expiresAt) {
+    }
+}
@@ -43,6 +43,8 @@ public class SkuService {
     private final AuditLogService auditLogService;
     private final SkuThresholdJpaRepository skuThresholdRepository;
     private final WarehouseJpaRepository warehouseRepository;
+    private final PutawayZoneCacheService putawayZoneCache;
+    private final SkuLookupCacheService skuLookupCache;
 
     // ─────────────────────────────────────────────────────────────
     // UC-268: View SKU Detail
@@ -259,6 +261,7 @@ public class SkuService {
 
         sku.setCategory(category);
         SkuEntity updatedSku = skuJpaRepository.save(sku);
+        putawayZoneCache.invalidateSku(skuId);
 
         log.info(LogMessages.SKU_CATEGORY_ASSIGNED, skuId, category.getCategoryId());
 
@@ -401,6 +404,13 @@ public class SkuService {
         if (!toSave.isEmpty()) {
             skuJpaRepository.saveAll(toSave);
             log.info("SKU import: saved {} records", toSave.size());
+            // Barcode / skuCode mới có thể đang nằm trong negative cache của scan
+            List<String> importedCodes = new ArrayList<>();
+            toSave.forEach(sku -> {
+                importedCodes.add(sku.getSkuCode());
+                importedCodes.add(sku.getBarcode());
+            });
+            skuLookupCache.invalidateCodes(importedCodes);
         }
 
         int successCount = toSave.size();
@@ -0,0 +1,316 @@
+package org.example.sep26management.application.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Đối soát liên tục inventory_snapshot.quantity với tổng inventory_transactions (ledger).
+ *
+ * Incremental theo high-water mark txn_id (bảng inventory_reconcile_state): mỗi lần chạy chỉ
+ * kiểm tra các key (warehouse, sku, lot, location) có txn mới kể từ lần trước, cộng các key
+ * đang có DRIFT alert OPEN (để tự resolve khi đã hết lệch). Không còn full-table aggregate.
+ *
+ * So sánh snapshot và ledger trong cùng 1 statement → cùng MVCC snapshot, nên giao dịch
+ * đang chạy (ghi snapshot + txn trong 1 transaction) không gây báo lệch giả.
+ * txn_id cấp lúc INSERT nhưng commit có thể trễ → mỗi lần quét lùi overlap-txns id.
+ * Ledger của 1 key = số dư đã archive (inventory_txn_archived_balance) + txn còn trong partition.
+ *
+ * Kết quả:
+ *   - inventory_alerts: alert_type DRIFT, dedupe_key DRIFT:{wh}:{sku}:{lot|0}:{location}
+ *     (1 alert OPEN / key, cập nhật message nếu vẫn lệch, RESOLVED khi khớp lại).
+ *   - Micrometer gauges inventory.drift.* (actuator /metrics).
+ *
+ * Lần chạy đầu tiên (chưa có state) chỉ chốt high-water mark — baseline toàn bộ dùng
+ * LedgerReplayService (mode DIFF).
+ */
+@Service
+@Slf4j
+public class SnapshotDriftReconciler {
+
+    static final String JOB_NAME = "snapshot-drift";
+    static final String ALERT_TYPE = "DRIFT";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    @Value("${inventory.drift.enabled:true}")
+    private boolean enabled;
+
+    @Value("${inventory.drift.max-txns-per-run:200000}")
+    private int maxTxnsPerRun;
+
+    @Value("${inventory.drift.overlap-txns:1000}")
+    private int overlapTxns;
+
+    // ─── Metrics ────────────────────────────────────────────────────────────────
+
+    private final AtomicLong highWaterTxnId = new AtomicLong();
+    private final AtomicLong lagTxns = new AtomicLong();
+    private final AtomicLong openDriftKeys = new AtomicLong();
+    private final AtomicLong lastRunCheckedKeys = new AtomicLong();
+    private final AtomicLong lastRunDriftedKeys = new AtomicLong();
+    private final AtomicReference<BigDecimal> lastRunDriftQty = new AtomicReference<>(BigDecimal.ZERO);
+    private final AtomicLong lastRunEpochSeconds = new AtomicLong();
+    private final MultiGauge openDriftByWarehouse;
+
+    public SnapshotDriftReconciler(JdbcTemplate jdbcTemplate,
+                                   PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        Gauge.builder("inventory.drift.open.keys", openDriftKeys, AtomicLong::get)
+                .description("Số key (warehouse, sku, lot, location) đang có DRIFT alert OPEN")
+                .register(meterRegistry);
+        Gauge.builder("inventory.drift.last.checked.keys", lastRunCheckedKeys, AtomicLong::get)
+                .description("Số key đã đối soát ở lần chạy gần nhất")
+                .register(meterRegistry);
+        Gauge.builder("inventory.drift.last.drifted.keys", lastRunDriftedKeys, AtomicLong::get)
+                .description("Số key lệch phát hiện ở lần chạy gần nhất")
+                .register(meterRegistry);
+        Gauge.builder("inventory.drift.last.abs.qty", lastRunDriftQty, q -> q.get().doubleValue())
+                .description("Tổng |snapshot - ledger| của các key lệch ở lần chạy gần nhất")
+                .register(meterRegistry);
+        Gauge.builder("inventory.drift.high.water.txn.id", highWaterTxnId, AtomicLong::get)
+                .description("txn_id lớn nhất đã đối soát")
+                .register(meterRegistry);
+        Gauge.builder("inventory.drift.lag.txns", lagTxns, AtomicLong::get)
+                .description("Số txn_id chưa được đối soát")
+                .register(meterRegistry);
+        Gauge.builder("inventory.drift.last.run.epoch.seconds", lastRunEpochSeconds, AtomicLong::get)
+                .description("Thời điểm chạy thành công gần nhất")
+                .register(meterRegistry);
+        this.openDriftByWarehouse = MultiGauge.builder("inventory.drift.warehouse.open.keys")
+                .description("Số key đang lệch theo warehouse")
+                .register(meterRegistry);
+    }
+
+    // ─── SQL ────────────────────────────────────────────────────────────────────
+
+    /**
+     * ? 1-2: (from, to] txn_id. Key thay đổi = key của txn + bin nguồn của PUTAWAY
+     * (PUTAWAY chỉ ghi +qty tại bin đích, phần rời from_location_id suy ra từ putaway_tasks).
+     */
+    private static final String CHECK_SQL = """
+            WITH txns AS (
+                SELECT t.warehouse_id, t.sku_id, t.lot_id, t.location_id, t.txn_type, t.reference_table, t.reference_id
+                FROM inventory_transactions t
+                WHERE t.txn_id > ? AND t.txn_id <= ?
+            ),
+            changed AS (
+                SELECT warehouse_id, sku_id, lot_id, location_id FROM txns
+                UNION
+                SELECT t.warehouse_id, t.sku_id, t.lot_id, pt.from_location_id
+                FROM txns t
+                JOIN putaway_tasks pt ON pt.putaway_task_id = t.reference_id
+                WHERE t.txn_type = 'PUTAWAY' AND t.reference_table = 'putaway_tasks'
+                  AND pt.from_location_id IS NOT NULL
+                UNION
+                SELECT a.warehouse_id, a.sku_id, a.lot_id, a.location_id
+                FROM inventory_alerts a
+                WHERE a.alert_type = 'DRIFT' AND a.status = 'OPEN'
+                  AND a.sku_id IS NOT NULL AND a.location_id IS NOT NULL
+            )
+            SELECT c.warehouse_id, c.sku_id, c.lot_id, c.location_id,
+                   COALESCE(s.quantity, 0) AS snapshot_qty,
+                   GREATEST(COALESCE(b.quantity, 0) + COALESCE(own.qty, 0) - COALESCE(moved_out.qty, 0), 0) AS ledger_qty
+            FROM changed c
+            LEFT JOIN inventory_snapshot s
+                   ON s.warehouse_id = c.warehouse_id
+                  AND s.sku_id       = c.sku_id
+                  AND s.lot_id_safe  = COALESCE(c.lot_id, 0)
+                  AND s.location_id  = c.location_id
+            LEFT JOIN inventory_txn_archived_balance b
+                   ON b.warehouse_id = c.warehouse_id
+                  AND b.sku_id       = c.sku_id
+                  AND b.lot_id_safe  = COALESCE(c.lot_id, 0)
+                  AND b.location_id  = c.location_id
+            LEFT JOIN LATERAL (
+                SELECT SUM(t.quantity) AS qty
+                FROM inventory_transactions t
+                WHERE t.warehouse_id = c.warehouse_id
+                  AND t.sku_id       = c.sku_id
+                  AND t.location_id  = c.location_id
+                  AND t.lot_id IS NOT DISTINCT FROM c.lot_id
+            ) own ON true
+            LEFT JOIN LATERAL (
+                SELECT SUM(t.quantity) AS qty
+                FROM inventory_transactions t
+                JOIN putaway_tasks pt ON pt.putaway_task_id = t.reference_id
+                WHERE t.warehouse_id = c.warehouse_id
+                  AND t.sku_id       = c.sku_id
+                  AND t.txn_type     = 'PUTAWAY'
+                  AND t.reference_table = 'putaway_tasks'
+                  AND t.lot_id IS NOT DISTINCT FROM c.lot_id
+                  AND pt.from_location_id = c.location_id
+                  AND t.location_id <> c.location_id
+            ) moved_out ON true
+            """;
+
+    /**
+     * 1 alert OPEN / dedupe_key nhờ partial unique index uq_alert_open_dedupe — an toàn khi
+     * nhiều node cùng chạy (synchronized chỉ chặn trong 1 JVM).
+     */
+    private static final String UPSERT_ALERTS_SQL = """
+            INSERT INTO inventory_alerts (warehouse_id, alert_type, severity, sku_id, lot_id, location_id,
+                                          message, status, dedupe_key, created_at)
+            SELECT d.warehouse_id, 'DRIFT', 'HIGH', d.sku_id, d.lot_id, d.location_id,
+                   d.message, 'OPEN', d.dedupe_key, NOW()
+            FROM unnest(?::varchar[], ?::bigint[], ?::bigint[], ?::bigint[], ?::bigint[], ?::text[])
+                 AS d(dedupe_key, warehouse_id, sku_id, lot_id, location_id, message)
+            ON CONFLICT (dedupe_key) WHERE status = 'OPEN' AND dedupe_key IS NOT NULL
+            DO UPDATE SET message = EXCLUDED.message
+            """;
+
+    private static final String RESOLVE_ALERTS_SQL = """
+            UPDATE inventory_alerts
+            SET status = 'RESOLVED', resolved_at = NOW()
+            WHERE alert_type = 'DRIFT' AND status = 'OPEN'
+              AND dedupe_key = ANY(?::varchar[])
+            """;
+
+    private static final String SAVE_STATE_SQL = """
+            INSERT INTO inventory_reconcile_state (job_name, last_txn_id, updated_at)
+            VALUES (?, ?, NOW())
+            ON CONFLICT (job_name) DO UPDATE SET last_txn_id = EXCLUDED.last_txn_id, updated_at = NOW()
+            """;
+
+    // ─── Job ────────────────────────────────────────────────────────────────────
+
+    @Scheduled(initialDelayString = "${inventory.drift.interval-ms:60000}",
+            fixedDelayString = "${inventory.drift.interval-ms:60000}")
+    public void runScheduled() {
+        if (!enabled) return;
+        try {
+            reconcile();
+        } catch (Exception e) {
+            log.warn("Snapshot drift reconcile skipped: {}", e.getMessage());
+        }
+    }
+
+    /** 1 lần đối soát (tối đa max-txns-per-run txn). Trả về số key lệch. */
+    public synchronized int reconcile() {
+        Long maxTxnId = jdbcTemplate.queryForObject(
+                "SELECT COALESCE(MAX(txn_id), 0) FROM inventory_transactions", Long.class);
+        List<Long> state = jdbcTemplate.queryForList(
+                "SELECT last_txn_id FROM inventory_reconcile_state WHERE job_name = ?", Long.class, JOB_NAME);
+
+        if (state.isEmpty()) {
+            jdbcTemplate.update(SAVE_STATE_SQL, JOB_NAME, maxTxnId);
+            highWaterTxnId.set(maxTxnId);
+            log.info("Snapshot drift reconciler initialised at txn_id {}", maxTxnId);
+            return 0;
+        }
+
+        long from = state.get(0);
+        long to = Math.min(maxTxnId, from + maxTxnsPerRun);
+        long scanFrom = Math.max(0, from - overlapTxns);
+
+        Integer drifted = transactionTemplate.execute(status -> {
+            List<KeyCheck> checks = jdbcTemplate.query(CHECK_SQL, (rs, i) -> new KeyCheck(
+                    rs.getLong("warehouse_id"),
+                    rs.getLong("sku_id"),
+                    rs.getObject("lot_id", Long.class),
+                    rs.getLong("location_id"),
+                    rs.getBigDecimal("snapshot_qty"),
+                    rs.getBigDecimal("ledger_qty")), scanFrom, to);
+
+            List<KeyCheck> driftedKeys = checks.stream().filter(KeyCheck::drifted).toList();
+            List<String> cleanKeys = checks.stream().filter(c -> !c.drifted()).map(KeyCheck::dedupeKey).toList();
+
+            upsertAlerts(driftedKeys);
+            if (!cleanKeys.isEmpty()) {
+                jdbcTemplate.update(con -> {
+                    PreparedStatement ps = con.prepareStatement(RESOLVE_ALERTS_SQL);
+                    ps.setArray(1, con.createArrayOf("varchar", cleanKeys.toArray()));
+                    return ps;
+                });
+            }
+            jdbcTemplate.update(SAVE_STATE_SQL, JOB_NAME, to);
+
+            lastRunCheckedKeys.set(checks.size());
+            lastRunDriftedKeys.set(driftedKeys.size());
+            lastRunDriftQty.set(driftedKeys.stream().map(KeyCheck::absDiff).reduce(BigDecimal.ZERO, BigDecimal::add));
+            driftedKeys.forEach(k -> log.warn("Inventory drift {}: snapshot={} ledger={}",
+                    k.dedupeKey(), k.snapshotQty(), k.ledgerQty()));
+            return driftedKeys.size();
+        });
+
+        highWaterTxnId.set(to);
+        lagTxns.set(maxTxnId - to);
+        lastRunEpochSeconds.set(System.currentTimeMillis() / 1000);
+        refreshOpenDriftGauges();
+        return drifted != null ? drifted : 0;
+    }
+
+    private void upsertAlerts(List<KeyCheck> drifted) {
+        if (drifted.isEmpty()) return;
+        jdbcTemplate.update(con -> {
+            PreparedStatement ps = con.prepareStatement(UPSERT_ALERTS_SQL);
+            ps.setArray(1, con.createArrayOf("varchar", drifted.stream().map(KeyCheck::dedupeKey).toArray()));
+            ps.setArray(2, con.createArrayOf("bigint", drifted.stream().map(KeyCheck::warehouseId).toArray()));
+            ps.setArray(3, con.createArrayOf("bigint", drifted.stream().map(KeyCheck::skuId).toArray()));
+            ps.setArray(4, con.createArrayOf("bigint", drifted.stream().map(KeyCheck::lotId).toArray()));
+            ps.setArray(5, con.createArrayOf("bigint", drifted.stream().map(KeyCheck::locationId).toArray()));
+            ps.setArray(6, con.createArrayOf("text", drifted.stream().map(KeyCheck::message).toArray()));
+            return ps;
+        });
+    }
+
+    private void refreshOpenDriftGauges() {
+        List<MultiGauge.Row<?>> rows = new ArrayList<>();
+        long[] total = {0};
+        jdbcTemplate.query("""
+                SELECT warehouse_id, COUNT(*) AS open_keys
+                FROM inventory_alerts
+                WHERE alert_type = 'DRIFT' AND status = 'OPEN'
+                GROUP BY warehouse_id
+                """, rs -> {
+            long count = rs.getLong("open_keys");
+            total[0] += count;
+            rows.add(MultiGauge.Row.of(Tags.of("warehouseId", String.valueOf(rs.getLong("warehouse_id"))), count));
+        });
+        openDriftKeys.set(total[0]);
+        openDriftByWarehouse.register(rows, true);
+    }
+
+    // ─── Types ──────────────────────────────────────────────────────────────────
+
+    record KeyCheck(Long warehouseId, Long skuId, Long lotId, Long locationId,
+                    BigDecimal snapshotQty, BigDecimal ledgerQty) {
+
+        boolean drifted() {
+            return snapshotQty.compareTo(ledgerQty) != 0;
+        }
+
+        BigDecimal absDiff() {
+            return snapshotQty.subtract(ledgerQty).abs();
+        }
+
+        String dedupeKey() {
+            return ALERT_TYPE + ":" + warehouseId + ":" + skuId + ":" + (lotId != null ? lotId : 0) + ":" + locationId;
+        }
+
+        String message() {
+            return "Snapshot quantity " + snapshotQty.toPlainString() + " differs from ledger "
+                    + ledgerQty.toPlainString() + " (sku " + skuId + ", location " + locationId
+                    + (lotId != null ? ", lot " + lotId : "") + ")";
+        }
+    }
+}
@@ -0,0 +1,399 @@
+package org.example.sep26management.application.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sep26management.application.constants.MessageConstants;
+import org.example.sep26management.application.dto.request.WaveAllocateRequest;
+import org.example.sep26management.application.dto.response.AllocateStockResponse;
+import org.example.sep26management.application.dto.response.ApiResponse;
+import org.example.sep26management.application.dto.response.WaveAllocateResponse;
+import org.example.sep26management.application.enums.OutboundType;
+import org.example.sep26management.infrastructure.exception.BusinessException;
+import org.example.sep26management.infrastructure.persistence.entity.*;
+import org.example.sep26management.infrastructure.persistence.repository.*;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Collectors;
+
+/**
+ * Wave allocation — phân bổ nhiều SO / Transfer trong 1 lần (thay cho gọi allocateStock từng đơn).
+ *
+ *   - Kế hoạch FEFO của mỗi warehouse được load 1 lần cho tổng nhu cầu cả wave.
+ *   - Phân bổ trong memory theo thứ tự ưu tiên: ngày giao yêu cầu, rồi ngày tạo.
+ *   - Toàn bộ reservation + đổi trạng thái ghi trong 1 transaction.
+ *
+ * Như allocateStock, kiểm tra WAITING_STOCK / hết hàng chạy trước khi huỷ reservation cũ (tồn khả
+ * dụng chưa tính phần đơn đang giữ): đơn bị giữ lại không mất reservation của mình. Chỉ đơn được
+ * phân bổ lại mới huỷ OPEN reservation; warehouse có reservation vừa huỷ được lập lại kế hoạch FEFO
+ * cho nhu cầu của các đơn đó.
+ *
+ * Quy tắc theo từng đơn giống AllocateStockService.allocateStock:
+ *   - WAITING_STOCK: chỉ phân bổ khi phần còn lại của wave đủ toàn bộ yêu cầu.
+ *   - APPROVED: nếu có SKU hết hàng → chuyển WAITING_STOCK, không phân bổ.
+ *   - Đủ hàng → ALLOCATED; thiếu một phần → giữ chỗ phần có, trạng thái giữ nguyên.
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class WaveAllocationService {
+
+    private static final String STATUS_SKIPPED = "SKIPPED";
+
+    private final SalesOrderJpaRepository soRepository;
+    private final SalesOrderItemJpaRepository soItemRepository;
+    private final TransferJpaRepository transferRepository;
+    private final TransferItemJpaRepository transferItemRepository;
+    private final ReservationJpaRepository reservationRepository;
+    private final InventorySnapshotJpaRepository snapshotRepository;
+    private final SkuJpaRepository skuRepository;
+    private final AuditLogService auditLogService;
+    private final AtpIndexService atpIndexService;
+    private final FefoAllocationEngine fefoAllocationEngine;
+    private final ReservedQtyWriter reservedQtyWriter;
+
+    @Transactional
+    public ApiResponse<WaveAllocateResponse> allocateWave(
+            WaveAllocateRequest request, Long userId, String ip, String ua) {
+
+        List<Long> soIds = distinct(request.getSalesOrderIds());
+        List<Long> transferIds = distinct(request.getTransferIds());
+        if (soIds.isEmpty() && transferIds.isEmpty()) {
+            throw new BusinessException(MessageConstants.ALLOCATE_NO_ITEMS);
+        }
+        log.info("Wave allocation: {} sales orders, {} transfers", soIds.size(), transferIds.size());
+
+        List<WaveAllocateResponse.OrderResult> skipped = new ArrayList<>();
+        List<WaveOrder> orders = new ArrayList<>();
+        loadSalesOrders(soIds, orders, skipped);
+        loadTransfers(transferIds, orders, skipped);
+
+        orders.sort(Comparator
+                .comparing(WaveOrder::requiredShipDate, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(WaveOrder::createdAt, Comparator.nullsLast(Comparator.naturalOrder()))
+                .thenComparing(WaveOrder::documentId));
+
+        // 1 kế hoạch FEFO / warehouse cho tổng nhu cầu của cả wave
+        Map<Long, Map<Long, BigDecimal>> demand = demand(orders);
+        Map<Long, Map<Long, ArrayDeque<FefoAllocationEngine.PlanRow>>> pools = new HashMap<>();
+        demand.forEach((warehouseId, bySku) -> pools.put(warehouseId, pool(warehouseId, bySku)));
+
+        Map<Long, SkuEntity> skus = new HashMap<>();
+        skuRepository.findAllById(demand.values().stream()
+                        .flatMap(bySku -> bySku.keySet().stream()).collect(Collectors.toSet()))
+                .forEach(sku -> skus.put(sku.getSkuId(), sku));
+
+        // Kiểm tra theo thứ tự ưu tiên trên phần tồn còn lại của wave, reservation cũ vẫn giữ
+        Map<Long, Map<Long, BigDecimal>> available = new HashMap<>();
+        pools.forEach((warehouseId, pool) -> {
+            Map<Long, BigDecimal> bySku = new HashMap<>();
+            pool.forEach((skuId, stocks) -> bySku.put(skuId, FefoAllocationEngine.remaining(stocks)));
+            available.put(warehouseId, bySku);
+        });
+        WaveAllocateResponse.OrderResult[] results = new WaveAllocateResponse.OrderResult[orders.size()];
+        List<WaveOrder> accepted = new ArrayList<>();
+        for (int i = 0; i < orders.size(); i++) {
+            WaveOrder order = orders.get(i);
+            Map<Long, BigDecimal> remaining = available.computeIfAbsent(order.warehouseId(), w -> new HashMap<>());
+            results[i] = checkOrder(order, remaining, skus);
+            if (results[i] == null) {
+                accepted.add(order);
+                order.lines().forEach(line -> remaining.computeIfPresent(line.skuId(),
+                        (skuId, qty) -> qty.subtract(line.qty()).max(BigDecimal.ZERO)));
+            }
+        }
+
+        // Chỉ đơn được phân bổ lại mới huỷ reservation cũ → lập lại kế hoạch cho warehouse đó
+        Set<Long> released = releaseOpenReservations(accepted);
+        demand(accepted.stream().filter(o -> released.contains(o.warehouseId())).toList())
+                .forEach((warehouseId, bySku) -> pools.put(warehouseId, pool(warehouseId, bySku)));
+
+        List<ReservedQtyWriter.ReservedDelta> deltas = new ArrayList<>();
+        for (int i = 0; i < orders.size(); i++) {
+            if (results[i] == null) {
+                WaveOrder order = orders.get(i);
+                results[i] = allocateOrder(order, pools.get(order.warehouseId()), skus, deltas, userId, ip, ua);
+            }
+        }
+
+        reservedQtyWriter.apply(deltas);
+        demand.forEach((warehouseId, bySku) ->
+                bySku.keySet().forEach(skuId -> atpIndexService.touch(warehouseId, skuId)));
+
+        List<WaveAllocateResponse.OrderResult> all = new ArrayList<>(List.of(results));
+        all.addAll(skipped);
+        WaveAllocateResponse response = WaveAllocateResponse.builder()
+                .totalOrders(all.size())
+                .allocatedOrders(count(all, "ALLOCATED"))
+                .partiallyAllocatedOrders(count(all, "PARTIALLY_ALLOCATED"))
+                .skippedOrders(all.size() - count(all, "ALLOCATED") - count(all, "PARTIALLY_ALLOCATED"))
+                .results(all)
+                .build();
+
+        log.info("Wave allocation done: total={}, allocated={}, partial={}, skipped={}",
+                response.getTotalOrders(), response.getAllocatedOrders(),
+                response.getPartiallyAllocatedOrders(), response.getSkippedOrders());
+        return ApiResponse.success(MessageConstants.ALLOCATE_WAVE_DONE, response);
+    }
+
+    // ─── Per-order allocation (in memory) ───────────────────────────────────────
+
+    /**
+     * Quy tắc WAITING_STOCK / hết hàng của allocateStock trên phần tồn còn lại của wave
+     * (available: skuId → qty). Trả về kết quả nếu đơn bị giữ lại, null nếu được phân bổ.
+     */
+    private WaveAllocateResponse.OrderResult checkOrder(
+            WaveOrder order, Map<Long, BigDecimal> available, Map<Long, SkuEntity> skus) {
+
+        Map<Long, BigDecimal> needBySku = new LinkedHashMap<>();
+        order.lines().forEach(line -> needBySku.merge(line.skuId(), line.qty(), BigDecimal::add));
+
+        if ("WAITING_STOCK".equals(order.status())) {
+            List<String> stillShort = needBySku.entrySet().stream()
+                    .filter(e -> available(available, e.getKey()).compareTo(e.getValue()) < 0)
+                    .map(e -> skuCode(skus, e.getKey()) + " (cần " + e.getValue() + ", có " + available(available, e.getKey()) + ")")
+                    .toList();
+            if (!stillShort.isEmpty()) {
+                return result(order, "WAITING_STOCK",
+                        "Chưa đủ tồn kho — vẫn đang thiếu: " + String.join("; ", stillShort), null, null);
+            }
+        }
+
+        if ("APPROVED".equals(order.status()) && order.type() == OutboundType.SALES_ORDER) {
+            List<String> zeroStock = needBySku.entrySet().stream()
+                    .filter(e -> available(available, e.getKey()).signum() == 0)
+                    .map(e -> skuCode(skus, e.getKey()) + " (can " + e.getValue() + ", hien co 0)")
+                    .toList();
+            if (!zeroStock.isEmpty()) {
+                soRepository.findById(order.documentId()).ifPresent(so -> {
+                    so.setStatus("WAITING_STOCK");
+                    so.setUpdatedAt(LocalDateTime.now());
+                    soRepository.save(so);
+                });
+                log.warn("SO {} -> WAITING_STOCK (wave): ton kho = 0 cho {}", order.documentCode(), zeroStock);
+                return result(order, "WAITING_STOCK",
+                        "Ton kho = 0, SO chuyen WAITING_STOCK: " + String.join("; ", zeroStock), null, null);
+            }
+        }
+        return null;
+    }
+
+    private WaveAllocateResponse.OrderResult allocateOrder(
+            WaveOrder order, Map<Long, ArrayDeque<FefoAllocationEngine.PlanRow>> pool,
+            Map<Long, SkuEntity> skus, List<ReservedQtyWriter.ReservedDelta> deltas,
+            Long userId, String ip, String ua) {
+
+        List<AllocateStockResponse.AllocationLine> allocations = new ArrayList<>();
+        List<AllocateStockResponse.ShortageItem> shortages = new ArrayList<>();
+        List<FefoAllocationEngine.PlanRow> reserved = new ArrayList<>();
+        for (SkuQty line : order.lines()) {
+            SkuEntity sku = skus.get(line.skuId());
+            String skuCode = sku != null ? sku.getSkuCode() : "SKU#" + line.skuId();
+            String skuName = sku != null ? sku.getSkuName() : null;
+
+            BigDecimal remaining = line.qty();
+            ArrayDeque<FefoAllocationEngine.PlanRow> stocks = pool.getOrDefault(line.skuId(), new ArrayDeque<>());
+            for (FefoAllocationEngine.PlanRow stock : FefoAllocationEngine.take(stocks, line.qty())) {
+                reserved.add(stock);
+                allocations.add(AllocateStockService.toAllocationLine(stock, skuCode, skuName, line.qty()));
+                remaining = remaining.subtract(stock.allocateQty());
+            }
+            if (remaining.signum() > 0) {
+                shortages.add(AllocateStockResponse.ShortageItem.builder()
+                        .skuId(line.skuId()).skuCode(skuCode)
+                        .requestedQty(line.qty()).availableQty(line.qty().subtract(remaining))
+                        .shortageQty(remaining).build());
+            }
+        }
+
+        reserved.forEach(r -> deltas.add(new ReservedQtyWriter.ReservedDelta(
+                order.warehouseId(), r.locationId(), r.skuId(), r.lotId(), r.allocateQty())));
+        fefoAllocationEngine.insertReservations(order.warehouseId(), order.referenceTable(), order.documentId(), reserved);
+
+        boolean fullyAllocated = shortages.isEmpty();
+        if (fullyAllocated) {
+            markAllocated(order);
+        }
+        String allocStatus = fullyAllocated ? "ALLOCATED" : "PARTIALLY_ALLOCATED";
+        auditLogService.logAction(userId,
+                fullyAllocated ? "STOCK_ALLOCATED" : "STOCK_PARTIALLY_ALLOCATED",
+                order.type() == OutboundType.SALES_ORDER ? "SALES_ORDER" : "TRANSFER",
+                order.documentId(),
+                order.documentCode() + " stock allocation (wave): " + allocStatus, ip, ua);
+
+        return result(order, allocStatus, null, allocations, shortages.isEmpty() ? null : shortages);
+    }
+
+    private void markAllocated(WaveOrder order) {
+        if (order.type() == OutboundType.SALES_ORDER) {
+            soRepository.findById(order.documentId()).ifPresent(so -> {
+                so.setStatus("ALLOCATED");
+                soRepository.save(so);
+                log.info("SO {} status → ALLOCATED (wave)", so.getSoCode());
+            });
+        } else {
+            transferRepository.findById(order.documentId()).ifPresent(t -> {
+                t.setStatus("ALLOCATED");
+                transferRepository.save(t);
+            });
+        }
+    }
+
+    // ─── Loading ────────────────────────────────────────────────────────────────
+
+    private void loadSalesOrders(List<Long> soIds, List<WaveOrder> orders,
+                                 List<WaveAllocateResponse.OrderResult> skipped) {
+        if (soIds.isEmpty()) return;
+        Map<Long, SalesOrderEntity> found = soRepository.findAllById(soIds).stream()
+                .collect(Collectors.toMap(SalesOrderEntity::getSoId, so -> so));
+        Map<Long, List<SkuQty>> lines = new HashMap<>();
+        soItemRepository.findBySoIdIn(found.keySet()).forEach(i -> lines
+                .computeIfAbsent(i.getSoId(), k -> new ArrayList<>()).add(new SkuQty(i.getSkuId(), i.getOrderedQty())));
+
+        for (Long soId : soIds) {
+            SalesOrderEntity so = found.get(soId);
+            if (so == null) {
+                skipped.add(skippedResult(soId, null, OutboundType.SALES_ORDER,
+                        String.format(MessageConstants.OUTBOUND_NOT_FOUND, soId)));
+            } else if (!"APPROVED".equals(so.getStatus()) && !"WAITING_STOCK".equals(so.getStatus())) {
+                skipped.add(skippedResult(soId, so.getSoCode(), OutboundType.SALES_ORDER,
+                        MessageConstants.ALLOCATE_MUST_BE_APPROVED));
+            } else if (!lines.containsKey(soId)) {
+                skipped.add(skippedResult(soId, so.getSoCode(), OutboundType.SALES_ORDER,
+                        MessageConstants.ALLOCATE_NO_ITEMS));
+            } else {
+                orders.add(new WaveOrder(OutboundType.SALES_ORDER, soId, so.getSoCode(), so.getStatus(),
+                        so.getWarehouseId(), so.getRequiredShipDate(), so.getCreatedAt(), lines.get(soId)));
+            }
+        }
+    }
+
+    private void loadTransfers(List<Long> transferIds, List<WaveOrder> orders,
+                               List<WaveAllocateResponse.OrderResult> skipped) {
+        if (transferIds.isEmpty()) return;
+        Map<Long, TransferEntity> found = transferRepository.findAllById(transferIds).stream()
+                .collect(Collectors.toMap(TransferEntity::getTransferId, t -> t));
+        Map<Long, List<SkuQty>> lines = new HashMap<>();
+        transferItemRepository.findByTransferIdIn(found.keySet()).forEach(i -> lines
+                .computeIfAbsent(i.getTransferId(), k -> new ArrayList<>()).add(new SkuQty(i.getSkuId(), i.getQuantity())));
+
+        for (Long transferId : transferIds) {
+            TransferEntity transfer = found.get(transferId);
+            if (transfer == null) {
+                skipped.add(skippedResult(transferId, null, OutboundType.INTERNAL_TRANSFER,
+                        String.format(MessageConstants.OUTBOUND_NOT_FOUND, transferId)));
+            } else if (!"APPROVED".equals(transfer.getStatus())) {
+                skipped.add(skippedResult(transferId, transfer.getTransferCode(), OutboundType.INTERNAL_TRANSFER,
+                        MessageConstants.ALLOCATE_MUST_BE_APPROVED));
+            } else if (!lines.containsKey(transferId)) {
+                skipped.add(skippedResult(transferId, transfer.getTransferCode(), OutboundType.INTERNAL_TRANSFER,
+                        MessageConstants.ALLOCATE_NO_ITEMS));
+            } else {
+                // Transfer không có ngày giao yêu cầu → xếp sau các SO có ngày giao
+                orders.add(new WaveOrder(OutboundType.INTERNAL_TRANSFER, transferId, transfer.getTransferCode(),
+                        transfer.getStatus(), transfer.getFromWarehouseId(), null, transfer.getCreatedAt(),
+                        lines.get(transferId)));
+            }
+        }
+    }
+
+    /**
+     * Idempotency: huỷ OPEN reservation cũ của các đơn sắp được phân bổ lại.
+     * Trả về các warehouse có reservation vừa huỷ (kế hoạch FEFO cũ chưa tính phần được trả lại).
+     */
+    private Set<Long> releaseOpenReservations(List<WaveOrder> orders) {
+        Set<Long> warehouses = new HashSet<>();
+        Map<String, List<Long>> idsByTable = orders.stream().collect(Collectors.groupingBy(
+                WaveOrder::referenceTable, Collectors.mapping(WaveOrder::documentId, Collectors.toList())));
+
+        List<ReservedQtyWriter.ReservedDelta> releases = new ArrayList<>();
+        idsByTable.forEach((table, ids) -> {
+            List<ReservationEntity> existing = reservationRepository
+                    .findByReferenceTableAndReferenceIdInAndStatus(table, ids, "OPEN");
+            if (existing.isEmpty()) return;
+            for (ReservationEntity r : existing) {
+                if (r.getLocationId() != null) {
+                    releases.add(new ReservedQtyWriter.ReservedDelta(
+                            r.getWarehouseId(), r.getLocationId(), r.getSkuId(), r.getLotId(), r.getQuantity().negate()));
+                } else {
+                    snapshotRepository.incrementReservedByWarehouseAndSku(
+                            r.getWarehouseId(), r.getSkuId(), r.getQuantity().negate());
+                }
+                atpIndexService.touch(r.getWarehouseId(), r.getSkuId());
+                warehouses.add(r.getWarehouseId());
+            }
+            reservationRepository.cancelOpenByReferenceIds(table, ids);
+        });
+        reservedQtyWriter.apply(releases);
+        return warehouses;
+    }
+
+    // ─── Helpers ────────────────────────────────────────────────────────────────
+
+    /** warehouseId → skuId → tổng qty cần của các đơn. */
+    private static Map<Long, Map<Long, BigDecimal>> demand(List<WaveOrder> orders) {
+        Map<Long, Map<Long, BigDecimal>> demand = new HashMap<>();
+        orders.forEach(o -> o.lines().forEach(line -> demand
+                .computeIfAbsent(o.warehouseId(), w -> new LinkedHashMap<>())
+                .merge(line.skuId(), line.qty(), BigDecimal::add)));
+        return demand;
+    }
+
+    private Map<Long, ArrayDeque<FefoAllocationEngine.PlanRow>> pool(Long warehouseId, Map<Long, BigDecimal> bySku) {
+        Map<Long, ArrayDeque<FefoAllocationEngine.PlanRow>> pool = new HashMap<>();
+        fefoAllocationEngine.plan(warehouseId, bySku).forEach(row ->
+                pool.computeIfAbsent(row.skuId(), k -> new ArrayDeque<>()).add(row));
+        return pool;
+    }
+
+    private static BigDecimal available(Map<Long, BigDecimal> available, Long skuId) {
+        return available.getOrDefault(skuId, BigDecimal.ZERO);
+    }
+
+    private static String skuCode(Map<Long, SkuEntity> skus, Long skuId) {
+        SkuEntity sku = skus.get(skuId);
+        return sku != null ? sku.getSkuCode() : "SKU#" + skuId;
+    }
+
+    private static List<Long> distinct(List<Long> ids) {
+        return ids == null ? List.of() : ids.stream().filter(Objects::nonNull).distinct().toList();
+    }
+
+    private static int count(List<WaveAllocateResponse.OrderResult> results, String status) {
+        return (int) results.stream().filter(r -> status.equals(r.getStatus())).count();
+    }
+
+    private static WaveAllocateResponse.OrderResult result(
+            WaveOrder order, String status, String message,
+            List<AllocateStockResponse.AllocationLine> allocations,
+            List<AllocateStockResponse.ShortageItem> shortages) {
+        return WaveAllocateResponse.OrderResult.builder()
+                .documentId(order.documentId()).documentCode(order.documentCode())
+                .orderType(order.type()).status(status).message(message)
+                .allocations(allocations).shortages(shortages)
+                .build();
+    }
+
+    private static WaveAllocateResponse.OrderResult skippedResult(
+            Long documentId, String documentCode, OutboundType type, String message) {
+        return WaveAllocateResponse.OrderResult.builder()
+                .documentId(documentId).documentCode(documentCode)
+                .orderType(type).status(STATUS_SKIPPED).message(message)
+                .build();
+    }
+
+    private record SkuQty(Long skuId, BigDecimal qty) {}
+
+    private record WaveOrder(OutboundType type, Long documentId, String documentCode, String status,
+                             Long warehouseId, LocalDate requiredShipDate, LocalDateTime createdAt,
+                             List<SkuQty> lines) {
+
+        String referenceTable() {
+            return type == OutboundType.SALES_ORDER ? "sales_orders" : "transfers";
+        }
+    }
+}
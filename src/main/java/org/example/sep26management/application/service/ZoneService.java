@@ -30,6 +30,9 @@ public class ZoneService {
         private final WarehouseJpaRepository warehouseRepository;
         private final LocationJpaRepository locationRepository;
         private final AuditLogService auditLogService;
+        private final AtpIndexService atpIndexService;
+        private final BinCapacityIndexService binCapacityIndex;
+        private final PutawayZoneCacheService putawayZoneCache;
 
         // ─────────────────────────────────────────────────────────────
         // UC-LOC-01: Create Zone
@@ -67,6 +70,7 @@ public class ZoneService {
                         .build();
 
                 ZoneEntity saved = zoneRepository.save(zone);
+                putawayZoneCache.invalidateWarehouse(warehouseId);
 
                 log.info("Zone created: zoneId={}, code={}", saved.getZoneId(), saved.getZoneCode());
 
@@ -121,6 +125,9 @@ public class ZoneService {
                         = locationRepository.findByZoneId(zoneId);
                 locations.forEach(loc -> loc.setActive(false));
                 locationRepository.saveAll(locations);
+                atpIndexService.touchWarehouse(zone.getWarehouseId());
+                binCapacityIndex.touchZone(zoneId);
+                putawayZoneCache.invalidateWarehouse(zone.getWarehouseId());
 
                 log.info("Zone deactivated: zoneId={}, code={}, froze {} locations",
                         zone.getZoneId(), zone.getZoneCode(), locations.size());
@@ -146,6 +153,9 @@ public class ZoneService {
                         = locationRepository.findByZoneId(zoneId);
                 locations.forEach(loc -> loc.setActive(true));
                 locationRepository.saveAll(locations);
+                atpIndexService.touchWarehouse(zone.getWarehouseId());
+                binCapacityIndex.touchZone(zoneId);
+                putawayZoneCache.invalidateWarehouse(zone.getWarehouseId());
 
                 log.info("Zone reactivated: zoneId={}, code={}, unfroze {} locations",
                         zone.getZoneId(), zone.getZoneCode(), locations.size());
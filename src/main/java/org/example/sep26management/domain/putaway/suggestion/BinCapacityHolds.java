@@ -0,0 +1,47 @@
+package org.example.sep26management.domain.putaway.suggestion;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Soft hold capacity BIN giữa lúc "đã gợi ý" và lúc "đã allocate" (TTL ngắn, dùng chung giữa
+ * các node). Engine trừ hold của holder khác khỏi capacity làm việc trước khi lập kế hoạch.
+ */
+public interface BinCapacityHolds {
+
+    /** locationId → tổng hold trong các zone, không tính hold của holder (null: tính hết). */
+    Map<Long, Held> heldByOthers(Collection<Long> zoneIds, String holder);
+
+    /** Holder của 1 putaway task — gợi ý của task giữ chỗ dưới tên này. */
+    static String taskHolder(Long putawayTaskId) {
+        return putawayTaskId != null ? "task:" + putawayTaskId : null;
+    }
+
+    /**
+     * Phần hold tại 1 BIN: qty (đơn vị qty cũ, như occupiedQty) + tải thật kg / m³ của SKU được
+     * hold (SKU không khai báo chiều nào → 0, như tồn của SKU đó trong occupiedWeightKg / M3).
+     */
+    record Held(BigDecimal qty, BigDecimal weightKg, BigDecimal volumeM3) {
+
+        public static final Held NONE = new Held(BigDecimal.ZERO, BigDecimal.ZERO, BigDecimal.ZERO);
+
+        /** qty đơn vị của SKU (weight / volume null → chiều đó 0). */
+        public static Held of(BigDecimal qty, PutawayZoneDirectory.SkuPlacement sku) {
+            BigDecimal weightKg = sku != null && sku.weightKg() != null ? sku.weightKg().multiply(qty) : BigDecimal.ZERO;
+            BigDecimal volumeM3 = sku != null && sku.volumeM3() != null ? sku.volumeM3().multiply(qty) : BigDecimal.ZERO;
+            return new Held(qty, weightKg, volumeM3);
+        }
+
+        public Held add(Held other) {
+            return new Held(qty.add(other.qty), weightKg.add(other.weightKg), volumeM3.add(other.volumeM3));
+        }
+    }
+
+    /**
+     * Giới hạn tổng hold tại 1 BIN, mỗi chiều so trong đơn vị của nó (null: không giới hạn chiều đó):
+     * kg / m³ còn trống theo tải thật, qty chỉ cho SKU mà BIN không đo được kg / m³ (capacity qty cũ).
+     */
+    record Limit(BigDecimal qty, BigDecimal weightKg, BigDecimal volumeM3) {
+    }
+}
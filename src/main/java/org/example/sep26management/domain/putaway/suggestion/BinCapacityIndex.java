@@ -0,0 +1,33 @@
+package org.example.sep26management.domain.putaway.suggestion;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Nguồn candidate BIN cho engine: index in-memory theo zone, sắp theo availableCapacity.
+ * reservedQty của CandidateBin = reserved_qty snapshot + putaway allocation RESERVED.
+ */
+public interface BinCapacityIndex {
+
+    /** true khi zone được phục vụ từ memory (index đã load, không có ghi in-flight trên zone). */
+    boolean serves(Long zoneId);
+
+    /** BIN của zone theo availableCapacity giảm dần (worst-fit trước) — duyệt lười, O(log n) mỗi bước. */
+    Iterator<CandidateBin> byCapacityDesc(Long zoneId);
+
+    /** BIN có availableCapacity nhỏ nhất nhưng vẫn ≥ qty (best-fit), O(log n). */
+    Optional<CandidateBin> bestFit(Long zoneId, BigDecimal qty);
+
+    /**
+     * BIN theo locationId: từ memory nếu zone được phục vụ, còn lại đọc DB. Location không còn
+     * là active BIN sẽ không có trong kết quả.
+     */
+    Map<Long, CandidateBin> findBins(Collection<Long> locationIds);
+
+    /** Đọc thẳng DB (cùng công thức với index) cho các zone index không phục vụ. */
+    Map<Long, List<CandidateBin>> loadZones(Collection<Long> zoneIds);
+}
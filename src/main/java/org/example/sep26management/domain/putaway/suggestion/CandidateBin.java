@@ -3,9 +3,13 @@ package org.example.sep26management.domain.putaway.suggestion;
 import org.example.sep26management.infrastructure.persistence.entity.LocationEntity;
 
 import java.math.BigDecimal;
+import java.math.RoundingMode;
 
 /**
  * Thông tin BIN sau khi đã enrich occupancy/capacity, dùng cho filter/score.
+ *
+ * availableCapacity của BIN từ index / DB chưa gắn SKU (đơn vị qty cũ: maxWeightKg − occupied − reserved).
+ * Trước eligibility / scoring engine gọi forSku(...) → số đơn vị SKU còn vừa theo kg / m³ thật.
  */
 public class CandidateBin {
 
@@ -16,6 +20,19 @@ public class CandidateBin {
     private final BigDecimal occupiedQty;
     private final BigDecimal reservedQty;
     private final BigDecimal availableCapacity;
+    /** availableCapacity dạng fixed-point (FixedPointScoringRule.SCALE) cho scoring fast path. */
+    private final long availableCapacityFixed;
+
+    /** Tải thật theo SKU (weight_g / volume_ml × qty) của tồn + allocation đang giữ chỗ. */
+    private final BigDecimal occupiedWeightKg;
+    private final BigDecimal occupiedVolumeM3;
+    /** max_weight_kg / max_volume_m3 − tải thật; NaN khi BIN không khai báo giới hạn. */
+    private final double remainingWeightKg;
+    private final double remainingVolumeM3;
+
+    /** Thứ tự aisle trong zone / rack trong aisle theo location_code (0 = đầu zone); -1 = không rõ. */
+    private final int aisleRank;
+    private final int rackRank;
 
     public CandidateBin(LocationEntity location,
                         String zoneCode,
@@ -23,12 +40,133 @@ public class CandidateBin {
                         BigDecimal occupiedQty,
                         BigDecimal reservedQty,
                         BigDecimal availableCapacity) {
+        this(location, zoneCode, maxCapacity, occupiedQty, reservedQty, availableCapacity,
+                BigDecimal.ZERO, BigDecimal.ZERO, -1, -1);
+    }
+
+    public CandidateBin(LocationEntity location,
+                        String zoneCode,
+                        BigDecimal maxCapacity,
+                        BigDecimal occupiedQty,
+                        BigDecimal reservedQty,
+                        BigDecimal availableCapacity,
+                        BigDecimal occupiedWeightKg,
+                        BigDecimal occupiedVolumeM3,
+                        int aisleRank,
+                        int rackRank) {
         this.location = location;
         this.zoneCode = zoneCode;
         this.maxCapacity = maxCapacity;
         this.occupiedQty = occupiedQty;
         this.reservedQty = reservedQty;
         this.availableCapacity = availableCapacity;
+        this.availableCapacityFixed = FixedPointScoringRule.toFixed(availableCapacity);
+        this.occupiedWeightKg = occupiedWeightKg != null ? occupiedWeightKg : BigDecimal.ZERO;
+        this.occupiedVolumeM3 = occupiedVolumeM3 != null ? occupiedVolumeM3 : BigDecimal.ZERO;
+        this.remainingWeightKg = location.getMaxWeightKg() != null
+                ? location.getMaxWeightKg().doubleValue() - this.occupiedWeightKg.doubleValue() : Double.NaN;
+        this.remainingVolumeM3 = location.getMaxVolumeM3() != null
+                ? location.getMaxVolumeM3().doubleValue() - this.occupiedVolumeM3.doubleValue() : Double.NaN;
+        this.aisleRank = aisleRank;
+        this.rackRank = rackRank;
+    }
+
+    /**
+     * available = max(0, maxCapacity - occupied - reserved); maxWeightKg null → capacity 0.
+     * Đơn vị qty cũ, không gắn SKU — chỉ còn là fallback khi BIN / SKU không có giới hạn kg / m³ (forSku).
+     */
+    public static CandidateBin of(LocationEntity location, String zoneCode,
+                                  BigDecimal occupiedQty, BigDecimal reservedQty) {
+        BigDecimal maxCap = location.getMaxWeightKg() != null ? location.getMaxWeightKg() : BigDecimal.ZERO;
+        BigDecimal available = maxCap.subtract(occupiedQty).subtract(reservedQty);
+        if (available.compareTo(BigDecimal.ZERO) < 0) {
+            available = BigDecimal.ZERO;
+        }
+        return new CandidateBin(location, zoneCode, maxCap, occupiedQty, reservedQty, available);
+    }
+
+    /** Như of(...) nhưng kèm tải thật (kg / m³) và vị trí aisle / rack cho các rule đa tiêu chí. */
+    public static CandidateBin of(LocationEntity location, String zoneCode,
+                                  BigDecimal occupiedQty, BigDecimal reservedQty,
+                                  BigDecimal occupiedWeightKg, BigDecimal occupiedVolumeM3,
+                                  int aisleRank, int rackRank) {
+        CandidateBin base = of(location, zoneCode, occupiedQty, reservedQty);
+        return new CandidateBin(location, zoneCode, base.maxCapacity, occupiedQty, reservedQty, base.availableCapacity,
+                occupiedWeightKg, occupiedVolumeM3, aisleRank, rackRank);
+    }
+
+    /** Cùng BIN nhưng đã cộng thêm qty được kế hoạch cho dòng trước (capacity làm việc). */
+    public CandidateBin withPlannedQty(BigDecimal plannedQty) {
+        return withPlanned(plannedQty, BigDecimal.ZERO, BigDecimal.ZERO);
+    }
+
+    /**
+     * withPlannedQty + tải thật (kg / m³) của phần đã kế hoạch. Hold của task khác (BinCapacityHolds.Held)
+     * cộng vào cùng chỗ → forSku đổi kg / m³ còn trống (đã trừ hold) sang đơn vị SKU.
+     */
+    public CandidateBin withPlanned(BigDecimal plannedQty, BigDecimal plannedWeightKg, BigDecimal plannedVolumeM3) {
+        CandidateBin base = of(location, zoneCode, occupiedQty.add(plannedQty), reservedQty);
+        return new CandidateBin(location, zoneCode, base.maxCapacity, base.occupiedQty, reservedQty,
+                base.availableCapacity, occupiedWeightKg.add(plannedWeightKg), occupiedVolumeM3.add(plannedVolumeM3),
+                aisleRank, rackRank);
+    }
+
+    /** withPlanned theo phần task khác đang hold. */
+    public CandidateBin withHeld(BinCapacityHolds.Held held) {
+        return held != null ? withPlanned(held.qty(), held.weightKg(), held.volumeM3()) : this;
+    }
+
+    /**
+     * Cùng BIN với capacity tính theo SKU: available = số đơn vị còn vừa theo chiều chặt nhất
+     * (remaining kg / kg mỗi đơn vị, remaining m³ / m³ mỗi đơn vị, làm tròn xuống 2 số lẻ);
+     * max = số đơn vị vừa BIN rỗng. Chỉ tính chiều mà cả BIN lẫn SKU cùng khai báo; không có
+     * chiều nào → giữ nguyên capacity qty cũ. Luôn tính từ tải thật → gọi lại cho kết quả như nhau.
+     */
+    public CandidateBin forSku(double unitWeightKg, double unitVolumeM3) {
+        boolean byWeight = measuresWeight(unitWeightKg);
+        boolean byVolume = measuresVolume(unitVolumeM3);
+        if (!byWeight && !byVolume) {
+            return this;
+        }
+        double units = Double.POSITIVE_INFINITY;
+        double maxUnits = Double.POSITIVE_INFINITY;
+        if (byWeight) {
+            units = Math.min(units, Math.max(0, remainingWeightKg) / unitWeightKg);
+            maxUnits = Math.min(maxUnits, location.getMaxWeightKg().doubleValue() / unitWeightKg);
+        }
+        if (byVolume) {
+            units = Math.min(units, Math.max(0, remainingVolumeM3) / unitVolumeM3);
+            maxUnits = Math.min(maxUnits, location.getMaxVolumeM3().doubleValue() / unitVolumeM3);
+        }
+        return new CandidateBin(location, zoneCode, units(maxUnits), occupiedQty, reservedQty, units(units),
+                occupiedWeightKg, occupiedVolumeM3, aisleRank, rackRank);
+    }
+
+    /** forSku theo weight / volume khai báo trên SKU (null → bỏ chiều đó; sku null → capacity qty cũ). */
+    public CandidateBin forSku(PutawayZoneDirectory.SkuPlacement sku) {
+        if (sku == null) {
+            return this;
+        }
+        return forSku(sku.weightKg() != null ? sku.weightKg().doubleValue() : Double.NaN,
+                sku.volumeM3() != null ? sku.volumeM3().doubleValue() : Double.NaN);
+    }
+
+    /** true khi BIN và SKU cùng khai báo ít nhất 1 chiều kg / m³ (forSku tính theo tải thật). */
+    public boolean measures(PutawayZoneDirectory.SkuPlacement sku) {
+        return sku != null && (measuresWeight(sku.weightKg() != null ? sku.weightKg().doubleValue() : Double.NaN)
+                || measuresVolume(sku.volumeM3() != null ? sku.volumeM3().doubleValue() : Double.NaN));
+    }
+
+    private boolean measuresWeight(double unitWeightKg) {
+        return !Double.isNaN(remainingWeightKg) && unitWeightKg > 0;
+    }
+
+    private boolean measuresVolume(double unitVolumeM3) {
+        return !Double.isNaN(remainingVolumeM3) && unitVolumeM3 > 0;
+    }
+
+    private static BigDecimal units(double units) {
+        return BigDecimal.valueOf(units).setScale(2, RoundingMode.DOWN);
     }
 
     public LocationEntity getLocation() {
@@ -54,5 +192,33 @@ public class CandidateBin {
     public BigDecimal getAvailableCapacity() {
         return availableCapacity;
     }
+
+    public long getAvailableCapacityFixed() {
+        return availableCapacityFixed;
+    }
+
+    public BigDecimal getOccupiedWeightKg() {
+        return occupiedWeightKg;
+    }
+
+    public BigDecimal getOccupiedVolumeM3() {
+        return occupiedVolumeM3;
+    }
+
+    public double getRemainingWeightKg() {
+        return remainingWeightKg;
+    }
+
+    public double getRemainingVolumeM3() {
+        return remainingVolumeM3;
+    }
+
+    public int getAisleRank() {
+        return aisleRank;
+    }
+
+    public int getRackRank() {
+        return rackRank;
+    }
 }
 
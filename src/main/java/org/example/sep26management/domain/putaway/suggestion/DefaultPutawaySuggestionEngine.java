@@ -1,52 +1,114 @@
 package org.example.sep26management.domain.putaway.suggestion;
 
-import org.example.sep26management.domain.putaway.suggestion.rules.BasicCapacityScoringRule;
 import org.example.sep26management.domain.putaway.suggestion.rules.CapacityEligibilityRule;
 import org.example.sep26management.domain.putaway.suggestion.strategy.NoSplitStrategy;
 import org.example.sep26management.domain.putaway.suggestion.strategy.SplitAcrossBinsStrategy;
-import org.example.sep26management.infrastructure.persistence.entity.LocationEntity;
-import org.example.sep26management.infrastructure.persistence.entity.SkuEntity;
-import org.example.sep26management.infrastructure.persistence.entity.ZoneEntity;
+import org.example.sep26management.infrastructure.persistence.entity.PutawayTaskItemEntity;
 import org.example.sep26management.infrastructure.persistence.repository.InventorySnapshotJpaRepository;
-import org.example.sep26management.infrastructure.persistence.repository.LocationJpaRepository;
-import org.example.sep26management.infrastructure.persistence.repository.SkuJpaRepository;
-import org.example.sep26management.infrastructure.persistence.repository.ZoneJpaRepository;
+import org.example.sep26management.infrastructure.persistence.repository.PutawayTaskItemJpaRepository;
 
 import java.math.BigDecimal;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 /**
  * Triển khai mặc định của engine gợi ý putaway.
- * Hiện tại: áp dụng zone theo convention Z-{categoryCode} và rule capacity cơ bản.
+ * Zone theo convention Z-{categoryCode} (+ zone phụ Z-{categoryCode}-…), chấm điểm theo rule của warehouse.
+ *
+ * suggestForTask / suggestForLines: planner 1 lượt cho cả task — SKU và zone lấy 1 lần cho mọi
+ * zone task chạm tới (PutawayZoneDirectory, 1 category có thể có nhiều zone được phép); mỗi dòng
+ * trừ phần đã gợi ý vào capacity làm việc chung trước khi lập kế hoạch cho dòng tiếp theo.
+ *
+ * Candidate BIN lấy từ BinCapacityIndex: zone index đang phục vụ → duyệt BIN theo capacity giảm
+ * dần, chỉ lấy đủ để phủ qty (tối thiểu minCandidates BIN); zone còn lại → load DB 1 lượt.
+ *
+ * fixedPointScoring = true: chấm điểm long fixed-point (FixedPointScoringRule), chỉ dựng
+ * ScoredBin + giải thích cho các BIN được chọn; false: đường BigDecimal cũ.
+ *
+ * Scoring rule + trọng số theo warehouse (PutawayScoringWeights). Chỉ có CAPACITY → duyệt đầu
+ * index như trên; có rule khác (fit kg / m³, consolidation, picking face, travel cost) → điểm không
+ * còn theo thứ tự capacity nên chấm toàn bộ BIN của zone (vẫn từ memory).
+ *
+ * holds (BinCapacityHolds, có thể null): capacity đang được gợi ý của task khác giữ chỗ (node khác
+ * cũng thấy) → trừ vào capacity làm việc trước khi lập kế hoạch, như phần của dòng trước.
+ *
+ * parallelism: dòng có ≥ parallelism.minCandidates candidate (zone rất lớn) → eligibility +
+ * scoring fixed-point chia chunk chạy trên ForkJoinPool riêng, mỗi chunk 1 heap, gộp lười các heap
+ * theo cùng thứ tự (điểm giảm dần, cùng điểm → vị trí nhỏ hơn) → kết quả giống hệt chạy tuần tự.
  */
 public class DefaultPutawaySuggestionEngine implements PutawaySuggestionEngine {
 
-    private final SkuJpaRepository skuRepo;
-    private final ZoneJpaRepository zoneRepo;
-    private final LocationJpaRepository locationRepo;
+    /** Strategy của pre-planning task: như SPLIT nhưng chỉ 1 BIN (BIN tốt nhất, tối đa phần vừa). */
+    public static final String BEST_BIN = "BEST_BIN";
+
+    private final PutawayZoneDirectory zoneDirectory;
+    private final PutawayTaskItemJpaRepository taskItemRepo;
+    private final BinCapacityIndex binIndex;
     private final InventorySnapshotJpaRepository snapshotRepo;
+    private final int minCandidates;
+    private final boolean fixedPointScoring;
+    private final Function<Long, PutawayScoringWeights> weightsByWarehouse;
+    private final BinCapacityHolds holds;
+    private final Parallelism parallelism;
 
     private final List<EligibilityRule> eligibilityRules;
-    private final List<ScoringRule> scoringRules;
+    private final ConcurrentMap<Long, ScoringProfile> profiles = new ConcurrentHashMap<>();
     private final Map<String, PutawayStrategy> strategies;
     private final ExplanationBuilder explanationBuilder;
 
-    public DefaultPutawaySuggestionEngine(SkuJpaRepository skuRepo,
-                                          ZoneJpaRepository zoneRepo,
-                                          LocationJpaRepository locationRepo,
-                                          InventorySnapshotJpaRepository snapshotRepo) {
-        this.skuRepo = skuRepo;
-        this.zoneRepo = zoneRepo;
-        this.locationRepo = locationRepo;
+    public DefaultPutawaySuggestionEngine(PutawayZoneDirectory zoneDirectory,
+                                          PutawayTaskItemJpaRepository taskItemRepo,
+                                          BinCapacityIndex binIndex,
+                                          int minCandidates,
+                                          boolean fixedPointScoring) {
+        this(zoneDirectory, taskItemRepo, binIndex, null, minCandidates, fixedPointScoring,
+                warehouseId -> PutawayScoringWeights.DEFAULT, null);
+    }
+
+    public DefaultPutawaySuggestionEngine(PutawayZoneDirectory zoneDirectory,
+                                          PutawayTaskItemJpaRepository taskItemRepo,
+                                          BinCapacityIndex binIndex,
+                                          InventorySnapshotJpaRepository snapshotRepo,
+                                          int minCandidates,
+                                          boolean fixedPointScoring,
+                                          Function<Long, PutawayScoringWeights> weightsByWarehouse,
+                                          BinCapacityHolds holds) {
+        this(zoneDirectory, taskItemRepo, binIndex, snapshotRepo, minCandidates, fixedPointScoring,
+                weightsByWarehouse, holds, Parallelism.OFF);
+    }
+
+    public DefaultPutawaySuggestionEngine(PutawayZoneDirectory zoneDirectory,
+                                          PutawayTaskItemJpaRepository taskItemRepo,
+                                          BinCapacityIndex binIndex,
+                                          InventorySnapshotJpaRepository snapshotRepo,
+                                          int minCandidates,
+                                          boolean fixedPointScoring,
+                                          Function<Long, PutawayScoringWeights> weightsByWarehouse,
+                                          BinCapacityHolds holds,
+                                          Parallelism parallelism) {
+        this.zoneDirectory = zoneDirectory;
+        this.taskItemRepo = taskItemRepo;
+        this.binIndex = binIndex;
         this.snapshotRepo = snapshotRepo;
+        this.minCandidates = Math.max(1, minCandidates);
+        this.fixedPointScoring = fixedPointScoring;
+        this.weightsByWarehouse = weightsByWarehouse;
+        this.holds = holds;
+        this.parallelism = parallelism != null ? parallelism : Parallelism.OFF;
 
         this.eligibilityRules = List.of(new CapacityEligibilityRule());
-        this.scoringRules = List.of(new BasicCapacityScoringRule());
 
         Map<String, PutawayStrategy> strategyMap = new HashMap<>();
         strategyMap.put("NO_SPLIT", new NoSplitStrategy());
         strategyMap.put("SPLIT", new SplitAcrossBinsStrategy());
+        strategyMap.put(BEST_BIN, new SplitAcrossBinsStrategy(1));
         this.strategies = Collections.unmodifiableMap(strategyMap);
 
         this.explanationBuilder = new DefaultExplanationBuilder();
@@ -54,25 +116,239 @@ public class DefaultPutawaySuggestionEngine implements PutawaySuggestionEngine {
 
     @Override
     public PutawaySuggestionLineResponse suggestForLine(PutawaySuggestionRequest request) {
-        PutawaySuggestionContext ctx = buildContext(request);
-
-        List<LocationEntity> bins = loadCandidateBins(ctx);
-        if (bins.isEmpty()) {
-            PutawaySuggestionLineResponse res = new PutawaySuggestionLineResponse();
-            res.setPutawayTaskItemId(request.getPutawayTaskItemId());
-            res.setSkuId(request.getSkuId());
-            res.setSkuCode(request.getSkuCode());
-            res.setLotId(request.getLotId());
-            res.setLotNumber(request.getLotNumber());
-            res.setExpiryDate(request.getExpiryDate());
-            res.setTotalQty(request.getQuantity());
-            res.setBinSuggestions(Collections.emptyList());
-            res.setFullyAllocated(false);
-            res.setOverallExplanation("No active BINs found in matched zone.");
-            return res;
-        }
-
-        List<CandidateBin> candidates = enrichCandidates(ctx, bins);
+        return suggestForLines(request.getWarehouseId(), List.of(request)).get(0);
+    }
+
+    @Override
+    public PutawaySuggestionResponse suggestForTask(Long warehouseId, Long putawayTaskId) {
+        List<PutawaySuggestionRequest> requests = new ArrayList<>();
+        for (PutawayTaskItemEntity item : taskItemRepo.findByPutawayTaskPutawayTaskId(putawayTaskId)) {
+            // Chỉ lập cho phần chưa cất (task đang làm dở được tính lại khi gợi ý cũ stale)
+            BigDecimal remaining = item.getPutawayQty() != null
+                    ? item.getQuantity().subtract(item.getPutawayQty()) : item.getQuantity();
+            if (remaining.signum() <= 0) continue;
+            PutawaySuggestionRequest req = new PutawaySuggestionRequest();
+            req.setWarehouseId(warehouseId);
+            req.setPutawayTaskId(putawayTaskId);
+            req.setPutawayTaskItemId(item.getPutawayTaskItemId());
+            req.setSkuId(item.getSkuId());
+            req.setLotId(item.getLotId());
+            req.setQuantity(remaining);
+            req.setSplitAllowed(true);
+            // Task chỉ lưu 1 BIN / dòng → lập đúng 1 BIN (capacity làm việc chỉ trừ phần được lưu);
+            // phần không vừa được lập tiếp khi keeper mở task sau khi cất xong phần đầu
+            req.setStrategyCode(BEST_BIN);
+            requests.add(req);
+        }
+
+        PutawaySuggestionResponse res = new PutawaySuggestionResponse();
+        res.setWarehouseId(warehouseId);
+        res.setPutawayTaskId(putawayTaskId);
+        res.setLines(suggestForLines(warehouseId, requests));
+        return res;
+    }
+
+    @Override
+    public List<PutawaySuggestionLineResponse> suggestForLines(Long warehouseId, List<PutawaySuggestionRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        // ── 1. SKU → category → zone được phép: từ PutawayZoneDirectory (cache), miss mới query ──
+        Set<Long> skuIds = requests.stream()
+                .map(PutawaySuggestionRequest::getSkuId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Map<Long, PutawayZoneDirectory.SkuPlacement> skus = skuIds.isEmpty() ? Collections.emptyMap()
+                : zoneDirectory.skus(skuIds);
+
+        Map<Long, List<PutawayZoneDirectory.ZoneInfo>> zonesBySku = new HashMap<>();
+        Set<Long> allZoneIds = new HashSet<>();
+        if (warehouseId != null) {
+            skus.values().forEach(sku -> {
+                List<PutawayZoneDirectory.ZoneInfo> zones = zoneDirectory.allowedZones(warehouseId, sku.categoryCode());
+                zonesBySku.put(sku.skuId(), zones);
+                zones.forEach(z -> allZoneIds.add(z.zoneId()));
+            });
+        }
+
+        ScoringProfile profile = profile(warehouseId);
+        StockedBins stocked = profile.weights().usesConsolidation()
+                ? loadStockedBins(warehouseId, skuIds)
+                : new StockedBins();
+
+        // ── 2. Zone index không phục vụ (chưa load / đang có ghi in-flight) → load DB 1 lượt ──
+        Set<Long> dbZoneIds = allZoneIds.stream()
+                .filter(zoneId -> !binIndex.serves(zoneId))
+                .collect(Collectors.toSet());
+        Map<Long, List<CandidateBin>> dbBins = binIndex.loadZones(dbZoneIds);
+
+        // ── 3. Lập kế hoạch tuần tự, capacity làm việc dùng chung ──
+        Map<Long, Planned> plannedByBin = new HashMap<>();
+        if (holds != null && !allZoneIds.isEmpty()) {
+            // Hold của chính task không trừ (gợi ý cũ của task đang được tính lại)
+            String holder = BinCapacityHolds.taskHolder(requests.get(0).getPutawayTaskId());
+            holds.heldByOthers(allZoneIds, holder).forEach((locationId, held) ->
+                    plannedByBin.computeIfAbsent(locationId, id -> new Planned()).hold(held));
+        }
+        List<PutawaySuggestionLineResponse> lines = new ArrayList<>(requests.size());
+        for (PutawaySuggestionRequest request : requests) {
+            PutawayZoneDirectory.SkuPlacement sku = skus.get(request.getSkuId());
+            if (sku != null) {
+                if (request.getSkuCode() == null) request.setSkuCode(sku.skuCode());
+                if (request.getWeight() == null) request.setWeight(sku.weightKg());
+                if (request.getVolume() == null) request.setVolume(sku.volumeM3());
+            }
+            List<PutawayZoneDirectory.ZoneInfo> zones = zonesBySku.getOrDefault(request.getSkuId(), Collections.emptyList());
+            Set<Long> allowedZoneIds = new LinkedHashSet<>();
+            zones.forEach(z -> allowedZoneIds.add(z.zoneId()));
+            PutawaySuggestionContext ctx = new PutawaySuggestionContext(request, allowedZoneIds,
+                    stocked.bySku(request.getSkuId()), stocked.byLot(request.getSkuId(), request.getLotId()));
+
+            // Nhiều zone được phép → gộp candidate của từng zone, strategy chọn theo điểm
+            List<CandidateBin> candidates = new ArrayList<>();
+            for (Long zoneId : allowedZoneIds) {
+                if (dbZoneIds.contains(zoneId)) {
+                    dbBins.getOrDefault(zoneId, Collections.emptyList())
+                            .forEach(bin -> candidates.add(withPlanned(bin, plannedByBin)));
+                } else if (profile.weights().isCapacityOnly() && !ctx.hasUnitSize()) {
+                    // Index xếp theo capacity qty cũ — chỉ trùng thứ tự capacity theo SKU khi SKU không có kg / m³
+                    candidates.addAll(walkIndex(zoneId, request.getQuantity(), plannedByBin));
+                } else {
+                    candidates.addAll(wholeZone(zoneId, plannedByBin));
+                }
+            }
+            if (candidates.isEmpty()) {
+                lines.add(emptyLine(request, "No active BINs found in matched zone."));
+                continue;
+            }
+
+            PutawaySuggestionLineResponse line = planCandidates(ctx, candidates);
+            for (PutawayBinSuggestionDto dto : line.getBinSuggestions()) {
+                if (dto.getSuggestedQuantity() != null) {
+                    plannedByBin.computeIfAbsent(dto.getBinId(), id -> new Planned())
+                            .add(dto.getSuggestedQuantity(), request);
+                    // dòng sau cùng SKU / lot gom vào BIN vừa kế hoạch
+                    stocked.add(request.getSkuId(), request.getLotId(), dto.getBinId());
+                }
+            }
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    /**
+     * Duyệt index theo capacity giảm dần, trả về BIN theo capacity làm việc (đã trừ phần dòng
+     * trước kế hoạch) cũng giảm dần, dừng khi đã có ≥ minCandidates BIN và tổng capacity ≥ qty.
+     *
+     * BIN có kế hoạch chỉ giảm capacity → luôn gặp trong index trước vị trí mới của nó; giữ lại
+     * trong heap và trả ra khi BIN kế tiếp của index không lớn hơn → thứ tự chính xác, không
+     * phải load cả zone.
+     */
+    private List<CandidateBin> walkIndex(Long zoneId, BigDecimal qty, Map<Long, Planned> plannedByBin) {
+        BigDecimal needed = qty != null ? qty : BigDecimal.ZERO;
+        PriorityQueue<CandidateBin> held = new PriorityQueue<>(
+                Comparator.comparing(CandidateBin::getAvailableCapacity).reversed());
+        Set<Long> seen = new HashSet<>();
+        List<CandidateBin> result = new ArrayList<>();
+        BigDecimal covered = BigDecimal.ZERO;
+
+        Iterator<CandidateBin> it = binIndex.byCapacityDesc(zoneId);
+        while (it.hasNext() && !(result.size() >= minCandidates && covered.compareTo(needed) >= 0)) {
+            CandidateBin bin = it.next();
+            // iterator của skip list có thể trả 1 BIN 2 lần khi đang được cập nhật
+            if (!seen.add(bin.getLocation().getLocationId())) continue;
+            if (plannedByBin.containsKey(bin.getLocation().getLocationId())) {
+                held.add(withPlanned(bin, plannedByBin));
+                continue;
+            }
+            while (!held.isEmpty() && held.peek().getAvailableCapacity().compareTo(bin.getAvailableCapacity()) >= 0
+                    && !(result.size() >= minCandidates && covered.compareTo(needed) >= 0)) {
+                CandidateBin h = held.poll();
+                result.add(h);
+                covered = covered.add(h.getAvailableCapacity());
+            }
+            if (bin.getAvailableCapacity().signum() <= 0) {
+                // Phần còn lại của zone đã đầy — giữ 1 BIN để engine báo "không đủ capacity"
+                if (result.isEmpty() && held.isEmpty()) result.add(bin);
+                break;
+            }
+            if (result.size() >= minCandidates && covered.compareTo(needed) >= 0) break;
+            result.add(bin);
+            covered = covered.add(bin.getAvailableCapacity());
+        }
+        while (!held.isEmpty() && !(result.size() >= minCandidates && covered.compareTo(needed) >= 0)) {
+            CandidateBin h = held.poll();
+            result.add(h);
+            covered = covered.add(h.getAvailableCapacity());
+        }
+        return result;
+    }
+
+    /** Mọi BIN của zone trong index (rule đa tiêu chí cần chấm hết, không cắt theo capacity). */
+    private List<CandidateBin> wholeZone(Long zoneId, Map<Long, Planned> plannedByBin) {
+        Set<Long> seen = new HashSet<>();
+        List<CandidateBin> result = new ArrayList<>();
+        Iterator<CandidateBin> it = binIndex.byCapacityDesc(zoneId);
+        while (it.hasNext()) {
+            CandidateBin bin = it.next();
+            if (seen.add(bin.getLocation().getLocationId())) {
+                result.add(withPlanned(bin, plannedByBin));
+            }
+        }
+        return result;
+    }
+
+    private static CandidateBin withPlanned(CandidateBin bin, Map<Long, Planned> plannedByBin) {
+        Planned planned = plannedByBin.get(bin.getLocation().getLocationId());
+        return planned != null ? bin.withPlanned(planned.qty, planned.weightKg, planned.volumeM3) : bin;
+    }
+
+    /** BIN đang có tồn của các SKU trong lượt lập kế hoạch — 1 query. */
+    private StockedBins loadStockedBins(Long warehouseId, Set<Long> skuIds) {
+        StockedBins stocked = new StockedBins();
+        if (snapshotRepo == null || warehouseId == null || skuIds.isEmpty()) {
+            return stocked;
+        }
+        for (Object[] row : snapshotRepo.findStockedLocationsBySkuIds(warehouseId, skuIds)) {
+            stocked.add((Long) row[0], (Long) row[1], (Long) row[2]);
+        }
+        return stocked;
+    }
+
+    private ScoringProfile profile(Long warehouseId) {
+        return profiles.computeIfAbsent(warehouseId != null ? warehouseId : 0L, id -> {
+            PutawayScoringWeights weights = weightsByWarehouse.apply(warehouseId);
+            return new ScoringProfile(weights != null ? weights : PutawayScoringWeights.DEFAULT);
+        });
+    }
+
+    /**
+     * Eligibility → scoring → strategy cho 1 dòng trên tập candidate đã enrich.
+     * Public để benchmark / caller có sẵn candidate chạy pipeline mà không qua repository.
+     */
+    public PutawaySuggestionLineResponse planCandidates(PutawaySuggestionContext ctx, List<CandidateBin> candidates) {
+        List<ScoringRule> rules = profile(ctx.getRequest().getWarehouseId()).rules();
+        List<CandidateBin> sized = forSku(ctx, candidates);
+        return fixedPointScoring ? planLineFixed(ctx, sized, rules) : planLine(ctx, sized, rules);
+    }
+
+    /** Capacity theo kg / m³ thật của SKU (CandidateBin.forSku); SKU không khai báo → giữ capacity qty cũ. */
+    private static List<CandidateBin> forSku(PutawaySuggestionContext ctx, List<CandidateBin> candidates) {
+        if (!ctx.hasUnitSize()) {
+            return candidates;
+        }
+        List<CandidateBin> sized = new ArrayList<>(candidates.size());
+        for (CandidateBin bin : candidates) {
+            sized.add(bin.forSku(ctx.getUnitWeightKg(), ctx.getUnitVolumeM3()));
+        }
+        return sized;
+    }
+
+    /** Đường BigDecimal: ScoredBin + danh sách matched rule cho mọi candidate, sort toàn bộ. */
+    private PutawaySuggestionLineResponse planLine(PutawaySuggestionContext ctx, List<CandidateBin> candidates,
+                                                   List<ScoringRule> scoringRules) {
+        PutawaySuggestionRequest request = ctx.getRequest();
 
         List<CandidateBin> eligible = new ArrayList<>();
         for (CandidateBin bin : candidates) {
@@ -90,36 +366,160 @@ public class DefaultPutawaySuggestionEngine implements PutawaySuggestionEngine {
         }
 
         if (eligible.isEmpty()) {
-            PutawaySuggestionLineResponse res = new PutawaySuggestionLineResponse();
-            res.setPutawayTaskItemId(request.getPutawayTaskItemId());
-            res.setSkuId(request.getSkuId());
-            res.setSkuCode(request.getSkuCode());
-            res.setLotId(request.getLotId());
-            res.setLotNumber(request.getLotNumber());
-            res.setExpiryDate(request.getExpiryDate());
-            res.setTotalQty(request.getQuantity());
-            res.setBinSuggestions(Collections.emptyList());
-            res.setFullyAllocated(false);
-            res.setOverallExplanation("No BIN has enough capacity for this line.");
-            return res;
+            return emptyLine(request, "No BIN has enough capacity for this line.");
         }
 
         List<ScoredBin> scored = new ArrayList<>();
         for (CandidateBin bin : eligible) {
-            BigDecimal totalScore = BigDecimal.ZERO;
-            List<String> matchedRules = new ArrayList<>();
+            scored.add(explain(ctx, bin, scoringRules));
+        }
+
+        scored.sort(Comparator.comparing(ScoredBin::getScore).reversed());
+
+        return allocate(ctx, resolveStrategy(request), scored);
+    }
+
+    /**
+     * Đường fixed-point: điểm long ghi vào mảng dùng lại theo vị trí candidate, chọn theo heap
+     * chỉ số (không boxing, không ScoredBin / matched rule cho candidate bị loại). Chỉ các BIN
+     * được lấy ra khỏi heap mới dựng ScoredBin + giải thích (explain).
+     *
+     * SPLIT dừng khi các BIN đã lấy phủ đủ qty, NO_SPLIT khi gặp BIN chứa đủ qty — đúng điểm
+     * dừng của 2 strategy nên kết quả giống đường BigDecimal. Strategy khác → lấy hết.
+     */
+    private PutawaySuggestionLineResponse planLineFixed(PutawaySuggestionContext ctx, List<CandidateBin> candidates,
+                                                        List<ScoringRule> scoringRules) {
+        PutawaySuggestionRequest request = ctx.getRequest();
+        int n = candidates.size();
+        Scratch scratch = SCRATCH.get().ensure(n);
+        long[] scores = scratch.scores;
+        int[] heap = scratch.heap;
+
+        int chunks = parallelism.chunks(n);
+        int size = 0;
+        ChunkMerge merge = null;
+        if (chunks <= 1) {
+            size = evaluateChunk(ctx, candidates, scoringRules, scores, heap, 0, n, scratch.sink);
+        } else {
+            merge = evaluateParallel(ctx, candidates, scoringRules, scores, heap, chunks);
+            size = merge.remaining();
+        }
+
+        if (size == 0) {
+            return emptyLine(request, "No BIN has enough capacity for this line.");
+        }
+
+        PutawayStrategy strategy = resolveStrategy(request);
+        BigDecimal qty = request.getQuantity() != null ? request.getQuantity() : BigDecimal.ZERO;
+        BigDecimal covered = BigDecimal.ZERO;
+        List<ScoredBin> top = new ArrayList<>();
+        while (true) {
+            int best;
+            if (merge == null) {
+                if (size == 0) break;
+                best = heap[0];
+                heap[0] = heap[--size];
+                siftDown(heap, 0, 0, size, scores);
+            } else {
+                best = merge.pop();
+                if (best < 0) break;
+            }
+
+            CandidateBin bin = candidates.get(best);
+            top.add(explain(ctx, bin, scoringRules));
+            covered = covered.add(bin.getAvailableCapacity());
+            if (strategy instanceof SplitAcrossBinsStrategy && covered.compareTo(qty) >= 0) break;
+            if (strategy instanceof NoSplitStrategy && bin.getAvailableCapacity().compareTo(qty) >= 0) break;
+        }
+
+        return allocate(ctx, strategy, top);
+    }
+
+    /**
+     * Eligibility + điểm fixed-point cho candidates[lo, hi): scores[i] theo vị trí, chỉ số BIN đạt
+     * ghi vào heap[lo, lo + size) rồi dựng max-heap tại chỗ. Trả về size. Các chunk ghi vùng rời nhau.
+     */
+    private int evaluateChunk(PutawaySuggestionContext ctx, List<CandidateBin> candidates,
+                              List<ScoringRule> scoringRules, long[] scores, int[] heap,
+                              int lo, int hi, List<String> sink) {
+        int size = 0;
+        for (int i = lo; i < hi; i++) {
+            CandidateBin bin = candidates.get(i);
+            boolean ok = true;
+            for (EligibilityRule rule : eligibilityRules) {
+                sink.clear();
+                if (!rule.isEligible(ctx, bin, sink)) {
+                    ok = false;
+                    break;
+                }
+            }
+            if (!ok) continue;
+
+            long total = 0L;
             for (ScoringRule rule : scoringRules) {
-                BigDecimal s = rule.score(ctx, bin, matchedRules);
-                if (s != null) {
-                    totalScore = totalScore.add(s);
+                if (rule instanceof FixedPointScoringRule fast) {
+                    total += fast.scoreFixed(ctx, bin);
+                } else {
+                    sink.clear();
+                    total += FixedPointScoringRule.toFixed(rule.score(ctx, bin, sink));
                 }
             }
-            scored.add(new ScoredBin(bin, totalScore, matchedRules));
+            scores[i] = total;
+            heap[lo + size++] = i;
         }
+        sink.clear();
 
-        scored.sort(Comparator.comparing(ScoredBin::getScore).reversed());
+        for (int k = size / 2 - 1; k >= 0; k--) {
+            siftDown(heap, lo, k, size, scores);
+        }
+        return size;
+    }
 
-        PutawayStrategy strategy = resolveStrategy(request);
+    /** Chấm các chunk trên pool song song (caller chờ hết), trả về bộ gộp heap theo chunk. */
+    private ChunkMerge evaluateParallel(PutawaySuggestionContext ctx, List<CandidateBin> candidates,
+                                        List<ScoringRule> scoringRules, long[] scores, int[] heap, int chunks) {
+        int n = candidates.size();
+        int chunkSize = (n + chunks - 1) / chunks;
+        int[] bases = new int[chunks];
+        List<Callable<Integer>> tasks = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            int lo = c * chunkSize;
+            int hi = Math.min(n, lo + chunkSize);
+            bases[c] = lo;
+            tasks.add(() -> evaluateChunk(ctx, candidates, scoringRules, scores, heap, lo, hi, new ArrayList<>()));
+        }
+
+        int[] sizes = new int[chunks];
+        List<Future<Integer>> results = parallelism.pool().invokeAll(tasks);
+        try {
+            for (int c = 0; c < chunks; c++) {
+                sizes[c] = results.get(c).get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Putaway candidate evaluation interrupted", e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException re ? re : new IllegalStateException(e.getCause());
+        }
+        return new ChunkMerge(heap, scores, bases, sizes);
+    }
+
+    /** Điểm BigDecimal + matched rules của 1 BIN (đầy đủ như đường cũ). */
+    private ScoredBin explain(PutawaySuggestionContext ctx, CandidateBin bin, List<ScoringRule> scoringRules) {
+        BigDecimal totalScore = BigDecimal.ZERO;
+        List<String> matchedRules = new ArrayList<>();
+        for (ScoringRule rule : scoringRules) {
+            BigDecimal s = rule.score(ctx, bin, matchedRules);
+            if (s != null) {
+                totalScore = totalScore.add(s);
+            }
+        }
+        return new ScoredBin(bin, totalScore, matchedRules);
+    }
+
+    private PutawaySuggestionLineResponse allocate(PutawaySuggestionContext ctx, PutawayStrategy strategy,
+                                                   List<ScoredBin> scored) {
+        PutawaySuggestionRequest request = ctx.getRequest();
         List<PutawayBinSuggestionDto> binSuggestions = strategy.allocate(ctx, scored);
 
         BigDecimal totalSuggested = binSuggestions.stream()
@@ -132,6 +532,43 @@ public class DefaultPutawaySuggestionEngine implements PutawaySuggestionEngine {
 
         String overallExplanation = explanationBuilder.buildOverall(ctx, binSuggestions, fullyAllocated);
 
+        PutawaySuggestionLineResponse res = lineOf(request);
+        res.setBinSuggestions(binSuggestions);
+        res.setFullyAllocated(fullyAllocated);
+        res.setOverallExplanation(overallExplanation);
+        return res;
+    }
+
+    /**
+     * Max-heap chỉ số candidate theo scores, nằm tại heap[base, base + size); cùng điểm → vị trí
+     * nhỏ hơn trước (như sort ổn định).
+     */
+    private static void siftDown(int[] heap, int base, int k, int size, long[] scores) {
+        int item = heap[base + k];
+        while (true) {
+            int child = 2 * k + 1;
+            if (child >= size) break;
+            if (child + 1 < size && before(heap[base + child + 1], heap[base + child], scores)) child++;
+            if (!before(heap[base + child], item, scores)) break;
+            heap[base + k] = heap[base + child];
+            k = child;
+        }
+        heap[base + k] = item;
+    }
+
+    private static boolean before(int a, int b, long[] scores) {
+        return scores[a] > scores[b] || (scores[a] == scores[b] && a < b);
+    }
+
+    private static PutawaySuggestionLineResponse emptyLine(PutawaySuggestionRequest request, String explanation) {
+        PutawaySuggestionLineResponse res = lineOf(request);
+        res.setBinSuggestions(Collections.emptyList());
+        res.setFullyAllocated(false);
+        res.setOverallExplanation(explanation);
+        return res;
+    }
+
+    private static PutawaySuggestionLineResponse lineOf(PutawaySuggestionRequest request) {
         PutawaySuggestionLineResponse res = new PutawaySuggestionLineResponse();
         res.setPutawayTaskItemId(request.getPutawayTaskItemId());
         res.setSkuId(request.getSkuId());
@@ -140,106 +577,174 @@ public class DefaultPutawaySuggestionEngine implements PutawaySuggestionEngine {
         res.setLotNumber(request.getLotNumber());
         res.setExpiryDate(request.getExpiryDate());
         res.setTotalQty(request.getQuantity());
-        res.setBinSuggestions(binSuggestions);
-        res.setFullyAllocated(fullyAllocated);
-        res.setOverallExplanation(overallExplanation);
         return res;
     }
 
-    @Override
-    public PutawaySuggestionResponse suggestForTask(Long warehouseId, Long putawayTaskId) {
-        // Chưa implement: application layer sẽ map task items thành nhiều PutawaySuggestionRequest
-        // và tự gọi suggestForLine cho từng dòng.
-        PutawaySuggestionResponse res = new PutawaySuggestionResponse();
-        res.setWarehouseId(warehouseId);
-        res.setPutawayTaskId(putawayTaskId);
-        res.setLines(Collections.emptyList());
-        return res;
+    private PutawayStrategy resolveStrategy(PutawaySuggestionRequest request) {
+        String code = request.getStrategyCode();
+        if (code == null || code.isBlank()) {
+            // nếu splitAllowed = false thì mặc định dùng NO_SPLIT, ngược lại SPLIT
+            if (Boolean.FALSE.equals(request.getSplitAllowed())) {
+                return strategies.getOrDefault("NO_SPLIT", new NoSplitStrategy());
+            }
+            return strategies.getOrDefault("SPLIT", new SplitAcrossBinsStrategy());
+        }
+        return strategies.getOrDefault(code, new SplitAcrossBinsStrategy());
     }
 
-    private PutawaySuggestionContext buildContext(PutawaySuggestionRequest request) {
-        // Tạm thời: allowedZoneIds chỉ gồm zone khớp theo convention category → Z-{categoryCode}
-        Set<Long> allowedZoneIds = resolveAllowedZones(request);
-        return new PutawaySuggestionContext(request, allowedZoneIds);
+    // ─── Types ──────────────────────────────────────────────────────────────────
+
+    /**
+     * Chấm song song: pool riêng (không dùng common pool), chỉ bật khi dòng có ≥ minCandidates
+     * candidate, mỗi chunk ≈ chunkSize BIN. pool null → luôn tuần tự.
+     */
+    public record Parallelism(ForkJoinPool pool, int minCandidates, int chunkSize) {
+
+        public static final Parallelism OFF = new Parallelism(null, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+        int chunks(int candidates) {
+            if (pool == null || candidates < minCandidates || chunkSize <= 0) return 1;
+            return Math.min(pool.getParallelism() * 4, (candidates + chunkSize - 1) / chunkSize);
+        }
     }
 
-    private Set<Long> resolveAllowedZones(PutawaySuggestionRequest request) {
-        if (request.getSkuId() == null || request.getWarehouseId() == null) {
-            return Collections.emptySet();
+    /**
+     * Gộp lười các heap theo chunk: heap ngoài (heads) sắp các chunk theo phần tử đầu, cùng thứ
+     * tự before() → thứ tự lấy ra giống hệt 1 heap trên toàn bộ candidate.
+     */
+    private static final class ChunkMerge {
+        private final int[] heap;
+        private final long[] scores;
+        private final int[] bases;
+        private final int[] sizes;
+        private final int[] heads;
+        private int headCount;
+        private int remaining;
+
+        ChunkMerge(int[] heap, long[] scores, int[] bases, int[] sizes) {
+            this.heap = heap;
+            this.scores = scores;
+            this.bases = bases;
+            this.sizes = sizes;
+            this.heads = new int[sizes.length];
+            for (int c = 0; c < sizes.length; c++) {
+                if (sizes[c] > 0) heads[headCount++] = c;
+                remaining += sizes[c];
+            }
+            for (int k = headCount / 2 - 1; k >= 0; k--) {
+                siftHeads(k);
+            }
+        }
+
+        int remaining() {
+            return remaining;
         }
 
-        SkuEntity sku = skuRepo.findByIdWithCategory(request.getSkuId()).orElse(null);
-        if (sku == null || sku.getCategory() == null) {
-            return Collections.emptySet();
+        /** Chỉ số candidate tốt nhất còn lại, -1 khi hết. */
+        int pop() {
+            if (headCount == 0) return -1;
+            int c = heads[0];
+            int base = bases[c];
+            int best = heap[base];
+            int size = --sizes[c];
+            heap[base] = heap[base + size];
+            siftDown(heap, base, 0, size, scores);
+            if (size == 0) heads[0] = heads[--headCount];
+            siftHeads(0);
+            remaining--;
+            return best;
         }
 
-        String categoryCode = sku.getCategory().getCategoryCode();
-        String zoneCode = "Z-" + categoryCode;
+        private void siftHeads(int k) {
+            if (headCount == 0) return;
+            int item = heads[k];
+            while (true) {
+                int child = 2 * k + 1;
+                if (child >= headCount) break;
+                if (child + 1 < headCount && headBefore(heads[child + 1], heads[child])) child++;
+                if (!headBefore(heads[child], item)) break;
+                heads[k] = heads[child];
+                k = child;
+            }
+            heads[k] = item;
+        }
 
-        Optional<ZoneEntity> zoneOpt = zoneRepo.findByWarehouseIdAndZoneCode(request.getWarehouseId(), zoneCode);
-        return zoneOpt.filter(ZoneEntity::getActive)
-                .map(z -> Collections.singleton(z.getZoneId()))
-                .orElse(Collections.emptySet());
+        private boolean headBefore(int a, int b) {
+            return before(heap[bases[a]], heap[bases[b]], scores);
+        }
     }
 
-    private List<LocationEntity> loadCandidateBins(PutawaySuggestionContext ctx) {
-        if (ctx.getAllowedZoneIds().isEmpty()) {
-            return Collections.emptyList();
+    /** Rule đã dựng cho 1 warehouse (trọng số lấy 1 lần, engine sống theo service). */
+    private record ScoringProfile(PutawayScoringWeights weights, List<ScoringRule> rules) {
+
+        ScoringProfile(PutawayScoringWeights weights) {
+            this(weights, weights.buildRules());
         }
-        Long zoneId = ctx.getAllowedZoneIds().iterator().next();
-        return locationRepo.findActiveBinsByZone(zoneId);
     }
 
-    private List<CandidateBin> enrichCandidates(PutawaySuggestionContext ctx, List<LocationEntity> bins) {
-        List<Long> locationIds = bins.stream()
-                .map(LocationEntity::getLocationId)
-                .collect(Collectors.toList());
+    /** Phần đã kế hoạch vào 1 BIN trong lượt hiện tại: qty + tải thật (kg / m³), cộng hold của task khác. */
+    private static final class Planned {
+        BigDecimal qty = BigDecimal.ZERO;
+        BigDecimal weightKg = BigDecimal.ZERO;
+        BigDecimal volumeM3 = BigDecimal.ZERO;
 
-        Map<Long, BigDecimal> occupiedMap = snapshotRepo.sumQuantityByLocationIds(locationIds);
-        Map<Long, BigDecimal> reservedMap = snapshotRepo.sumReservedByLocationIds(locationIds);
+        void add(BigDecimal quantity, PutawaySuggestionRequest request) {
+            qty = qty.add(quantity);
+            if (request.getWeight() != null) weightKg = weightKg.add(request.getWeight().multiply(quantity));
+            if (request.getVolume() != null) volumeM3 = volumeM3.add(request.getVolume().multiply(quantity));
+        }
 
-        Map<Long, String> zoneCodes = bins.stream()
-                .map(LocationEntity::getZoneId)
-                .filter(Objects::nonNull)
-                .distinct()
-                .map(id -> zoneRepo.findById(id).orElse(null))
-                .filter(Objects::nonNull)
-                .collect(Collectors.toMap(ZoneEntity::getZoneId, ZoneEntity::getZoneCode));
+        /** Hold của task khác: qty + kg / m³ của SKU được hold, cộng như phần đã kế hoạch. */
+        void hold(BinCapacityHolds.Held held) {
+            if (held == null) return;
+            qty = qty.add(held.qty());
+            weightKg = weightKg.add(held.weightKg());
+            volumeM3 = volumeM3.add(held.volumeM3());
+        }
+    }
 
-        List<CandidateBin> result = new ArrayList<>();
-        for (LocationEntity bin : bins) {
-            BigDecimal occupied = occupiedMap.getOrDefault(bin.getLocationId(), BigDecimal.ZERO);
-            BigDecimal reserved = reservedMap.getOrDefault(bin.getLocationId(), BigDecimal.ZERO);
-            BigDecimal maxCap = bin.getMaxWeightKg() != null ? bin.getMaxWeightKg() : BigDecimal.ZERO;
-            BigDecimal available = maxCap.subtract(occupied).subtract(reserved);
-            if (available.compareTo(BigDecimal.ZERO) < 0) {
-                available = BigDecimal.ZERO;
-            }
+    /** SKU → BIN, (SKU, lot) → BIN đang có tồn hoặc đã được kế hoạch trong lượt. */
+    private static final class StockedBins {
 
-            String zoneCode = bin.getZoneId() != null ? zoneCodes.get(bin.getZoneId()) : null;
+        private final Map<Long, Set<Long>> bySku = new HashMap<>();
+        private final Map<List<Long>, Set<Long>> byLot = new HashMap<>();
 
-            result.add(new CandidateBin(
-                    bin,
-                    zoneCode,
-                    maxCap,
-                    occupied,
-                    reserved,
-                    available));
+        void add(Long skuId, Long lotId, Long locationId) {
+            if (skuId == null || locationId == null) return;
+            bySku.computeIfAbsent(skuId, k -> new HashSet<>()).add(locationId);
+            if (lotId != null) {
+                byLot.computeIfAbsent(List.of(skuId, lotId), k -> new HashSet<>()).add(locationId);
+            }
         }
 
-        return result;
+        /** Set sống — các dòng sau trong lượt thấy BIN vừa được thêm. */
+        Set<Long> bySku(Long skuId) {
+            return skuId == null ? Collections.emptySet() : bySku.computeIfAbsent(skuId, k -> new HashSet<>());
+        }
+
+        Set<Long> byLot(Long skuId, Long lotId) {
+            return skuId == null || lotId == null ? Collections.emptySet()
+                    : byLot.computeIfAbsent(List.of(skuId, lotId), k -> new HashSet<>());
+        }
     }
 
-    private PutawayStrategy resolveStrategy(PutawaySuggestionRequest request) {
-        String code = request.getStrategyCode();
-        if (code == null || code.isBlank()) {
-            // nếu splitAllowed = false thì mặc định dùng NO_SPLIT, ngược lại SPLIT
-            if (Boolean.FALSE.equals(request.getSplitAllowed())) {
-                return strategies.getOrDefault("NO_SPLIT", new NoSplitStrategy());
+    // ─── Scratch ────────────────────────────────────────────────────────────────
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    /** Mảng dùng lại giữa các lần chấm điểm trên cùng thread (engine dùng chung giữa request). */
+    private static final class Scratch {
+        long[] scores = new long[0];
+        int[] heap = new int[0];
+        final List<String> sink = new ArrayList<>();
+
+        Scratch ensure(int n) {
+            if (scores.length < n) {
+                int capacity = Math.max(n, scores.length * 2);
+                scores = new long[capacity];
+                heap = new int[capacity];
             }
-            return strategies.getOrDefault("SPLIT", new SplitAcrossBinsStrategy());
+            return this;
         }
-        return strategies.getOrDefault(code, new SplitAcrossBinsStrategy());
     }
 }
-
@@ -0,0 +1,32 @@
+package org.example.sep26management.domain.putaway.suggestion;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fast path của ScoringRule: điểm dạng long fixed-point (điểm × 10^SCALE), không cấp phát.
+ * Engine gọi scoreFixed() cho mọi candidate; score(ctx, bin, matchedRules) chỉ còn dùng để
+ * dựng giải thích cho các BIN được trả về.
+ *
+ * Rule chỉ implement ScoringRule vẫn chạy được — engine quy đổi BigDecimal sang fixed-point.
+ */
+public interface FixedPointScoringRule extends ScoringRule {
+
+    int SCALE = 4;
+
+    long scoreFixed(PutawaySuggestionContext ctx, CandidateBin bin);
+
+    long ONE = 10_000L;
+
+    static long toFixed(BigDecimal value) {
+        return value == null ? 0L : value.movePointRight(SCALE).setScale(0, RoundingMode.HALF_UP).longValue();
+    }
+
+    static long toFixed(double value) {
+        return Math.round(value * ONE);
+    }
+
+    static BigDecimal fromFixed(long fixed) {
+        return BigDecimal.valueOf(fixed, SCALE);
+    }
+}
@@ -0,0 +1,115 @@
+package org.example.sep26management.domain.putaway.suggestion;
+
+import org.example.sep26management.domain.putaway.suggestion.rules.BasicCapacityScoringRule;
+import org.example.sep26management.domain.putaway.suggestion.rules.ConsolidationScoringRule;
+import org.example.sep26management.domain.putaway.suggestion.rules.PickingFaceScoringRule;
+import org.example.sep26management.domain.putaway.suggestion.rules.TravelCostScoringRule;
+import org.example.sep26management.domain.putaway.suggestion.rules.WeightVolumeFitScoringRule;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Trọng số các scoring rule của 1 warehouse. Điểm mọi rule cùng đơn vị với CAPACITY
+ * (1 điểm ≈ 1 đơn vị capacity còn trống) → trọng số = "đổi được bao nhiêu capacity":
+ *   - capacity        × availableCapacity
+ *   - weightVolumeFit × phần chỗ trống (kg / m³) hàng đặt vào sẽ chiếm, 0..1 (ưu tiên BIN vừa khít)
+ *   - consolidation   × 1 nếu BIN có cùng SKU + lot, × 0.5 nếu chỉ cùng SKU
+ *   - pickingFace     × 1 nếu BIN là picking face
+ *   - travelCost      × quãng đường (điểm trừ), quãng đường = aisle × travelAisle
+ *                       + rack × travelRack + (floor − 1) × travelFloor + (column − 1) × travelColumn
+ *
+ * Trọng số 0 → rule không chạy. Mặc định CAPACITY + WEIGHT_VOLUME_FIT (chỉ có điểm với SKU / BIN khai báo kg / m³).
+ */
+public class PutawayScoringWeights {
+
+    public static final PutawayScoringWeights DEFAULT = new PutawayScoringWeights(1, 100, 0, 0, 0, 10, 3, 2, 1);
+
+    private final double capacity;
+    private final double weightVolumeFit;
+    private final double consolidation;
+    private final double pickingFace;
+    private final double travelCost;
+
+    private final double travelAisle;
+    private final double travelRack;
+    private final double travelFloor;
+    private final double travelColumn;
+
+    public PutawayScoringWeights(double capacity, double weightVolumeFit, double consolidation,
+                                 double pickingFace, double travelCost,
+                                 double travelAisle, double travelRack, double travelFloor, double travelColumn) {
+        this.capacity = capacity;
+        this.weightVolumeFit = weightVolumeFit;
+        this.consolidation = consolidation;
+        this.pickingFace = pickingFace;
+        this.travelCost = travelCost;
+        this.travelAisle = travelAisle;
+        this.travelRack = travelRack;
+        this.travelFloor = travelFloor;
+        this.travelColumn = travelColumn;
+    }
+
+    /** Các rule có trọng số khác 0, theo thứ tự cố định (thứ tự matchedRules trong giải thích). */
+    public List<ScoringRule> buildRules() {
+        List<ScoringRule> rules = new ArrayList<>();
+        if (capacity != 0) rules.add(new BasicCapacityScoringRule(capacity));
+        if (weightVolumeFit != 0) rules.add(new WeightVolumeFitScoringRule(weightVolumeFit));
+        if (consolidation != 0) rules.add(new ConsolidationScoringRule(consolidation));
+        if (pickingFace != 0) rules.add(new PickingFaceScoringRule(pickingFace));
+        if (travelCost != 0) {
+            rules.add(new TravelCostScoringRule(travelCost, travelAisle, travelRack, travelFloor, travelColumn));
+        }
+        return Collections.unmodifiableList(rules);
+    }
+
+    /**
+     * true khi thứ tự điểm = thứ tự availableCapacity → engine chỉ cần duyệt đầu index;
+     * ngược lại phải chấm cả zone. Không xét weightVolumeFit: engine chỉ duyệt index cho SKU
+     * không khai báo kg / m³, khi đó rule cho 0 điểm mọi BIN.
+     */
+    public boolean isCapacityOnly() {
+        return consolidation == 0 && pickingFace == 0 && travelCost == 0 && capacity > 0;
+    }
+
+    public boolean usesConsolidation() {
+        return consolidation != 0;
+    }
+
+    public double getCapacity() {
+        return capacity;
+    }
+
+    public double getWeightVolumeFit() {
+        return weightVolumeFit;
+    }
+
+    public double getConsolidation() {
+        return consolidation;
+    }
+
+    public double getPickingFace() {
+        return pickingFace;
+    }
+
+    public double getTravelCost() {
+        return travelCost;
+    }
+
+    public double getTravelAisle() {
+        return travelAisle;
+    }
+
+    public double getTravelRack() {
+        return travelRack;
+    }
+
+    public double getTravelFloor() {
+        return travelFloor;
+    }
+
+    public double getTravelColumn() {
+        return travelColumn;
+    }
+}
@@ -1,18 +1,36 @@
 package org.example.sep26management.domain.putaway.suggestion;
 
+import java.util.Collections;
 import java.util.Set;
 
 /**
  * Ngữ cảnh đầy đủ cho một lần chạy engine suggestion.
+ *
+ * binsWithSku / binsWithLot: BIN đang chứa (hoặc đã được kế hoạch cho dòng trước) cùng SKU /
+ * cùng SKU + lot — dùng cho rule consolidation. unitWeightKg / unitVolumeM3 lấy từ request
+ * (NaN khi SKU không khai báo) để rule chấm điểm không phải đổi BigDecimal cho từng BIN.
  */
 public class PutawaySuggestionContext {
 
     private final PutawaySuggestionRequest request;
     private final Set<Long> allowedZoneIds;
+    private final Set<Long> binsWithSku;
+    private final Set<Long> binsWithLot;
+    private final double unitWeightKg;
+    private final double unitVolumeM3;
 
     public PutawaySuggestionContext(PutawaySuggestionRequest request, Set<Long> allowedZoneIds) {
+        this(request, allowedZoneIds, Collections.emptySet(), Collections.emptySet());
+    }
+
+    public PutawaySuggestionContext(PutawaySuggestionRequest request, Set<Long> allowedZoneIds,
+                                    Set<Long> binsWithSku, Set<Long> binsWithLot) {
         this.request = request;
         this.allowedZoneIds = allowedZoneIds;
+        this.binsWithSku = binsWithSku;
+        this.binsWithLot = binsWithLot;
+        this.unitWeightKg = request.getWeight() != null ? request.getWeight().doubleValue() : Double.NaN;
+        this.unitVolumeM3 = request.getVolume() != null ? request.getVolume().doubleValue() : Double.NaN;
     }
 
     public PutawaySuggestionRequest getRequest() {
@@ -22,5 +40,25 @@ public class PutawaySuggestionContext {
     public Set<Long> getAllowedZoneIds() {
         return allowedZoneIds;
     }
-}
 
+    public Set<Long> getBinsWithSku() {
+        return binsWithSku;
+    }
+
+    public Set<Long> getBinsWithLot() {
+        return binsWithLot;
+    }
+
+    public double getUnitWeightKg() {
+        return unitWeightKg;
+    }
+
+    public double getUnitVolumeM3() {
+        return unitVolumeM3;
+    }
+
+    /** SKU có khai báo kg hoặc m³ mỗi đơn vị → capacity BIN tính theo tải thật (CandidateBin.forSku). */
+    public boolean hasUnitSize() {
+        return unitWeightKg > 0 || unitVolumeM3 > 0;
+    }
+}
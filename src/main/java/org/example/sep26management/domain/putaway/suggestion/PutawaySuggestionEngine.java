@@ -1,9 +1,17 @@
 package org.example.sep26management.domain.putaway.suggestion;
 
+import java.util.List;
+
 public interface PutawaySuggestionEngine {
 
     PutawaySuggestionLineResponse suggestForLine(PutawaySuggestionRequest request);
 
     PutawaySuggestionResponse suggestForTask(Long warehouseId, Long putawayTaskId);
+
+    /**
+     * Lập kế hoạch cho nhiều dòng cùng lúc: các dòng dùng chung capacity làm việc,
+     * dòng sau thấy phần capacity dòng trước đã chiếm.
+     */
+    List<PutawaySuggestionLineResponse> suggestForLines(Long warehouseId, List<PutawaySuggestionRequest> requests);
 }
 
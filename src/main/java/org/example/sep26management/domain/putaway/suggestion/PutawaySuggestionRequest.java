@@ -22,6 +22,7 @@ public class PutawaySuggestionRequest {
     private BigDecimal quantity;
     private String uom;
 
+    /** Khối lượng / thể tích của 1 đơn vị (kg, m³); null → engine lấy từ SKU (weight_g, volume_ml). */
     private BigDecimal weight;
     private BigDecimal volume;
 
@@ -0,0 +1,32 @@
+package org.example.sep26management.domain.putaway.suggestion;
+
+import java.math.BigDecimal;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SKU → category → zone cho engine putaway.
+ *
+ * Convention: zone chính của category = "Z-{categoryCode}"; zone "Z-{categoryCode}-{hậu tố}"
+ * (VD Z-HC-2, Z-HC-OVERFLOW) là zone phụ của cùng category, trừ khi phần sau "Z-" lại khớp
+ * category khác dài hơn (Z-HC-2 thuộc category "HC-2" nếu category đó tồn tại).
+ */
+public interface PutawayZoneDirectory {
+
+    /** SKU theo id; SKU không tồn tại → không có trong map. */
+    Map<Long, SkuPlacement> skus(Collection<Long> skuIds);
+
+    /** Zone active được phép cho category trong warehouse: zone chính trước, zone phụ theo mã. */
+    List<ZoneInfo> allowedZones(Long warehouseId, String categoryCode);
+
+    /** Zone theo id (kể cả zone đã ngừng). */
+    Map<Long, ZoneInfo> zones(Collection<Long> zoneIds);
+
+    /** weightKg / volumeM3: 1 đơn vị SKU (null khi SKU không khai báo). categoryCode null: chưa gán category. */
+    record SkuPlacement(Long skuId, String skuCode, String categoryCode, BigDecimal weightKg, BigDecimal volumeM3) {
+    }
+
+    record ZoneInfo(Long zoneId, Long warehouseId, String zoneCode, String zoneName, boolean active) {
+    }
+}
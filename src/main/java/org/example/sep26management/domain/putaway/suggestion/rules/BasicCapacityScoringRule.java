@@ -1,16 +1,26 @@
 package org.example.sep26management.domain.putaway.suggestion.rules;
 
 import org.example.sep26management.domain.putaway.suggestion.CandidateBin;
+import org.example.sep26management.domain.putaway.suggestion.FixedPointScoringRule;
 import org.example.sep26management.domain.putaway.suggestion.PutawaySuggestionContext;
-import org.example.sep26management.domain.putaway.suggestion.ScoringRule;
 
 import java.math.BigDecimal;
 import java.util.List;
 
 /**
- * Rule chấm điểm đơn giản: ưu tiên bin có availableCapacity lớn hơn.
+ * Rule chấm điểm đơn giản: ưu tiên bin có availableCapacity lớn hơn (điểm = available × weight).
  */
-public class BasicCapacityScoringRule implements ScoringRule {
+public class BasicCapacityScoringRule implements FixedPointScoringRule {
+
+    private final double weight;
+
+    public BasicCapacityScoringRule() {
+        this(1);
+    }
+
+    public BasicCapacityScoringRule(double weight) {
+        this.weight = weight;
+    }
 
     @Override
     public BigDecimal score(PutawaySuggestionContext ctx,
@@ -21,7 +31,12 @@ public class BasicCapacityScoringRule implements ScoringRule {
             return BigDecimal.ZERO;
         }
         matchedRules.add("CAPACITY_AVAILABLE");
-        return available;
+        return weight == 1 ? available : FixedPointScoringRule.fromFixed(scoreFixed(ctx, bin));
     }
-}
 
+    @Override
+    public long scoreFixed(PutawaySuggestionContext ctx, CandidateBin bin) {
+        long available = bin.getAvailableCapacityFixed();
+        return weight == 1 ? available : Math.round(available * weight);
+    }
+}
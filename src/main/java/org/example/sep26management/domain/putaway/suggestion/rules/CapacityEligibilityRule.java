@@ -7,6 +7,10 @@ import org.example.sep26management.domain.putaway.suggestion.PutawaySuggestionCo
 import java.math.BigDecimal;
 import java.util.List;
 
+/**
+ * BIN phải còn chỗ; không cho split thì phải chứa đủ cả dòng. availableCapacity là số đơn vị SKU
+ * còn vừa theo kg / m³ thật (CandidateBin.forSku), BIN / SKU không khai báo → capacity qty cũ.
+ */
 public class CapacityEligibilityRule implements EligibilityRule {
 
     @Override
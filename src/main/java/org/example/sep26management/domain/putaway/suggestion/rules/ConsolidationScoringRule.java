@@ -0,0 +1,42 @@
+package org.example.sep26management.domain.putaway.suggestion.rules;
+
+import org.example.sep26management.domain.putaway.suggestion.CandidateBin;
+import org.example.sep26management.domain.putaway.suggestion.FixedPointScoringRule;
+import org.example.sep26management.domain.putaway.suggestion.PutawaySuggestionContext;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Gom hàng: BIN đã chứa cùng SKU + lot được weight điểm, cùng SKU khác lot được weight / 2
+ * (trộn lot trong 1 BIN làm FEFO khó hơn nên thấp hơn).
+ */
+public class ConsolidationScoringRule implements FixedPointScoringRule {
+
+    private final long sameLotFixed;
+    private final long sameSkuFixed;
+
+    public ConsolidationScoringRule(double weight) {
+        this.sameLotFixed = FixedPointScoringRule.toFixed(weight);
+        this.sameSkuFixed = FixedPointScoringRule.toFixed(weight / 2);
+    }
+
+    @Override
+    public BigDecimal score(PutawaySuggestionContext ctx, CandidateBin bin, List<String> matchedRules) {
+        Long locationId = bin.getLocation().getLocationId();
+        if (ctx.getBinsWithLot().contains(locationId)) {
+            matchedRules.add("CONSOLIDATE_SAME_LOT");
+        } else if (ctx.getBinsWithSku().contains(locationId)) {
+            matchedRules.add("CONSOLIDATE_SAME_SKU");
+        }
+        return FixedPointScoringRule.fromFixed(scoreFixed(ctx, bin));
+    }
+
+    @Override
+    public long scoreFixed(PutawaySuggestionContext ctx, CandidateBin bin) {
+        Long locationId = bin.getLocation().getLocationId();
+        if (ctx.getBinsWithLot().contains(locationId)) return sameLotFixed;
+        if (ctx.getBinsWithSku().contains(locationId)) return sameSkuFixed;
+        return 0L;
+    }
+}
@@ -0,0 +1,35 @@
+package org.example.sep26management.domain.putaway.suggestion.rules;
+
+import org.example.sep26management.domain.putaway.suggestion.CandidateBin;
+import org.example.sep26management.domain.putaway.suggestion.FixedPointScoringRule;
+import org.example.sep26management.domain.putaway.suggestion.PutawaySuggestionContext;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Ưu tiên BIN picking face (is_picking_face) — hàng cất thẳng vào ô lấy hàng, bớt 1 lần replenish.
+ * Trọng số âm → tránh picking face (giữ ô lấy hàng cho replenishment).
+ */
+public class PickingFaceScoringRule implements FixedPointScoringRule {
+
+    private final long weightFixed;
+
+    public PickingFaceScoringRule(double weight) {
+        this.weightFixed = FixedPointScoringRule.toFixed(weight);
+    }
+
+    @Override
+    public BigDecimal score(PutawaySuggestionContext ctx, CandidateBin bin, List<String> matchedRules) {
+        long fixed = scoreFixed(ctx, bin);
+        if (fixed != 0) {
+            matchedRules.add("PICKING_FACE");
+        }
+        return FixedPointScoringRule.fromFixed(fixed);
+    }
+
+    @Override
+    public long scoreFixed(PutawaySuggestionContext ctx, CandidateBin bin) {
+        return Boolean.TRUE.equals(bin.getLocation().getIsPickingFace()) ? weightFixed : 0L;
+    }
+}
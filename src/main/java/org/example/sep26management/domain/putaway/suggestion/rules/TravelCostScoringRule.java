@@ -0,0 +1,52 @@
+package org.example.sep26management.domain.putaway.suggestion.rules;
+
+import org.example.sep26management.domain.putaway.suggestion.CandidateBin;
+import org.example.sep26management.domain.putaway.suggestion.FixedPointScoringRule;
+import org.example.sep26management.domain.putaway.suggestion.PutawaySuggestionContext;
+import org.example.sep26management.infrastructure.persistence.entity.LocationEntity;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Quãng đường từ đầu zone tới BIN: aisle (thứ tự trong zone), rack (thứ tự trong aisle),
+ * tầng (bin_floor, tầng cao cần thang / xe nâng) và cột (bin_column) — mỗi bậc nhân hệ số riêng.
+ * Điểm trừ = weight × quãng đường. Vị trí không rõ (BIN không nằm dưới rack / aisle) tính 0.
+ */
+public class TravelCostScoringRule implements FixedPointScoringRule {
+
+    private final double weight;
+    private final double aisleStep;
+    private final double rackStep;
+    private final double floorStep;
+    private final double columnStep;
+
+    public TravelCostScoringRule(double weight, double aisleStep, double rackStep, double floorStep, double columnStep) {
+        this.weight = weight;
+        this.aisleStep = aisleStep;
+        this.rackStep = rackStep;
+        this.floorStep = floorStep;
+        this.columnStep = columnStep;
+    }
+
+    @Override
+    public BigDecimal score(PutawaySuggestionContext ctx, CandidateBin bin, List<String> matchedRules) {
+        matchedRules.add("TRAVEL_COST");
+        return FixedPointScoringRule.fromFixed(scoreFixed(ctx, bin));
+    }
+
+    @Override
+    public long scoreFixed(PutawaySuggestionContext ctx, CandidateBin bin) {
+        return FixedPointScoringRule.toFixed(-weight * distance(bin));
+    }
+
+    private double distance(CandidateBin bin) {
+        LocationEntity location = bin.getLocation();
+        double d = 0;
+        if (bin.getAisleRank() > 0) d += bin.getAisleRank() * aisleStep;
+        if (bin.getRackRank() > 0) d += bin.getRackRank() * rackStep;
+        if (location.getBinFloor() != null && location.getBinFloor() > 1) d += (location.getBinFloor() - 1) * floorStep;
+        if (location.getBinColumn() != null && location.getBinColumn() > 1) d += (location.getBinColumn() - 1) * columnStep;
+        return d;
+    }
+}
@@ -0,0 +1,63 @@
+package org.example.sep26management.domain.putaway.suggestion.rules;
+
+import org.example.sep26management.domain.putaway.suggestion.CandidateBin;
+import org.example.sep26management.domain.putaway.suggestion.FixedPointScoringRule;
+import org.example.sep26management.domain.putaway.suggestion.PutawaySuggestionContext;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+/**
+ * Độ vừa thật theo khối lượng / thể tích: phần hàng sẽ đặt vào BIN (min(qty, availableCapacity)
+ * × kg / m³ mỗi đơn vị SKU) chiếm bao nhiêu phần max_weight_kg / max_volume_m3 còn trống, lấy
+ * chiều chặt nhất (0..1). Điểm cộng = weight × tỷ lệ đó → ưu tiên BIN vừa khít, để BIN trống
+ * lớn cho lô to (CAPACITY kéo ngược lại về BIN trống nhất).
+ *
+ * availableCapacity đã tính theo tải thật của SKU (CandidateBin.forSku) nên phần đặt vào luôn
+ * vừa BIN. SKU hoặc BIN không khai báo chiều nào thì bỏ qua chiều đó; thiếu cả hai → 0 điểm.
+ */
+public class WeightVolumeFitScoringRule implements FixedPointScoringRule {
+
+    private final double weight;
+
+    public WeightVolumeFitScoringRule(double weight) {
+        this.weight = weight;
+    }
+
+    @Override
+    public BigDecimal score(PutawaySuggestionContext ctx, CandidateBin bin, List<String> matchedRules) {
+        double fill = fill(ctx, bin);
+        if (Double.isNaN(fill)) {
+            return BigDecimal.ZERO;
+        }
+        matchedRules.add("WEIGHT_VOLUME_FIT");
+        return FixedPointScoringRule.fromFixed(scoreFixed(ctx, bin));
+    }
+
+    @Override
+    public long scoreFixed(PutawaySuggestionContext ctx, CandidateBin bin) {
+        double fill = fill(ctx, bin);
+        return Double.isNaN(fill) ? 0L : FixedPointScoringRule.toFixed(weight * fill);
+    }
+
+    /** Phần chỗ trống (kg / m³) của BIN mà hàng đặt vào sẽ chiếm (0..1); NaN khi không có chiều nào để so. */
+    private static double fill(PutawaySuggestionContext ctx, CandidateBin bin) {
+        BigDecimal requested = ctx.getRequest().getQuantity();
+        if (requested == null || requested.signum() <= 0) {
+            return Double.NaN;
+        }
+        double qty = Math.min(requested.doubleValue(), bin.getAvailableCapacity().doubleValue());
+        double byWeight = ratio(ctx.getUnitWeightKg() * qty, bin.getRemainingWeightKg());
+        double byVolume = ratio(ctx.getUnitVolumeM3() * qty, bin.getRemainingVolumeM3());
+        if (Double.isNaN(byWeight)) return byVolume;
+        if (Double.isNaN(byVolume)) return byWeight;
+        return Math.max(byWeight, byVolume);
+    }
+
+    private static double ratio(double load, double remaining) {
+        if (Double.isNaN(remaining) || Double.isNaN(load) || remaining <= 0) {
+            return Double.NaN;
+        }
+        return Math.min(1, Math.max(0, load) / remaining);
+    }
+}
@@ -12,6 +12,17 @@ import java.util.List;
 
 public class SplitAcrossBinsStrategy implements PutawayStrategy {
 
+    /** Số BIN tối đa cho 1 dòng; phần không vừa để lại không gợi ý. */
+    private final int maxBins;
+
+    public SplitAcrossBinsStrategy() {
+        this(Integer.MAX_VALUE);
+    }
+
+    public SplitAcrossBinsStrategy(int maxBins) {
+        this.maxBins = Math.max(1, maxBins);
+    }
+
     @Override
     public List<PutawayBinSuggestionDto> allocate(PutawaySuggestionContext ctx,
                                                   List<ScoredBin> scoredBins) {
@@ -26,7 +37,7 @@ public class SplitAcrossBinsStrategy implements PutawayStrategy {
         }
 
         for (ScoredBin sb : scoredBins) {
-            if (remaining.compareTo(BigDecimal.ZERO) <= 0) {
+            if (remaining.compareTo(BigDecimal.ZERO) <= 0 || result.size() >= maxBins) {
                 break;
             }
 
@@ -0,0 +1,34 @@
+package org.example.sep26management.infrastructure;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Start RedisMessageListenerContainer sau khi context lên và thử lại khi Redis chưa sẵn sàng,
+ * thay vì để lỗi subscribe làm hỏng khởi động ứng dụng.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class RedisSubscriptionStarter {
+
+    private final RedisMessageListenerContainer container;
+
+    @Scheduled(initialDelay = 0, fixedDelayString = "${scan.pubsub.retry-interval-ms:30000}")
+    public synchronized void ensureSubscribed() {
+        if (container.isRunning()) return;
+        try {
+            container.start();
+            log.info("Redis pub/sub listeners subscribed");
+        } catch (Exception e) {
+            log.warn("Redis pub/sub subscribe failed, retrying later: {}", e.getMessage());
+            try {
+                container.stop();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+}
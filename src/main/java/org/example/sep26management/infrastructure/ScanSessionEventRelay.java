@@ -0,0 +1,75 @@
+package org.example.sep26management.infrastructure;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sep26management.infrastructure.persistence.redis.ScanSessionRedisRepository;
+import org.example.sep26management.infrastructure.persistence.redis.ScanSessionRedisRepository.ScanDelta;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Nhận delta scan PUBLISH từ Lua script (kênh scan:delta:{sessionId}) và đẩy event "delta" (chỉ dòng
+ * vừa đổi) cho SSE emitter của session nếu laptop đang kết nối vào node này. Điện thoại và laptop có
+ * thể nằm ở 2 node khác nhau → không push SSE trực tiếp trong request scan.
+ *
+ * Delta nhảy seq (message đến lệch thứ tự, emitter vừa reconnect) → resync từ ring buffer trong Redis;
+ * buffer không còn đủ, hoặc message batch → snapshot.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ScanSessionEventRelay implements MessageListener {
+
+    private final SseEmitterRegistry sseRegistry;
+    private final ScanSessionRedisRepository sessionRedis;
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        String channel = new String(message.getChannel(), StandardCharsets.UTF_8);
+        String sessionId = channel.substring(ScanSessionRedisRepository.DELTA_CHANNEL_PREFIX.length());
+        if (!sseRegistry.hasEmitter(sessionId))
+            return;
+        try {
+            Optional<ScanDelta> delta = sessionRedis.parseDelta(new String(message.getBody(), StandardCharsets.UTF_8));
+            if (delta.isPresent()) {
+                if (!sseRegistry.sendDelta(sessionId, delta.get()))
+                    resync(sessionId, sseRegistry.lastSeq(sessionId));
+            } else {
+                sendSnapshot(sessionId);
+            }
+        } catch (Exception e) {
+            log.warn("Could not relay scan delta for session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /**
+     * Đưa emitter của session lên seq hiện tại: gửi các delta sau lastSeq nếu ring buffer còn đủ,
+     * không thì 1 snapshot. lastSeq null / âm = client chưa có gì → snapshot.
+     */
+    public void resync(String sessionId, Long lastSeq) {
+        Optional<List<ScanDelta>> missed = lastSeq != null && lastSeq >= 0
+                ? sessionRedis.deltasSince(sessionId, lastSeq)
+                : Optional.empty();
+        if (missed.isPresent()) {
+            for (ScanDelta delta : missed.get()) {
+                if (!sseRegistry.sendDelta(sessionId, delta)) {
+                    sendSnapshot(sessionId);
+                    return;
+                }
+            }
+            log.debug("SSE resync for session {}: replayed {} delta(s) after seq {}", sessionId,
+                    missed.get().size(), lastSeq);
+            return;
+        }
+        sendSnapshot(sessionId);
+    }
+
+    private void sendSnapshot(String sessionId) {
+        sessionRedis.findById(sessionId).ifPresent(session -> sseRegistry.sendSnapshot(sessionId, session));
+    }
+}
@@ -1,6 +1,8 @@
 package org.example.sep26management.infrastructure;
 
 import lombok.extern.slf4j.Slf4j;
+import org.example.sep26management.application.dto.scan.ScanSessionData;
+import org.example.sep26management.infrastructure.persistence.redis.ScanSessionRedisRepository.ScanDelta;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
@@ -10,43 +12,126 @@ import java.util.concurrent.ConcurrentMap;
 /**
  * In-memory registry of SSE emitters, keyed by sessionId.
  * Laptop subscribes to /receiving-sessions/{id}/stream and is pushed
- * snapshot events after each scan event.
+ * "delta" events (1 changed line, id = session seq) after each scan event,
+ * or a full "snapshot" (id = seq the snapshot reflects) on connect / resync.
+ *
+ * Each connection remembers the last seq it was sent: deltas already covered
+ * are dropped, a delta that skips a seq is refused (caller resyncs from the
+ * Redis delta buffer) so the client always sees seqs in order.
  */
 @Component
 @Slf4j
 public class SseEmitterRegistry {
 
-    private final ConcurrentMap<String, SseEmitter> emitters = new ConcurrentHashMap<>();
+    private static final class Connection {
+        private final SseEmitter emitter;
+        /** Seq cuối cùng đã gửi; -1 = chưa biết (chờ snapshot / replay). */
+        private long lastSeq;
+
+        private Connection(SseEmitter emitter, long lastSeq) {
+            this.emitter = emitter;
+            this.lastSeq = lastSeq;
+        }
+    }
+
+    private final ConcurrentMap<String, Connection> emitters = new ConcurrentHashMap<>();
 
     public void register(String sessionId, SseEmitter emitter) {
-        emitters.put(sessionId, emitter);
-        emitter.onCompletion(() -> emitters.remove(sessionId));
-        emitter.onTimeout(() -> emitters.remove(sessionId));
-        emitter.onError(e -> emitters.remove(sessionId));
-        log.debug("SSE emitter registered for session {}", sessionId);
+        register(sessionId, emitter, null);
+    }
+
+    /** lastEventId: Last-Event-ID client gửi khi reconnect (null = kết nối mới). */
+    public void register(String sessionId, SseEmitter emitter, Long lastEventId) {
+        Connection connection = new Connection(emitter, lastEventId != null ? lastEventId : -1);
+        emitters.put(sessionId, connection);
+        emitter.onCompletion(() -> emitters.remove(sessionId, connection));
+        emitter.onTimeout(() -> emitters.remove(sessionId, connection));
+        emitter.onError(e -> emitters.remove(sessionId, connection));
+        log.debug("SSE emitter registered for session {} (lastEventId={})", sessionId, lastEventId);
+    }
+
+    public boolean hasEmitter(String sessionId) {
+        return emitters.containsKey(sessionId);
+    }
+
+    /** Seq cuối cùng đã gửi cho emitter của session; -1 nếu chưa biết / không có emitter. */
+    public long lastSeq(String sessionId) {
+        Connection connection = emitters.get(sessionId);
+        if (connection == null)
+            return -1;
+        synchronized (connection) {
+            return connection.lastSeq;
+        }
     }
 
     public void send(String sessionId, Object data) {
-        SseEmitter emitter = emitters.get(sessionId);
-        if (emitter == null)
+        Connection connection = emitters.get(sessionId);
+        if (connection == null)
             return;
-        try {
-            emitter.send(SseEmitter.event()
+        synchronized (connection) {
+            emit(sessionId, connection, SseEmitter.event()
                     .name("snapshot")
                     .data(data));
-        } catch (Exception e) {
-            log.warn("Failed to send SSE to session {}, removing emitter", sessionId);
-            emitters.remove(sessionId);
+        }
+    }
+
+    /** Snapshot đầy đủ; connection tiếp tục nhận delta từ seq của snapshot. */
+    public void sendSnapshot(String sessionId, ScanSessionData data) {
+        Connection connection = emitters.get(sessionId);
+        if (connection == null)
+            return;
+        long seq = data.getSeq() != null ? data.getSeq() : 0;
+        synchronized (connection) {
+            if (emit(sessionId, connection, SseEmitter.event()
+                    .id(String.valueOf(seq))
+                    .name("snapshot")
+                    .data(data))) {
+                connection.lastSeq = seq;
+            }
+        }
+    }
+
+    /**
+     * Gửi 1 delta. Trả về false khi delta nhảy seq (client đang thiếu delta trước đó) —
+     * caller phải resync; true khi đã gửi, đã bao gồm trước đó, hoặc không có emitter.
+     */
+    public boolean sendDelta(String sessionId, ScanDelta delta) {
+        Connection connection = emitters.get(sessionId);
+        if (connection == null)
+            return true;
+        synchronized (connection) {
+            if (connection.lastSeq >= 0 && delta.seq() <= connection.lastSeq)
+                return true;
+            if (connection.lastSeq < 0 || delta.seq() != connection.lastSeq + 1)
+                return false;
+            if (emit(sessionId, connection, SseEmitter.event()
+                    .id(String.valueOf(delta.seq()))
+                    .name("delta")
+                    .data(delta))) {
+                connection.lastSeq = delta.seq();
+            }
+            return true;
         }
     }
 
     public void remove(String sessionId) {
-        SseEmitter emitter = emitters.remove(sessionId);
-        if (emitter != null) {
+        Connection connection = emitters.remove(sessionId);
+        if (connection != null) {
             try {
-                emitter.complete();
+                connection.emitter.complete();
             } catch (Exception ignored) {
             }
         }
     }
+
+    private boolean emit(String sessionId, Connection connection, SseEmitter.SseEventBuilder event) {
+        try {
+            connection.emitter.send(event);
+            return true;
+        } catch (Exception e) {
+            log.warn("Failed to send SSE to session {}, removing emitter", sessionId);
+            emitters.remove(sessionId, connection);
+            return false;
+        }
+    }
 }
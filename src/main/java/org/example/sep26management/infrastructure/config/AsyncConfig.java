@@ -1,11 +1,14 @@
 package org.example.sep26management.infrastructure.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.scheduling.annotation.EnableAsync;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
 
 @Configuration
 @EnableAsync
@@ -21,4 +24,18 @@ public class AsyncConfig {
         executor.initialize();
         return executor;
     }
+
+    /**
+     * Pool riêng cho chấm điểm candidate putaway song song (zone rất lớn) — tách khỏi common pool
+     * để parallel stream nơi khác không tranh luồng. parallelism 0 → số CPU.
+     */
+    @Bean(name = "putawayEvaluationPool", destroyMethod = "shutdown")
+    public ForkJoinPool putawayEvaluationPool(@Value("${putaway.parallel.parallelism:0}") int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        return new ForkJoinPool(threads, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("putaway-eval-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,58 @@
+package org.example.sep26management.infrastructure.config;
+
+import lombok.Data;
+import org.example.sep26management.domain.putaway.suggestion.PutawayScoringWeights;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Trọng số scoring rule putaway: putaway.scoring.weights (mặc định cho mọi warehouse) và
+ * putaway.scoring.warehouses.{warehouseId} (ghi đè từng trọng số, trường không khai báo lấy mặc định).
+ */
+@Data
+@Component
+@ConfigurationProperties(prefix = "putaway.scoring")
+public class PutawayScoringProperties {
+
+    private Weights weights = new Weights();
+    private Map<Long, Weights> warehouses = new HashMap<>();
+
+    public PutawayScoringWeights forWarehouse(Long warehouseId) {
+        Weights override = warehouseId != null ? warehouses.get(warehouseId) : null;
+        PutawayScoringWeights base = weights.merge(PutawayScoringWeights.DEFAULT);
+        return override != null ? override.merge(base) : base;
+    }
+
+    @Data
+    public static class Weights {
+        private Double capacity;
+        private Double weightVolumeFit;
+        private Double consolidation;
+        private Double pickingFace;
+        private Double travelCost;
+        private Double travelAisle;
+        private Double travelRack;
+        private Double travelFloor;
+        private Double travelColumn;
+
+        PutawayScoringWeights merge(PutawayScoringWeights base) {
+            return new PutawayScoringWeights(
+                    or(capacity, base.getCapacity()),
+                    or(weightVolumeFit, base.getWeightVolumeFit()),
+                    or(consolidation, base.getConsolidation()),
+                    or(pickingFace, base.getPickingFace()),
+                    or(travelCost, base.getTravelCost()),
+                    or(travelAisle, base.getTravelAisle()),
+                    or(travelRack, base.getTravelRack()),
+                    or(travelFloor, base.getTravelFloor()),
+                    or(travelColumn, base.getTravelColumn()));
+        }
+
+        private static double or(Double value, double fallback) {
+            return value != null ? value : fallback;
+        }
+    }
+}
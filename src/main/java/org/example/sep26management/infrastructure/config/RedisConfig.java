@@ -5,10 +5,17 @@ import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
 import lombok.extern.slf4j.Slf4j;
 import org.example.sep26management.application.constants.LogMessages;
+import org.example.sep26management.application.service.AtpIndexService;
+import org.example.sep26management.application.service.SkuLookupCacheService;
+import org.example.sep26management.infrastructure.ScanSessionEventRelay;
+import org.example.sep26management.infrastructure.persistence.redis.ScanSessionRedisRepository;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.GenericJackson2JsonRedisSerializer;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
@@ -58,4 +65,30 @@ public class RedisConfig {
         log.info(LogMessages.REDIS_CONFIGURED_SUCCESS);
         return template;
     }
+
+    /**
+     * Redis pub/sub listener: delta scan (scan:delta:*) → SSE emitter của session trên node này;
+     * invalidate cache barcode → SKU (SkuLookupCacheService) và (warehouse, SKU) ATP vừa đổi
+     * (AtpIndexService) từ node khác.
+     * Không tự start cùng context (Redis chưa lên thì context vẫn khởi động) — RedisSubscriptionStarter
+     * start và thử lại định kỳ.
+     */
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory connectionFactory,
+                                                                       ScanSessionEventRelay scanSessionEventRelay,
+                                                                       SkuLookupCacheService skuLookupCache,
+                                                                       AtpIndexService atpIndexService) {
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer() {
+            @Override
+            public boolean isAutoStartup() {
+                return false;
+            }
+        };
+        container.setConnectionFactory(connectionFactory);
+        container.addMessageListener(scanSessionEventRelay,
+                new PatternTopic(ScanSessionRedisRepository.DELTA_CHANNEL_PREFIX + "*"));
+        container.addMessageListener(skuLookupCache, new ChannelTopic(SkuLookupCacheService.INVALIDATE_CHANNEL));
+        container.addMessageListener(atpIndexService, new ChannelTopic(AtpIndexService.TOUCHED_CHANNEL));
+        return container;
+    }
 }
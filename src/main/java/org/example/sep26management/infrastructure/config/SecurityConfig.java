@@ -90,7 +90,8 @@ public class SecurityConfig {
                         )
                         .permitAll()
                         // Scan events — requires KEEPER or QC role (iPhone scanner)
-                        .requestMatchers("/v1/scan-events", "/api/v1/scan-events").hasAnyRole("KEEPER", "QC")
+                        .requestMatchers("/v1/scan-events", "/api/v1/scan-events",
+                                "/v1/scan-events/batch", "/api/v1/scan-events/batch").hasAnyRole("KEEPER", "QC")
                         // [FIX QC] Upload anh hang hong tu dien thoai scan QC
                         .requestMatchers("/v1/attachments/upload").hasAnyRole("KEEPER", "QC", "MANAGER")
                         // Manager only endpoints
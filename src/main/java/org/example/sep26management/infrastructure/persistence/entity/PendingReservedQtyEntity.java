@@ -0,0 +1,40 @@
+package org.example.sep26management.infrastructure.persistence.entity;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.Immutable;
+
+import java.math.BigDecimal;
+
+/**
+ * Maps to view: inventory_reserved_pending
+ * Tổng reserved delta chưa được gộp vào inventory_snapshot, theo đúng khoá của snapshot.
+ * Dùng LEFT JOIN trong các query availability: reserved = s.reservedQty + COALESCE(p.qty, 0).
+ */
+@Entity
+@Immutable
+@Table(name = "inventory_reserved_pending")
+@Getter
+@NoArgsConstructor
+@IdClass(InventorySnapshotId.class)
+public class PendingReservedQtyEntity {
+
+    @Id
+    @Column(name = "warehouse_id")
+    private Long warehouseId;
+
+    @Id
+    @Column(name = "sku_id")
+    private Long skuId;
+
+    @Id
+    @Column(name = "lot_id_safe")
+    private Long lotIdSafe;
+
+    @Id
+    @Column(name = "location_id")
+    private Long locationId;
+
+    @Column(name = "qty")
+    private BigDecimal qty;
+}
@@ -41,6 +41,13 @@ public class PutawayTaskItemEntity {
     @Column(name = "suggested_location_id")
     private Long suggestedLocationId;
 
+    /** Qty engine xếp vào suggested_location_id (dòng split chỉ lưu BIN đầu) — dùng để kiểm tra gợi ý còn đúng. */
+    @Column(name = "suggested_qty", precision = 12, scale = 2)
+    private BigDecimal suggestedQty;
+
+    @Column(name = "suggested_at")
+    private java.time.LocalDateTime suggestedAt;
+
     @Column(name = "actual_location_id")
     private Long actualLocationId;
 
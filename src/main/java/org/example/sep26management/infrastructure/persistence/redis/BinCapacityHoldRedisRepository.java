@@ -0,0 +1,207 @@
+package org.example.sep26management.infrastructure.persistence.redis;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sep26management.domain.putaway.suggestion.BinCapacityHolds.Held;
+import org.example.sep26management.domain.putaway.suggestion.BinCapacityHolds.Limit;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Repository;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Soft hold capacity BIN cho putaway, theo zone. Mọi key của 1 zone cùng hash tag {zoneId}
+ * (chạy được trên Redis cluster):
+ *   putaway:hold:{zoneId}:holds  HASH  "locationId|holder" → "qty|kg|m3"
+ *   putaway:hold:{zoneId}:exp    ZSET  "locationId|holder" → hết hạn (epoch ms)
+ *   putaway:hold:{zoneId}:bins   HASH  "locationId|qty" / "locationId|kg" / "locationId|m3" → tổng đang hold
+ *   putaway:hold:holder:{holder} SET   "zoneId|locationId" holder đang hold (để release hết)
+ *
+ * Hold mang cả tải thật kg / m³ của SKU → giới hạn kg / m³ so cùng đơn vị giữa các SKU; qty chỉ
+ * còn cho capacity qty cũ. Hold hết hạn được dọn trong chính các script (không cần job nền). Mọi
+ * thay đổi đi qua Lua → kiểm tra capacity + ghi là 1 bước atomic giữa các node.
+ */
+@Repository
+@RequiredArgsConstructor
+@Slf4j
+public class BinCapacityHoldRedisRepository {
+
+    private static final String KEY_PREFIX = "putaway:hold:";
+
+    private final StringRedisTemplate redisTemplate;
+
+    /**
+     * KEYS: holds, exp, bins. ARGV: now. Hàm dùng chung + dọn hold hết hạn của zone.
+     * Giá trị hold cũ chỉ có qty ("qty") → kg / m³ = 0.
+     */
+    private static final String PURGE_LUA = """
+            local function parse(value)
+                local q, w, m = string.match(value, '^([^|]+)|([^|]+)|([^|]+)$')
+                if not q then return tonumber(value), 0, 0 end
+                return tonumber(q), tonumber(w), tonumber(m)
+            end
+            local function addBin(loc, q, w, m)
+                for _, d in ipairs({{'qty', q}, {'kg', w}, {'m3', m}}) do
+                    if d[2] ~= 0 then
+                        local field = loc .. '|' .. d[1]
+                        local left = redis.call('HINCRBYFLOAT', KEYS[3], field, d[2])
+                        if tonumber(left) <= 0.000001 then redis.call('HDEL', KEYS[3], field) end
+                    end
+                end
+            end
+            local expired = redis.call('ZRANGEBYSCORE', KEYS[2], '-inf', ARGV[1])
+            for _, member in ipairs(expired) do
+                local value = redis.call('HGET', KEYS[1], member)
+                if value then
+                    local q, w, m = parse(value)
+                    addBin(string.match(member, '^([^|]+)|'), -q, -w, -m)
+                    redis.call('HDEL', KEYS[1], member)
+                end
+                redis.call('ZREM', KEYS[2], member)
+            end
+            """;
+
+    /**
+     * KEYS: holds, exp, bins. ARGV: now, member, locationId, qty, kg, m3, expiresAt, limitQty, limitKg,
+     * limitM3, ttlMs. Đặt hold (thay hold cũ của cùng holder) nếu ở mọi chiều có limit (&gt;= 0) mà
+     * hold tăng, tổng hold của BIN sau khi đặt ≤ limit. Trả về 1 nếu đặt được, 0 nếu không đủ chỗ.
+     */
+    private static final DefaultRedisScript<Long> HOLD_SCRIPT = new DefaultRedisScript<>(PURGE_LUA + """
+            local eq, ew, em = parse(redis.call('HGET', KEYS[1], ARGV[2]) or '0')
+            local dq, dw, dm = tonumber(ARGV[4]) - eq, tonumber(ARGV[5]) - ew, tonumber(ARGV[6]) - em
+            for _, d in ipairs({{'qty', dq, ARGV[8]}, {'kg', dw, ARGV[9]}, {'m3', dm, ARGV[10]}}) do
+                local limit = tonumber(d[3])
+                if limit >= 0 and d[2] > 0 then
+                    local total = tonumber(redis.call('HGET', KEYS[3], ARGV[3] .. '|' .. d[1]) or '0')
+                    if total + d[2] > limit + 0.000001 then return 0 end
+                end
+            end
+            redis.call('HSET', KEYS[1], ARGV[2], ARGV[4] .. '|' .. ARGV[5] .. '|' .. ARGV[6])
+            addBin(ARGV[3], dq, dw, dm)
+            redis.call('ZADD', KEYS[2], ARGV[7], ARGV[2])
+            for i = 1, 3 do redis.call('PEXPIRE', KEYS[i], ARGV[11]) end
+            return 1
+            """, Long.class);
+
+    /**
+     * KEYS: holds, exp, bins. ARGV: now, member, locationId, qty. Giảm hold đi qty (qty &lt; 0: bỏ
+     * hết), kg / m³ giảm theo cùng tỉ lệ. Trả về qty đã giảm × 10000 (số nguyên — Lua number →
+     * Redis integer bị cắt phần lẻ).
+     */
+    private static final DefaultRedisScript<Long> RELEASE_SCRIPT = new DefaultRedisScript<>(PURGE_LUA + """
+            local value = redis.call('HGET', KEYS[1], ARGV[2])
+            if not value then return 0 end
+            local eq, ew, em = parse(value)
+            if eq <= 0 then return 0 end
+            local q = tonumber(ARGV[4])
+            if q < 0 or q >= eq - 0.000001 then q = eq end
+            local f = q / eq
+            if eq - q <= 0.000001 then
+                redis.call('HDEL', KEYS[1], ARGV[2])
+                redis.call('ZREM', KEYS[2], ARGV[2])
+            else
+                redis.call('HSET', KEYS[1], ARGV[2],
+                        tostring(eq - q) .. '|' .. tostring(ew * (1 - f)) .. '|' .. tostring(em * (1 - f)))
+            end
+            addBin(ARGV[3], -q, -ew * f, -em * f)
+            return math.floor(q * 10000 + 0.5)
+            """, Long.class);
+
+    /** KEYS: holds, exp, bins. ARGV: now. Dọn hết hạn rồi trả HGETALL holds (phẳng: member, "qty|kg|m3", ...). */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> READ_SCRIPT = new DefaultRedisScript<>(PURGE_LUA + """
+            return redis.call('HGETALL', KEYS[1])
+            """, List.class);
+
+    /** Đặt / cập nhật hold của holder tại BIN. false khi tổng hold vượt limit ở 1 chiều nào đó. */
+    public boolean hold(Long zoneId, Long locationId, String holder, Held held, Limit limit, Duration ttl) {
+        long now = System.currentTimeMillis();
+        Long ok = redisTemplate.execute(HOLD_SCRIPT,
+                List.of(holdsKey(zoneId), expKey(zoneId), binsKey(zoneId)),
+                String.valueOf(now), member(locationId, holder), String.valueOf(locationId),
+                held.qty().toPlainString(), held.weightKg().toPlainString(), held.volumeM3().toPlainString(),
+                String.valueOf(now + ttl.toMillis()),
+                limitArg(limit != null ? limit.qty() : null), limitArg(limit != null ? limit.weightKg() : null),
+                limitArg(limit != null ? limit.volumeM3() : null),
+                String.valueOf(ttl.toMillis()));
+        if (ok == null || ok != 1L) return false;
+        // Set của holder khác hash slot với zone → ghi ngoài script (chỉ để releaseAll tìm lại)
+        redisTemplate.opsForSet().add(holderKey(holder), zoneId + "|" + locationId);
+        redisTemplate.expire(holderKey(holder), ttl);
+        return true;
+    }
+
+    /** Giảm hold của holder tại BIN đi qty (null: bỏ hết); trả về qty đã giảm. */
+    public BigDecimal release(Long zoneId, Long locationId, String holder, BigDecimal qty) {
+        Long released = redisTemplate.execute(RELEASE_SCRIPT,
+                List.of(holdsKey(zoneId), expKey(zoneId), binsKey(zoneId)),
+                String.valueOf(System.currentTimeMillis()), member(locationId, holder), String.valueOf(locationId),
+                qty != null ? qty.toPlainString() : "-1");
+        return released != null ? BigDecimal.valueOf(released, 4) : BigDecimal.ZERO;
+    }
+
+    /** Bỏ mọi hold của holder (task xong / tính lại). */
+    public void releaseAll(String holder) {
+        Set<String> held = redisTemplate.opsForSet().members(holderKey(holder));
+        if (held == null || held.isEmpty()) return;
+        for (String entry : held) {
+            String[] parts = entry.split("\\|", 2);
+            release(Long.valueOf(parts[0]), Long.valueOf(parts[1]), holder, null);
+        }
+        redisTemplate.delete(holderKey(holder));
+    }
+
+    /** locationId → tổng hold trong zone, không tính hold của excludeHolder (null: tính hết). */
+    @SuppressWarnings("unchecked")
+    public Map<Long, Held> heldInZone(Long zoneId, String excludeHolder) {
+        List<Object> flat = redisTemplate.execute(READ_SCRIPT,
+                List.of(holdsKey(zoneId), expKey(zoneId), binsKey(zoneId)),
+                String.valueOf(System.currentTimeMillis()));
+        Map<Long, Held> held = new HashMap<>();
+        if (flat == null) return held;
+        for (int i = 0; i + 1 < flat.size(); i += 2) {
+            String[] parts = String.valueOf(flat.get(i)).split("\\|", 2);
+            if (excludeHolder != null && parts.length > 1 && excludeHolder.equals(parts[1])) continue;
+            held.merge(Long.valueOf(parts[0]), parseHeld(String.valueOf(flat.get(i + 1))), Held::add);
+        }
+        return held;
+    }
+
+    /** "qty|kg|m3" (giá trị cũ chỉ có "qty" → kg / m³ = 0). */
+    static Held parseHeld(String value) {
+        String[] parts = value.split("\\|");
+        BigDecimal qty = new BigDecimal(parts[0]);
+        return parts.length < 3 ? new Held(qty, BigDecimal.ZERO, BigDecimal.ZERO)
+                : new Held(qty, new BigDecimal(parts[1]), new BigDecimal(parts[2]));
+    }
+
+    private static String limitArg(BigDecimal limit) {
+        return limit != null ? limit.max(BigDecimal.ZERO).toPlainString() : "-1";
+    }
+
+    private static String member(Long locationId, String holder) {
+        return locationId + "|" + holder;
+    }
+
+    private static String holdsKey(Long zoneId) {
+        return KEY_PREFIX + "{" + zoneId + "}:holds";
+    }
+
+    private static String expKey(Long zoneId) {
+        return KEY_PREFIX + "{" + zoneId + "}:exp";
+    }
+
+    private static String binsKey(Long zoneId) {
+        return KEY_PREFIX + "{" + zoneId + "}:bins";
+    }
+
+    private static String holderKey(String holder) {
+        return KEY_PREFIX + "holder:" + holder;
+    }
+}
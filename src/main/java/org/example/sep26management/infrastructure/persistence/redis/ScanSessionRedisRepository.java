@@ -1,15 +1,49 @@
 package org.example.sep26management.infrastructure.persistence.redis;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.example.sep26management.application.dto.scan.ScanLineItem;
 import org.example.sep26management.application.dto.scan.ScanSessionData;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Repository;
 
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
+/**
+ * Scan session lưu dạng Redis hash, mọi key của 1 session cùng hash tag {sessionId}:
+ *   scan:session:{id}:meta   HASH  sessionId / warehouseId / createdBy
+ *   scan:session:{id}:qty    HASH  "skuId|condition" → qty (HINCRBYFLOAT)
+ *   scan:session:{id}:lines  HASH  "skuId|condition" → metadata dòng (JSON, HSETNX lần scan đầu)
+ *                                  "skuId|condition|reason" / "|attachment" → giá trị mới nhất
+ *   scan:session:{id}:scan:{scanId}  STRING  SET NX theo clientScanId (TTL = TTL session), giữ qty
+ *                                            trả về lần đầu → gửi lại (retry) không cộng trùng
+ *   scan:session:{id}:seq    STRING  seq delta SSE, INCR mỗi lần 1 dòng đổi
+ *   scan:session:{id}:deltas LIST    ring buffer delta gần nhất (JSON, LTRIM còn delta-buffer-size)
+ *
+ * 1 scan = 1 Lua script (applyScan): HINCRBYFLOAT + HSETNX + seq + ring buffer + TTL + PUBLISH delta,
+ * atomic → nhiều điện thoại scan cùng session không mất số lượng, chi phí không phụ thuộc số dòng.
+ * Delta mang qty tuyệt đối của dòng (không phải lượng cộng thêm) → áp lại nhiều lần vẫn đúng.
+ * findById ghép lại ScanSessionData cho các chỗ đọc.
+ */
 @Repository
 @RequiredArgsConstructor
 @Slf4j
@@ -19,19 +53,327 @@ public class ScanSessionRedisRepository {
     private static final String ACTIVE_SESSION_PREFIX = "scan:active_session:";
     private static final Duration TTL = Duration.ofHours(1);
 
+    public static final String DELTA_CHANNEL_PREFIX = "scan:delta:";
+
+    private static final String REASON = "reason";
+    private static final String ATTACHMENT = "attachment";
+
     private final StringRedisTemplate redisTemplate;
     private final ObjectMapper objectMapper;
 
+    /** Số delta giữ lại / session cho client reconnect (Last-Event-ID); thiếu nhiều hơn → snapshot. */
+    @Value("${scan.sse.delta-buffer-size:200}")
+    private int deltaBufferSize;
+
+    /** Metadata 1 dòng scan (không có qty — qty nằm ở hash qty). */
+    record LineMeta(String skuCode, String skuName, String barcode, String lotNumber,
+                    LocalDate manufactureDate, LocalDate expiryDate, long firstScanAt) {
+    }
+
+    /** Ghi đè toàn bộ session (tạo mới / reset lines). */
     public void save(String sessionId, ScanSessionData data) {
         try {
-            String json = objectMapper.writeValueAsString(data);
-            redisTemplate.opsForValue().set(KEY_PREFIX + sessionId, json, TTL);
+            Map<String, String> meta = metaOf(data);
+            Map<String, String> qty = new HashMap<>();
+            Map<String, String> lines = new HashMap<>();
+            long now = System.currentTimeMillis();
+            for (ScanLineItem line : data.getLines()) {
+                String field = lineField(line.getSkuId(), line.getCondition());
+                qty.put(field, line.getQty() != null ? line.getQty().toPlainString() : "0");
+                lines.put(field, objectMapper.writeValueAsString(metaOf(line, now++)));
+                if (line.getReasonCode() != null) lines.put(field + "|" + REASON, line.getReasonCode());
+                if (line.getAttachmentUrl() != null) lines.put(field + "|" + ATTACHMENT, line.getAttachmentUrl());
+            }
+            transaction(sessionId, ops -> {
+                // seq vẫn tăng tiếp (không reset) → Last-Event-ID cũ không khớp buffer rỗng → client nhận snapshot
+                ops.delete(List.of(metaKey(sessionId), qtyKey(sessionId), linesKey(sessionId), deltasKey(sessionId)));
+                ops.opsForValue().increment(seqKey(sessionId));
+                ops.opsForHash().putAll(metaKey(sessionId), meta);
+                if (!qty.isEmpty()) ops.opsForHash().putAll(qtyKey(sessionId), qty);
+                if (!lines.isEmpty()) ops.opsForHash().putAll(linesKey(sessionId), lines);
+            });
         } catch (Exception e) {
             log.error("Failed to save scan session {} to Redis", sessionId, e);
             throw new RuntimeException("Failed to save scan session", e);
         }
     }
 
+    public enum ScanStatus { APPLIED, DUPLICATE, SESSION_NOT_FOUND }
+
+    /** Kết quả 1 scan: qty mới của dòng (DUPLICATE: qty đã trả lần đầu). */
+    public record ScanResult(ScanStatus status, BigDecimal qty) {
+    }
+
+    /** 1 scan trong batch; scannedAt = thời điểm quét trên thiết bị (epoch ms). */
+    public record ScanCommand(ScanLineItem line, String scanId, long scannedAt) {
+    }
+
+    /** 1 dòng đổi: line mang qty tuyệt đối; removed = dòng đã bị bỏ khỏi session. */
+    public record ScanDelta(long seq, ScanLineItem line, boolean removed) {
+    }
+
+    /**
+     * KEYS: meta, qty, lines, scanKey, seq, deltas. ARGV: field, delta, metaJson, reasonCode, attachmentUrl, ttlMs,
+     * scanId, channel, sessionId, skuId, condition, publish ('1' = PUBLISH delta), deltaBufferSize. Trả về {0}
+     * session không tồn tại, {2, qty} scanId đã xử lý (qty của lần đầu), {1, qty} đã cộng. Chuỗi rỗng = không có
+     * giá trị. Delta luôn vào ring buffer (kể cả batch), chỉ PUBLISH khi publish = '1'.
+     */
+    @SuppressWarnings("rawtypes")
+    private static final DefaultRedisScript<List> SCAN_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then return {0} end
+            if ARGV[7] ~= '' and not redis.call('SET', KEYS[4], '', 'NX', 'PX', ARGV[6]) then
+                return {2, redis.call('GET', KEYS[4])}
+            end
+            local qty = redis.call('HINCRBYFLOAT', KEYS[2], ARGV[1], ARGV[2])
+            redis.call('HSETNX', KEYS[3], ARGV[1], ARGV[3])
+            if ARGV[4] ~= '' then redis.call('HSET', KEYS[3], ARGV[1] .. '|reason', ARGV[4]) end
+            if ARGV[5] ~= '' then redis.call('HSET', KEYS[3], ARGV[1] .. '|attachment', ARGV[5]) end
+            if ARGV[7] ~= '' then redis.call('SET', KEYS[4], qty, 'XX', 'PX', ARGV[6]) end
+            local seq = redis.call('INCR', KEYS[5])
+            local delta = cjson.encode({seq = seq, sessionId = ARGV[9], skuId = ARGV[10], condition = ARGV[11],
+                delta = ARGV[2], qty = qty, meta = redis.call('HGET', KEYS[3], ARGV[1]),
+                reason = redis.call('HGET', KEYS[3], ARGV[1] .. '|reason'),
+                attachment = redis.call('HGET', KEYS[3], ARGV[1] .. '|attachment')})
+            redis.call('RPUSH', KEYS[6], delta)
+            redis.call('LTRIM', KEYS[6], -tonumber(ARGV[13]), -1)
+            for _, i in ipairs({1, 2, 3, 5, 6}) do redis.call('PEXPIRE', KEYS[i], ARGV[6]) end
+            if ARGV[12] == '1' then redis.call('PUBLISH', ARGV[8], delta) end
+            return {1, qty}
+            """, List.class);
+
+    /**
+     * KEYS: meta, qty, lines, seq, deltas. ARGV: field, sessionId, skuId, condition, ttlMs, deltaBufferSize,
+     * channel. Ghi delta cho dòng với qty hiện tại (dòng không còn → removed). Trả về seq, 0 nếu session
+     * không tồn tại.
+     */
+    private static final DefaultRedisScript<Long> LINE_CHANGE_SCRIPT = new DefaultRedisScript<>("""
+            if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end
+            local qty = redis.call('HGET', KEYS[2], ARGV[1])
+            local seq = redis.call('INCR', KEYS[4])
+            local delta = cjson.encode({seq = seq, sessionId = ARGV[2], skuId = ARGV[3], condition = ARGV[4],
+                qty = qty or '0', removed = not qty, meta = redis.call('HGET', KEYS[3], ARGV[1]),
+                reason = redis.call('HGET', KEYS[3], ARGV[1] .. '|reason'),
+                attachment = redis.call('HGET', KEYS[3], ARGV[1] .. '|attachment')})
+            redis.call('RPUSH', KEYS[5], delta)
+            redis.call('LTRIM', KEYS[5], -tonumber(ARGV[6]), -1)
+            for i = 1, 5 do redis.call('PEXPIRE', KEYS[i], ARGV[5]) end
+            redis.call('PUBLISH', ARGV[7], delta)
+            return seq
+            """, Long.class);
+
+    /** KEYS: sessionKeys (meta trước). ARGV: ttlMs. Gia hạn mọi key trong 1 lệnh; trả về 0 nếu meta đã hết hạn. */
+    private static final DefaultRedisScript<Long> REFRESH_TTL_SCRIPT = new DefaultRedisScript<>("""
+            local alive = redis.call('PEXPIRE', KEYS[1], ARGV[1])
+            for i = 2, #KEYS do redis.call('PEXPIRE', KEYS[i], ARGV[1]) end
+            return alive
+            """, Long.class);
+
+    /**
+     * 1 round trip (EVALSHA, tự EVAL lại khi server chưa có script): kiểm tra session, kiểm tra
+     * scanId (null = bỏ qua), HINCRBYFLOAT dòng (skuId, condition), HSETNX metadata, seq + ring buffer,
+     * gia hạn TTL, PUBLISH delta lên {@link #deltaChannel}. reasonCode / attachmentUrl: last wins.
+     */
+    public ScanResult applyScan(String sessionId, ScanLineItem line, String scanId) {
+        List<?> result = redisTemplate.execute(SCAN_SCRIPT, scanKeys(sessionId, scanId),
+                scanArgs(sessionId, new ScanCommand(line, scanId, System.currentTimeMillis()), true));
+        return toResult(result);
+    }
+
+    /**
+     * Batch scan: SCRIPT LOAD + EVALSHA từng scan theo thứ tự trong 1 pipeline (1 round trip).
+     * Không PUBLISH từng scan — caller gọi publishBatch 1 lần. Kết quả theo thứ tự commands.
+     */
+    public List<ScanResult> applyScans(String sessionId, List<ScanCommand> commands) {
+        if (commands.isEmpty()) return List.of();
+        byte[] script = SCAN_SCRIPT.getScriptAsString().getBytes(StandardCharsets.UTF_8);
+        String sha = SCAN_SCRIPT.getSha1();
+        List<Object> raw = redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            connection.scriptingCommands().scriptLoad(script);
+            for (ScanCommand command : commands) {
+                List<String> keys = scanKeys(sessionId, command.scanId());
+                Object[] args = scanArgs(sessionId, command, false);
+                byte[][] keysAndArgs = new byte[keys.size() + args.length][];
+                for (int i = 0; i < keys.size(); i++) keysAndArgs[i] = bytes(keys.get(i));
+                for (int i = 0; i < args.length; i++) keysAndArgs[keys.size() + i] = bytes((String) args[i]);
+                connection.scriptingCommands().evalSha(sha, ReturnType.MULTI, keys.size(), keysAndArgs);
+            }
+            return null;
+        });
+        List<ScanResult> results = new ArrayList<>(commands.size());
+        for (int i = 1; i < raw.size(); i++) {
+            results.add(toResult((List<?>) raw.get(i)));
+        }
+        return results;
+    }
+
+    /**
+     * Sau decrement / removeLine: ghi delta (qty hiện tại của dòng) vào ring buffer và PUBLISH.
+     * Không atomic với thay đổi trước đó nhưng delta đọc qty tại thời điểm ghi → theo thứ tự seq vẫn đúng.
+     */
+    public void publishLineChange(String sessionId, Long skuId, String condition) {
+        try {
+            redisTemplate.execute(LINE_CHANGE_SCRIPT,
+                    List.of(metaKey(sessionId), qtyKey(sessionId), linesKey(sessionId), seqKey(sessionId),
+                            deltasKey(sessionId)),
+                    lineField(skuId, condition), sessionId, String.valueOf(skuId), condition,
+                    String.valueOf(TTL.toMillis()), String.valueOf(deltaBufferSize), deltaChannel(sessionId));
+        } catch (Exception e) {
+            log.warn("Could not publish line change for session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    /** 1 PUBLISH gộp cho cả batch (laptop nhận 1 snapshot thay vì mỗi scan 1 lần; delta vẫn vào ring buffer). */
+    public void publishBatch(String sessionId, int applied) {
+        try {
+            redisTemplate.convertAndSend(deltaChannel(sessionId), objectMapper.writeValueAsString(
+                    Map.of("sessionId", sessionId, "type", "batch", "applied", applied)));
+        } catch (Exception e) {
+            log.warn("Could not publish scan batch for session {}: {}", sessionId, e.getMessage());
+        }
+    }
+
+    private List<String> scanKeys(String sessionId, String scanId) {
+        return List.of(metaKey(sessionId), qtyKey(sessionId), linesKey(sessionId),
+                scanKey(sessionId, scanId != null ? scanId : ""), seqKey(sessionId), deltasKey(sessionId));
+    }
+
+    private Object[] scanArgs(String sessionId, ScanCommand command, boolean publish) {
+        ScanLineItem line = command.line();
+        String metaJson;
+        try {
+            metaJson = objectMapper.writeValueAsString(metaOf(line, command.scannedAt()));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to serialize scan line", e);
+        }
+        return new Object[]{lineField(line.getSkuId(), line.getCondition()), line.getQty().toPlainString(), metaJson,
+                blankToEmpty(line.getReasonCode()), blankToEmpty(line.getAttachmentUrl()),
+                String.valueOf(TTL.toMillis()), blankToEmpty(command.scanId()), deltaChannel(sessionId),
+                sessionId, String.valueOf(line.getSkuId()), line.getCondition(), publish ? "1" : "",
+                String.valueOf(deltaBufferSize)};
+    }
+
+    private static ScanResult toResult(List<?> result) {
+        long code = result != null && !result.isEmpty() ? ((Number) result.get(0)).longValue() : 0;
+        if (code == 0) return new ScanResult(ScanStatus.SESSION_NOT_FOUND, null);
+        return new ScanResult(code == 2 ? ScanStatus.DUPLICATE : ScanStatus.APPLIED, toQty(result.get(1)));
+    }
+
+    /**
+     * Delta client còn thiếu sau lastSeq (Last-Event-ID), theo thứ tự seq. Empty khi ring buffer không
+     * còn đủ (thiếu quá nhiều, session đã reset, hoặc lastSeq lạ) → caller gửi snapshot.
+     */
+    @SuppressWarnings("unchecked")
+    public Optional<List<ScanDelta>> deltasSince(String sessionId, long lastSeq) {
+        try {
+            List<Object> raw = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    ops.opsForValue().get(seqKey(sessionId));
+                    ops.opsForList().range(deltasKey(sessionId), 0, -1);
+                    return null;
+                }
+            });
+            long current = raw.get(0) != null ? Long.parseLong(String.valueOf(raw.get(0))) : 0;
+            if (lastSeq > current)
+                return Optional.empty();
+            if (lastSeq == current)
+                return Optional.of(List.of());
+            List<ScanDelta> missed = new ArrayList<>();
+            for (Object json : (List<Object>) raw.get(1)) {
+                parseDelta(String.valueOf(json))
+                        .filter(d -> d.seq() > lastSeq)
+                        .ifPresent(missed::add);
+            }
+            if (missed.isEmpty() || missed.get(0).seq() != lastSeq + 1)
+                return Optional.empty();
+            return Optional.of(missed);
+        } catch (Exception e) {
+            log.warn("Could not read delta buffer of session {}: {}", sessionId, e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /** Đọc delta PUBLISH / trong ring buffer; empty nếu không phải delta 1 dòng (VD: message batch). */
+    public Optional<ScanDelta> parseDelta(String json) {
+        try {
+            JsonNode node = objectMapper.readTree(json);
+            if (!node.hasNonNull("seq"))
+                return Optional.empty();
+            String condition = node.path("condition").asText("PASS");
+            LineMeta meta = node.path("meta").isTextual() ? readMeta(node.get("meta").asText()) : null;
+            ScanLineItem line = ScanLineItem.builder()
+                    .skuId(node.path("skuId").asLong())
+                    .condition(condition)
+                    .qty(toQty(node.path("qty").asText("0")))
+                    .skuCode(meta != null ? meta.skuCode() : null)
+                    .skuName(meta != null ? meta.skuName() : null)
+                    .barcode(meta != null ? meta.barcode() : null)
+                    .lotNumber(meta != null ? meta.lotNumber() : null)
+                    .manufactureDate(meta != null ? meta.manufactureDate() : null)
+                    .expiryDate(meta != null ? meta.expiryDate() : null)
+                    .reasonCode(textOrNull(node.get("reason")))
+                    .attachmentUrl(textOrNull(node.get("attachment")))
+                    .build();
+            return Optional.of(new ScanDelta(node.get("seq").asLong(), line, node.path("removed").asBoolean(false)));
+        } catch (Exception e) {
+            log.warn("Unreadable scan delta: {}", json);
+            return Optional.empty();
+        }
+    }
+
+    /** Kênh pub/sub nhận delta scan của session. */
+    public static String deltaChannel(String sessionId) {
+        return DELTA_CHANNEL_PREFIX + sessionId;
+    }
+
+    /** Trừ qty khỏi dòng; còn ≤ 0 thì bỏ dòng. Trả về qty còn lại (0 khi đã bỏ). */
+    public BigDecimal decrement(String sessionId, Long skuId, String condition, BigDecimal qty) {
+        String field = lineField(skuId, condition);
+        Double left = redisTemplate.opsForHash().increment(qtyKey(sessionId), field, -qty.doubleValue());
+        BigDecimal remaining = toQty(left);
+        if (remaining.compareTo(BigDecimal.ZERO) <= 0) {
+            removeLine(sessionId, skuId, condition);
+            return BigDecimal.ZERO;
+        }
+        refreshTtl(sessionId);
+        return remaining;
+    }
+
+    public void removeLine(String sessionId, Long skuId, String condition) {
+        String field = lineField(skuId, condition);
+        transaction(sessionId, ops -> {
+            ops.opsForHash().delete(qtyKey(sessionId), field);
+            ops.opsForHash().delete(linesKey(sessionId), field, field + "|" + REASON, field + "|" + ATTACHMENT);
+        });
+    }
+
+    /** Qty hiện tại của dòng (skuId, condition); empty nếu chưa scan. */
+    public Optional<BigDecimal> lineQty(String sessionId, Long skuId, String condition) {
+        Object raw = redisTemplate.opsForHash().get(qtyKey(sessionId), lineField(skuId, condition));
+        return raw != null ? Optional.of(toQty(raw)) : Optional.empty();
+    }
+
+    public long lineCount(String sessionId) {
+        Long size = redisTemplate.opsForHash().size(qtyKey(sessionId));
+        return size != null ? size : 0;
+    }
+
+    /** skuId → condition → qty, đọc thẳng hash qty (không cần metadata dòng). */
+    public Map<Long, Map<String, BigDecimal>> counts(String sessionId) {
+        Map<Long, Map<String, BigDecimal>> counts = new HashMap<>();
+        redisTemplate.opsForHash().entries(qtyKey(sessionId)).forEach((field, value) -> {
+            String[] parts = String.valueOf(field).split("\\|", 2);
+            counts.computeIfAbsent(Long.valueOf(parts[0]), k -> new HashMap<>())
+                    .merge(parts.length > 1 ? parts[1] : "PASS", toQty(value), BigDecimal::add);
+        });
+        return counts;
+    }
+
+    public boolean exists(String sessionId) {
+        return Boolean.TRUE.equals(redisTemplate.hasKey(metaKey(sessionId)));
+    }
+
     public void saveActiveSession(Long warehouseId, Long userId, String sessionId) {
         String key = ACTIVE_SESSION_PREFIX + warehouseId + ":" + userId;
         redisTemplate.opsForValue().set(key, sessionId, TTL);
@@ -47,12 +389,29 @@ public class ScanSessionRedisRepository {
         redisTemplate.delete(key);
     }
 
+    /** Session đầy đủ (meta + mọi dòng, theo thứ tự scan đầu tiên). */
+    @SuppressWarnings("unchecked")
     public Optional<ScanSessionData> findById(String sessionId) {
         try {
-            String json = redisTemplate.opsForValue().get(KEY_PREFIX + sessionId);
-            if (json == null)
+            List<Object> hashes = redisTemplate.executePipelined(new SessionCallback<Object>() {
+                @Override
+                public <K, V> Object execute(RedisOperations<K, V> operations) throws DataAccessException {
+                    RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                    // seq đọc trước các hash → snapshot không bao giờ báo seq mới hơn dữ liệu nó chứa
+                    ops.opsForValue().get(seqKey(sessionId));
+                    ops.opsForHash().entries(metaKey(sessionId));
+                    ops.opsForHash().entries(qtyKey(sessionId));
+                    ops.opsForHash().entries(linesKey(sessionId));
+                    return null;
+                }
+            });
+            Map<Object, Object> meta = (Map<Object, Object>) hashes.get(1);
+            if (meta == null || meta.isEmpty())
                 return Optional.empty();
-            return Optional.of(objectMapper.readValue(json, ScanSessionData.class));
+            ScanSessionData data = headerOf(meta);
+            data.setSeq(longOrNull(hashes.get(0)));
+            data.setLines(assembleLines((Map<Object, Object>) hashes.get(2), (Map<Object, Object>) hashes.get(3)));
+            return Optional.of(data);
         } catch (Exception e) {
             log.error("Failed to read scan session {} from Redis", sessionId, e);
             return Optional.empty();
@@ -60,10 +419,158 @@ public class ScanSessionRedisRepository {
     }
 
     public void delete(String sessionId) {
-        redisTemplate.delete(KEY_PREFIX + sessionId);
+        redisTemplate.delete(sessionKeys(sessionId));
+    }
+
+    /**
+     * Gia hạn TTL mọi key của session (atomic, 1 script). false khi session đã hết hạn trước đó —
+     * caller cần giữ session thì save lại từ dữ liệu vừa đọc.
+     */
+    public boolean refreshTtl(String sessionId) {
+        Long alive = redisTemplate.execute(REFRESH_TTL_SCRIPT, sessionKeys(sessionId), String.valueOf(TTL.toMillis()));
+        return alive != null && alive > 0;
+    }
+
+    // ─── Helpers ──────────────────────────────────────────────────────────────
+
+    private interface Writes {
+        void apply(RedisOperations<String, String> ops);
+    }
+
+    /** MULTI … EXPIRE (mọi key session) … EXEC; trả kết quả EXEC theo thứ tự lệnh. */
+    @SuppressWarnings("unchecked")
+    private List<Object> transaction(String sessionId, Writes writes) {
+        List<Object> results = redisTemplate.execute(new SessionCallback<List<Object>>() {
+            @Override
+            public <K, V> List<Object> execute(RedisOperations<K, V> operations) throws DataAccessException {
+                RedisOperations<String, String> ops = (RedisOperations<String, String>) operations;
+                ops.multi();
+                writes.apply(ops);
+                sessionKeys(sessionId).forEach(key -> ops.expire(key, TTL));
+                return ops.exec();
+            }
+        });
+        return results != null ? results : List.of();
+    }
+
+    private List<ScanLineItem> assembleLines(Map<Object, Object> qty, Map<Object, Object> lines) {
+        Map<String, LineMeta> metas = new HashMap<>();
+        Map<String, ScanLineItem> items = new LinkedHashMap<>();
+        for (Map.Entry<Object, Object> entry : qty.entrySet()) {
+            String field = String.valueOf(entry.getKey());
+            String[] parts = field.split("\\|", 2);
+            LineMeta meta = readMeta(lines.get(field));
+            metas.put(field, meta);
+            items.put(field, ScanLineItem.builder()
+                    .skuId(Long.valueOf(parts[0]))
+                    .condition(parts.length > 1 ? parts[1] : "PASS")
+                    .qty(toQty(entry.getValue()))
+                    .skuCode(meta != null ? meta.skuCode() : null)
+                    .skuName(meta != null ? meta.skuName() : null)
+                    .barcode(meta != null ? meta.barcode() : null)
+                    .lotNumber(meta != null ? meta.lotNumber() : null)
+                    .manufactureDate(meta != null ? meta.manufactureDate() : null)
+                    .expiryDate(meta != null ? meta.expiryDate() : null)
+                    .reasonCode(stringOrNull(lines.get(field + "|" + REASON)))
+                    .attachmentUrl(stringOrNull(lines.get(field + "|" + ATTACHMENT)))
+                    .build());
+        }
+        List<String> order = new ArrayList<>(items.keySet());
+        order.sort(Comparator.comparingLong((String f) -> metas.get(f) != null ? metas.get(f).firstScanAt() : Long.MAX_VALUE)
+                .thenComparing(Comparator.naturalOrder()));
+        List<ScanLineItem> result = new ArrayList<>(order.size());
+        order.forEach(f -> result.add(items.get(f)));
+        return result;
+    }
+
+    private LineMeta readMeta(Object json) {
+        if (json == null) return null;
+        try {
+            return objectMapper.readValue(String.valueOf(json), LineMeta.class);
+        } catch (Exception e) {
+            log.warn("Unreadable scan line metadata: {}", json);
+            return null;
+        }
+    }
+
+    private static LineMeta metaOf(ScanLineItem line, long firstScanAt) {
+        return new LineMeta(line.getSkuCode(), line.getSkuName(), line.getBarcode(), line.getLotNumber(),
+                line.getManufactureDate(), line.getExpiryDate(), firstScanAt);
+    }
+
+    private static Map<String, String> metaOf(ScanSessionData data) {
+        Map<String, String> meta = new HashMap<>();
+        meta.put("sessionId", data.getSessionId());
+        if (data.getWarehouseId() != null) meta.put("warehouseId", String.valueOf(data.getWarehouseId()));
+        if (data.getCreatedBy() != null) meta.put("createdBy", String.valueOf(data.getCreatedBy()));
+        return meta;
+    }
+
+    private static ScanSessionData headerOf(Map<Object, Object> meta) {
+        return ScanSessionData.builder()
+                .sessionId(stringOrNull(meta.get("sessionId")))
+                .warehouseId(longOrNull(meta.get("warehouseId")))
+                .createdBy(longOrNull(meta.get("createdBy")))
+                .build();
+    }
+
+    /** HINCRBYFLOAT trả về số thực → BigDecimal bỏ ".0" thừa (3.0 → 3). */
+    private static BigDecimal toQty(Object raw) {
+        if (raw == null) return BigDecimal.ZERO;
+        BigDecimal value = new BigDecimal(String.valueOf(raw)).stripTrailingZeros();
+        return value.scale() < 0 ? value.setScale(0) : value;
+    }
+
+    private static String textOrNull(JsonNode node) {
+        return node != null && node.isTextual() ? node.asText() : null;
+    }
+
+    private static String stringOrNull(Object value) {
+        return value != null ? String.valueOf(value) : null;
+    }
+
+    private static Long longOrNull(Object value) {
+        return value != null ? Long.valueOf(String.valueOf(value)) : null;
+    }
+
+    private static String lineField(Long skuId, String condition) {
+        return skuId + "|" + (condition != null ? condition : "PASS");
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String blankToEmpty(String value) {
+        return value != null && !value.isBlank() ? value : "";
+    }
+
+    private static String scanKey(String sessionId, String scanId) {
+        return KEY_PREFIX + "{" + sessionId + "}:scan:" + scanId;
+    }
+
+    private static String metaKey(String sessionId) {
+        return KEY_PREFIX + "{" + sessionId + "}:meta";
+    }
+
+    private static String qtyKey(String sessionId) {
+        return KEY_PREFIX + "{" + sessionId + "}:qty";
+    }
+
+    private static String linesKey(String sessionId) {
+        return KEY_PREFIX + "{" + sessionId + "}:lines";
+    }
+
+    private static String seqKey(String sessionId) {
+        return KEY_PREFIX + "{" + sessionId + "}:seq";
+    }
+
+    private static String deltasKey(String sessionId) {
+        return KEY_PREFIX + "{" + sessionId + "}:deltas";
     }
 
-    public void refreshTtl(String sessionId) {
-        redisTemplate.expire(KEY_PREFIX + sessionId, TTL);
+    private static List<String> sessionKeys(String sessionId) {
+        return List.of(metaKey(sessionId), qtyKey(sessionId), linesKey(sessionId), seqKey(sessionId),
+                deltasKey(sessionId));
     }
 }
@@ -11,9 +11,13 @@ import org.springframework.transaction.annotation.Transactional;
 
 import java.math.BigDecimal;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Repository
@@ -26,8 +30,14 @@ public interface InventorySnapshotJpaRepository
         @Query("SELECT COALESCE(SUM(s.quantity), 0) FROM InventorySnapshotEntity s WHERE s.locationId = :locationId")
         BigDecimal sumQuantityByLocationId(@Param("locationId") Long locationId);
 
-        /** Single location — total reserved qty */
-        @Query("SELECT COALESCE(SUM(s.reservedQty), 0) FROM InventorySnapshotEntity s WHERE s.locationId = :locationId")
+        /** Single location — total reserved qty (gồm reserved delta chưa gộp — delta mode) */
+        @Query("""
+            SELECT COALESCE(SUM(s.reservedQty + COALESCE(p.qty, 0)), 0)
+            FROM InventorySnapshotEntity s
+            LEFT JOIN PendingReservedQtyEntity p
+                   ON p.locationId = s.locationId AND p.skuId = s.skuId AND p.lotIdSafe = s.lotIdSafe
+            WHERE s.locationId = :locationId
+            """)
         BigDecimal sumReservedByLocationId(@Param("locationId") Long locationId);
 
         // ── Batch-location queries (used by BinService.viewBinOccupancy) ─────────
@@ -41,10 +51,12 @@ public interface InventorySnapshotJpaRepository
             """)
         List<Object[]> sumQuantityGroupedByLocationIds(@Param("locationIds") List<Long> locationIds);
 
-        /** Batch — reserved qty per location */
+        /** Batch — reserved qty per location (gồm reserved delta chưa gộp) */
         @Query("""
-            SELECT s.locationId, COALESCE(SUM(s.reservedQty), 0)
+            SELECT s.locationId, COALESCE(SUM(s.reservedQty + COALESCE(p.qty, 0)), 0)
             FROM InventorySnapshotEntity s
+            LEFT JOIN PendingReservedQtyEntity p
+                   ON p.locationId = s.locationId AND p.skuId = s.skuId AND p.lotIdSafe = s.lotIdSafe
             WHERE s.locationId IN :locationIds
             GROUP BY s.locationId
             """)
@@ -64,10 +76,12 @@ public interface InventorySnapshotJpaRepository
                    l.lotNumber  AS lotNumber,
                    l.expiryDate AS expiryDate,
                    s.quantity   AS quantity,
-                   s.reservedQty AS reservedQty
+                   (s.reservedQty + COALESCE(p.qty, 0)) AS reservedQty
             FROM InventorySnapshotEntity s
             JOIN SkuEntity sk ON sk.skuId = s.skuId
             LEFT JOIN InventoryLotEntity l ON l.lotId = s.lotId
+            LEFT JOIN PendingReservedQtyEntity p
+                   ON p.locationId = s.locationId AND p.skuId = s.skuId AND p.lotIdSafe = s.lotIdSafe
             WHERE s.locationId = :locationId
               AND s.quantity > 0
             ORDER BY l.expiryDate ASC NULLS LAST
@@ -135,11 +149,14 @@ public interface InventorySnapshotJpaRepository
          * FIX: chỉ tính reserved ở location ACTIVE + BIN thực.
          * Nếu location bị deactivate thì reserved ở đó không được tính vào công thức
          * available = total - reserved → tránh available âm.
+         * Cộng cả reserved delta chưa gộp (inventory_reserved_pending — delta mode).
          */
         @Query("""
-            SELECT COALESCE(SUM(s.reservedQty), 0)
+            SELECT COALESCE(SUM(s.reservedQty + COALESCE(p.qty, 0)), 0)
             FROM InventorySnapshotEntity s
             JOIN LocationEntity loc ON loc.locationId = s.locationId
+            LEFT JOIN PendingReservedQtyEntity p
+                   ON p.locationId = s.locationId AND p.skuId = s.skuId AND p.lotIdSafe = s.lotIdSafe
             WHERE s.warehouseId = :warehouseId
               AND s.skuId = :skuId
               AND loc.active = true
@@ -151,17 +168,123 @@ public interface InventorySnapshotJpaRepository
                 @Param("warehouseId") Long warehouseId,
                 @Param("skuId") Long skuId);
 
-        // [FIX] Ton kho tong hop theo SKU cho dashboard chart
+        /**
+         * ATP index load/reconcile: total + reserved per (warehouse, sku) cho toàn bộ hệ thống.
+         * Cùng điều kiện location với sumQuantityByWarehouseAndSku.
+         * Row: [warehouseId, skuId, totalQty, reservedQty]
+         */
+        @Query("""
+            SELECT s.warehouseId, s.skuId, COALESCE(SUM(s.quantity), 0), COALESCE(SUM(s.reservedQty + COALESCE(p.qty, 0)), 0)
+            FROM InventorySnapshotEntity s
+            JOIN LocationEntity loc ON loc.locationId = s.locationId
+            LEFT JOIN PendingReservedQtyEntity p
+                   ON p.locationId = s.locationId AND p.skuId = s.skuId AND p.lotIdSafe = s.lotIdSafe
+            WHERE loc.active = true
+              AND loc.isStaging = false
+              AND loc.isDefect = false
+              AND loc.locationType = org.example.sep26management.application.enums.LocationType.BIN
+            GROUP BY s.warehouseId, s.skuId
+            """)
+        List<Object[]> sumQuantityAndReservedGroupedByWarehouseAndSku();
+
+        /**
+         * ATP index refresh cho 1 warehouse (khi zone/location đổi trạng thái).
+         * Row: [warehouseId, skuId, totalQty, reservedQty]
+         */
+        @Query("""
+            SELECT s.warehouseId, s.skuId, COALESCE(SUM(s.quantity), 0), COALESCE(SUM(s.reservedQty + COALESCE(p.qty, 0)), 0)
+            FROM InventorySnapshotEntity s
+            JOIN LocationEntity loc ON loc.locationId = s.locationId
+            LEFT JOIN PendingReservedQtyEntity p
+                   ON p.locationId = s.locationId AND p.skuId = s.skuId AND p.lotIdSafe = s.lotIdSafe
+            WHERE s.warehouseId = :warehouseId
+              AND loc.active = true
+              AND loc.isStaging = false
+              AND loc.isDefect = false
+              AND loc.locationType = org.example.sep26management.application.enums.LocationType.BIN
+            GROUP BY s.warehouseId, s.skuId
+            """)
+        List<Object[]> sumQuantityAndReservedGroupedBySkuInWarehouse(@Param("warehouseId") Long warehouseId);
+
+        /**
+         * Availability cho nhiều SKU trong 1 warehouse — 1 query thay vì 2×N.
+         * Cùng điều kiện location với sumQuantityByWarehouseAndSku.
+         * Row: [skuId, totalQty, reservedQty] — SKU không có tồn sẽ không có row.
+         */
+        @Query("""
+            SELECT s.skuId, COALESCE(SUM(s.quantity), 0), COALESCE(SUM(s.reservedQty + COALESCE(p.qty, 0)), 0)
+            FROM InventorySnapshotEntity s
+            JOIN LocationEntity loc ON loc.locationId = s.locationId
+            LEFT JOIN PendingReservedQtyEntity p
+                   ON p.locationId = s.locationId AND p.skuId = s.skuId AND p.lotIdSafe = s.lotIdSafe
+            WHERE s.warehouseId = :warehouseId
+              AND s.skuId IN :skuIds
+              AND loc.active = true
+              AND loc.isStaging = false
+              AND loc.isDefect = false
+              AND loc.locationType = org.example.sep26management.application.enums.LocationType.BIN
+            GROUP BY s.skuId
+            """)
+        List<Object[]> sumQuantityAndReservedGroupedBySkuIds(
+                @Param("warehouseId") Long warehouseId,
+                @Param("skuIds") Collection<Long> skuIds);
+
+        /** skuId → Availability cho toàn bộ skuIds (SKU không có tồn → ZERO). */
+        default Map<Long, Availability> findAvailabilityBySkuIds(Long warehouseId, Collection<Long> skuIds) {
+                if (skuIds == null || skuIds.isEmpty()) return Collections.emptyMap();
+                Set<Long> distinct = new HashSet<>(skuIds);
+                Map<Long, Availability> result = new HashMap<>();
+                for (Object[] row : sumQuantityAndReservedGroupedBySkuIds(warehouseId, distinct)) {
+                        result.put((Long) row[0], new Availability((BigDecimal) row[1], (BigDecimal) row[2]));
+                }
+                distinct.forEach(skuId -> result.putIfAbsent(skuId, Availability.ZERO));
+                return result;
+        }
+
+        /** total / reserved / available của 1 SKU trong 1 warehouse. */
+        record Availability(BigDecimal total, BigDecimal reserved) {
+
+                static final Availability ZERO = new Availability(BigDecimal.ZERO, BigDecimal.ZERO);
+
+                public Availability {
+                        if (total == null) total = BigDecimal.ZERO;
+                        if (reserved == null) reserved = BigDecimal.ZERO;
+                }
+
+                /** available = max(0, total - reserved) */
+                public BigDecimal available() {
+                        return total.subtract(reserved).max(BigDecimal.ZERO);
+                }
+        }
+
+        /**
+         * Các location đang có tồn (quantity &gt; 0) của nhiều SKU — rule consolidation của putaway.
+         * Row: [skuId, lotId, locationId].
+         */
+        @Query("""
+            SELECT DISTINCT s.skuId, s.lotId, s.locationId
+            FROM InventorySnapshotEntity s
+            WHERE s.warehouseId = :warehouseId
+              AND s.skuId IN :skuIds
+              AND s.quantity > 0
+            """)
+        List<Object[]> findStockedLocationsBySkuIds(
+                @Param("warehouseId") Long warehouseId,
+                @Param("skuIds") Collection<Long> skuIds);
+
+        // [FIX] Ton kho tong hop theo SKU cho dashboard chart (reserved gồm delta chưa gộp)
         @Query(value = """
             SELECT s.sku_id AS skuId,
                    sk.sku_code AS skuCode,
                    sk.sku_name AS skuName,
                    SUM(s.quantity) AS totalQty,
-                   SUM(COALESCE(s.reserved_qty, 0)) AS reservedQty,
-                   SUM(s.quantity - COALESCE(s.reserved_qty, 0)) AS availableQty
+                   SUM(COALESCE(s.reserved_qty, 0) + COALESCE(p.qty, 0)) AS reservedQty,
+                   SUM(s.quantity - COALESCE(s.reserved_qty, 0) - COALESCE(p.qty, 0)) AS availableQty
             FROM inventory_snapshot s
             JOIN locations l  ON l.location_id  = s.location_id
             JOIN skus sk      ON sk.sku_id       = s.sku_id
+            LEFT JOIN inventory_reserved_pending p
+                   ON p.location_id = s.location_id AND p.sku_id = s.sku_id AND p.lot_id_safe = s.lot_id_safe
             WHERE s.warehouse_id  = :warehouseId
               AND l.active        = true
               AND l.is_staging    = false
@@ -169,7 +292,7 @@ public interface InventorySnapshotJpaRepository
               AND l.location_type = 'BIN'
               AND s.quantity      > 0
             GROUP BY s.sku_id, sk.sku_code, sk.sku_name
-            ORDER BY SUM(s.quantity - COALESCE(s.reserved_qty, 0)) DESC
+            ORDER BY SUM(s.quantity - COALESCE(s.reserved_qty, 0) - COALESCE(p.qty, 0)) DESC
             LIMIT 20
             """, nativeQuery = true)
         List<SkuStockSummaryProjection> findSkuStockSummaryByWarehouse(
@@ -237,6 +360,8 @@ public interface InventorySnapshotJpaRepository
             SELECT s.location_id
             FROM inventory_snapshot s
             JOIN locations l ON l.location_id = s.location_id
+            LEFT JOIN inventory_reserved_pending p
+                   ON p.location_id = s.location_id AND p.sku_id = s.sku_id AND p.lot_id_safe = s.lot_id_safe
             WHERE s.warehouse_id = :warehouseId
               AND s.sku_id       = :skuId
               AND (CASE WHEN :lotId IS NULL THEN s.lot_id IS NULL ELSE s.lot_id = :lotId END)
@@ -244,7 +369,7 @@ public interface InventorySnapshotJpaRepository
               AND l.active = true
               AND l.is_staging = false
               AND l.is_defect = false
-            ORDER BY (s.quantity - COALESCE(s.reserved_qty, 0)) DESC
+            ORDER BY (s.quantity - COALESCE(s.reserved_qty, 0) - COALESCE(p.qty, 0)) DESC
             LIMIT 1
             """, nativeQuery = true)
         Long findLocationIdByWarehouseSkuLot(
@@ -9,6 +9,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -109,6 +110,30 @@ public interface LocationJpaRepository extends JpaRepository<LocationEntity, Lon
                         """)
         List<LocationEntity> findActiveBinsByZone(@Param("zoneId") Long zoneId);
 
+        /**
+         * Active BINs của nhiều zone trong 1 query (putaway planner theo task).
+         */
+        @Query("""
+                        SELECT l FROM LocationEntity l
+                        WHERE l.zoneId IN :zoneIds
+                          AND l.locationType = 'BIN'
+                          AND l.active = true
+                        ORDER BY l.locationCode ASC
+                        """)
+        List<LocationEntity> findActiveBinsByZoneIds(@Param("zoneIds") Collection<Long> zoneIds);
+
+        /**
+         * Toàn bộ active BIN có zone — load BinCapacityIndexService.
+         */
+        @Query("""
+                        SELECT l FROM LocationEntity l
+                        WHERE l.zoneId IS NOT NULL
+                          AND l.locationType = 'BIN'
+                          AND l.active = true
+                        ORDER BY l.locationCode ASC
+                        """)
+        List<LocationEntity> findAllActiveBins();
+
         /**
          * BR-LOC-12: check if location has inventory before deactivation
          * Uses inventory_snapshot — sum qty > 0 means location has stock
@@ -2,8 +2,13 @@ package org.example.sep26management.infrastructure.persistence.repository;
 
 import org.example.sep26management.infrastructure.persistence.entity.ReceivingItemEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.math.BigDecimal;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,4 +18,36 @@ public interface ReceivingItemJpaRepository extends JpaRepository<ReceivingItemE
     List<ReceivingItemEntity> findByReceivingOrderReceivingId(Long receivingId);
 
     Optional<ReceivingItemEntity> findByReceivingOrderReceivingIdAndSkuId(Long receivingId, Long skuId);
+
+    /**
+     * Cộng receivedQty của dòng SKU trong phiếu bằng 1 câu UPDATE (scan từ điện thoại).
+     * Phiếu đã POSTED / PUTAWAY_DONE / CANCELLED / REJECTED → không cập nhật (trả về 0).
+     * fail = true: đánh dấu FAIL + qc_required, ghi reasonCode / attachmentUrl nếu có.
+     * Dùng chung cho scan lẻ (addScannedQty) và scan batch (JDBC batch, cùng tham số tên).
+     */
+    String ADD_SCANNED_QTY_SQL = """
+            UPDATE receiving_items ri
+            SET received_qty   = COALESCE(ri.received_qty, 0) + :qty,
+                condition      = CASE WHEN :fail THEN 'FAIL' ELSE ri.condition END,
+                qc_required    = CASE WHEN :fail THEN TRUE ELSE ri.qc_required END,
+                reason_code    = CASE WHEN :fail THEN COALESCE(NULLIF(CAST(:reasonCode AS VARCHAR), ''), ri.reason_code)
+                                      ELSE ri.reason_code END,
+                attachment_url = CASE WHEN :fail THEN COALESCE(NULLIF(CAST(:attachmentUrl AS TEXT), ''), ri.attachment_url)
+                                      ELSE ri.attachment_url END
+            FROM receiving_orders ro
+            WHERE ro.receiving_id = ri.receiving_id
+              AND ri.receiving_id = :receivingId
+              AND ri.sku_id = :skuId
+              AND UPPER(COALESCE(ro.status, 'DRAFT')) NOT IN ('POSTED', 'PUTAWAY_DONE', 'CANCELLED', 'REJECTED')
+            """;
+
+    @Modifying
+    @Transactional
+    @Query(value = ADD_SCANNED_QTY_SQL, nativeQuery = true)
+    int addScannedQty(@Param("receivingId") Long receivingId,
+                      @Param("skuId") Long skuId,
+                      @Param("qty") BigDecimal qty,
+                      @Param("fail") boolean fail,
+                      @Param("reasonCode") String reasonCode,
+                      @Param("attachmentUrl") String attachmentUrl);
 }
@@ -2,11 +2,13 @@ package org.example.sep26management.infrastructure.persistence.repository;
 
 import org.example.sep26management.infrastructure.persistence.entity.ReservationEntity;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.math.BigDecimal;
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -28,6 +30,33 @@ public interface ReservationJpaRepository extends JpaRepository<ReservationEntit
     List<ReservationEntity> findByReferenceTableAndReferenceIdAndStatus(
             String referenceTable, Long referenceId, String status);
 
+    /** Wave allocation — OPEN reservation của nhiều chứng từ cùng loại */
+    List<ReservationEntity> findByReferenceTableAndReferenceIdInAndStatus(
+            String referenceTable, Collection<Long> referenceIds, String status);
+
+    /** Idempotency guard — huỷ toàn bộ OPEN reservation của chứng từ trong 1 statement */
+    @Modifying
+    @Query("""
+            UPDATE ReservationEntity r SET r.status = 'CANCELLED'
+            WHERE r.referenceTable = :referenceTable
+              AND r.referenceId    = :referenceId
+              AND r.status         = 'OPEN'
+            """)
+    int cancelOpenByReference(
+            @Param("referenceTable") String referenceTable,
+            @Param("referenceId") Long referenceId);
+
+    @Modifying
+    @Query("""
+            UPDATE ReservationEntity r SET r.status = 'CANCELLED'
+            WHERE r.referenceTable = :referenceTable
+              AND r.referenceId IN :referenceIds
+              AND r.status         = 'OPEN'
+            """)
+    int cancelOpenByReferenceIds(
+            @Param("referenceTable") String referenceTable,
+            @Param("referenceIds") Collection<Long> referenceIds);
+
     /**
      * Dùng khi close reservation của Internal Transfer tại confirmPicked.
      * Tìm OPEN reservation theo warehouse + sku + location (không cần reference_id).
@@ -20,18 +20,21 @@ public interface ReservationQueryRepository extends JpaRepository<ReservationEnt
      * FIX: loại trừ staging locations (is_staging=true) — pick list chỉ lấy từ bin thực,
      * không lấy từ Z-OUT/staging mà hàng chưa được putaway.
      * Returns the location_id with the most available qty (for pick routing — FEFO + most qty first).
+     * Available trừ cả reserved delta chưa gộp (inventory_reserved_pending — delta mode).
      */
     @Query(value = """
             SELECT s.location_id
             FROM inventory_snapshot s
             JOIN locations l ON l.location_id = s.location_id
+            LEFT JOIN inventory_reserved_pending p
+                   ON p.location_id = s.location_id AND p.sku_id = s.sku_id AND p.lot_id_safe = s.lot_id_safe
             WHERE s.warehouse_id = :warehouseId
               AND s.sku_id       = :skuId
               AND (:lotId IS NULL OR s.lot_id = :lotId)
-              AND (s.quantity - COALESCE(s.reserved_qty, 0)) > 0
+              AND (s.quantity - COALESCE(s.reserved_qty, 0) - COALESCE(p.qty, 0)) > 0
               AND l.is_staging   = false
               AND l.active       = true
-            ORDER BY (s.quantity - COALESCE(s.reserved_qty, 0)) DESC
+            ORDER BY (s.quantity - COALESCE(s.reserved_qty, 0) - COALESCE(p.qty, 0)) DESC
             LIMIT 50
             """, nativeQuery = true)
     List<Long> findLocationForReservationList(
@@ -5,10 +5,12 @@ import org.example.sep26management.infrastructure.persistence.entity.SalesOrderI
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface SalesOrderItemJpaRepository extends JpaRepository<SalesOrderItemEntity, Long> {
     List<SalesOrderItemEntity> findBySoId(Long soId);
+    List<SalesOrderItemEntity> findBySoIdIn(Collection<Long> soIds);
     void deleteBySoId(Long soId);
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -30,8 +31,16 @@ public interface SkuJpaRepository extends JpaRepository<SkuEntity, Long> {
     @Query("SELECT s FROM SkuEntity s LEFT JOIN FETCH s.category WHERE s.skuCode = :skuCode AND s.active = true AND s.deletedAt IS NULL")
     Optional<SkuEntity> findActiveBySkuCodeWithCategory(@Param("skuCode") String skuCode);
 
+    /** Scan batch: mọi SKU active khớp barcode hoặc skuCode trong danh sách, 1 query. */
+    @Query("SELECT s FROM SkuEntity s LEFT JOIN FETCH s.category WHERE (s.barcode IN :codes OR s.skuCode IN :codes) AND s.active = true AND s.deletedAt IS NULL")
+    List<SkuEntity> findActiveByBarcodeOrSkuCodeInWithCategory(@Param("codes") Collection<String> codes);
+
     @Query("SELECT s FROM SkuEntity s LEFT JOIN FETCH s.category WHERE s.skuId = :skuId")
     Optional<SkuEntity> findByIdWithCategory(@Param("skuId") Long skuId);
+
+    /** Batch version của findByIdWithCategory — dùng cho putaway planner (1 query cho cả task). */
+    @Query("SELECT s FROM SkuEntity s LEFT JOIN FETCH s.category WHERE s.skuId IN :skuIds")
+    List<SkuEntity> findAllByIdWithCategory(@Param("skuIds") Collection<Long> skuIds);
     /**
      * UC-B06: Search SKU
      * BR-SKU-06: partial matching (ILIKE), searches across skuCode AND skuName simultaneously
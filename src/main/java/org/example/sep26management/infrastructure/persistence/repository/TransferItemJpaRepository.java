@@ -4,11 +4,13 @@ import org.example.sep26management.infrastructure.persistence.entity.TransferIte
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface TransferItemJpaRepository extends JpaRepository<TransferItemEntity, Long> {
     List<TransferItemEntity> findByTransferId(Long transferId);
+    List<TransferItemEntity> findByTransferIdIn(Collection<Long> transferIds);
     void deleteByTransferId(Long transferId);
 }
 
@@ -6,6 +6,8 @@ import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -13,6 +15,9 @@ public interface ZoneJpaRepository extends JpaRepository<ZoneEntity, Long> {
 
     Page<ZoneEntity> findByWarehouseId(Long warehouseId, Pageable pageable);
 
+    /** Mọi zone của warehouse — cache zone putaway (PutawayZoneCacheService) load 1 lần. */
+    List<ZoneEntity> findByWarehouseId(Long warehouseId);
+
     Page<ZoneEntity> findByWarehouseIdAndActiveTrue(Long warehouseId, Pageable pageable);
 
     /**
@@ -21,5 +26,7 @@ public interface ZoneJpaRepository extends JpaRepository<ZoneEntity, Long> {
      */
     Optional<ZoneEntity> findByWarehouseIdAndZoneCode(Long warehouseId, String zoneCode);
 
+    List<ZoneEntity> findByWarehouseIdAndZoneCodeIn(Long warehouseId, Collection<String> zoneCodes);
+
     boolean existsByWarehouseIdAndZoneCode(Long warehouseId, String zoneCode);
 }
\ No newline at end of file
@@ -0,0 +1,104 @@
+package org.example.sep26management.presentation.controller;
+
+import io.swagger.v3.oas.annotations.Operation;
+import io.swagger.v3.oas.annotations.tags.Tag;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.example.sep26management.application.constants.MessageConstants;
+import org.example.sep26management.application.dto.response.ApiResponse;
+import org.example.sep26management.application.dto.response.LedgerReplayResponse;
+import org.example.sep26management.application.dto.response.MovementSummaryResponse;
+import org.example.sep26management.application.enums.LedgerReplayMode;
+import org.example.sep26management.application.service.InventoryCheckpointService;
+import org.example.sep26management.application.service.InventoryMovementReportService;
+import org.example.sep26management.application.service.LedgerReplayService;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.access.prepost.PreAuthorize;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * InventoryLedgerController — đối soát inventory_snapshot với ledger (inventory_transactions)
+ *
+ * POST /v1/inventory/ledger/replay?mode=DIFF — Dựng lại snapshot, báo cáo dòng lệch
+ * POST /v1/inventory/ledger/replay?mode=SWAP — Dựng lại và áp vào inventory_snapshot
+ * (ADMIN, MANAGER)
+ * GET /v1/inventory/ledger/movements — Tổng nhập / xuất theo SKU, txn_type (đọc bảng rollup)
+ * GET /v1/inventory/ledger/stock-as-of — Tồn kho tại 1 thời điểm quá khứ (stream JSON)
+ * POST /v1/inventory/ledger/checkpoints — Tạo lại checkpoint EOD cho 1 ngày (ADMIN)
+ */
+@RestController
+@RequestMapping("/v1/inventory/ledger")
+@RequiredArgsConstructor
+@Slf4j
+@Tag(name = "Inventory Ledger", description = "Replay inventory_transactions để dựng lại inventory_snapshot. "
+        + "DIFF chỉ báo cáo chênh lệch; SWAP áp quantity dựng lại vào snapshot (giữ nguyên reserved_qty).")
+public class InventoryLedgerController {
+
+    private final LedgerReplayService ledgerReplayService;
+    private final InventoryMovementReportService movementReportService;
+    private final InventoryCheckpointService checkpointService;
+
+    @PostMapping("/replay")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER')")
+    @Operation(summary = "Replay ledger → snapshot", description = "Đọc toàn bộ inventory_transactions song song theo (warehouse, SKU), "
+            + "dựng lại quantity vào shadow table inventory_snapshot_replay.\n\n"
+            + "- `mode=DIFF` (mặc định): chỉ trả về số dòng lệch và mẫu các dòng lệch lớn nhất.\n"
+            + "- `mode=SWAP`: khoá ghi inventory_snapshot và áp kết quả trong 1 transaction.")
+    public ResponseEntity<ApiResponse<LedgerReplayResponse>> replay(
+            @RequestParam(defaultValue = "DIFF") LedgerReplayMode mode) {
+
+        LedgerReplayResponse result = ledgerReplayService.replay(mode);
+        return ResponseEntity.ok(ApiResponse.success(MessageConstants.LEDGER_REPLAY_DONE, result));
+    }
+
+    @GetMapping("/movements")
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','ACCOUNTANT')")
+    @Operation(summary = "Tổng hợp nhập / xuất theo khoảng ngày", description = "Tổng qty dương / âm và số giao dịch theo (SKU, txn_type). "
+            + "Ngày đã đóng đọc bảng rollup inventory_txn_daily_rollup, chỉ ngày chưa rollup mới đọc ledger.\n\n"
+            + "- `fromDate`, `toDate`: yyyy-MM-dd, bao gồm cả 2 đầu.\n"
+            + "- `skuId` (tuỳ chọn): lọc 1 SKU.")
+    public ResponseEntity<ApiResponse<MovementSummaryResponse>> getMovements(
+            @RequestParam Long warehouseId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate fromDate,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate toDate,
+            @RequestParam(required = false) Long skuId) {
+
+        MovementSummaryResponse result = movementReportService.getMovementSummary(warehouseId, fromDate, toDate, skuId);
+        return ResponseEntity.ok(ApiResponse.success(MessageConstants.LEDGER_MOVEMENTS_LOADED, result));
+    }
+
+    @GetMapping(value = "/stock-as-of", produces = MediaType.APPLICATION_JSON_VALUE)
+    @PreAuthorize("hasAnyRole('ADMIN','MANAGER','ACCOUNTANT')")
+    @Operation(summary = "Tồn kho tại thời điểm quá khứ", description = "Dựng tồn theo (SKU, lot, location) tại `asOf` từ checkpoint EOD gần nhất "
+            + "cộng các giao dịch sau checkpoint. Kết quả stream dần (không bọc ApiResponse).\n\n"
+            + "- `asOf`: yyyy-MM-dd'T'HH:mm:ss.\n"
+            + "- `zoneId`, `skuId` (tuỳ chọn): lọc theo zone / SKU.")
+    public ResponseEntity<StreamingResponseBody> getStockAsOf(
+            @RequestParam Long warehouseId,
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime asOf,
+            @RequestParam(required = false) Long zoneId,
+            @RequestParam(required = false) Long skuId) {
+
+        InventoryCheckpointService.AsOfQuery query = checkpointService.prepareAsOf(warehouseId, asOf, zoneId, skuId);
+        StreamingResponseBody body = out -> checkpointService.writeAsOf(query, out);
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(body);
+    }
+
+    @PostMapping("/checkpoints")
+    @PreAuthorize("hasRole('ADMIN')")
+    @Operation(summary = "Tạo lại checkpoint EOD", description = "Chụp inventory_snapshot hiện tại làm checkpoint cho `date` (ghi đè nếu đã có). "
+            + "`date` không được ở tương lai hoặc cũ hơn checkpoint mới nhất (không ghi đè lịch sử). "
+            + "Job tự động chạy 00:05 hằng ngày cho ngày hôm trước.")
+    public ResponseEntity<ApiResponse<Long>> createCheckpoint(
+            @RequestParam @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate date) {
+
+        long rows = checkpointService.createCheckpoint(date);
+        return ResponseEntity.ok(ApiResponse.success(MessageConstants.LEDGER_CHECKPOINT_CREATED, rows));
+    }
+}
@@ -42,6 +42,7 @@ import java.util.Map;
  * SCRUM-509 GET    /v1/outbound
  *           GET    /v1/outbound/summary
  * SCRUM-510 POST   /v1/outbound/allocate
+ *           POST   /v1/outbound/allocate/wave
  * SCRUM-511 POST   /v1/outbound/pick-list
  *           GET    /v1/outbound/pick-list/{taskId}
  * NEW       POST   /v1/outbound/pick-list/{taskId}/start-qc
@@ -61,6 +62,7 @@ public class OutboundController {
     private final OutboundService outboundService;
     private final OutboundListService outboundListService;
     private final AllocateStockService allocateStockService;
+    private final WaveAllocationService waveAllocationService;
     private final PickListService pickListService;
     private final OutboundQcService outboundQcService;
     private final ReceivingSessionService receivingSessionService;
@@ -251,6 +253,19 @@ public class OutboundController {
                 request, getUserId(), getIp(http), ua(http)));
     }
 
+    @PostMapping("/allocate/wave")
+    @PreAuthorize("hasAnyRole('KEEPER','MANAGER')")
+    @Operation(summary = "Phân bổ theo wave (nhiều đơn cùng lúc, FEFO)",
+            description = "Phân bổ nhiều SO (APPROVED / WAITING_STOCK) và Internal Transfer (APPROVED) trong 1 lần.\n\n"
+                    + "- Thứ tự ưu tiên: ngày giao yêu cầu, rồi ngày tạo.\n"
+                    + "- Trả về kết quả + thiếu hàng theo từng đơn; đơn sai trạng thái được bỏ qua (SKIPPED).")
+    public ResponseEntity<ApiResponse<WaveAllocateResponse>> allocateWave(
+            @RequestBody WaveAllocateRequest request,
+            HttpServletRequest http) {
+        return ResponseEntity.ok(waveAllocationService.allocateWave(
+                request, getUserId(), getIp(http), ua(http)));
+    }
+
     @PostMapping("/allocate/report-shortage")
     @PreAuthorize("hasRole('KEEPER')")
     @Operation(summary = "Báo thiếu hàng lên Manager",
@@ -77,12 +77,16 @@ public class ReceivingSessionController {
      * GET /v1/receiving-sessions/{id}/stream — SSE stream for laptop.
      */
     @GetMapping(value = "/{sessionId}/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
-    @Operation(summary = "SSE stream real-time", description = "Laptop subscribe SSE stream. Mỗi lần iPhone scan thành công, server tự động đẩy data snapshot mới về Web. \n\n"
+    @Operation(summary = "SSE stream real-time", description = "Laptop subscribe SSE stream. Kết nối mới nhận 1 event `snapshot` (toàn bộ session); "
+            + "sau đó mỗi lần iPhone scan / xoá dòng, server đẩy event `delta` chỉ chứa dòng vừa đổi (`line` mang qty tuyệt đối, `removed=true` khi dòng bị bỏ). \n\n"
             + "**Data yêu cầu:** \n"
             + "- `@PathVariable sessionId`: Chuỗi UUID, lấy từ bước Khởi tạo phiên.\n"
-            + "👉 Web truyền vào URL EventSource để kết nối stream liên tục.")
-    public SseEmitter stream(@PathVariable String sessionId) {
-        return receivingSessionService.stream(sessionId);
+            + "- Header `Last-Event-ID` (tuỳ chọn): EventSource tự gửi khi reconnect = `id` (seq) của event cuối đã nhận. "
+            + "Server chỉ gửi các delta bị lỡ; lỡ quá nhiều (ngoài ring buffer) → gửi lại `snapshot`.\n"
+            + "👉 Web truyền vào URL EventSource để kết nối stream liên tục; `snapshot` thay toàn bộ state, `delta` thay / xoá dòng theo (skuId, condition).")
+    public SseEmitter stream(@PathVariable String sessionId,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId) {
+        return receivingSessionService.stream(sessionId, lastEventId);
     }
 
     /**
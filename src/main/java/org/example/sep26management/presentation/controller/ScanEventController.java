@@ -5,6 +5,7 @@ import io.swagger.v3.oas.annotations.tags.Tag;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.example.sep26management.application.dto.request.ScanBatchRequest;
 import org.example.sep26management.application.dto.request.ScanEventRequest;
 import org.example.sep26management.application.dto.response.ApiResponse;
 import org.example.sep26management.application.service.ScanEventService;
@@ -31,6 +32,7 @@ public class ScanEventController {
             + "**Data yêu cầu:** \n"
             + "- **Header:** `Authorization: Bearer <scanToken>` (Token này **LẤY TỪ** API `POST /v1/receiving-sessions/{sessionId}/scan-token`).\n"
             + "- `Body.barcode`: Chuỗi mã vạch quét được trên sản phẩm.\n"
+            + "- `Body.clientScanId`: (Khuyến nghị) ID duy nhất cho lần quét do thiết bị sinh. Retry với cùng ID → trả lại kết quả lần đầu, không cộng trùng — thiết bị có thể gửi liên tiếp không cần chờ phản hồi.\n"
             + "- `Body.condition`: Tình trạng hàng, chọn `PASS` (Đạt) hoặc `FAIL` (Lỗi).\n"
             + "  - *Lưu ý:* Nếu chọn `FAIL`, **BẮT BUỘC** truyền thêm `Body.reasonCode` (Ví dụ: `LEAK`, `TORN_PACKAGING`). Server sẽ lưu lại và tự động đẩy lô hàng này sang luồng kiểm tra chất lượng (QC).")
     public ApiResponse<Map<String, Object>> scan(
@@ -41,6 +43,25 @@ public class ScanEventController {
         return scanEventService.processScan(scanToken, request);
     }
 
+    /**
+     * POST /v1/scan-events/batch
+     * Scans buffered by the device while offline, sent in one request.
+     */
+    @PostMapping("/batch")
+    @Operation(summary = "Gửi nhiều sự kiện quét (offline buffer)", description = "Thiết bị mất sóng lưu các lần quét rồi gửi 1 lần khi có mạng.\n\n"
+            + "**Data yêu cầu:** \n"
+            + "- **Header:** `Authorization: Bearer <scanToken>` (như API quét lẻ).\n"
+            + "- `Body.events[]`: Các lần quét theo thứ tự (tối đa 500): `barcode`, `qty`, `condition`, `reasonCode`, `attachmentUrl`, `clientScanId`, `capturedAt`.\n"
+            + "- `Body.receivingId`: (Optional) Phiếu nhập cần cộng receivedQty.\n\n"
+            + "Kết quả từng event trong `results[]`: `APPLIED`, `DUPLICATE` (clientScanId đã xử lý), `INVALID`, `SKU_NOT_FOUND`.")
+    public ApiResponse<Map<String, Object>> scanBatch(
+            @Valid @RequestBody ScanBatchRequest request,
+            HttpServletRequest httpRequest) {
+
+        String scanToken = extractToken(httpRequest);
+        return scanEventService.processBatch(scanToken, request);
+    }
+
     /**
      * DELETE /v1/scan-events
      * Remove or decrement a specific scan line item (e.g. Keeper scanned wrong item).
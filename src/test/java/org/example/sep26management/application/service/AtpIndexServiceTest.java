@@ -0,0 +1,115 @@
+package org.example.sep26management.application.service;
+
+import org.example.sep26management.infrastructure.persistence.repository.InventorySnapshotJpaRepository;
+import org.example.sep26management.infrastructure.persistence.repository.InventorySnapshotJpaRepository.Availability;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.redis.connection.DefaultMessage;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Index ATP là per-node: ghi ở node này phải được broadcast để node khác refresh key đó ngay,
+ * không đợi reconcile.
+ */
+class AtpIndexServiceTest {
+
+    private InventorySnapshotJpaRepository snapshotRepository;
+    private StringRedisTemplate redisTemplate;
+    private final List<Runnable> queued = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        snapshotRepository = mock(InventorySnapshotJpaRepository.class);
+        redisTemplate = mock(StringRedisTemplate.class);
+        when(snapshotRepository.sumQuantityAndReservedGroupedByWarehouseAndSku()).thenReturn(List.of());
+    }
+
+    @Test
+    void touchBroadcastsKeyToOtherNodes() {
+        AtpIndexService node = node();
+
+        node.touch(1L, 100L);
+
+        ArgumentCaptor<String> body = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(eq(AtpIndexService.TOUCHED_CHANNEL), body.capture());
+        assertEquals("K:1:100", body.getValue().split("\n")[1]);
+    }
+
+    @Test
+    void otherNodeServesFreshLevelAfterMessage() {
+        stock(BigDecimal.TEN);
+        AtpIndexService writer = node();
+        AtpIndexService reader = node();
+        assertEquals(BigDecimal.TEN, reader.getAvailableQty(1L, 100L));
+
+        // writer giảm tồn rồi touch → tin tới reader
+        stock(BigDecimal.valueOf(4));
+        writer.touch(1L, 100L);
+        ArgumentCaptor<String> body = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(eq(AtpIndexService.TOUCHED_CHANNEL), body.capture());
+
+        reader.onMessage(message(body.getValue()), null);
+        // in-flight tới khi refresh xong → đọc DB
+        assertEquals(BigDecimal.valueOf(4), reader.getAvailableQty(1L, 100L));
+        runQueued();
+        verify(snapshotRepository, atLeastOnce()).findAvailabilityBySkuIds(1L, List.of(100L));
+        assertEquals(BigDecimal.valueOf(4), reader.getAvailableQty(1L, 100L));
+    }
+
+    @Test
+    void ownMessageIsIgnored() {
+        AtpIndexService node = node();
+        node.touch(1L, 100L);
+        runQueued();
+        ArgumentCaptor<String> body = ArgumentCaptor.forClass(String.class);
+        verify(redisTemplate).convertAndSend(eq(AtpIndexService.TOUCHED_CHANNEL), body.capture());
+        clearInvocations(snapshotRepository);
+
+        node.onMessage(message(body.getValue()), null);
+
+        assertEquals(0, queued.size());
+        verifyNoInteractions(snapshotRepository);
+    }
+
+    // ─── Helpers ────────────────────────────────────────────────────────────────
+
+    /** Node đã load index (reconcile) — refresh nền xếp hàng, chạy bằng runQueued(). */
+    private AtpIndexService node() {
+        AtpIndexService service = new AtpIndexService(snapshotRepository, redisTemplate, queued::add);
+        ReflectionTestUtils.setField(service, "enabled", true);
+        service.reconcile();
+        return service;
+    }
+
+    private void stock(BigDecimal total) {
+        when(snapshotRepository.sumQuantityByWarehouseAndSku(1L, 100L)).thenReturn(total);
+        when(snapshotRepository.sumReservedByWarehouseAndSku(1L, 100L)).thenReturn(BigDecimal.ZERO);
+        when(snapshotRepository.findAvailabilityBySkuIds(anyLong(), anyCollection()))
+                .thenReturn(Map.of(100L, new Availability(total, BigDecimal.ZERO)));
+        when(snapshotRepository.sumQuantityAndReservedGroupedByWarehouseAndSku())
+                .thenReturn(List.<Object[]>of(new Object[]{1L, 100L, total, BigDecimal.ZERO}));
+    }
+
+    private void runQueued() {
+        List<Runnable> tasks = new ArrayList<>(queued);
+        queued.clear();
+        tasks.forEach(Runnable::run);
+    }
+
+    private static DefaultMessage message(String body) {
+        return new DefaultMessage(AtpIndexService.TOUCHED_CHANNEL.getBytes(StandardCharsets.UTF_8),
+                body.getBytes(StandardCharsets.UTF_8));
+    }
+}
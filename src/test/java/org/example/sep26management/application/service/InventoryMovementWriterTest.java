@@ -0,0 +1,102 @@
+package org.example.sep26management.application.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Movement giảm tồn không lot được chia theo lot FEFO tại location: nhiều lần trừ trong cùng batch
+ * dùng qty còn lại của lot, không đẩy lot đầu xuống âm; vượt tồn → phần dư ghi không lot.
+ */
+class InventoryMovementWriterTest {
+
+    private static final long WH = 1L, SKU = 2L, LOC = 3L;
+
+    private JdbcTemplate jdbcTemplate;
+    private InventoryMovementWriter writer;
+    /** Tồn tại (WH, SKU, LOC) theo thứ tự FEFO: {lotId, qty}. */
+    private List<Object[]> fefoLots;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        writer = new InventoryMovementWriter(jdbcTemplate, mock(AtpIndexService.class),
+                mock(BinCapacityIndexService.class));
+        fefoLots = new ArrayList<>();
+        doAnswer(inv -> {
+            RowCallbackHandler handler = inv.getArgument(1);
+            for (Object[] lot : fefoLots) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getLong("warehouse_id")).thenReturn(WH);
+                when(rs.getLong("sku_id")).thenReturn(SKU);
+                when(rs.getLong("location_id")).thenReturn(LOC);
+                when(rs.getObject("lot_id", Long.class)).thenReturn((Long) lot[0]);
+                when(rs.getBigDecimal("quantity")).thenReturn((BigDecimal) lot[1]);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbcTemplate).query(any(PreparedStatementCreator.class), any(RowCallbackHandler.class));
+    }
+
+    @Test
+    void decrementsSplitAcrossLotsInFefoOrder() {
+        fefoLots.add(new Object[]{11L, new BigDecimal("5")});
+        fefoLots.add(new Object[]{12L, new BigDecimal("10")});
+
+        writer.flush(writer.batch().add(pick(-7)).add(pick(-5)));
+
+        assertEquals(List.of("11:-5", "12:-2", "12:-5"), ledger());
+    }
+
+    @Test
+    void movementWithLotEarlierInBatchConsumesThatLot() {
+        fefoLots.add(new Object[]{11L, new BigDecimal("5")});
+        fefoLots.add(new Object[]{12L, new BigDecimal("10")});
+
+        writer.flush(writer.batch()
+                .add(pick(-4).toBuilder().lotId(11L).build())
+                .add(pick(-3)));
+
+        assertEquals(List.of("11:-4", "11:-1", "12:-2"), ledger());
+    }
+
+    @Test
+    void decrementBeyondStockKeepsRemainderWithoutLot() {
+        fefoLots.add(new Object[]{11L, new BigDecimal("2")});
+        fefoLots.add(new Object[]{12L, BigDecimal.ZERO});
+
+        writer.flush(writer.batch().add(pick(-5)));
+
+        assertEquals(List.of("11:-2", "null:-3"), ledger());
+    }
+
+    // ─── Helpers ────────────────────────────────────────────────────────────────
+
+    private static InventoryMovementWriter.Movement pick(int qty) {
+        return InventoryMovementWriter.Movement.builder()
+                .warehouseId(WH).skuId(SKU).locationId(LOC)
+                .quantity(BigDecimal.valueOf(qty))
+                .txnType("PICK")
+                .build();
+    }
+
+    /** lot:qty của các dòng inventory_transactions đã ghi, theo thứ tự. */
+    @SuppressWarnings("unchecked")
+    private List<String> ledger() {
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate).batchUpdate(contains("INSERT INTO inventory_transactions"), rows.capture());
+        return rows.getValue().stream().map(r -> r[2] + ":" + ((BigDecimal) r[4]).toPlainString()).toList();
+    }
+}
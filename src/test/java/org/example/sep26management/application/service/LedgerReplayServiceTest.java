@@ -0,0 +1,158 @@
+package org.example.sep26management.application.service;
+
+import org.example.sep26management.application.dto.response.LedgerReplayResponse;
+import org.example.sep26management.application.enums.LedgerReplayMode;
+import org.example.sep26management.infrastructure.exception.BusinessException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementCreator;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.sql.Array;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Replay / SWAP khi txn có id ≤ high-water commit trễ: partition không thấy id đó trong snapshot
+ * của mình → SWAP phải fold-in lại id đó (kèm partition đã bỏ sót) sau khi LOCK snapshot.
+ */
+class LedgerReplayServiceTest {
+
+    private static final String MAX_TXN_SQL = "SELECT COALESCE(MAX(txn_id), 0) FROM inventory_transactions";
+
+    private JdbcTemplate jdbcTemplate;
+    private Connection lockConnection;
+    private LedgerReplayService service;
+
+    @BeforeEach
+    void setUp() throws SQLException {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        PlatformTransactionManager transactionManager = mock(PlatformTransactionManager.class);
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+
+        lockConnection = mock(Connection.class);
+        lockResult(true);
+        when(jdbcTemplate.execute(any(ConnectionCallback.class))).thenAnswer(inv ->
+                inv.<ConnectionCallback<?>>getArgument(0).doInConnection(lockConnection));
+        when(jdbcTemplate.queryForObject(anyString(), eq(Long.class))).thenReturn(0L);
+        when(jdbcTemplate.queryForObject(anyString(), any(RowMapper.class)))
+                .thenAnswer(inv -> LedgerReplayResponse.builder().build());
+
+        service = new LedgerReplayService(jdbcTemplate, transactionManager, mock(AtpIndexService.class));
+        ReflectionTestUtils.setField(service, "parallelism", 2);
+        ReflectionTestUtils.setField(service, "fetchSize", 100);
+        ReflectionTestUtils.setField(service, "insertBatchSize", 100);
+        ReflectionTestUtils.setField(service, "diffSampleSize", 10);
+        ReflectionTestUtils.setField(service, "overlapTxns", 1000);
+    }
+
+    @Test
+    void swapFoldsInTxnThatCommittedAfterPartitionScan() throws SQLException {
+        // txn 7 (≤ high-water 10) chưa commit khi cả 2 partition đọc, commit trước LOCK
+        when(jdbcTemplate.queryForObject(MAX_TXN_SQL, Long.class)).thenReturn(10L, 10L);
+        missedTxnIds(7L);
+
+        service.replay(LedgerReplayMode.SWAP);
+
+        InOrder order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).execute("LOCK TABLE inventory_snapshot IN EXCLUSIVE MODE");
+        Map<String, Object[]> arrays = new HashMap<>();
+        PreparedStatement ps = runFoldIn(order, arrays);
+        verify(ps).setLong(1, 10L);
+        verify(ps).setLong(2, 10L);
+        verify(ps).setInt(5, 2);
+        // mỗi partition báo id 7 kèm số partition của nó; SQL chỉ giữ cặp khớp MOD(warehouse, sku)
+        assertEquals(List.of(7L, 7L), List.of(arrays.get("bigint")));
+        assertEquals(List.of(0, 1), List.of(arrays.get("int4")));
+    }
+
+    @Test
+    void foldInCoversTxnsAfterHighWater() throws SQLException {
+        when(jdbcTemplate.queryForObject(MAX_TXN_SQL, Long.class)).thenReturn(10L, 12L);
+        missedTxnIds();
+
+        LedgerReplayResponse response = service.replay(LedgerReplayMode.SWAP);
+
+        Map<String, Object[]> arrays = new HashMap<>();
+        PreparedStatement ps = runFoldIn(inOrder(jdbcTemplate), arrays);
+        verify(ps).setLong(1, 10L);
+        verify(ps).setLong(2, 12L);
+        assertEquals(0, arrays.get("bigint").length);
+        assertTrue(response.isApplied());
+    }
+
+    @Test
+    void nothingToFoldInWhenEveryTxnWasVisible() {
+        when(jdbcTemplate.queryForObject(MAX_TXN_SQL, Long.class)).thenReturn(10L, 10L);
+        missedTxnIds();
+
+        service.replay(LedgerReplayMode.DIFF);
+
+        verify(jdbcTemplate, never()).update(any(PreparedStatementCreator.class));
+        verify(jdbcTemplate, never()).execute("LOCK TABLE inventory_snapshot IN EXCLUSIVE MODE");
+    }
+
+    @Test
+    void rejectsReplayWhileAnotherNodeHoldsTheLock() throws SQLException {
+        lockResult(false);
+
+        assertThrows(BusinessException.class, () -> service.replay(LedgerReplayMode.DIFF));
+        verify(jdbcTemplate, never()).execute("TRUNCATE inventory_snapshot_replay");
+    }
+
+    // ─── Helpers ────────────────────────────────────────────────────────────────
+
+    private void lockResult(boolean acquired) throws SQLException {
+        PreparedStatement ps = mock(PreparedStatement.class);
+        ResultSet rs = mock(ResultSet.class);
+        when(lockConnection.prepareStatement(anyString())).thenReturn(ps);
+        when(ps.executeQuery()).thenReturn(rs);
+        when(rs.next()).thenReturn(true);
+        when(rs.getBoolean(1)).thenReturn(acquired);
+    }
+
+    /** Id mỗi partition không thấy trong snapshot của nó. */
+    private void missedTxnIds(Long... ids) {
+        Array array = mock(Array.class);
+        try {
+            when(array.getArray()).thenReturn(ids);
+        } catch (SQLException e) {
+            throw new IllegalStateException(e);
+        }
+        when(jdbcTemplate.queryForObject(anyString(), eq(Array.class), any(Object[].class))).thenReturn(array);
+    }
+
+    /** Chạy PreparedStatementCreator của fold-in trên connection giả, gom các mảng theo kiểu SQL. */
+    private PreparedStatement runFoldIn(InOrder order, Map<String, Object[]> arrays) throws SQLException {
+        ArgumentCaptor<PreparedStatementCreator> creator = ArgumentCaptor.forClass(PreparedStatementCreator.class);
+        order.verify(jdbcTemplate).update(creator.capture());
+
+        Connection con = mock(Connection.class);
+        PreparedStatement ps = mock(PreparedStatement.class);
+        when(con.prepareStatement(anyString())).thenReturn(ps);
+        when(con.createArrayOf(anyString(), any(Object[].class))).thenAnswer(inv -> {
+            arrays.put(inv.getArgument(0), inv.getArgument(1));
+            return mock(Array.class);
+        });
+        creator.getValue().createPreparedStatement(con);
+        return ps;
+    }
+}
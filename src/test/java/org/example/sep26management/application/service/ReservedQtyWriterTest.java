@@ -0,0 +1,70 @@
+package org.example.sep26management.application.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Gộp delta (delta mode): chỉ xoá delta có dòng snapshot để cộng vào; delta không khớp nằm lại
+ * và được đếm vào unmatchedDeltas.
+ */
+class ReservedQtyWriterTest {
+
+    private static final int BATCH = 500;
+
+    private JdbcTemplate jdbcTemplate;
+    private ReservedQtyWriter writer;
+
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate = mock(JdbcTemplate.class);
+        writer = new ReservedQtyWriter(jdbcTemplate, mock(BinCapacityIndexService.class));
+        ReflectionTestUtils.setField(writer, "deltaMode", true);
+        ReflectionTestUtils.setField(writer, "mergeBatchSize", BATCH);
+        when(jdbcTemplate.queryForObject(contains("SELECT EXISTS"), eq(Boolean.class))).thenReturn(true);
+    }
+
+    @Test
+    void mergeDeletesOnlyDeltasWithSnapshotRow() {
+        when(jdbcTemplate.update(anyString(), eq(BATCH))).thenReturn(3, 0);
+        when(jdbcTemplate.queryForObject(contains("NOT EXISTS"), eq(Long.class))).thenReturn(0L);
+
+        writer.mergePendingDeltas();
+
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        verify(jdbcTemplate, times(2)).update(sql.capture(), eq(BATCH));
+        String merge = sql.getValue();
+        int delete = merge.indexOf("DELETE FROM inventory_reservation_deltas");
+        int exists = merge.indexOf("WHERE EXISTS");
+        assertTrue(delete >= 0 && exists > delete && exists < merge.indexOf("RETURNING"),
+                "DELETE phải lọc delta không có dòng snapshot");
+    }
+
+    @Test
+    void unmatchedDeltasAreCountedNotDropped() {
+        when(jdbcTemplate.update(anyString(), eq(BATCH))).thenReturn(0);
+        when(jdbcTemplate.queryForObject(contains("NOT EXISTS"), eq(Long.class))).thenReturn(4L, 1L);
+
+        writer.mergePendingDeltas();
+        assertEquals(4, writer.getUnmatchedDeltas());
+
+        writer.mergePendingDeltas();
+        assertEquals(1, writer.getUnmatchedDeltas());
+    }
+
+    @Test
+    void inPlaceModeDoesNotMerge() {
+        ReflectionTestUtils.setField(writer, "deltaMode", false);
+
+        writer.mergePendingDeltas();
+
+        verifyNoInteractions(jdbcTemplate);
+    }
+}
@@ -0,0 +1,121 @@
+package org.example.sep26management.application.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.sep26management.application.dto.request.ScanEventRequest;
+import org.example.sep26management.application.service.SkuLookupCacheService.SkuRef;
+import org.example.sep26management.infrastructure.SseEmitterRegistry;
+import org.example.sep26management.infrastructure.persistence.redis.ScanSessionRedisRepository;
+import org.example.sep26management.infrastructure.persistence.repository.PickingTaskItemJpaRepository;
+import org.example.sep26management.infrastructure.persistence.repository.ReceivingItemJpaRepository;
+import org.example.sep26management.infrastructure.security.JwtTokenProvider;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Scan gửi lại cùng clientScanId (điện thoại retry): không cộng thêm, trả về qty của lần đầu và
+ * không cộng receivedQty lần 2. SCAN_SCRIPT được giả lập trong bộ nhớ (SET NX scanKey + HINCRBYFLOAT).
+ */
+class ScanEventServiceTest {
+
+    private static final String SESSION_ID = "sess-1";
+    private static final long RECEIVING_ID = 7L;
+
+    private final Map<String, BigDecimal> lineQty = new HashMap<>();
+    private final Map<String, String> scanResults = new HashMap<>();
+
+    private ReceivingItemJpaRepository receivingItemRepo;
+    private ScanEventService service;
+
+    @BeforeEach
+    void setUp() {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenAnswer(inv -> scanScript(inv.getArgument(1), args(inv.getArguments())));
+        ScanSessionRedisRepository sessionRedis =
+                new ScanSessionRedisRepository(redisTemplate, new ObjectMapper().findAndRegisterModules());
+        ReflectionTestUtils.setField(sessionRedis, "deltaBufferSize", 200);
+
+        SkuLookupCacheService skuLookupCache = mock(SkuLookupCacheService.class);
+        when(skuLookupCache.resolve("SKU-A")).thenReturn(Optional.of(new SkuRef(1L, "SKU-A", "Sku A", "893")));
+        receivingItemRepo = mock(ReceivingItemJpaRepository.class);
+        when(receivingItemRepo.addScannedQty(anyLong(), anyLong(), any(), anyBoolean(), any(), any())).thenReturn(1);
+
+        service = new ScanEventService(mock(JwtTokenProvider.class), sessionRedis, skuLookupCache,
+                mock(SseEmitterRegistry.class), receivingItemRepo, mock(OutboundQcService.class),
+                mock(PickingTaskItemJpaRepository.class), mock(NamedParameterJdbcTemplate.class));
+    }
+
+    @Test
+    void duplicateClientScanIdReturnsFirstQty() {
+        assertEquals(new BigDecimal("3"), scan("scan-a", 3));
+        assertEquals(new BigDecimal("5"), scan("scan-b", 2));
+
+        // retry scan-a (kể cả với qty khác) → qty trả về lần đầu, tổng không đổi
+        assertEquals(new BigDecimal("3"), scan("scan-a", 3));
+        assertEquals(new BigDecimal("3"), scan("scan-a", 9));
+        assertEquals(new BigDecimal("5"), lineQty.get("1|PASS"));
+
+        verify(receivingItemRepo, times(2)).addScannedQty(eq(RECEIVING_ID), eq(1L), any(), eq(false), any(), any());
+    }
+
+    @Test
+    void scansWithoutClientScanIdAreAlwaysApplied() {
+        scan(null, 2);
+        scan(null, 2);
+
+        assertEquals(new BigDecimal("4"), lineQty.get("1|PASS"));
+        verify(receivingItemRepo, times(2)).addScannedQty(eq(RECEIVING_ID), eq(1L), any(), eq(false), any(), any());
+    }
+
+    // ─── Helpers ────────────────────────────────────────────────────────────────
+
+    private BigDecimal scan(String clientScanId, int qty) {
+        ScanEventRequest request = ScanEventRequest.builder()
+                .sessionId(SESSION_ID)
+                .barcode("SKU-A")
+                .qty(BigDecimal.valueOf(qty))
+                .clientScanId(clientScanId)
+                .receivingId(RECEIVING_ID)
+                .build();
+        return (BigDecimal) service.processScan(null, request).getData().get("newQty");
+    }
+
+    /** Đối số Lua sau keys — Mockito có thể trả varargs dạng mảng hoặc đã trải phẳng. */
+    private static List<String> args(Object[] arguments) {
+        List<String> args = new ArrayList<>();
+        for (int i = 2; i < arguments.length; i++) {
+            if (arguments[i] instanceof Object[] array) {
+                for (Object value : array) args.add(String.valueOf(value));
+            } else {
+                args.add(String.valueOf(arguments[i]));
+            }
+        }
+        return args;
+    }
+
+    /** KEYS: meta, qty, lines, scanKey, seq, deltas. ARGV[1] field, ARGV[2] delta, ARGV[7] scanId. */
+    private List<Object> scanScript(List<String> keys, List<String> argv) {
+        if (!keys.get(0).contains("{" + SESSION_ID + "}")) return List.of(0L);
+        String scanKey = keys.get(3);
+        boolean tracked = !argv.get(6).isEmpty();
+        if (tracked && scanResults.containsKey(scanKey)) return List.of(2L, scanResults.get(scanKey));
+        BigDecimal qty = lineQty.merge(argv.get(0), new BigDecimal(argv.get(1)), BigDecimal::add);
+        if (tracked) scanResults.put(scanKey, qty.toPlainString());
+        return List.of(1L, qty.toPlainString());
+    }
+}
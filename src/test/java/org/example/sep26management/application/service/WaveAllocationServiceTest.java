@@ -0,0 +1,154 @@
+package org.example.sep26management.application.service;
+
+import org.example.sep26management.application.dto.request.WaveAllocateRequest;
+import org.example.sep26management.application.dto.response.WaveAllocateResponse;
+import org.example.sep26management.infrastructure.persistence.entity.ReservationEntity;
+import org.example.sep26management.infrastructure.persistence.entity.SalesOrderEntity;
+import org.example.sep26management.infrastructure.persistence.entity.SalesOrderItemEntity;
+import org.example.sep26management.infrastructure.persistence.repository.*;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Đơn bị giữ lại trong wave (WAITING_STOCK vẫn thiếu / APPROVED hết hàng) không được mất
+ * OPEN reservation đang giữ; chỉ đơn được phân bổ lại mới huỷ reservation cũ.
+ */
+class WaveAllocationServiceTest {
+
+    private static final long WAREHOUSE_ID = 1L;
+    private static final long SKU_ID = 100L;
+
+    private SalesOrderJpaRepository soRepository;
+    private SalesOrderItemJpaRepository soItemRepository;
+    private ReservationJpaRepository reservationRepository;
+    private FefoAllocationEngine fefoAllocationEngine;
+    private ReservedQtyWriter reservedQtyWriter;
+    private WaveAllocationService service;
+
+    private final List<SalesOrderEntity> orders = new ArrayList<>();
+    private final List<SalesOrderItemEntity> items = new ArrayList<>();
+    private final List<ReservationEntity> reservations = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        soRepository = mock(SalesOrderJpaRepository.class);
+        soItemRepository = mock(SalesOrderItemJpaRepository.class);
+        reservationRepository = mock(ReservationJpaRepository.class);
+        fefoAllocationEngine = mock(FefoAllocationEngine.class);
+        reservedQtyWriter = mock(ReservedQtyWriter.class);
+        SkuJpaRepository skuRepository = mock(SkuJpaRepository.class);
+
+        when(soRepository.findAllById(any())).thenReturn(orders);
+        when(soRepository.findById(anyLong())).thenAnswer(inv -> orders.stream()
+                .filter(so -> so.getSoId().equals(inv.getArgument(0))).findFirst());
+        when(soItemRepository.findBySoIdIn(any())).thenReturn(items);
+        when(reservationRepository.findByReferenceTableAndReferenceIdInAndStatus(eq("sales_orders"), any(), eq("OPEN")))
+                .thenAnswer(inv -> {
+                    Collection<Long> ids = inv.getArgument(1);
+                    return reservations.stream().filter(r -> ids.contains(r.getReferenceId())).toList();
+                });
+        when(skuRepository.findAllById(any())).thenReturn(List.of());
+
+        service = new WaveAllocationService(soRepository, soItemRepository, mock(TransferJpaRepository.class),
+                mock(TransferItemJpaRepository.class), reservationRepository, mock(InventorySnapshotJpaRepository.class),
+                skuRepository, mock(AuditLogService.class), mock(AtpIndexService.class),
+                fefoAllocationEngine, reservedQtyWriter);
+    }
+
+    @Test
+    void waitingStockOrderStillShortKeepsItsReservation() {
+        // SO 1 WAITING_STOCK cần 10, đang giữ 4; SO 2 APPROVED cần 3, đang giữ 3; tồn khả dụng 5
+        salesOrder(1L, "WAITING_STOCK", 10, 4, 50L);
+        salesOrder(2L, "APPROVED", 3, 3, 51L);
+        when(fefoAllocationEngine.plan(eq(WAREHOUSE_ID), any()))
+                .thenReturn(List.of(planRow(60L, 5)))
+                .thenReturn(List.of(planRow(51L, 3), planRow(60L, 5)));
+
+        Map<Long, String> status = allocate(1L, 2L);
+
+        assertEquals("WAITING_STOCK", status.get(1L));
+        assertEquals("ALLOCATED", status.get(2L));
+        verify(reservationRepository).cancelOpenByReferenceIds("sales_orders", List.of(2L));
+        verify(reservationRepository, never()).cancelOpenByReferenceIds(eq("sales_orders"),
+                argThat(ids -> ids.contains(1L)));
+        // Lần lập kế hoạch thứ 2 chỉ cho nhu cầu của SO 2, sau khi reservation của SO 2 được trả lại
+        verify(fefoAllocationEngine).plan(WAREHOUSE_ID, Map.of(SKU_ID, BigDecimal.valueOf(13)));
+        verify(fefoAllocationEngine).plan(WAREHOUSE_ID, Map.of(SKU_ID, BigDecimal.valueOf(3)));
+        assertEquals(List.of(BigDecimal.valueOf(-3), BigDecimal.valueOf(3)), reservedDeltas());
+    }
+
+    @Test
+    void zeroStockOrderMovesToWaitingStockWithoutReleasing() {
+        salesOrder(1L, "APPROVED", 10, 4, 50L);
+        when(fefoAllocationEngine.plan(eq(WAREHOUSE_ID), any())).thenReturn(List.of());
+
+        Map<Long, String> status = allocate(1L);
+
+        assertEquals("WAITING_STOCK", status.get(1L));
+        assertEquals("WAITING_STOCK", orders.get(0).getStatus());
+        verify(reservationRepository, never()).cancelOpenByReferenceIds(any(), any());
+        verify(fefoAllocationEngine, times(1)).plan(anyLong(), any());
+        assertEquals(List.of(), reservedDeltas());
+    }
+
+    @Test
+    void planIsReusedWhenNoReservationWasReleased() {
+        salesOrder(1L, "APPROVED", 4, 0, null);
+        salesOrder(2L, "APPROVED", 4, 0, null);
+        when(fefoAllocationEngine.plan(eq(WAREHOUSE_ID), any())).thenReturn(List.of(planRow(60L, 6)));
+
+        Map<Long, String> status = allocate(1L, 2L);
+
+        assertEquals("ALLOCATED", status.get(1L));
+        assertEquals("PARTIALLY_ALLOCATED", status.get(2L));
+        verify(fefoAllocationEngine, times(1)).plan(anyLong(), any());
+        assertEquals(List.of(BigDecimal.valueOf(4), BigDecimal.valueOf(2)), reservedDeltas());
+    }
+
+    // ─── Helpers ────────────────────────────────────────────────────────────────
+
+    private Map<Long, String> allocate(Long... soIds) {
+        WaveAllocateRequest request = WaveAllocateRequest.builder().salesOrderIds(List.of(soIds)).build();
+        return service.allocateWave(request, 1L, "127.0.0.1", "test").getData().getResults().stream()
+                .collect(Collectors.toMap(WaveAllocateResponse.OrderResult::getDocumentId,
+                        WaveAllocateResponse.OrderResult::getStatus));
+    }
+
+    private void salesOrder(long soId, String status, long qty, long heldQty, Long heldLocationId) {
+        orders.add(SalesOrderEntity.builder().soId(soId).soCode("SO-" + soId)
+                .warehouseId(WAREHOUSE_ID).status(status).build());
+        items.add(SalesOrderItemEntity.builder().soId(soId).skuId(SKU_ID).orderedQty(BigDecimal.valueOf(qty)).build());
+        if (heldQty > 0) {
+            reservations.add(ReservationEntity.builder().warehouseId(WAREHOUSE_ID).skuId(SKU_ID)
+                    .locationId(heldLocationId).quantity(BigDecimal.valueOf(heldQty))
+                    .referenceTable("sales_orders").referenceId(soId).build());
+        }
+    }
+
+    private static FefoAllocationEngine.PlanRow planRow(long locationId, long qty) {
+        return new FefoAllocationEngine.PlanRow(SKU_ID, locationId, null, null, null,
+                "BIN-" + locationId, "Z-A", BigDecimal.valueOf(qty));
+    }
+
+    /** Mọi delta reserved_qty đã ghi (huỷ reservation cũ rồi tới phân bổ mới). */
+    @SuppressWarnings("unchecked")
+    private List<BigDecimal> reservedDeltas() {
+        ArgumentCaptor<List<ReservedQtyWriter.ReservedDelta>> captor = ArgumentCaptor.forClass(List.class);
+        verify(reservedQtyWriter, atLeastOnce()).apply(captor.capture());
+        return captor.getAllValues().stream().flatMap(List::stream)
+                .map(ReservedQtyWriter.ReservedDelta::qty).toList();
+    }
+}
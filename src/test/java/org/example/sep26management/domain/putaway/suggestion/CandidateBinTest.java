@@ -0,0 +1,75 @@
+package org.example.sep26management.domain.putaway.suggestion;
+
+import org.example.sep26management.application.enums.LocationType;
+import org.example.sep26management.infrastructure.persistence.entity.LocationEntity;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Hold của task khác trừ vào kg / m³ còn trống theo tải thật của SKU được hold, rồi mới đổi sang
+ * đơn vị của SKU đang lập — không trừ qty của SKU này bằng đơn vị của SKU khác.
+ */
+class CandidateBinTest {
+
+    private static final PutawayZoneDirectory.SkuPlacement HEAVY =
+            new PutawayZoneDirectory.SkuPlacement(1L, "HEAVY", null, new BigDecimal("2"), null);
+    private static final PutawayZoneDirectory.SkuPlacement LIGHT =
+            new PutawayZoneDirectory.SkuPlacement(2L, "LIGHT", null, new BigDecimal("0.5"), new BigDecimal("0.001"));
+    private static final PutawayZoneDirectory.SkuPlacement UNSIZED =
+            new PutawayZoneDirectory.SkuPlacement(3L, "UNSIZED", null, null, null);
+
+    @Test
+    void heldWeightOfAnotherSkuReducesCapacityInKg() {
+        CandidateBin bin = bin(new BigDecimal("100"), null);
+        // task khác giữ 40 đơn vị HEAVY = 80 kg → còn 20 kg = 40 đơn vị LIGHT
+        CandidateBin held = bin.withHeld(BinCapacityHolds.Held.of(BigDecimal.valueOf(40), HEAVY));
+
+        assertEquals(new BigDecimal("200.00"), bin.forSku(LIGHT).getAvailableCapacity());
+        assertEquals(new BigDecimal("40.00"), held.forSku(LIGHT).getAvailableCapacity());
+        assertEquals(new BigDecimal("10.00"), held.forSku(HEAVY).getAvailableCapacity());
+        // gọi lại forSku không trừ hold lần nữa
+        assertEquals(new BigDecimal("40.00"), held.forSku(LIGHT).forSku(LIGHT).getAvailableCapacity());
+    }
+
+    @Test
+    void tighterDimensionWins() {
+        CandidateBin bin = bin(new BigDecimal("100"), new BigDecimal("0.05"));
+        CandidateBin held = bin.withHeld(BinCapacityHolds.Held.of(BigDecimal.valueOf(20), LIGHT));
+
+        // 90 kg → 180 đơn vị, 0.03 m³ → 30 đơn vị
+        assertEquals(new BigDecimal("30.00"), held.forSku(LIGHT).getAvailableCapacity());
+        assertEquals(new BigDecimal("50.00"), held.forSku(LIGHT).getMaxCapacity());
+    }
+
+    @Test
+    void unsizedSkuFallsBackToLegacyQty() {
+        CandidateBin bin = bin(new BigDecimal("100"), null);
+        CandidateBin held = bin.withHeld(BinCapacityHolds.Held.of(BigDecimal.valueOf(30), UNSIZED));
+
+        assertTrue(bin.measures(LIGHT));
+        assertFalse(bin.measures(UNSIZED));
+        assertEquals(new BigDecimal("70"), held.forSku(UNSIZED).getAvailableCapacity());
+        // hold không có kg → không trừ capacity theo kg của SKU có khai báo
+        assertEquals(new BigDecimal("200.00"), held.forSku(LIGHT).getAvailableCapacity());
+    }
+
+    private static CandidateBin bin(BigDecimal maxWeightKg, BigDecimal maxVolumeM3) {
+        LocationEntity location = LocationEntity.builder()
+                .locationId(1L)
+                .warehouseId(1L)
+                .zoneId(1L)
+                .locationCode("Z-A-B00001")
+                .locationType(LocationType.BIN)
+                .maxWeightKg(maxWeightKg)
+                .maxVolumeM3(maxVolumeM3)
+                .active(true)
+                .build();
+        return CandidateBin.of(location, "Z-A", BigDecimal.ZERO, BigDecimal.ZERO,
+                BigDecimal.ZERO, BigDecimal.ZERO, 0, 0);
+    }
+}
@@ -0,0 +1,175 @@
+package org.example.sep26management.domain.putaway.suggestion;
+
+import org.example.sep26management.application.enums.LocationType;
+import org.example.sep26management.infrastructure.persistence.entity.LocationEntity;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Chấm song song (Parallelism + ChunkMerge) phải cho đúng kết quả của đường tuần tự: cùng
+ * candidate, cùng BIN / qty / điểm theo cùng thứ tự — kể cả khi nhiều BIN bằng điểm nhau và khi
+ * số candidate nằm sát biên chunk.
+ */
+class DefaultPutawaySuggestionEngineParallelTest {
+
+    private static final long WAREHOUSE_ID = 1L;
+    private static final long ZONE_ID = 1L;
+    private static final int CHUNK_SIZE = 64;
+    private static final int POOL_SIZE = 4;
+    /** Parallelism.chunks: tối đa pool × 4 chunk, sau đó chunk to dần. */
+    private static final int MAX_CHUNKS = POOL_SIZE * 4;
+
+    /** Chỉ CAPACITY + fit kg / m³ (mặc định) và đủ rule đa tiêu chí. */
+    private static final PutawayScoringWeights CAPACITY = PutawayScoringWeights.DEFAULT;
+    private static final PutawayScoringWeights MULTI = new PutawayScoringWeights(1, 100, 0, 50, 2, 10, 3, 2, 1);
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(POOL_SIZE);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdownNow();
+    }
+
+    static Stream<Arguments> cases() {
+        int[] sizes = {1, 2, CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1, 2 * CHUNK_SIZE,
+                MAX_CHUNKS * CHUNK_SIZE - 1, MAX_CHUNKS * CHUNK_SIZE, MAX_CHUNKS * CHUNK_SIZE + 1, 5000};
+        List<Arguments> cases = new ArrayList<>();
+        for (int size : sizes) {
+            for (String strategy : new String[]{"SPLIT", "NO_SPLIT"}) {
+                for (boolean sized : new boolean[]{false, true}) {
+                    for (PutawayScoringWeights weights : List.of(CAPACITY, MULTI)) {
+                        cases.add(Arguments.of(size, strategy, sized, weights));
+                    }
+                }
+            }
+        }
+        return cases.stream();
+    }
+
+    @ParameterizedTest(name = "{0} bins, {1}, sized={2}")
+    @MethodSource("cases")
+    void parallelMatchesSequential(int size, String strategy, boolean sized, PutawayScoringWeights weights) {
+        List<CandidateBin> candidates = candidates(size, size * 31L + (sized ? 1 : 0));
+        DefaultPutawaySuggestionEngine sequential = engine(weights, DefaultPutawaySuggestionEngine.Parallelism.OFF);
+        DefaultPutawaySuggestionEngine parallel = engine(weights,
+                new DefaultPutawaySuggestionEngine.Parallelism(pool, 1, CHUNK_SIZE));
+
+        // qty nhỏ: dừng ở BIN đầu; qty lớn: SPLIT lấy nhiều BIN qua nhiều chunk
+        for (BigDecimal qty : List.of(BigDecimal.valueOf(5), BigDecimal.valueOf(35), BigDecimal.valueOf(4000))) {
+            List<String> expected = describe(sequential.planCandidates(context(qty, strategy, sized), candidates));
+            List<String> actual = describe(parallel.planCandidates(context(qty, strategy, sized), candidates));
+            assertEquals(expected, actual, "qty " + qty);
+        }
+    }
+
+    @ParameterizedTest(name = "{0} bins")
+    @MethodSource("tieSizes")
+    void equalScoresKeepCandidateOrder(int size) {
+        // Mọi BIN cùng capacity → cùng điểm: thứ tự phải theo vị trí candidate như đường tuần tự
+        List<CandidateBin> candidates = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            candidates.add(CandidateBin.of(location(i + 1, BigDecimal.valueOf(20), null), "Z-A",
+                    BigDecimal.TEN, BigDecimal.ZERO));
+        }
+        DefaultPutawaySuggestionEngine sequential = engine(CAPACITY, DefaultPutawaySuggestionEngine.Parallelism.OFF);
+        DefaultPutawaySuggestionEngine parallel = engine(CAPACITY,
+                new DefaultPutawaySuggestionEngine.Parallelism(pool, 1, CHUNK_SIZE));
+
+        BigDecimal qty = BigDecimal.valueOf(10L * Math.min(size, 3 * CHUNK_SIZE / 2));
+        List<String> expected = describe(sequential.planCandidates(context(qty, "SPLIT", false), candidates));
+        List<String> actual = describe(parallel.planCandidates(context(qty, "SPLIT", false), candidates));
+        assertFalse(expected.isEmpty());
+        assertEquals(expected, actual);
+        assertEquals("1", expected.get(0).split(":")[0]);
+    }
+
+    static Stream<Integer> tieSizes() {
+        return Stream.of(CHUNK_SIZE - 1, CHUNK_SIZE, CHUNK_SIZE + 1, 3 * CHUNK_SIZE, MAX_CHUNKS * CHUNK_SIZE + 1);
+    }
+
+    // ─── Helpers ────────────────────────────────────────────────────────────────
+
+    private static DefaultPutawaySuggestionEngine engine(PutawayScoringWeights weights,
+                                                         DefaultPutawaySuggestionEngine.Parallelism parallelism) {
+        return new DefaultPutawaySuggestionEngine(null, null, null, null, 1, true,
+                warehouseId -> weights, null, parallelism);
+    }
+
+    private static PutawaySuggestionContext context(BigDecimal qty, String strategy, boolean sized) {
+        PutawaySuggestionRequest request = new PutawaySuggestionRequest();
+        request.setWarehouseId(WAREHOUSE_ID);
+        request.setSkuId(1L);
+        request.setQuantity(qty);
+        request.setSplitAllowed(!"NO_SPLIT".equals(strategy));
+        request.setStrategyCode(strategy);
+        if (sized) {
+            request.setWeight(new BigDecimal("0.5"));
+            request.setVolume(new BigDecimal("0.002"));
+        }
+        return new PutawaySuggestionContext(request, Set.of(ZONE_ID));
+    }
+
+    /**
+     * BIN ngẫu nhiên (cùng seed → cùng dữ liệu) với capacity lấy từ vài mức cố định → nhiều BIN
+     * bằng điểm; 1/8 BIN đầy (bị loại), 1/5 không khai báo thể tích.
+     */
+    private static List<CandidateBin> candidates(int size, long seed) {
+        Random random = new Random(seed);
+        List<CandidateBin> bins = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            BigDecimal max = BigDecimal.valueOf(100 + 50 * random.nextInt(3));
+            BigDecimal volume = random.nextInt(5) == 0 ? null : BigDecimal.valueOf(1 + random.nextInt(2));
+            BigDecimal occupied = random.nextInt(8) == 0 ? max : BigDecimal.valueOf(10L * random.nextInt(6));
+            LocationEntity location = location(i + 1, max, volume);
+            location.setIsPickingFace(i % 7 == 0);
+            bins.add(CandidateBin.of(location, "Z-A", occupied, BigDecimal.ZERO,
+                    occupied.multiply(new BigDecimal("0.5")), BigDecimal.ZERO,
+                    random.nextInt(4), random.nextInt(6)));
+        }
+        return bins;
+    }
+
+    private static LocationEntity location(long id, BigDecimal maxWeightKg, BigDecimal maxVolumeM3) {
+        return LocationEntity.builder()
+                .locationId(id)
+                .warehouseId(WAREHOUSE_ID)
+                .zoneId(ZONE_ID)
+                .locationCode(String.format("Z-A-B%05d", id))
+                .locationType(LocationType.BIN)
+                .maxWeightKg(maxWeightKg)
+                .maxVolumeM3(maxVolumeM3)
+                .isPickingFace(false)
+                .binFloor(1 + (int) (id % 4))
+                .binColumn(1 + (int) (id % 6))
+                .active(true)
+                .build();
+    }
+
+    /** binId:qty:score của từng BIN được gợi ý, theo thứ tự. */
+    private static List<String> describe(PutawaySuggestionLineResponse line) {
+        List<String> result = new ArrayList<>();
+        for (PutawayBinSuggestionDto dto : line.getBinSuggestions()) {
+            result.add(dto.getBinId() + ":" + dto.getSuggestedQuantity() + ":" + dto.getScore());
+        }
+        return result;
+    }
+}
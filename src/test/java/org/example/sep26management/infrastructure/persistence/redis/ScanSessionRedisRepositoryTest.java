@@ -0,0 +1,116 @@
+package org.example.sep26management.infrastructure.persistence.redis;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.example.sep26management.infrastructure.persistence.redis.ScanSessionRedisRepository.ScanDelta;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * deltasSince (SSE reconnect với Last-Event-ID): chỉ trả delta khi ring buffer còn liền mạch từ
+ * lastSeq + 1; thiếu (đã LTRIM, session reset, lastSeq lạ) → empty để caller gửi snapshot.
+ */
+class ScanSessionRedisRepositoryTest {
+
+    private static final String SESSION_ID = "sess-1";
+
+    private StringRedisTemplate redisTemplate;
+    private ScanSessionRedisRepository repository;
+
+    @BeforeEach
+    void setUp() {
+        redisTemplate = mock(StringRedisTemplate.class);
+        repository = new ScanSessionRedisRepository(redisTemplate, new ObjectMapper().findAndRegisterModules());
+    }
+
+    @Test
+    void returnsMissedDeltasInSeqOrder() {
+        buffer(10, 6, 7, 8, 9, 10);
+
+        List<ScanDelta> missed = repository.deltasSince(SESSION_ID, 7).orElseThrow();
+
+        assertEquals(List.of(8L, 9L, 10L), missed.stream().map(ScanDelta::seq).toList());
+        assertEquals(new BigDecimal("8"), missed.get(0).line().getQty());
+    }
+
+    @Test
+    void upToDateClientGetsNoDeltas() {
+        buffer(10, 9, 10);
+
+        assertEquals(Optional.of(List.of()), repository.deltasSince(SESSION_ID, 10));
+    }
+
+    @Test
+    void trimmedBufferIsAGap() {
+        // ring buffer chỉ còn 8..10, client dừng ở 5 → thiếu 6, 7
+        buffer(10, 8, 9, 10);
+
+        assertTrue(repository.deltasSince(SESSION_ID, 5).isEmpty());
+    }
+
+    @Test
+    void missingSeqInsideBufferIsAGap() {
+        // save() xoá buffer nhưng vẫn INCR seq → buffer bắt đầu sau lastSeq + 1
+        buffer(12, 12);
+
+        assertTrue(repository.deltasSince(SESSION_ID, 10).isEmpty());
+    }
+
+    @Test
+    void lastSeqAheadOfServerIsAGap() {
+        // session hết hạn / tạo lại → seq server nhỏ hơn Last-Event-ID client giữ
+        buffer(3, 1, 2, 3);
+
+        assertTrue(repository.deltasSince(SESSION_ID, 40).isEmpty());
+    }
+
+    @Test
+    void nonDeltaEntriesAreSkipped() {
+        List<String> entries = new ArrayList<>(deltas(4, 5));
+        entries.add(1, "{\"sessionId\":\"sess-1\",\"type\":\"batch\",\"applied\":3}");
+        entries.add("not json");
+        pipelined("5", entries);
+
+        assertEquals(List.of(4L, 5L),
+                repository.deltasSince(SESSION_ID, 3).orElseThrow().stream().map(ScanDelta::seq).toList());
+    }
+
+    @Test
+    void redisFailureFallsBackToSnapshot() {
+        when(redisTemplate.executePipelined(any(SessionCallback.class))).thenThrow(new IllegalStateException("down"));
+
+        assertTrue(repository.deltasSince(SESSION_ID, 1).isEmpty());
+    }
+
+    // ─── Helpers ────────────────────────────────────────────────────────────────
+
+    /** seq hiện tại + các delta còn trong ring buffer. */
+    private void buffer(long currentSeq, long... seqs) {
+        pipelined(String.valueOf(currentSeq), deltas(seqs));
+    }
+
+    private void pipelined(String currentSeq, List<String> entries) {
+        when(redisTemplate.executePipelined(any(SessionCallback.class)))
+                .thenReturn(Arrays.asList(currentSeq, new ArrayList<Object>(entries)));
+    }
+
+    private static List<String> deltas(long... seqs) {
+        return LongStream.of(seqs)
+                .mapToObj(seq -> "{\"seq\":" + seq + ",\"sessionId\":\"sess-1\",\"skuId\":\"1\","
+                        + "\"condition\":\"PASS\",\"qty\":\"" + seq + "\"}")
+                .toList();
+    }
+}